@@ -2,6 +2,7 @@ package com.kindergarten;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 幼儿园老师 Agent 应用入口。
@@ -10,6 +11,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * 本应用就是一个最简单的 Agent 形态——用户发消息 -> 转发给 LLM -> 返回生成结果。
  */
 @SpringBootApplication
+@EnableScheduling
 public class KindergartenAgentApplication {
 
     public static void main(String[] args) {
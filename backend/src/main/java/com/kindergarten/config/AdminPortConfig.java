@@ -0,0 +1,65 @@
+package com.kindergarten.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.Connector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 管理端口：/api/admin/**（分片迁移、统计、事件追读）只在 kindergarten.admin.port 上提供，业务端口（server.port）返回 404。
+ *
+ * 网关只转发到业务端口，管理接口不会经网关暴露；运维与内部消费者直接访问各实例的管理端口
+ * （Nacos 实例元数据 kindergarten.admin-port，见 DiscoveryConfig）。事件追读接口读的是该实例自己的日志，
+ * 必须按实例访问，不能经负载均衡。管理端口为 Tomcat 的附加连接器，与业务端口共用同一个 Spring MVC 上下文。
+ * 端口为 0 时随机分配（测试）。
+ */
+@Configuration
+public class AdminPortConfig {
+
+    /** Nacos 实例元数据：管理端口 */
+    public static final String ADMIN_PORT_METADATA = "kindergarten.admin-port";
+
+    private final Connector connector;
+
+    public AdminPortConfig(@Value("${kindergarten.admin.port:8081}") int port) {
+        this.connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+        this.connector.setPort(port);
+    }
+
+    /** 实际监听的管理端口；Web 容器未启动时为 -1 */
+    public int adminPort() {
+        return connector.getLocalPort();
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> adminConnectorCustomizer() {
+        return factory -> factory.addAdditionalTomcatConnectors(connector);
+    }
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> adminPortFilter() {
+        var registration = new FilterRegistrationBean<OncePerRequestFilter>(new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+                    throws ServletException, IOException {
+                if (request.getLocalPort() != adminPort()) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                chain.doFilter(request, response);
+            }
+        });
+        registration.addUrlPatterns("/api/admin/*");
+        return registration;
+    }
+}
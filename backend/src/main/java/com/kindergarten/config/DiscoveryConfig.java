@@ -0,0 +1,37 @@
+package com.kindergarten.config;
+
+import com.alibaba.cloud.nacos.NacosServiceManager;
+import com.alibaba.cloud.nacos.registry.NacosRegistration;
+import com.alibaba.cloud.nacos.registry.NacosServiceRegistry;
+import com.kindergarten.discovery.NacosReadinessRegistrar;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * 就绪后注册 Nacos（discovery 模块的 NacosReadinessRegistrar）。
+ *
+ * 后端额外在实例元数据中带上管理端口（AdminPortConfig），供运维与事件追读的消费者按实例直连。
+ * 需配合配置：kindergarten.nacos.readiness-registration=true
+ */
+@Configuration
+public class DiscoveryConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kindergarten.nacos", name = "readiness-registration", havingValue = "true")
+    public NacosReadinessRegistrar nacosReadinessRegistrar(
+            ObjectProvider<NacosServiceRegistry> serviceRegistry,
+            ObjectProvider<NacosRegistration> registration,
+            ObjectProvider<NacosServiceManager> serviceManager,
+            AdminPortConfig adminPort,
+            @Value("${kindergarten.nacos.status-poll-interval-ms:200}") long pollIntervalMs) {
+        return new NacosReadinessRegistrar(serviceRegistry, registration, serviceManager, pollIntervalMs,
+                () -> adminPort.adminPort() > 0
+                        ? Map.of(AdminPortConfig.ADMIN_PORT_METADATA, String.valueOf(adminPort.adminPort()))
+                        : Map.of());
+    }
+}
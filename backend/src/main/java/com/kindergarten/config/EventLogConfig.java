@@ -0,0 +1,27 @@
+package com.kindergarten.config;
+
+import com.kindergarten.service.ChatEventLog;
+import com.kindergarten.service.EventLogProperties;
+import com.kindergarten.service.ShardedIds;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * 会话事件日志配置，见 ChatEventLog / ChatProjector。
+ *
+ * 日志目录按租得的节点号区分（{dir}/node-{节点号}，见 NodeLeaseHolder），同一台机器上的多个实例互不干扰；
+ * 关闭时先停止投影（依赖本 Bean），再由 close() 写完队列中的事件并刷盘。
+ */
+@Configuration
+@EnableConfigurationProperties(EventLogProperties.class)
+public class EventLogConfig {
+
+    @Bean(destroyMethod = "close")
+    public ChatEventLog chatEventLog(EventLogProperties p, ShardedIds ids, MeterRegistry registry) {
+        return new ChatEventLog(Path.of(p.dir()).resolve("node-" + ids.nodeId()), p, registry);
+    }
+}
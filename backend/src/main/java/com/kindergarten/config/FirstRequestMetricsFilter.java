@@ -0,0 +1,50 @@
+package com.kindergarten.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录「JVM 启动 → 第一个业务请求处理完成」的耗时，衡量启动与预热优化的效果。
+ *
+ * 指标：startup.time.to.first.request（毫秒，未处理过请求时为 -1）。只统计 /api/**，忽略健康检查。
+ */
+@Component
+public class FirstRequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(FirstRequestMetricsFilter.class);
+
+    private final AtomicLong timeToFirstRequestMs = new AtomicLong(-1);
+
+    public FirstRequestMetricsFilter(MeterRegistry registry) {
+        registry.gauge("startup.time.to.first.request", timeToFirstRequestMs);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return timeToFirstRequestMs.get() >= 0 || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            if (timeToFirstRequestMs.compareAndSet(-1, uptime)) {
+                log.info("首个请求处理完成: {} {}，JVM 启动至此 {} ms", request.getMethod(), request.getRequestURI(), uptime);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.kindergarten.config;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内存 Span 导出器（kindergarten.tracing.exporter=memory），供测试与本地调试断言链路结构。
+ *
+ * 只保留最近 capacity 个 Span，超出后丢弃最早的。注入本 Bean 后可按 traceId 取出一次请求的全部 Span，
+ * 例如断言 http → llm.queue → llm.stream 的父子关系，或 llm.stream 上存在 first_token 事件。
+ */
+public class InMemorySpanExporter implements SpanExporter {
+
+    private final int capacity;
+    private final ConcurrentLinkedDeque<SpanData> spans = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public InMemorySpanExporter(int capacity) {
+        this.capacity = capacity > 0 ? capacity : 10_000;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> batch) {
+        for (SpanData span : batch) {
+            spans.addLast(span);
+            if (size.incrementAndGet() > capacity && spans.pollFirst() != null) {
+                size.decrementAndGet();
+            }
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    /** 已结束的 Span（按导出顺序） */
+    public List<SpanData> finishedSpans() {
+        return new ArrayList<>(spans);
+    }
+
+    /** 某次请求（traceId）的全部 Span */
+    public List<SpanData> spansOfTrace(String traceId) {
+        return spans.stream().filter(s -> s.getTraceId().equals(traceId)).toList();
+    }
+
+    public void reset() {
+        spans.clear();
+        size.set(0);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return CompletableResultCode.ofSuccess();
+    }
+}
@@ -1,25 +1,49 @@
 package com.kindergarten.config;
 
 import com.kindergarten.service.LlmProperties;
+import com.kindergarten.service.LlmTier;
+import com.kindergarten.service.LlmTiers;
+import com.kindergarten.service.ModelTier;
+import com.kindergarten.service.PromptProperties;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
 import dev.langchain4j.model.chat.ChatModel;
 import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * LLM 相关配置：使用 LangChain4j 创建 OpenAI 兼容的 ChatModel / StreamingChatModel。
  *
  * baseUrl 需指向 /v1 的地址（如 https://api.deepseek.com/v1），
  * DeepSeek/通义等需设置 accumulateToolCallId(false)。
+ * 快速档与推理档各自创建一组模型实例，见 LlmProperties.fast / reasoning；
+ * 超时相同的实例共用一个调优过的 HTTP 客户端（SharedLlmHttpClientBuilder），并在就绪前预热连接。
  */
 @Configuration
-@EnableConfigurationProperties(LlmProperties.class)
+@EnableConfigurationProperties({LlmProperties.class, PromptProperties.class})
 public class LlmConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(LlmConfig.class);
+
     private static String ensureV1(String baseUrl) {
         if (baseUrl == null || baseUrl.isBlank()) return baseUrl;
         return baseUrl.endsWith("/v1") ? baseUrl : baseUrl.replaceAll("/?$", "") + "/v1";
@@ -27,6 +51,7 @@ public class LlmConfig {
 
     /** 启动时校验 API Key 已通过环境变量注入，避免误部署无密钥实例。 */
     @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
     public ApplicationRunner llmApiKeyValidator(LlmProperties p) {
         return args -> {
             if (p.apiKey() == null || p.apiKey().isBlank()) {
@@ -36,21 +61,107 @@ public class LlmConfig {
         };
     }
 
+    /**
+     * 共享 HTTP 客户端的回调线程池，附带 Micrometer 线程池指标（executor.*{name=llm-http}）。
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService llmHttpExecutor(LlmProperties p, MeterRegistry registry) {
+        var counter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(p.http().executorThreads(), r -> {
+            var t = new Thread(r, "llm-http-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        return ExecutorServiceMetrics.monitor(registry, pool, "llm-http");
+    }
+
+    /**
+     * 所有模型共享的 HTTP 客户端构建器。
+     * JDK HttpClient 的连接池参数（jdk.httpclient.connectionPoolSize / keepalive.timeout）是 JVM 全局的系统属性，
+     * 在启动参数中设置（见 docs/LLM_CONFIG.md），这里不修改。
+     * JDK 客户端不暴露连接池占用，连接复用情况用 scripts/llm-ttft-bench.sh 在桩服务端统计。
+     */
+    @Bean
+    public SharedLlmHttpClientBuilder llmHttpClientBuilder(LlmProperties p, ExecutorService llmHttpExecutor) {
+        return new SharedLlmHttpClientBuilder(p.http(), llmHttpExecutor);
+    }
+
+    /**
+     * 连接预热：在实例对外就绪（ApplicationRunner 全部执行完才进入 ACCEPTING_TRAFFIC）之前，
+     * 用每个共享客户端（模型实例已创建，按超时各一个）向 {baseUrl}/v1/models 并发发起请求，完成 DNS、TCP、TLS 与 HTTP/2 协商并留在连接池中，
+     * 避免第一批用户请求承担建连耗时。预热失败只告警，不阻止启动。
+     */
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    public ApplicationRunner llmConnectionWarmup(LlmProperties p, SharedLlmHttpClientBuilder llmHttpClientBuilder,
+                                                 ExecutorService llmHttpExecutor, MeterRegistry registry) {
+        return args -> {
+            if (!p.http().warmup()) return;
+            var clients = llmHttpClientBuilder.clients();
+            var request = HttpRequest.builder()
+                    .method(HttpMethod.GET)
+                    .url(ensureV1(p.baseUrl()) + "/models")
+                    .addHeader("Authorization", "Bearer " + p.apiKey())
+                    .build();
+            long start = System.nanoTime();
+            var ok = new AtomicInteger();
+            var futures = new CompletableFuture<?>[p.http().warmupConnections() * clients.size()];
+            int i = 0;
+            for (var client : clients) {
+                for (int n = 0; n < p.http().warmupConnections(); n++) {
+                    futures[i++] = CompletableFuture.runAsync(() -> {
+                        try {
+                            client.execute(request);
+                            ok.incrementAndGet();
+                        } catch (Exception e) {
+                            log.warn("LLM 连接预热失败: {}", e.getMessage());
+                        }
+                    }, llmHttpExecutor);
+                }
+            }
+            CompletableFuture.allOf(futures).join();
+            long elapsed = System.nanoTime() - start;
+            Timer.builder("llm.http.warmup")
+                    .tag("outcome", ok.get() > 0 ? "success" : "error")
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            log.info("LLM 连接预热完成: {}/{} 成功, 耗时 {} ms",
+                    ok.get(), futures.length, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        };
+    }
+
+    /**
+     * 按档位创建模型：每档有独立的模型名、超时与并发许可池（见 LlmTier），
+     * 超时相同的档位底层共用同一个 HTTP 客户端。
+     */
     @Bean
-    public ChatModel openAiChatModel(LlmProperties p) {
+    public LlmTiers llmTiers(LlmProperties p, SharedLlmHttpClientBuilder llmHttpClientBuilder) {
+        return new LlmTiers(tier(p, ModelTier.FAST, llmHttpClientBuilder),
+                tier(p, ModelTier.REASONING, llmHttpClientBuilder));
+    }
+
+    private static LlmTier tier(LlmProperties p, ModelTier tier, HttpClientBuilder http) {
+        var t = p.tier(tier);
+        return new LlmTier(tier, t, chatModel(p, t, http), streamingChatModel(p, t, http));
+    }
+
+    private static ChatModel chatModel(LlmProperties p, LlmProperties.Tier t, HttpClientBuilder http) {
         return OpenAiChatModel.builder()
+                .httpClientBuilder(http)
                 .baseUrl(ensureV1(p.baseUrl()))
                 .apiKey(p.apiKey())
-                .modelName(p.model())
+                .modelName(t.model())
+                .timeout(t.timeout())
                 .build();
     }
 
-    @Bean
-    public StreamingChatModel openAiStreamingChatModel(LlmProperties p) {
+    private static StreamingChatModel streamingChatModel(LlmProperties p, LlmProperties.Tier t, HttpClientBuilder http) {
         return OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(http)
                 .baseUrl(ensureV1(p.baseUrl()))
                 .apiKey(p.apiKey())
-                .modelName(p.model())
+                .modelName(t.model())
+                .timeout(t.timeout())
                 .accumulateToolCallId(false)
                 .build();
     }
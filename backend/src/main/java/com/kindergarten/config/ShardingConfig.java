@@ -0,0 +1,140 @@
+package com.kindergarten.config;
+
+import com.kindergarten.entity.Message;
+import com.kindergarten.entity.MessageBlob;
+import com.kindergarten.entity.Session;
+import com.kindergarten.entity.SessionTombstone;
+import com.kindergarten.repository.MessageBlobRepository;
+import com.kindergarten.repository.MessageRepository;
+import com.kindergarten.repository.SessionRepository;
+import com.kindergarten.service.ChatShard;
+import com.kindergarten.service.ChatShards;
+import com.kindergarten.service.NodeLeaseHolder;
+import com.kindergarten.service.ShardedIds;
+import com.kindergarten.service.ShardingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.support.PersistenceExceptionTranslationInterceptor;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话存储分片配置，见 ChatShards。
+ *
+ * 物理分片 0 即主库（spring.datasource），沿用 Spring Boot 自动配置的 Repository 与事务管理器；
+ * kindergarten.sharding.shards 中的每个数据源各自创建连接池、EntityManagerFactory（只管理会话、消息、blob 与会话墓碑四张表，
+ * 建表策略与 spring.jpa 一致）、事务管理器与 Repository 实例。
+ * 这些 EntityManagerFactory 不注册为 Bean，以免 Spring Boot 的默认 JPA 配置因检测到已有 EntityManagerFactory 而退出。
+ * 节点号（ShardedIds、事件日志目录、投影检查点）由 NodeLeaseHolder 从主库租得。
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    /**
+     * 节点号租约。依赖 EntityManagerFactory：主库的 chat_node_lease 表由 JPA 建表后才能租用
+     */
+    @Bean(destroyMethod = "release")
+    @DependsOn("entityManagerFactory")
+    public NodeLeaseHolder nodeLeaseHolder(ShardingProperties p, JdbcTemplate jdbcTemplate) {
+        return new NodeLeaseHolder(jdbcTemplate, p.nodeId(), p.leaseTtlMs(), p.idReserveSeconds());
+    }
+
+    @Bean
+    public ShardedIds shardedIds(NodeLeaseHolder nodeLease) {
+        return nodeLease.ids();
+    }
+
+    @Bean(destroyMethod = "close")
+    public ChatShards chatShards(ShardingProperties p,
+                                 ShardedIds ids,
+                                 SessionRepository sessionRepository,
+                                 MessageRepository messageRepository,
+                                 MessageBlobRepository blobRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 JpaProperties jpaProperties,
+                                 HibernateProperties hibernateProperties) {
+        var shards = new ArrayList<ChatShard>();
+        var resources = new ArrayList<AutoCloseable>();
+        shards.add(new ChatShard(0, sessionRepository, messageRepository, blobRepository,
+                jdbcTemplate, transactionManager));
+        try {
+            for (var spec : p.shards()) {
+                shards.add(createShard(shards.size(), spec, jpaProperties, hibernateProperties, resources));
+            }
+            return new ChatShards(shards, jdbcTemplate, ids, resources);
+        } catch (RuntimeException e) {
+            for (int i = resources.size() - 1; i >= 0; i--) {
+                try {
+                    resources.get(i).close();
+                } catch (Exception ignored) {
+                    // 启动失败时尽力释放
+                }
+            }
+            throw e;
+        }
+    }
+
+    private ChatShard createShard(int index, ShardingProperties.DataSourceSpec spec,
+                                  JpaProperties jpaProperties, HibernateProperties hibernateProperties,
+                                  List<AutoCloseable> resources) {
+        HikariDataSource dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(spec.url())
+                .username(spec.username())
+                .password(spec.password())
+                .driverClassName(spec.driverClassName())
+                .build();
+        dataSource.setPoolName("chat-shard-" + index);
+        dataSource.setMaximumPoolSize(spec.maxPoolSize());
+        resources.add(dataSource);
+
+        var vendorAdapter = new HibernateJpaVendorAdapter();
+        vendorAdapter.setShowSql(jpaProperties.isShowSql());
+        if (jpaProperties.getDatabasePlatform() != null) {
+            vendorAdapter.setDatabasePlatform(jpaProperties.getDatabasePlatform());
+        }
+        var factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setPersistenceUnitName("chat-shard-" + index);
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setJpaVendorAdapter(vendorAdapter);
+        factoryBean.setManagedTypes(PersistenceManagedTypes.of(
+                Session.class.getName(), Message.class.getName(), MessageBlob.class.getName(),
+                SessionTombstone.class.getName()));
+        factoryBean.setJpaPropertyMap(hibernateProperties.determineHibernateProperties(
+                jpaProperties.getProperties(), new HibernateSettings()));
+        factoryBean.afterPropertiesSet();
+        var entityManagerFactory = factoryBean.getObject();
+        resources.add(factoryBean::destroy);
+
+        var repositoryFactory = new JpaRepositoryFactory(
+                SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory));
+        // 与容器中的 Repository 一致：JPA 异常转换为 DataAccessException（如 DataIntegrityViolationException）
+        repositoryFactory.addRepositoryProxyPostProcessor((proxyFactory, repositoryInformation) ->
+                proxyFactory.addAdvice(new PersistenceExceptionTranslationInterceptor(factoryBean)));
+
+        return new ChatShard(index,
+                repositoryFactory.getRepository(SessionRepository.class),
+                repositoryFactory.getRepository(MessageRepository.class),
+                repositoryFactory.getRepository(MessageBlobRepository.class),
+                new JdbcTemplate(dataSource),
+                new JpaTransactionManager(entityManagerFactory));
+    }
+}
@@ -0,0 +1,93 @@
+package com.kindergarten.config;
+
+import com.kindergarten.service.LlmProperties;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.jdk.JdkHttpClient;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * 所有 LangChain4j 模型共享的 HTTP 客户端。
+ *
+ * LangChain4j 默认每个模型实例各建一个 HttpClient（各自的连接池），快速档/推理档、同步/流式共 4 个实例，
+ * 彼此无法复用连接。这里按超时复用：超时相同的模型共用同一个 JdkHttpClient（同一个连接池），
+ * 启动预热建立的连接也能被后续任意请求复用。
+ *
+ * 模型构建器把档位 timeout 传给 connectTimeout / readTimeout：建连超时取它与 kindergarten.llm.http.connect-timeout
+ * 中较小的，首字节超时（JDK 请求超时，收到响应头为止）取它与 first-byte-timeout 中较小的。
+ * 两者都是客户端级参数，设置后返回新的构建器，不改动共享实例；各档位的整体超时由 LlmService 中的 Reactor timeout 控制。
+ */
+public class SharedLlmHttpClientBuilder implements HttpClientBuilder {
+
+    private record Timeouts(Duration connect, Duration firstByte) {}
+
+    private final LlmProperties.Http config;
+    private final Executor executor;
+    /** 超时 → 客户端，由所有派生的构建器共享 */
+    private final Map<Timeouts, HttpClient> clients;
+    private final Timeouts timeouts;
+
+    public SharedLlmHttpClientBuilder(LlmProperties.Http config, Executor executor) {
+        this(config, executor, new ConcurrentHashMap<>(), new Timeouts(config.connectTimeout(), config.firstByteTimeout()));
+    }
+
+    private SharedLlmHttpClientBuilder(LlmProperties.Http config, Executor executor,
+                                       Map<Timeouts, HttpClient> clients, Timeouts timeouts) {
+        this.config = config;
+        this.executor = executor;
+        this.clients = clients;
+        this.timeouts = timeouts;
+    }
+
+    @Override
+    public Duration connectTimeout() {
+        return timeouts.connect();
+    }
+
+    @Override
+    public HttpClientBuilder connectTimeout(Duration timeout) {
+        var connect = timeout == null ? config.connectTimeout() : min(timeout, config.connectTimeout());
+        return new SharedLlmHttpClientBuilder(config, executor, clients, new Timeouts(connect, timeouts.firstByte()));
+    }
+
+    @Override
+    public Duration readTimeout() {
+        return timeouts.firstByte();
+    }
+
+    @Override
+    public HttpClientBuilder readTimeout(Duration timeout) {
+        var firstByte = timeout == null ? config.firstByteTimeout() : min(timeout, config.firstByteTimeout());
+        return new SharedLlmHttpClientBuilder(config, executor, clients, new Timeouts(timeouts.connect(), firstByte));
+    }
+
+    @Override
+    public HttpClient build() {
+        return clients.computeIfAbsent(timeouts, t -> {
+            var jdkBuilder = java.net.http.HttpClient.newBuilder()
+                    .version(config.http2() ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(t.connect())
+                    .executor(executor);
+            return JdkHttpClient.builder()
+                    .httpClientBuilder(jdkBuilder)
+                    .connectTimeout(t.connect())
+                    .readTimeout(t.firstByte())
+                    .build();
+        });
+    }
+
+    /** 已创建的全部客户端（预热用）；尚未创建任何模型时为默认超时的客户端 */
+    public Collection<HttpClient> clients() {
+        return clients.isEmpty() ? List.of(build()) : List.copyOf(clients.values());
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+}
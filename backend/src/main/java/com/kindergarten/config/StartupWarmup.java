@@ -0,0 +1,110 @@
+package com.kindergarten.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.dto.ChatRequest;
+import com.kindergarten.dto.ChatResponse;
+import com.kindergarten.entity.Message;
+import com.kindergarten.service.ChatShard;
+import com.kindergarten.service.ChatShards;
+import com.kindergarten.service.ModelRouter;
+import com.kindergarten.service.PromptCatalog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 启动预热：在实例进入就绪状态（进而注册到 Nacos）之前完成。
+ *
+ * - 数据库连接池：同时借出若干连接并校验，让连接池提前建好连接；
+ * - JPA：在每个会话存储分片上执行一次会话列表、消息历史查询，提前完成查询解析与元数据加载；
+ * - 聊天路径 JIT：反复执行请求反序列化、模板查找、档位路由、响应序列化，让热点方法在首个用户请求前完成编译。
+ *
+ * LLM 连接预热见 LlmConfig.llmConnectionWarmup。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private final DataSource dataSource;
+    private final ChatShards shards;
+    private final ObjectMapper objectMapper;
+    private final PromptCatalog promptCatalog;
+    private final ModelRouter modelRouter;
+    private final int dbConnections;
+    private final int jitIterations;
+
+    public StartupWarmup(DataSource dataSource,
+                         ChatShards shards,
+                         ObjectMapper objectMapper,
+                         PromptCatalog promptCatalog,
+                         ModelRouter modelRouter,
+                         @Value("${kindergarten.warmup.db-connections:4}") int dbConnections,
+                         @Value("${kindergarten.warmup.jit-iterations:2000}") int jitIterations) {
+        this.dataSource = dataSource;
+        this.shards = shards;
+        this.objectMapper = objectMapper;
+        this.promptCatalog = promptCatalog;
+        this.modelRouter = modelRouter;
+        this.dbConnections = dbConnections;
+        this.jitIterations = jitIterations;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        try {
+            warmDatabase();
+        } catch (Exception e) {
+            log.warn("数据库预热失败: {}", e.getMessage());
+        }
+        long dbDone = System.nanoTime();
+        try {
+            warmChatPath();
+        } catch (Exception e) {
+            log.warn("聊天路径预热失败: {}", e.getMessage());
+        }
+        log.info("启动预热完成: 数据库 {} ms, 聊天路径 {} ms",
+                (dbDone - start) / 1_000_000, (System.nanoTime() - dbDone) / 1_000_000);
+    }
+
+    private void warmDatabase() throws Exception {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < dbConnections; i++) {
+                var c = dataSource.getConnection();
+                borrowed.add(c);
+                c.isValid(2);
+            }
+        } finally {
+            for (Connection c : borrowed) c.close();
+        }
+        for (ChatShard shard : shards.all()) {
+            shard.sessions().findByUserIdOrderByUpdatedAtDesc(-1L, PageRequest.of(0, 1));
+            shard.messages().findBySessionIdOrderByCreatedAtAsc(-1L);
+        }
+    }
+
+    private void warmChatPath() throws Exception {
+        var requestJson = "{\"message\":\"预热\",\"session_id\":null,\"doc_type_id\":\"general\"}";
+        var history = List.of(new Message(-1L, Message.Role.user, "预热"));
+        for (int i = 0; i < jitIterations; i++) {
+            var req = objectMapper.readValue(requestJson, ChatRequest.class);
+            promptCatalog.get(req.docTypeId());
+            modelRouter.route(req.docTypeId(), history, null);
+            objectMapper.writeValueAsString(new ChatResponse(req.message(), -1L));
+        }
+    }
+}
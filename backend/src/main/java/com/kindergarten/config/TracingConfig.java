@@ -0,0 +1,43 @@
+package com.kindergarten.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.tracing.FileSpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * 链路追踪导出配置（Micrometer Tracing + OpenTelemetry）。
+ *
+ * Span 来源：
+ * - 网关入口与 HTTP 请求（Spring 自带 Observation，W3C traceparent 头跨服务传播）；
+ * - JDBC 连接与语句（datasource-micrometer），覆盖 SessionService 经由 Repository 发出的查询；
+ * - llm.queue（等待档位并发许可）、llm.chat / llm.stream（含 first_token 事件与 token 用量标签），见 LlmService；
+ * - sse.emit（向客户端推送流式内容），见 ChatController。
+ *
+ * 导出方式由 kindergarten.tracing.exporter 选择：none（默认）/ file（JSON Lines 文件，按大小滚动，本地开发用）/ memory（测试用）。
+ * Spring Boot 会把容器中的 SpanExporter Bean 接入 BatchSpanProcessor，后台批量导出。
+ * 日志中的 traceId / spanId 由 Micrometer Tracing 写入 MDC，见 logback-spring.xml。
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kindergarten.tracing", name = "exporter", havingValue = "file")
+    public FileSpanExporter fileSpanExporter(@Value("${kindergarten.tracing.file}") String file,
+                                             @Value("${kindergarten.tracing.max-file-bytes:104857600}") long maxFileBytes,
+                                             @Value("${kindergarten.tracing.max-files:5}") int maxFiles,
+                                             ObjectMapper objectMapper) {
+        return new FileSpanExporter(Path.of(file), objectMapper, maxFileBytes, maxFiles);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kindergarten.tracing", name = "exporter", havingValue = "memory")
+    public InMemorySpanExporter inMemorySpanExporter(
+            @Value("${kindergarten.tracing.memory-capacity:10000}") int capacity) {
+        return new InMemorySpanExporter(capacity);
+    }
+}
@@ -0,0 +1,14 @@
+package com.kindergarten.config;
+
+import com.kindergarten.service.AnalyticsProperties;
+import com.kindergarten.service.QuotaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 用量记账与每日额度配置，见 UsageLedger；生成统计配置，见 ChatAnalytics。
+ */
+@Configuration
+@EnableConfigurationProperties({QuotaProperties.class, AnalyticsProperties.class})
+public class UsageConfig {
+}
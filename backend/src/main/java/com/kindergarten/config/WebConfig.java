@@ -1,25 +1,37 @@
 package com.kindergarten.config;
 
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Web 配置：CORS 跨域、异步请求超时。
+ * Web 配置：CORS 跨域、异步请求超时、CBOR 消息转换器。
  *
  * 开发时前端（如 localhost:5173）和后端（localhost:8080）不同源，浏览器会拦截跨域请求。
  * 在此允许前端域名的跨域请求，便于本地联调。
  *
  * 聊天接口返回 Mono，由 Spring MVC 按异步请求处理；LLM 响应可能超过默认 30 秒，
  * 需将异步超时调大（与 LlmService 中 WebClient 的 90 秒一致），避免 AsyncRequestTimeoutException。
+ *
+ * 请求头 Accept: application/cbor 时以 CBOR 返回，字段与 JSON 相同；转换器基于 Spring Boot 的
+ * Jackson 配置构建（spring.jackson.*），未声明 Accept 或接受任意类型时仍返回 JSON。
  */
 @Configuration
 public class WebConfig {
 
     private static final long ASYNC_TIMEOUT_MS = 90_000L;
 
+    /** 替换 Spring MVC 默认的 CBOR 转换器（位置不变，排在 JSON 之后） */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
     @Bean
     public WebMvcConfigurer webMvcConfigurer() {
         return new WebMvcConfigurer() {
@@ -5,8 +5,19 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kindergarten.dto.ChatRequest;
 import com.kindergarten.dto.ChatResponse;
 import com.kindergarten.entity.Message;
+import com.kindergarten.entity.Session;
+import com.kindergarten.service.ChatAnalytics;
 import com.kindergarten.service.LlmService;
+import com.kindergarten.service.ModelTier;
+import com.kindergarten.service.QuotaExceededException;
 import com.kindergarten.service.SessionService;
+import com.kindergarten.service.SessionTitler;
+import com.kindergarten.service.ShardUnavailableException;
+import com.kindergarten.service.UsageLedger;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -15,17 +26,21 @@ import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 聊天 API 控制器。
  *
  * 流程：
+ * 0. 预占当日额度（UsageLedger），额度不足直接返回 429，不请求上游模型
  * 1. 解析/创建会话
  * 2. 保存用户消息
  * 3. 加载历史消息（含上下文）
  * 4. 调用 LLM 生成
- * 5. 保存助手消息
+ * 5. 保存助手消息（同时计入生成统计 ChatAnalytics）
+ * 会话标题由 SessionTitler 在后台批量生成，不占用本次请求的时间。
  */
 @RestController
 @RequestMapping("/api")
@@ -36,11 +51,18 @@ public class ChatController {
     private final LlmService llmService;
     private final SessionService sessionService;
     private final ObjectMapper objectMapper;
+    private final UsageLedger usageLedger;
+    private final SessionTitler sessionTitler;
+    private final Tracer tracer;
 
-    public ChatController(LlmService llmService, SessionService sessionService, ObjectMapper objectMapper) {
+    public ChatController(LlmService llmService, SessionService sessionService, ObjectMapper objectMapper,
+                          UsageLedger usageLedger, SessionTitler sessionTitler, Tracer tracer) {
         this.llmService = llmService;
         this.sessionService = sessionService;
         this.objectMapper = objectMapper;
+        this.usageLedger = usageLedger;
+        this.sessionTitler = sessionTitler;
+        this.tracer = tracer;
     }
 
     private long currentUserId() {
@@ -52,23 +74,36 @@ public class ChatController {
      */
     @PostMapping(value = "/chat", produces = MediaType.APPLICATION_JSON_VALUE)
     public Mono<ResponseEntity<ChatResponse>> chat(@RequestBody ChatRequest request) {
+        long start = System.nanoTime();
         return Mono.fromCallable(() -> {
-            long sessionId = resolveSessionId(request.sessionId(), request.docTypeId());
-            sessionService.saveUserMessage(sessionId, currentUserId(), request.message());
-            var history = sessionService.getContextMessages(sessionId, currentUserId());
-            updateSessionTitleIfFirstMessage(sessionId, request.message(), history.size());
-            return new Object[] { sessionId, history };
+            var reservation = usageLedger.reserve(currentUserId());
+            try {
+                var session = resolveSession(request.sessionId(), request.docTypeId(), request.message());
+                long sessionId = session.getId();
+                sessionService.saveUserMessage(sessionId, currentUserId(), request.message());
+                var history = sessionService.getContextMessages(sessionId, currentUserId());
+                if (history.size() == 1) sessionTitler.requestTitle();
+                return new Object[] { sessionId, session.getDocTypeId(), history, reservation };
+            } catch (RuntimeException e) {
+                reservation.cancel();
+                throw e;
+            }
         })
         .flatMap(tuple -> {
             long sessionId = (Long) ((Object[]) tuple)[0];
+            String docTypeId = (String) ((Object[]) tuple)[1];
             @SuppressWarnings("unchecked")
-            List<Message> history = (List<Message>) ((Object[]) tuple)[1];
-            return llmService.chat(history)
+            List<Message> history = (List<Message>) ((Object[]) tuple)[2];
+            var reservation = (UsageLedger.Reservation) ((Object[]) tuple)[3];
+            return llmService.chat(docTypeId, history, ModelTier.parse(request.modelTier()), reservation)
                     .map(reply -> {
-                        sessionService.saveAssistantMessage(sessionId, reply);
+                        sessionService.saveAssistantMessage(sessionId, currentUserId(), docTypeId, reply,
+                                ChatAnalytics.Completion.of(start, reservation.usage()));
                         return ResponseEntity.ok(new ChatResponse(reply, sessionId));
                     });
         })
+        .onErrorResume(QuotaExceededException.class, e ->
+                Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new ChatResponse(e.getMessage()))))
         .onErrorResume(e -> {
             var msg = "生成失败：" + (e.getMessage() != null ? e.getMessage() : "未知错误");
             return Mono.just(ResponseEntity.internalServerError().body(new ChatResponse(msg)));
@@ -77,60 +112,111 @@ public class ChatController {
 
     /**
      * 流式聊天：首条事件携带 sessionId，后续为 chunk。
+     * 推送过程记为 sse.emit Span（first_chunk 事件、chunk 数与字节数），保存助手消息（写事件日志）挂在其下。
      */
     @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter chatStream(@RequestBody ChatRequest request) {
+        long start = System.nanoTime();
+        // 额度不足时在建立 SSE 之前抛出，由 handleQuotaExceeded 返回 429
+        var reservation = usageLedger.reserve(currentUserId());
         var emitter = new SseEmitter(SSE_TIMEOUT_MS);
         var fullReply = new AtomicReference<StringBuilder>(new StringBuilder());
+        // SseEmitter 每种回调只保留最后一次注册的；建立推送后下方会替换为带 Span 的版本
+        emitter.onTimeout(emitter::complete);
+        emitter.onError((e) -> {});
+        // 已开始、尚未交给 LLM 回调结束的 sse.emit Span，建立推送失败时在 catch 中结束
+        Span pendingSpan = null;
 
         try {
-            long sessionId = resolveSessionId(request.sessionId(), request.docTypeId());
+            var session = resolveSession(request.sessionId(), request.docTypeId(), request.message());
+            long sessionId = session.getId();
             sessionService.saveUserMessage(sessionId, currentUserId(), request.message());
             var history = sessionService.getContextMessages(sessionId, currentUserId());
-            updateSessionTitleIfFirstMessage(sessionId, request.message(), history.size());
+            if (history.size() == 1) sessionTitler.requestTitle();
+
+            var sseSpan = tracer.nextSpan().name("sse.emit").tag("session.id", String.valueOf(sessionId)).start();
+            pendingSpan = sseSpan;
+            var chunks = new AtomicInteger();
+            var bytes = new AtomicLong();
+            emitter.onTimeout(() -> {
+                sseSpan.event("timeout");
+                sseSpan.end();
+                emitter.complete();
+            });
 
             // 首条事件：会话 ID
             emitter.send(objectMapper.writeValueAsString(new StreamSessionEvent(sessionId)));
 
-            llmService.chatStream(history).subscribe(
+            llmService.chatStream(session.getDocTypeId(), history, ModelTier.parse(request.modelTier()), reservation).subscribe(
                     chunk -> {
                         try {
                             fullReply.get().append(chunk);
                             String payload = objectMapper.writeValueAsString(chunk);
                             emitter.send(payload);
+                            if (chunks.getAndIncrement() == 0) sseSpan.event("first_chunk");
+                            bytes.addAndGet(payload.length());
                         } catch (IOException e) {
                             throw new RuntimeException(e);
                         }
                     },
-                    e -> emitter.completeWithError(e),
+                    e -> {
+                        sseSpan.tag("sse.chunks", String.valueOf(chunks.get()));
+                        sseSpan.error(e);
+                        sseSpan.end();
+                        emitter.completeWithError(e);
+                    },
                     () -> {
-                        try {
-                            sessionService.saveAssistantMessage(sessionId, fullReply.get().toString());
+                        try (var scope = tracer.withSpan(sseSpan)) {
+                            sessionService.saveAssistantMessage(sessionId, currentUserId(), session.getDocTypeId(),
+                                    fullReply.get().toString(),
+                                    ChatAnalytics.Completion.of(start, reservation.usage()));
                         } catch (Exception ignored) {}
+                        sseSpan.tag("sse.chunks", String.valueOf(chunks.get()));
+                        sseSpan.tag("sse.chars", String.valueOf(bytes.get()));
+                        sseSpan.end();
                         emitter.complete();
                     }
             );
         } catch (Exception e) {
+            // 未订阅到 LLM 时预占不会被 LlmService 结算，这里退回；已订阅时 cancel 为空操作
+            reservation.cancel();
+            if (pendingSpan != null) {
+                pendingSpan.error(e);
+                pendingSpan.end();
+            }
             emitter.completeWithError(e);
         }
-        emitter.onTimeout(() -> emitter.complete());
-        emitter.onError((e) -> {});
         return emitter;
     }
 
-    private long resolveSessionId(Long sessionId, String docTypeId) {
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<String> handleQuotaExceeded(QuotaExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    @ExceptionHandler(ShardUnavailableException.class)
+    public ResponseEntity<String> handleShardUnavailable(ShardUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
+    /**
+     * 解析会话：已有会话沿用其 docTypeId（决定 Prompt 模板），否则按请求的 docTypeId 新建，
+     * 以首条消息截断作为临时标题，正式标题由 SessionTitler 后台生成。
+     */
+    private Session resolveSession(Long sessionId, String docTypeId, String firstMessage) {
         if (sessionId != null && sessionId > 0) {
             var opt = sessionService.getSession(sessionId, currentUserId());
-            if (opt.isPresent()) return sessionId;
+            if (opt.isPresent()) return opt.get();
         }
-        var s = sessionService.createSession(currentUserId(), "新对话", docTypeId != null ? docTypeId : "general");
-        return s.getId();
-    }
-
-    private void updateSessionTitleIfFirstMessage(long sessionId, String firstContent, int messageCount) {
-        if (messageCount != 1) return;
-        var title = sessionService.generateTitleFromFirstMessage(firstContent);
-        sessionService.updateSession(sessionId, currentUserId(), title);
+        return sessionService.createSession(currentUserId(),
+                sessionService.generateTitleFromFirstMessage(firstMessage),
+                docTypeId != null ? docTypeId : "general",
+                true);
     }
 
     private record StreamSessionEvent(long sessionId) {}
@@ -0,0 +1,54 @@
+package com.kindergarten.controller;
+
+import com.kindergarten.dto.EventBatchDto;
+import com.kindergarten.service.ChatEventLog;
+import com.kindergarten.service.ShardedIds;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 会话事件追读 API：其他消费者（统计、搜索索引等）保存自己的偏移量，从该位置起分批读取本实例的事件日志。
+ *
+ * 日志与偏移量都属于单个实例：消费者须按实例直连管理端口（Nacos 实例元数据 kindergarten.admin-port），
+ * 按响应中的 node_id 分别保存偏移量，不能经网关或负载均衡访问。认证未实现前不做权限校验，
+ * 只在管理端口提供（见 AdminPortConfig）。
+ */
+@RestController
+@RequestMapping("/api/admin/events")
+public class EventLogController {
+
+    private static final int MAX_LIMIT = 1000;
+    private static final long MAX_WAIT_MS = 30_000L;
+
+    private final ChatEventLog eventLog;
+    private final int nodeId;
+
+    public EventLogController(ChatEventLog eventLog, ShardedIds ids) {
+        this.eventLog = eventLog;
+        this.nodeId = ids.nodeId();
+    }
+
+    /**
+     * 从 from 开始读取最多 limit 条事件（from 省略时为最早保留的事件）。
+     * 没有新事件时最多等待 wait-ms 毫秒（长轮询），下一次以响应中的 next_offset 继续。
+     */
+    @GetMapping
+    public ResponseEntity<EventBatchDto> read(
+            @RequestParam(required = false) Long from,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(name = "wait-ms", defaultValue = "0") long waitMs
+    ) throws InterruptedException {
+        long offset = from != null ? from : eventLog.startOffset();
+        if (waitMs > 0 && offset >= eventLog.endOffset()) {
+            eventLog.awaitAppended(offset, Math.min(waitMs, MAX_WAIT_MS));
+        }
+        var batch = eventLog.read(offset, Math.max(1, Math.min(limit, MAX_LIMIT)));
+        return ResponseEntity.ok(EventBatchDto.from(nodeId, batch, eventLog.endOffset()));
+    }
+
+    @ExceptionHandler({IllegalArgumentException.class, IllegalStateException.class})
+    public ResponseEntity<String> handleBadOffset(RuntimeException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+}
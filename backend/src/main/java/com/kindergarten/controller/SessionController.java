@@ -1,17 +1,28 @@
 package com.kindergarten.controller;
 
-import com.kindergarten.dto.MessageDto;
 import com.kindergarten.dto.SessionDto;
 import com.kindergarten.entity.Message;
 import com.kindergarten.entity.Session;
+import com.kindergarten.service.SessionEventPublisher;
+import com.kindergarten.service.SessionExportService;
+import com.kindergarten.service.SessionPayloadWriter;
 import com.kindergarten.service.SessionService;
+import com.kindergarten.service.ShardUnavailableException;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * 会话 API 控制器。
@@ -22,9 +33,16 @@ import java.util.stream.Collectors;
 public class SessionController {
 
     private final SessionService sessionService;
+    private final SessionEventPublisher eventPublisher;
+    private final SessionExportService exportService;
+    private final SessionPayloadWriter payloadWriter;
 
-    public SessionController(SessionService sessionService) {
+    public SessionController(SessionService sessionService, SessionEventPublisher eventPublisher,
+                             SessionExportService exportService, SessionPayloadWriter payloadWriter) {
         this.sessionService = sessionService;
+        this.eventPublisher = eventPublisher;
+        this.exportService = exportService;
+        this.payloadWriter = payloadWriter;
     }
 
     private long currentUserId() {
@@ -58,17 +76,62 @@ public class SessionController {
     }
 
     /**
-     * 会话详情（含消息）
+     * 会话事件订阅（SSE），目前推送后台生成的标题：event: title，data: {"session_id", "title"}
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events() {
+        return eventPublisher.subscribe(currentUserId());
+    }
+
+    /**
+     * 导出全部会话（ZIP，流式输出）。
+     * format：md / docx；after：只导出 ID 大于该值的会话，用于断点续传；limit：最多导出的会话数，0 不限。
+     * 直接写响应流而不走异步请求，大量会话导出不受异步超时限制。
+     */
+    @GetMapping("/export")
+    public void export(
+            @RequestParam(defaultValue = "md") String format,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "0") int limit,
+            HttpServletResponse response
+    ) throws IOException {
+        var f = SessionExportService.Format.parse(format);
+        var filename = "sessions-" + LocalDate.now() + (after > 0 ? "-after-" + after : "") + ".zip";
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.attachment().filename(filename).build().toString());
+        exportService.export(currentUserId(), f, after, limit, response.getOutputStream());
+    }
+
+    /**
+     * 会话详情（含消息）。
+     * Accept: application/cbor 时返回 CBOR，否则 JSON；响应带弱 ETag，If-None-Match 命中时返回 304。
+     * 消息逐条流式写出（见 SessionPayloadWriter），压缩由容器 / 网关按 Accept-Encoding 完成。
      */
     @GetMapping("/{id}")
-    public ResponseEntity<SessionDto> get(@PathVariable Long id) {
+    public void get(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            HttpServletResponse response
+    ) throws IOException {
         var opt = sessionService.getSession(id, currentUserId());
-        if (opt.isEmpty()) return ResponseEntity.notFound().build();
+        if (opt.isEmpty()) {
+            response.setStatus(HttpStatus.NOT_FOUND.value());
+            return;
+        }
         var s = opt.get();
-        var messages = sessionService.getMessages(id, currentUserId()).stream()
-                .map(MessageDto::from)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(SessionDto.from(s, messages));
+        var format = SessionPayloadWriter.WireFormat.negotiate(accept);
+        var etag = payloadWriter.etag(s, sessionService.countMessages(s), format);
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (payloadWriter.notModified(ifNoneMatch, etag, format)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        response.setContentType(format.mediaType().toString());
+        payloadWriter.write(s, format, response.getOutputStream());
     }
 
     /**
@@ -92,6 +155,14 @@ public class SessionController {
         return ResponseEntity.noContent().build();
     }
 
+    @ExceptionHandler(ShardUnavailableException.class)
+    public ResponseEntity<String> handleShardUnavailable(ShardUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.TEXT_PLAIN)
+                .body(e.getMessage());
+    }
+
     public record CreateSessionRequest(
             String title,
             @JsonProperty("doc_type_id") String docTypeId
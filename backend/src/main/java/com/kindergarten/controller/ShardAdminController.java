@@ -0,0 +1,56 @@
+package com.kindergarten.controller;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kindergarten.dto.ShardLayoutDto;
+import com.kindergarten.service.ChatShards;
+import com.kindergarten.service.ShardMigrator;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 会话存储分片管理 API：查看逻辑分片分布、在线迁移逻辑分片（见 ShardMigrator）。
+ * 认证未实现前不做权限校验，只在管理端口提供（见 AdminPortConfig），不经网关暴露。
+ */
+@RestController
+@RequestMapping("/api/admin/shards")
+public class ShardAdminController {
+
+    private final ChatShards shards;
+    private final ShardMigrator migrator;
+
+    public ShardAdminController(ChatShards shards, ShardMigrator migrator) {
+        this.shards = shards;
+        this.migrator = migrator;
+    }
+
+    /**
+     * 分片分布与最近的迁移
+     */
+    @GetMapping
+    public ResponseEntity<ShardLayoutDto> layout() {
+        return ResponseEntity.ok(ShardLayoutDto.from(shards.all().size(), shards.layout(), migrator.migrations()));
+    }
+
+    /**
+     * 把逻辑分片迁移到指定物理分片（后台执行，返回 202；进度见 GET）
+     */
+    @PostMapping("/{logicalShard}/move")
+    public ResponseEntity<ShardLayoutDto.Migration> move(@PathVariable int logicalShard, @RequestBody MoveRequest req) {
+        var migration = migrator.move(logicalShard, req.targetShard());
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ShardLayoutDto.Migration.from(migration));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleConflict(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+    }
+
+    public record MoveRequest(@JsonProperty("target_shard") int targetShard) {}
+}
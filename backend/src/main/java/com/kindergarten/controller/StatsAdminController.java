@@ -0,0 +1,29 @@
+package com.kindergarten.controller;
+
+import com.kindergarten.dto.StatsDto;
+import com.kindergarten.service.ChatAnalytics;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * 生成统计 API：按文案类型、年龄段的生成次数、延迟、token 与重新生成率（见 ChatAnalytics）。
+ * 返回定期重算的视图，不查询数据库。认证未实现前不做权限校验，只在管理端口提供（见 AdminPortConfig）。
+ */
+@RestController
+@RequestMapping("/api/admin/stats")
+public class StatsAdminController {
+
+    private final ChatAnalytics analytics;
+
+    public StatsAdminController(ChatAnalytics analytics) {
+        this.analytics = analytics;
+    }
+
+    /**
+     * 统计视图，window 为 1h（按分钟）/ 24h（按小时）/ 30d（按天）
+     */
+    @GetMapping
+    public ResponseEntity<StatsDto> stats(@RequestParam(defaultValue = "24h") String window) {
+        return ResponseEntity.ok(StatsDto.from(analytics.stats(window)));
+    }
+}
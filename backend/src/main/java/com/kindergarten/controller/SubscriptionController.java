@@ -0,0 +1,32 @@
+package com.kindergarten.controller;
+
+import com.kindergarten.dto.UsageDto;
+import com.kindergarten.service.SessionService;
+import com.kindergarten.service.UsageLedger;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 订阅 API 控制器。目前只提供用量统计：当前用户当日的生成次数、token 用量与额度。
+ * 认证未实现前，使用 SessionService.DEFAULT_USER_ID。
+ */
+@RestController
+@RequestMapping("/api/subscriptions")
+public class SubscriptionController {
+
+    private final UsageLedger usageLedger;
+
+    public SubscriptionController(UsageLedger usageLedger) {
+        this.usageLedger = usageLedger;
+    }
+
+    /**
+     * 用量统计（当日）
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<UsageDto> usage() {
+        return ResponseEntity.ok(UsageDto.from(usageLedger.snapshot(SessionService.DEFAULT_USER_ID)));
+    }
+}
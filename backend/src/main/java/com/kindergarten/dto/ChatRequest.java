@@ -19,7 +19,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 public record ChatRequest(
         String message,
         @JsonProperty("session_id") Long sessionId,
-        @JsonProperty("doc_type_id") String docTypeId
+        @JsonProperty("doc_type_id") String docTypeId,
+        /** 可选：fast / reasoning，指定模型档位；为空时自动选择 */
+        @JsonProperty("model_tier") String modelTier
 ) {
     /**
      * 紧凑构造器（Compact Constructor）：校验 message 非空。
@@ -31,6 +33,6 @@ public record ChatRequest(
     }
 
     public static ChatRequest of(String message) {
-        return new ChatRequest(message, null, "general");
+        return new ChatRequest(message, null, "general", null);
     }
 }
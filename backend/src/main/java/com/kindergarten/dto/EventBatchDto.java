@@ -0,0 +1,53 @@
+package com.kindergarten.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kindergarten.service.ChatEvent;
+import com.kindergarten.service.ChatEventLog;
+
+import java.util.List;
+
+/**
+ * 会话事件追读 API 响应 DTO：一批事件与下一次读取的偏移量。偏移量只在 node_id 所指的实例内有意义。
+ */
+public record EventBatchDto(
+        @JsonProperty("node_id") int nodeId,
+        List<Event> events,
+        @JsonProperty("next_offset") long nextOffset,
+        @JsonProperty("end_offset") long endOffset
+) {
+    /** 一条事件；各类型只填写自己的字段 */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Event(
+            long offset,
+            String type,
+            @JsonProperty("session_id") long sessionId,
+            @JsonProperty("user_id") long userId,
+            String at,
+            String title,
+            @JsonProperty("doc_type_id") String docTypeId,
+            @JsonProperty("title_pending") Boolean titlePending,
+            @JsonProperty("message_id") Long messageId,
+            String role,
+            String content,
+            Boolean automatic
+    ) {
+        public static Event from(ChatEventLog.LoggedEvent logged) {
+            var at = logged.event().at().toString();
+            return switch (logged.event()) {
+                case ChatEvent.SessionCreated e -> new Event(logged.offset(), "session_created", e.sessionId(),
+                        e.userId(), at, e.title(), e.docTypeId(), e.titlePending(), null, null, null, null);
+                case ChatEvent.MessageAppended e -> new Event(logged.offset(), "message_appended", e.sessionId(),
+                        e.userId(), at, null, null, null, e.messageId(), e.role().name(), e.content(), null);
+                case ChatEvent.SessionRenamed e -> new Event(logged.offset(), "session_renamed", e.sessionId(),
+                        e.userId(), at, e.title(), null, null, null, null, null, e.automatic());
+                case ChatEvent.SessionDeleted e -> new Event(logged.offset(), "session_deleted", e.sessionId(),
+                        e.userId(), at, null, null, null, null, null, null, null);
+            };
+        }
+    }
+
+    public static EventBatchDto from(int nodeId, ChatEventLog.Batch batch, long endOffset) {
+        return new EventBatchDto(nodeId, batch.events().stream().map(Event::from).toList(), batch.nextOffset(), endOffset);
+    }
+}
@@ -0,0 +1,67 @@
+package com.kindergarten.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kindergarten.service.ChatShards;
+import com.kindergarten.service.ShardMigrator;
+import com.kindergarten.service.ShardedIds;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 会话存储分片状态 API 响应 DTO：各物理分片承载的逻辑分片、冻结中的逻辑分片、最近的迁移。
+ */
+public record ShardLayoutDto(
+        @JsonProperty("logical_shards") int logicalShards,
+        List<PhysicalShard> shards,
+        List<Integer> frozen,
+        List<Migration> migrations
+) {
+    public record PhysicalShard(
+            int index,
+            @JsonProperty("logical_shards") List<Integer> logicalShards
+    ) {}
+
+    public record Migration(
+            @JsonProperty("logical_shard") int logicalShard,
+            int source,
+            int target,
+            String phase,
+            @JsonProperty("sessions_copied") long sessionsCopied,
+            @JsonProperty("messages_copied") long messagesCopied,
+            @JsonProperty("started_at") String startedAt,
+            @JsonProperty("finished_at") String finishedAt,
+            String error
+    ) {
+        public static Migration from(ShardMigrator.Migration m) {
+            return new Migration(m.logicalShard(), m.source(), m.target(), m.phase().name().toLowerCase(),
+                    m.sessionsCopied(), m.messagesCopied(),
+                    m.startedAt() != null ? m.startedAt().toString() : null,
+                    m.finishedAt() != null ? m.finishedAt().toString() : null,
+                    m.error());
+        }
+    }
+
+    public static ShardLayoutDto from(int physicalShards, ChatShards.Layout layout,
+                                      Collection<ShardMigrator.Migration> migrations) {
+        var shards = new ArrayList<PhysicalShard>();
+        for (int p = 0; p < physicalShards; p++) {
+            var logical = new ArrayList<Integer>();
+            for (int l = 0; l < ShardedIds.LOGICAL_SHARDS; l++) {
+                if (layout.physicalOf(l) == p) logical.add(l);
+            }
+            shards.add(new PhysicalShard(p, logical));
+        }
+        var frozen = new ArrayList<Integer>();
+        for (int l = 0; l < ShardedIds.LOGICAL_SHARDS; l++) {
+            if (layout.isFrozen(l)) frozen.add(l);
+        }
+        var recent = migrations.stream()
+                .sorted(Comparator.comparing(ShardMigrator.Migration::startedAt).reversed())
+                .map(Migration::from)
+                .toList();
+        return new ShardLayoutDto(ShardedIds.LOGICAL_SHARDS, shards, frozen, recent);
+    }
+}
@@ -0,0 +1,73 @@
+package com.kindergarten.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kindergarten.service.ChatAnalytics;
+
+import java.util.List;
+
+/**
+ * 生成统计 API 响应 DTO，见 ChatAnalytics。
+ */
+public record StatsDto(
+        String window,
+        String granularity,
+        String from,
+        String to,
+        @JsonProperty("computed_at") String computedAt,
+        Metrics total,
+        @JsonProperty("by_doc_type") List<Group> byDocType,
+        @JsonProperty("by_age_group") List<Group> byAgeGroup,
+        @JsonProperty("by_doc_type_and_age_group") List<Group> byDocTypeAndAgeGroup,
+        List<Point> series
+) {
+    public record Metrics(
+            long generations,
+            long regenerations,
+            @JsonProperty("regenerate_rate") double regenerateRate,
+            @JsonProperty("distinct_users") long distinctUsers,
+            @JsonProperty("avg_latency_ms") long avgLatencyMs,
+            @JsonProperty("p50_latency_ms") long p50LatencyMs,
+            @JsonProperty("p95_latency_ms") long p95LatencyMs,
+            @JsonProperty("p99_latency_ms") long p99LatencyMs,
+            @JsonProperty("avg_input_tokens") long avgInputTokens,
+            @JsonProperty("avg_output_tokens") long avgOutputTokens
+    ) {
+        public static Metrics from(ChatAnalytics.Metrics m) {
+            return new Metrics(m.generations(), m.regenerations(), Math.round(m.regenerateRate() * 10000) / 10000.0,
+                    m.distinctUsers(), m.avgLatencyMs(), m.p50LatencyMs(), m.p95LatencyMs(), m.p99LatencyMs(),
+                    m.avgInputTokens(), m.avgOutputTokens());
+        }
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Group(
+            @JsonProperty("doc_type_id") String docTypeId,
+            @JsonProperty("age_group") String ageGroup,
+            Metrics metrics
+    ) {
+        public static Group from(ChatAnalytics.Group g) {
+            return new Group(g.docTypeId(), g.ageGroup(), Metrics.from(g.metrics()));
+        }
+    }
+
+    public record Point(
+            String start,
+            long generations,
+            @JsonProperty("distinct_users") long distinctUsers,
+            @JsonProperty("p95_latency_ms") long p95LatencyMs
+    ) {
+        public static Point from(ChatAnalytics.Point p) {
+            return new Point(p.start().toString(), p.generations(), p.distinctUsers(), p.p95LatencyMs());
+        }
+    }
+
+    public static StatsDto from(ChatAnalytics.Stats s) {
+        return new StatsDto(s.window(), s.granularity().tag(), s.from().toString(), s.to().toString(),
+                s.computedAt().toString(), Metrics.from(s.total()),
+                s.byDocType().stream().map(Group::from).toList(),
+                s.byAgeGroup().stream().map(Group::from).toList(),
+                s.byDocTypeAndAge().stream().map(Group::from).toList(),
+                s.series().stream().map(Point::from).toList());
+    }
+}
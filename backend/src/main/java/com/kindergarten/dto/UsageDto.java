@@ -0,0 +1,21 @@
+package com.kindergarten.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.kindergarten.service.UsageLedger;
+
+/**
+ * 当日用量与额度 API 响应 DTO。上限为 -1 表示不限。
+ */
+public record UsageDto(
+        String plan,
+        String date,
+        long requests,
+        long tokens,
+        @JsonProperty("daily_requests") long dailyRequests,
+        @JsonProperty("daily_tokens") long dailyTokens
+) {
+    public static UsageDto from(UsageLedger.UsageSnapshot s) {
+        return new UsageDto(s.plan(), s.date().toString(), s.requests(), s.tokens(),
+                s.dailyRequests(), s.dailyTokens());
+    }
+}
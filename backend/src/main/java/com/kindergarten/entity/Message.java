@@ -1,21 +1,28 @@
 package com.kindergarten.entity;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 /**
  * 消息实体。
  * role: user / assistant
+ *
+ * 正文不以明文列存储，二选一：
+ * - content_data：本行内联的压缩数据（MessageContentCodec 编码），用于用户消息与短回复；
+ * - content_hash：指向 chat_message_blob 的内容寻址引用，相同的助手正文只存一份。
+ * 读取时按需解码：blob 默认延迟加载（历史查询会一并抓取），首次调用 getContent() 才解压并缓存。
  */
 @Entity
 @Table(name = "chat_message", indexes = {
     @Index(name = "idx_message_session_id", columnList = "session_id"),
-    @Index(name = "idx_message_created_at", columnList = "session_id, created_at")
+    @Index(name = "idx_message_created_at", columnList = "session_id, created_at"),
+    @Index(name = "idx_message_content_hash", columnList = "content_hash")
 })
-public class Message {
+public class Message implements Persistable<Long> {
 
+    /** 由 ShardedIds 生成，低 8 位为逻辑分片 */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(name = "session_id", nullable = false)
@@ -25,7 +32,16 @@ public class Message {
     @Column(name = "role", nullable = false, length = 20)
     private Role role;
 
-    @Column(name = "content", nullable = false, columnDefinition = "TEXT")
+    @Lob
+    @Column(name = "content_data")
+    private byte[] contentData;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "content_hash")
+    private MessageBlob contentBlob;
+
+    /** 解码后的正文缓存，不持久化 */
+    @Transient
     private String content;
 
     @Column(name = "metadata", columnDefinition = "TEXT")
@@ -37,6 +53,24 @@ public class Message {
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
+        if (contentBlob == null && contentData == null) {
+            this.contentData = MessageContentCodec.encode(content);
+        }
+    }
+
+    /** ID 由应用分配，save() 据此区分新增与更新，避免新增前多一次 select */
+    @Transient
+    private boolean persisted;
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        this.persisted = true;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
     }
 
     public enum Role {
@@ -57,8 +91,29 @@ public class Message {
     public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
     public Role getRole() { return role; }
     public void setRole(Role role) { this.role = role; }
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+
+    public String getContent() {
+        if (content == null) {
+            content = contentBlob != null
+                    ? MessageContentCodec.decode(contentBlob.getData())
+                    : MessageContentCodec.decode(contentData);
+        }
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content != null ? content : "";
+        this.contentData = MessageContentCodec.encode(this.content);
+        this.contentBlob = null;
+    }
+
+    /** 改为引用去重后的 blob，清除内联数据 */
+    public void setContentBlob(MessageBlob contentBlob) {
+        this.contentBlob = contentBlob;
+        if (contentBlob != null) this.contentData = null;
+    }
+
+    public MessageBlob getContentBlob() { return contentBlob; }
     public String getMetadata() { return metadata; }
     public void setMetadata(String metadata) { this.metadata = metadata; }
     public LocalDateTime getCreatedAt() { return createdAt; }
@@ -0,0 +1,51 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
+import java.time.LocalDateTime;
+
+/**
+ * 去重后的消息正文（内容寻址）。
+ * 主键为明文正文的 SHA-256，data 为 MessageContentCodec 编码后的数据；
+ * 相同的助手回复（如同一模板生成的通知）只存一份，由多条 Message 引用。
+ * last_referenced_at 为插入或最后一次被投影复用的时间，不再被引用的 blob 由 MessageContentStore 定期清理。
+ */
+@Entity
+@Table(name = "chat_message_blob")
+@BatchSize(size = 50)
+public class MessageBlob {
+
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Lob
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    @Column(name = "raw_length", nullable = false)
+    private int rawLength;
+
+    /** 由 ChatProjector 在复用时以 SQL 刷新 */
+    @Column(name = "last_referenced_at", nullable = false)
+    private LocalDateTime lastReferencedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (this.lastReferencedAt == null) this.lastReferencedAt = LocalDateTime.now();
+    }
+
+    public MessageBlob() {}
+
+    public MessageBlob(String hash, byte[] data, int rawLength) {
+        this.hash = hash;
+        this.data = data;
+        this.rawLength = rawLength;
+    }
+
+    public String getHash() { return hash; }
+    public byte[] getData() { return data; }
+    public int getRawLength() { return rawLength; }
+    public LocalDateTime getLastReferencedAt() { return lastReferencedAt; }
+}
@@ -0,0 +1,122 @@
+package com.kindergarten.entity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 消息正文编解码：Deflate + 预置字典。
+ *
+ * 编码结果首字节为格式标识，后续为数据，因此旧数据在字典升级后仍可解码：
+ * - 0：未压缩 UTF-8（短文本或压缩无收益时）
+ * - 1：Deflate，预置字典 compression/message-dict-v1.txt
+ *
+ * 字典由 scripts/compression-tools/MessageDictionaryTrainer.java 基于本项目的文案语料训练（高频标题、套话片段），
+ * 幼教文案大量重复「活动目标」「尊敬的家长」之类的固定结构，预置字典让短文档也能获得可观压缩率。
+ * 字典一经上线不可修改，更新时新增版本号并保留旧字典用于解码。
+ */
+public final class MessageContentCodec {
+
+    public static final byte RAW = 0;
+    public static final byte DEFLATE_DICT_V1 = 1;
+
+    /** 低于该字节数不压缩，头部与字典引用的开销不值得 */
+    private static final int MIN_COMPRESS_BYTES = 64;
+
+    private static final Map<Byte, byte[]> DICTIONARIES = Map.of(
+            DEFLATE_DICT_V1, loadDictionary("compression/message-dict-v1.txt")
+    );
+
+    private static final byte CURRENT = DEFLATE_DICT_V1;
+
+    private MessageContentCodec() {}
+
+    public static byte[] encode(String content) {
+        var raw = (content != null ? content : "").getBytes(StandardCharsets.UTF_8);
+        if (raw.length >= MIN_COMPRESS_BYTES) {
+            var compressed = deflate(raw, DICTIONARIES.get(CURRENT));
+            if (compressed.length + 1 < raw.length) {
+                return withHeader(CURRENT, compressed);
+            }
+        }
+        return withHeader(RAW, raw);
+    }
+
+    public static String decode(byte[] data) {
+        if (data == null || data.length == 0) return "";
+        byte format = data[0];
+        if (format == RAW) {
+            return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+        }
+        var dict = DICTIONARIES.get(format);
+        if (dict == null) {
+            throw new IllegalStateException("未知的消息编码格式: " + format);
+        }
+        return new String(inflate(data, dict), StandardCharsets.UTF_8);
+    }
+
+    static byte[] deflate(byte[] raw, byte[] dict) {
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dict != null) deflater.setDictionary(dict);
+            deflater.setInput(raw);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            var buf = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, byte[] dict) {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data, 1, data.length - 1);
+            var out = new ByteArrayOutputStream(data.length * 3);
+            var buf = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dict);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("消息数据不完整");
+                    }
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("消息数据损坏", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] withHeader(byte format, byte[] body) {
+        var out = new byte[body.length + 1];
+        out[0] = format;
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+
+    private static byte[] loadDictionary(String resource) {
+        try (InputStream in = MessageContentCodec.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException("缺少压缩字典: " + resource);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
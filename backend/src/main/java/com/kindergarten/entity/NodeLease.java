@@ -0,0 +1,41 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 节点号租约（存于主库，每个节点号一行）：同一时刻一个节点号只属于一个实例，见 NodeLeaseHolder。
+ *
+ * expires_at 由持有者定期续期；id_floor_seconds 是该节点号已预留的 ID 秒数上界（Unix 秒，不含），
+ * 持有者生成的 ID 秒数都小于它，接管者从它开始生成，进程崩溃重启也不会与之前借用的秒数重复。
+ * 仅由 NodeLeaseHolder 通过 JDBC 读写，实体只用于建表。
+ */
+@Entity
+@Table(name = "chat_node_lease")
+public class NodeLease {
+
+    @Id
+    @Column(name = "node_id")
+    private Integer nodeId;
+
+    /** 持有者（进程启动时生成的随机 ID） */
+    @Column(name = "owner", nullable = false, length = 64)
+    private String owner;
+
+    @Column(name = "host", length = 255)
+    private String host;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "id_floor_seconds", nullable = false)
+    private long idFloorSeconds;
+
+    public NodeLease() {}
+
+    public Integer getNodeId() { return nodeId; }
+    public String getOwner() { return owner; }
+    public String getHost() { return host; }
+    public LocalDateTime getExpiresAt() { return expiresAt; }
+    public long getIdFloorSeconds() { return idFloorSeconds; }
+}
@@ -0,0 +1,38 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 会话事件投影的检查点（存于主库，每个实例一行）：该实例的事件日志已投影到数据库的偏移量。
+ *
+ * 与投影结果不在同一事务中（投影分布在各物理分片），重启后从检查点重放，投影按 ID 幂等。
+ * covered_at：该时刻之前写入该实例日志的事件都在 applied_offset 之前，重放不会再遇到它们；会话墓碑的清理以此为界。
+ * 实例还未追上过日志末尾时为空。
+ * 仅由 ChatProjector 通过 JDBC 读写，实体只用于建表。
+ */
+@Entity
+@Table(name = "chat_projection_checkpoint")
+public class ProjectionCheckpoint {
+
+    /** 实例租得的节点号（见 NodeLeaseHolder） */
+    @Id
+    @Column(name = "node_id")
+    private Integer nodeId;
+
+    @Column(name = "applied_offset", nullable = false)
+    private long appliedOffset;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Column(name = "covered_at")
+    private LocalDateTime coveredAt;
+
+    public ProjectionCheckpoint() {}
+
+    public Integer getNodeId() { return nodeId; }
+    public long getAppliedOffset() { return appliedOffset; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public LocalDateTime getCoveredAt() { return coveredAt; }
+}
@@ -1,6 +1,7 @@
 package com.kindergarten.entity;
 
 import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
 import java.time.LocalDateTime;
 
 /**
@@ -8,11 +9,13 @@ import java.time.LocalDateTime;
  * 认证未实现前，userId 使用占位值（如 1L）。
  */
 @Entity
-@Table(name = "chat_session")
-public class Session {
+@Table(name = "chat_session", indexes = {
+    @Index(name = "idx_session_titled_at", columnList = "titled_at")
+})
+public class Session implements Persistable<Long> {
 
+    /** 由 ShardedIds 生成，低 8 位为逻辑分片 */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @Column(name = "user_id", nullable = false)
@@ -24,6 +27,18 @@ public class Session {
     @Column(name = "doc_type_id", length = 64)
     private String docTypeId;
 
+    /** 标题待后台生成（SessionTitler）；用户手动改名后置为 false */
+    @Column(name = "title_pending", nullable = false)
+    private boolean titlePending;
+
+    /** SessionTitler 认领该会话的租约到期时间：未到期时其他节点不再为它命名，节点中途退出后租约到期即可重新认领 */
+    @Column(name = "title_claimed_until")
+    private LocalDateTime titleClaimedUntil;
+
+    /** 自动命名在数据库中生效的时间（投影写入时），各节点据此把新标题推送给本节点的 SSE 连接 */
+    @Column(name = "titled_at")
+    private LocalDateTime titledAt;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
@@ -42,6 +57,21 @@ public class Session {
         this.updatedAt = LocalDateTime.now();
     }
 
+    /** ID 由应用分配，save() 据此区分新增与更新，避免新增前多一次 select */
+    @Transient
+    private boolean persisted;
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        this.persisted = true;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
     public Session() {}
 
     public Session(Long userId, String title, String docTypeId) {
@@ -58,6 +88,10 @@ public class Session {
     public void setTitle(String title) { this.title = title; }
     public String getDocTypeId() { return docTypeId; }
     public void setDocTypeId(String docTypeId) { this.docTypeId = docTypeId; }
+    public boolean isTitlePending() { return titlePending; }
+    public void setTitlePending(boolean titlePending) { this.titlePending = titlePending; }
+    public LocalDateTime getTitleClaimedUntil() { return titleClaimedUntil; }
+    public LocalDateTime getTitledAt() { return titledAt; }
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
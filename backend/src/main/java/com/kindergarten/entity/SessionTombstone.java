@@ -0,0 +1,33 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 已删除会话的墓碑（存于会话所在的物理分片）。
+ *
+ * 每个实例只投影自己的日志，且检查点可以滞后：实例 A 创建的会话被实例 B 删除后，A 从旧检查点重放（或 B 的删除先于
+ * A 的创建投影）时，仅凭「会话行是否存在」无法区分「尚未创建」与「已删除」。投影遇到墓碑中的会话 ID 时跳过创建与消息。
+ * 墓碑至少保留事件日志的保留时长，且早于所有实例检查点的 covered_at 后才由 ChatProjector 清理。
+ * 仅由 ChatProjector / ShardMigrator 通过 JDBC 读写，实体只用于建表。
+ */
+@Entity
+@Table(name = "chat_session_tombstone")
+public class SessionTombstone {
+
+    @Id
+    @Column(name = "session_id")
+    private Long sessionId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+
+    public SessionTombstone() {}
+
+    public Long getSessionId() { return sessionId; }
+    public Long getUserId() { return userId; }
+    public LocalDateTime getDeletedAt() { return deletedAt; }
+}
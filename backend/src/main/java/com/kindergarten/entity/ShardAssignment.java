@@ -0,0 +1,45 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 逻辑分片 → 物理分片映射（固定 256 行，存于主库）。
+ *
+ * 不是按会话的目录：会话 ID 自带逻辑分片号（见 ShardedIds），各节点把这 256 行缓存在内存中定期刷新，
+ * 请求路径上不查此表。迁移逻辑分片时由 ShardMigrator 改写 state 与 physical_shard。
+ */
+@Entity
+@Table(name = "chat_shard_map")
+public class ShardAssignment {
+
+    public enum State {
+        /** 正常读写 */
+        ACTIVE,
+        /** 迁移复制中：照常读写，同时表示该逻辑分片已有迁移在进行 */
+        COPYING,
+        /** 迁移收尾：暂停写入，读取仍走原物理分片 */
+        FROZEN
+    }
+
+    @Id
+    @Column(name = "logical_shard")
+    private Integer logicalShard;
+
+    @Column(name = "physical_shard", nullable = false)
+    private int physicalShard;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "state", nullable = false, length = 20)
+    private State state;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public ShardAssignment() {}
+
+    public Integer getLogicalShard() { return logicalShard; }
+    public int getPhysicalShard() { return physicalShard; }
+    public State getState() { return state; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+}
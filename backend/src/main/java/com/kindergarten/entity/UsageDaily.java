@@ -0,0 +1,57 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日用量（按用户、日期、模型档位汇总）。
+ *
+ * 由 UsageLedger 定期批量累加写入：各节点只提交自上次刷写以来的增量（requests = requests + ?），
+ * 多个后端节点并发刷写同一行时结果可交换，不会互相覆盖。
+ */
+@Entity
+@Table(name = "usage_daily", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_usage_daily_user_date_tier", columnNames = {"user_id", "usage_date", "tier"})
+}, indexes = {
+    @Index(name = "idx_usage_daily_date_user", columnList = "usage_date, user_id")
+})
+public class UsageDaily {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "usage_date", nullable = false)
+    private LocalDate usageDate;
+
+    /** 模型档位：fast / reasoning */
+    @Column(name = "tier", nullable = false, length = 20)
+    private String tier;
+
+    @Column(name = "requests", nullable = false)
+    private long requests;
+
+    @Column(name = "input_tokens", nullable = false)
+    private long inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private long outputTokens;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public UsageDaily() {}
+
+    public Long getId() { return id; }
+    public Long getUserId() { return userId; }
+    public LocalDate getUsageDate() { return usageDate; }
+    public String getTier() { return tier; }
+    public long getRequests() { return requests; }
+    public long getInputTokens() { return inputTokens; }
+    public long getOutputTokens() { return outputTokens; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+}
@@ -0,0 +1,87 @@
+package com.kindergarten.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 生成统计快照（按节点、粒度、时间桶、文案类型、年龄段）。
+ *
+ * 由 ChatAnalytics 定期整行覆盖写入本节点的小时桶与天桶（内存中的累计值），重启后据此恢复；
+ * 其他节点的行被读回并与本节点合并，草图列保存可合并的分位数直方图与 HyperLogLog 寄存器。
+ * 仅通过 JDBC 读写，实体只用于建表。
+ */
+@Entity
+@Table(name = "usage_stats_snapshot", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_usage_stats_snapshot",
+            columnNames = {"node_id", "granularity", "bucket_start", "doc_type_id", "age_group"})
+}, indexes = {
+    @Index(name = "idx_usage_stats_snapshot_bucket", columnList = "granularity, bucket_start")
+})
+public class UsageStatsSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "node_id", nullable = false)
+    private int nodeId;
+
+    /** hour / day */
+    @Column(name = "granularity", nullable = false, length = 10)
+    private String granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "doc_type_id", nullable = false, length = 64)
+    private String docTypeId;
+
+    @Column(name = "age_group", nullable = false, length = 20)
+    private String ageGroup;
+
+    @Column(name = "generations", nullable = false)
+    private long generations;
+
+    @Column(name = "regenerations", nullable = false)
+    private long regenerations;
+
+    @Column(name = "latency_sum_ms", nullable = false)
+    private long latencySumMs;
+
+    /** 有 token 用量的生成次数（上游未返回用量的不计入平均值） */
+    @Column(name = "token_samples", nullable = false)
+    private long tokenSamples;
+
+    @Column(name = "input_tokens", nullable = false)
+    private long inputTokens;
+
+    @Column(name = "output_tokens", nullable = false)
+    private long outputTokens;
+
+    @Lob
+    @Column(name = "latency_sketch", nullable = false)
+    private byte[] latencySketch;
+
+    @Lob
+    @Column(name = "users_sketch", nullable = false)
+    private byte[] usersSketch;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public UsageStatsSnapshot() {}
+
+    public Long getId() { return id; }
+    public int getNodeId() { return nodeId; }
+    public String getGranularity() { return granularity; }
+    public LocalDateTime getBucketStart() { return bucketStart; }
+    public String getDocTypeId() { return docTypeId; }
+    public String getAgeGroup() { return ageGroup; }
+    public long getGenerations() { return generations; }
+    public long getRegenerations() { return regenerations; }
+    public long getLatencySumMs() { return latencySumMs; }
+    public long getTokenSamples() { return tokenSamples; }
+    public long getInputTokens() { return inputTokens; }
+    public long getOutputTokens() { return outputTokens; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+}
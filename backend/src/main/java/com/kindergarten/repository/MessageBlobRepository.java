@@ -0,0 +1,16 @@
+package com.kindergarten.repository;
+
+import com.kindergarten.entity.MessageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+
+public interface MessageBlobRepository extends JpaRepository<MessageBlob, String> {
+
+    @Modifying
+    @Query("delete from MessageBlob b where b.lastReferencedAt < :before "
+            + "and not exists (select 1 from Message m where m.contentBlob = b)")
+    int deleteUnreferencedBefore(LocalDateTime before);
+}
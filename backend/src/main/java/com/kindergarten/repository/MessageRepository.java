@@ -2,12 +2,24 @@ package com.kindergarten.repository;
 
 import com.kindergarten.entity.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    /**
+     * 会话消息历史。一并抓取去重 blob（仍为压缩数据），避免逐条延迟加载；解压在读取正文时才发生。
+     */
+    @Query("select m from Message m left join fetch m.contentBlob where m.sessionId = :sessionId order by m.createdAt asc")
     List<Message> findBySessionIdOrderByCreatedAtAsc(Long sessionId);
 
+    @Query("select m from Message m left join fetch m.contentBlob "
+            + "where m.sessionId in :sessionIds and m.role = :role order by m.sessionId asc, m.createdAt asc")
+    List<Message> findBySessionIdInAndRole(Collection<Long> sessionIds, Message.Role role);
+
+    long countBySessionId(Long sessionId);
+
     void deleteBySessionId(Long sessionId);
 }
@@ -4,6 +4,11 @@ import com.kindergarten.entity.Session;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 public interface SessionRepository extends JpaRepository<Session, Long> {
 
@@ -12,4 +17,10 @@ public interface SessionRepository extends JpaRepository<Session, Long> {
     void deleteByUserIdAndId(Long userId, Long id);
 
     boolean existsByIdAndUserId(Long id, Long userId);
+
+    /** 待生成标题、已有消息且未被认领（或租约已到期）的会话，按创建时间先后 */
+    @Query("select s from Session s where s.titlePending = true "
+            + "and (s.titleClaimedUntil is null or s.titleClaimedUntil < :now) "
+            + "and exists (select 1 from Message m where m.sessionId = s.id) order by s.createdAt asc")
+    List<Session> findTitlePending(@Param("now") LocalDateTime now, Pageable pageable);
 }
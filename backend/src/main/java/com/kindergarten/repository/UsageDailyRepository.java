@@ -0,0 +1,18 @@
+package com.kindergarten.repository;
+
+import com.kindergarten.entity.UsageDaily;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface UsageDailyRepository extends JpaRepository<UsageDaily, Long> {
+
+    @Query("select new com.kindergarten.repository.UsageTotal(u.userId, sum(u.requests), sum(u.inputTokens + u.outputTokens)) "
+            + "from UsageDaily u where u.usageDate = :date and u.userId in :userIds group by u.userId")
+    List<UsageTotal> sumByUsers(LocalDate date, Collection<Long> userIds);
+
+    List<UsageDaily> findByUserIdAndUsageDate(Long userId, LocalDate usageDate);
+}
@@ -0,0 +1,7 @@
+package com.kindergarten.repository;
+
+/**
+ * 某用户某日在所有档位上的用量合计。
+ */
+public record UsageTotal(Long userId, Long requests, Long tokens) {
+}
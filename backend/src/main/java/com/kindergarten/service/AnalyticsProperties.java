@@ -0,0 +1,35 @@
+package com.kindergarten.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.ZoneId;
+
+/**
+ * 生成统计配置，从 application.yml 的 kindergarten.analytics 下读取。
+ *
+ * @param enabled            是否统计
+ * @param zone               按天汇总的时区，默认 Asia/Shanghai
+ * @param refreshMs          /api/admin/stats 视图的重算间隔（接口只返回最近一次的结果）
+ * @param snapshotIntervalMs 小时、天桶写入 usage_stats_snapshot 并读回其他节点快照的间隔
+ * @param maxTrackedSessions 用于识别「重新生成」与年龄段的会话状态上限，超出时淘汰最久未活动的
+ */
+@ConfigurationProperties(prefix = "kindergarten.analytics")
+public record AnalyticsProperties(
+        Boolean enabled,
+        String zone,
+        Long refreshMs,
+        Long snapshotIntervalMs,
+        Integer maxTrackedSessions
+) {
+    public AnalyticsProperties {
+        enabled = enabled == null || enabled;
+        zone = zone != null && !zone.isBlank() ? zone : "Asia/Shanghai";
+        refreshMs = refreshMs != null && refreshMs > 0 ? refreshMs : 5000L;
+        snapshotIntervalMs = snapshotIntervalMs != null && snapshotIntervalMs > 0 ? snapshotIntervalMs : 60000L;
+        maxTrackedSessions = maxTrackedSessions != null && maxTrackedSessions > 0 ? maxTrackedSessions : 100_000;
+    }
+
+    public ZoneId zoneId() {
+        return ZoneId.of(zone);
+    }
+}
@@ -0,0 +1,565 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Session;
+import dev.langchain4j.model.output.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * 生成统计（增量汇总）：按文案类型、年龄段统计生成次数、延迟、token、重新生成率与去重用户数。
+ *
+ * - 数据来源：SessionService 保存用户消息（userMessage）与助手回复（generationCompleted）时就地累加，不扫描 chat_message；
+ * - 时间桶：分钟（最近 60 个）、小时（最近 48 个）、天（最近 31 个）三个环形数组，每个桶内按（文案类型, 年龄段）分组，
+ *   组内为计数、总和与可合并的草图（LatencySketch 延迟分位数、DistinctCounter 去重用户），内存占用与历史长短无关；
+ * - 视图：每 refresh-ms 把 1h / 24h / 30d 三个窗口合并成不可变视图，/api/admin/stats 直接返回，查询耗时为常数；
+ * - 快照：每 snapshot-interval-ms 把本节点有变化的小时桶、天桶整行写入 usage_stats_snapshot，重启后恢复；
+ *   同时读回其他节点的快照，24h / 30d 视图为全部节点之和（其他节点的数据最多滞后一个快照周期，1h 视图只含本节点）；
+ * - 年龄段：从用户消息中识别「托班 / 小班 / 中班 / 大班」或「3-4 岁」等写法，同一会话沿用最近一次识别结果；
+ * - 重新生成：同一会话在收到回复后再次发送与上一条相同的消息，记为一次重新生成。
+ */
+@Service
+public class ChatAnalytics {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatAnalytics.class);
+
+    public static final String UNSPECIFIED = "unspecified";
+
+    /** 识别顺序无关：取消息中最先出现的写法 */
+    private static final Map<String, String> AGE_GROUP_WORDS = Map.of(
+            "托班", "nursery", "小班", "junior", "中班", "middle", "大班", "senior");
+    private static final Pattern AGE_RANGE = Pattern.compile("([2-6])\\s*[-~～至到]\\s*[3-7]\\s*岁");
+    private static final String[] AGE_GROUP_BY_LOWER_AGE = { null, null, "nursery", "junior", "middle", "senior", "senior" };
+
+    private static final int HOUR_SNAPSHOT_RETENTION_DAYS = 7;
+
+    private static final String UPDATE_SQL = """
+            update usage_stats_snapshot
+               set generations = ?, regenerations = ?, latency_sum_ms = ?, token_samples = ?, input_tokens = ?,
+                   output_tokens = ?, latency_sketch = ?, users_sketch = ?, updated_at = ?
+             where node_id = ? and granularity = ? and bucket_start = ? and doc_type_id = ? and age_group = ?""";
+
+    private static final String INSERT_SQL = """
+            insert into usage_stats_snapshot (node_id, granularity, bucket_start, doc_type_id, age_group, generations,
+                regenerations, latency_sum_ms, token_samples, input_tokens, output_tokens, latency_sketch, users_sketch,
+                updated_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)""";
+
+    private static final String SELECT_SQL = """
+            select node_id, granularity, bucket_start, doc_type_id, age_group, generations, regenerations,
+                   latency_sum_ms, token_samples, input_tokens, output_tokens, latency_sketch, users_sketch
+              from usage_stats_snapshot
+             where ((granularity = 'hour' and bucket_start >= ?) or (granularity = 'day' and bucket_start >= ?))""";
+
+    /** 时间粒度：环形数组长度与对外窗口（最近 window 个桶） */
+    public enum Granularity {
+        MINUTE(60, 60, "1h"),
+        HOUR(48, 24, "24h"),
+        DAY(31, 30, "30d");
+
+        private final int slots;
+        private final int window;
+        private final String windowName;
+
+        Granularity(int slots, int window, String windowName) {
+            this.slots = slots;
+            this.window = window;
+            this.windowName = windowName;
+        }
+
+        public String windowName() { return windowName; }
+
+        public String tag() { return name().toLowerCase(); }
+
+        /** 1h / 24h / 30d，无法识别时为 24h */
+        public static Granularity ofWindow(String window) {
+            for (var g : values()) {
+                if (g.windowName.equalsIgnoreCase(window != null ? window.trim() : "")) return g;
+            }
+            return HOUR;
+        }
+    }
+
+    /**
+     * 一次生成的度量。
+     *
+     * @param latencyMs    请求开始到回复保存的耗时
+     * @param inputTokens  输入 token，上游未返回用量时为 -1
+     * @param outputTokens 输出 token，上游未返回用量时为 -1
+     */
+    public record Completion(long latencyMs, long inputTokens, long outputTokens) {
+        public static Completion of(long startNanos, TokenUsage usage) {
+            long latencyMs = (System.nanoTime() - startNanos) / 1_000_000;
+            if (usage == null) return new Completion(latencyMs, -1, -1);
+            return new Completion(latencyMs,
+                    usage.inputTokenCount() != null ? usage.inputTokenCount() : 0,
+                    usage.outputTokenCount() != null ? usage.outputTokenCount() : 0);
+        }
+    }
+
+    /** 一组数据的汇总指标 */
+    public record Metrics(long generations, long regenerations, double regenerateRate, long distinctUsers,
+                          long avgLatencyMs, long p50LatencyMs, long p95LatencyMs, long p99LatencyMs,
+                          long avgInputTokens, long avgOutputTokens) {}
+
+    public record Group(String docTypeId, String ageGroup, Metrics metrics) {}
+
+    public record Point(Instant start, long generations, long distinctUsers, long p95LatencyMs) {}
+
+    /**
+     * 一个窗口的统计视图（不可变，定期重算）。
+     *
+     * @param byDocType       按文案类型（ageGroup 为 null）
+     * @param byAgeGroup      按年龄段（docTypeId 为 null）
+     * @param byDocTypeAndAge 按文案类型 × 年龄段
+     * @param series          每个时间桶的合计，按时间正序
+     */
+    public record Stats(String window, Granularity granularity, Instant from, Instant to, Instant computedAt,
+                        Metrics total, List<Group> byDocType, List<Group> byAgeGroup, List<Group> byDocTypeAndAge,
+                        List<Point> series) {}
+
+    private record Dim(String docTypeId, String ageGroup) {}
+
+    private final PromptCatalog promptCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final ZoneId zone;
+    private final int nodeId;
+    private final int maxTrackedSessions;
+
+    private final Map<Granularity, Ring> rings = new EnumMap<>(Granularity.class);
+    private final Map<Long, SessionState> sessions = new ConcurrentHashMap<>();
+    /** 其他节点的快照：粒度 → 桶序号 → 分组 → 汇总 */
+    private volatile Map<Granularity, Map<Long, Map<Dim, Aggregate>>> remote = Map.of();
+    private volatile Map<Granularity, Stats> views;
+    /** 启动恢复完成前不写快照，避免用不完整的内存数据覆盖已有的行 */
+    private volatile boolean restored;
+
+    public ChatAnalytics(AnalyticsProperties properties,
+                         ShardedIds ids,
+                         PromptCatalog promptCatalog,
+                         JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager) {
+        this.promptCatalog = promptCatalog;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = properties.enabled();
+        this.zone = properties.zoneId();
+        this.nodeId = ids.nodeId();
+        this.maxTrackedSessions = properties.maxTrackedSessions();
+        for (var g : Granularity.values()) rings.put(g, new Ring(g.slots));
+        refreshViews();
+    }
+
+    /** 保存用户消息时调用：识别年龄段、判断是否为重新生成 */
+    public void userMessage(Session session, String content) {
+        if (!enabled) return;
+        var state = sessions.computeIfAbsent(session.getId(),
+                id -> new SessionState(promptCatalog.get(session.getDocTypeId()).docTypeId()));
+        int prompt = content != null ? content.strip().hashCode() : 0;
+        var ageGroup = ageGroupOf(content);
+        synchronized (state) {
+            state.pendingRegenerate = state.replied && prompt == state.lastPrompt;
+            state.lastPrompt = prompt;
+            if (ageGroup != null) state.ageGroup = ageGroup;
+            state.lastActive = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 保存助手回复时调用：计入各时间桶
+     * @param docTypeId 会话的文档类型；本节点没有该会话的状态时（已淘汰、重启后、用户消息由其他节点处理）按它归类
+     */
+    public void generationCompleted(long sessionId, long userId, String docTypeId, Completion completion, Instant at) {
+        if (!enabled) return;
+        var state = sessions.get(sessionId);
+        docTypeId = promptCatalog.get(docTypeId).docTypeId();
+        String ageGroup = UNSPECIFIED;
+        boolean regenerated = false;
+        if (state != null) {
+            synchronized (state) {
+                docTypeId = state.docTypeId;
+                ageGroup = state.ageGroup;
+                regenerated = state.pendingRegenerate;
+                state.pendingRegenerate = false;
+                state.replied = true;
+                state.lastActive = System.currentTimeMillis();
+            }
+        }
+        var dim = new Dim(docTypeId, ageGroup);
+        for (var e : rings.entrySet()) {
+            var bucket = e.getValue().bucket(sequenceOf(e.getKey(), at));
+            if (bucket == null) continue;
+            bucket.groups.computeIfAbsent(dim, d -> new Aggregate()).add(userId, regenerated, completion);
+        }
+    }
+
+    /** 最近一次重算的视图；window 为 1h / 24h / 30d */
+    public Stats stats(String window) {
+        return views.get(Granularity.ofWindow(window));
+    }
+
+    @Scheduled(fixedDelayString = "${kindergarten.analytics.refresh-ms:5000}",
+            initialDelayString = "${kindergarten.analytics.refresh-ms:5000}")
+    public void refreshViews() {
+        var now = Instant.now();
+        var result = new EnumMap<Granularity, Stats>(Granularity.class);
+        for (var g : Granularity.values()) result.put(g, compute(g, now));
+        views = result;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void restore() {
+        if (!enabled || restored) return;
+        try {
+            var own = load(true);
+            for (var g : own.entrySet()) {
+                var ring = rings.get(g.getKey());
+                for (var b : g.getValue().entrySet()) {
+                    var bucket = ring.bucket(b.getKey());
+                    if (bucket == null) continue;
+                    for (var d : b.getValue().entrySet()) {
+                        bucket.groups.computeIfAbsent(d.getKey(), k -> new Aggregate()).restore(d.getValue());
+                    }
+                }
+            }
+            remote = load(false);
+            restored = true;
+            refreshViews();
+        } catch (DataAccessException e) {
+            log.warn("恢复生成统计快照失败，下个快照周期重试: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${kindergarten.analytics.snapshot-interval-ms:60000}",
+            initialDelayString = "${kindergarten.analytics.snapshot-interval-ms:60000}")
+    public void snapshot() {
+        if (!enabled) return;
+        if (!restored) {
+            restore();
+            if (!restored) return;
+        }
+        var rows = new ArrayList<Object[]>();
+        var written = new ArrayList<Aggregate>();
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        for (var g : List.of(Granularity.HOUR, Granularity.DAY)) {
+            var ring = rings.get(g);
+            for (int i = 0; i < ring.slots.length(); i++) {
+                var bucket = ring.slots.get(i);
+                if (bucket == null) continue;
+                var start = Timestamp.valueOf(LocalDateTime.ofInstant(startOf(g, bucket.sequence), zone));
+                for (var e : bucket.groups.entrySet()) {
+                    var copy = e.getValue().takeIfDirty();
+                    if (copy == null) continue;
+                    written.add(e.getValue());
+                    rows.add(new Object[] { copy.generations, copy.regenerations, copy.latencySumMs, copy.tokenSamples,
+                            copy.inputTokens, copy.outputTokens, copy.latency.toBytes(), copy.users.toBytes(), now,
+                            nodeId, g.tag(), start, e.getKey().docTypeId(), e.getKey().ageGroup() });
+                }
+            }
+        }
+        try {
+            if (!rows.isEmpty()) write(rows);
+            jdbcTemplate.update("delete from usage_stats_snapshot where granularity = 'hour' and bucket_start < ?",
+                    Timestamp.valueOf(LocalDateTime.now().minusDays(HOUR_SNAPSHOT_RETENTION_DAYS)));
+            remote = load(false);
+        } catch (DataAccessException e) {
+            written.forEach(Aggregate::markDirty);
+            log.warn("写入生成统计快照失败，下个周期重试: {}", e.getMessage());
+        }
+        evictSessions();
+    }
+
+    /** 从用户消息中识别年龄段，未提及时返回 null */
+    static String ageGroupOf(String text) {
+        if (text == null || text.isEmpty()) return null;
+        String found = null;
+        int at = Integer.MAX_VALUE;
+        for (var e : AGE_GROUP_WORDS.entrySet()) {
+            int i = text.indexOf(e.getKey());
+            if (i >= 0 && i < at) {
+                at = i;
+                found = e.getValue();
+            }
+        }
+        var range = AGE_RANGE.matcher(text);
+        if (range.find() && range.start() < at) {
+            // 对应不到年龄段的区间不覆盖后面出现的「小班」等写法
+            var byRange = AGE_GROUP_BY_LOWER_AGE[range.group(1).charAt(0) - '0'];
+            if (byRange != null) found = byRange;
+        }
+        return found;
+    }
+
+    private Stats compute(Granularity g, Instant now) {
+        long current = sequenceOf(g, now);
+        long first = current - g.window + 1;
+        var ring = rings.get(g);
+        var remoteBuckets = remote.getOrDefault(g, Map.of());
+        var total = new Aggregate();
+        var byDocType = new HashMap<String, Aggregate>();
+        var byAgeGroup = new HashMap<String, Aggregate>();
+        var byDim = new HashMap<Dim, Aggregate>();
+        var series = new ArrayList<Point>(g.window);
+        for (long seq = first; seq <= current; seq++) {
+            var bucketTotal = new Aggregate();
+            var groups = new ArrayList<Map.Entry<Dim, Aggregate>>();
+            var local = ring.peek(seq);
+            if (local != null) groups.addAll(local.groups.entrySet());
+            groups.addAll(remoteBuckets.getOrDefault(seq, Map.of()).entrySet());
+            for (var e : groups) {
+                var copy = e.getValue().snapshot();
+                bucketTotal.merge(copy);
+                byDim.computeIfAbsent(e.getKey(), k -> new Aggregate()).merge(copy);
+                byDocType.computeIfAbsent(e.getKey().docTypeId(), k -> new Aggregate()).merge(copy);
+                byAgeGroup.computeIfAbsent(e.getKey().ageGroup(), k -> new Aggregate()).merge(copy);
+            }
+            total.merge(bucketTotal);
+            series.add(new Point(startOf(g, seq), bucketTotal.generations, bucketTotal.users.estimate(),
+                    bucketTotal.latency.quantile(0.95)));
+        }
+        var byGeneration = Comparator.comparingLong((Group x) -> x.metrics().generations()).reversed();
+        var docTypes = byDocType.entrySet().stream()
+                .map(e -> new Group(e.getKey(), null, e.getValue().metrics())).sorted(byGeneration).toList();
+        var ageGroups = byAgeGroup.entrySet().stream()
+                .map(e -> new Group(null, e.getKey(), e.getValue().metrics())).sorted(byGeneration).toList();
+        var dims = byDim.entrySet().stream()
+                .map(e -> new Group(e.getKey().docTypeId(), e.getKey().ageGroup(), e.getValue().metrics()))
+                .sorted(byGeneration).toList();
+        return new Stats(g.windowName(), g, startOf(g, first), startOf(g, current + 1), now,
+                total.metrics(), docTypes, ageGroups, dims, series);
+    }
+
+    private void write(List<Object[]> rows) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> upsert(rows));
+        } catch (DuplicateKeyException e) {
+            // 同一节点号的另一个进程同时插入（配置错误）或上次插入已提交：重试一次走更新分支
+            transactionTemplate.executeWithoutResult(status -> upsert(rows));
+        }
+    }
+
+    private void upsert(List<Object[]> rows) {
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+        var inserts = new ArrayList<Object[]>();
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO：驱动未返回行数，视为已更新
+            if (counts[i] == 0 || (counts[i] < 0 && counts[i] != Statement.SUCCESS_NO_INFO)) {
+                var r = rows.get(i);
+                inserts.add(new Object[] { r[9], r[10], r[11], r[12], r[13],
+                        r[0], r[1], r[2], r[3], r[4], r[5], r[6], r[7], r[8] });
+            }
+        }
+        if (!inserts.isEmpty()) jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+    }
+
+    /** 读取快照：own 为 true 时只读本节点，否则读其他所有节点并按桶合并 */
+    private Map<Granularity, Map<Long, Map<Dim, Aggregate>>> load(boolean own) {
+        var now = Instant.now();
+        var hourFrom = Timestamp.valueOf(LocalDateTime.ofInstant(
+                startOf(Granularity.HOUR, sequenceOf(Granularity.HOUR, now) - Granularity.HOUR.slots + 1), zone));
+        var dayFrom = Timestamp.valueOf(LocalDateTime.ofInstant(
+                startOf(Granularity.DAY, sequenceOf(Granularity.DAY, now) - Granularity.DAY.slots + 1), zone));
+        var result = new EnumMap<Granularity, Map<Long, Map<Dim, Aggregate>>>(Granularity.class);
+        jdbcTemplate.query(SELECT_SQL + (own ? " and node_id = ?" : " and node_id <> ?"), (ResultSet rs) -> {
+            var g = Granularity.valueOf(rs.getString(2).toUpperCase());
+            long seq = sequenceOf(g, rs.getTimestamp(3).toLocalDateTime().atZone(zone).toInstant());
+            var dim = new Dim(rs.getString(4), rs.getString(5));
+            result.computeIfAbsent(g, k -> new HashMap<>())
+                    .computeIfAbsent(seq, k -> new HashMap<>())
+                    .computeIfAbsent(dim, k -> new Aggregate())
+                    .merge(Aggregate.read(rs));
+        }, hourFrom, dayFrom, nodeId);
+        return result;
+    }
+
+    /** 会话状态超过上限时淘汰最久未活动的 */
+    private void evictSessions() {
+        int excess = sessions.size() - maxTrackedSessions;
+        if (excess <= 0) return;
+        sessions.entrySet().stream()
+                .sorted(Comparator.comparingLong(e -> e.getValue().lastActive))
+                .limit(excess)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(sessions::remove);
+    }
+
+    private long sequenceOf(Granularity g, Instant at) {
+        return switch (g) {
+            case MINUTE -> Math.floorDiv(at.toEpochMilli(), 60_000L);
+            case HOUR -> Math.floorDiv(at.toEpochMilli(), 3_600_000L);
+            case DAY -> LocalDate.ofInstant(at, zone).toEpochDay();
+        };
+    }
+
+    private Instant startOf(Granularity g, long sequence) {
+        return switch (g) {
+            case MINUTE -> Instant.ofEpochMilli(sequence * 60_000L);
+            case HOUR -> Instant.ofEpochMilli(sequence * 3_600_000L);
+            case DAY -> LocalDate.ofEpochDay(sequence).atStartOfDay(zone).toInstant();
+        };
+    }
+
+    private static final class SessionState {
+        final String docTypeId;
+        String ageGroup = UNSPECIFIED;
+        int lastPrompt;
+        boolean replied;
+        boolean pendingRegenerate;
+        volatile long lastActive = System.currentTimeMillis();
+
+        SessionState(String docTypeId) {
+            this.docTypeId = docTypeId;
+        }
+    }
+
+    /** 固定长度的环形时间桶：序号 mod 长度定位，新序号覆盖已滚出窗口的旧桶 */
+    private static final class Ring {
+        final AtomicReferenceArray<Bucket> slots;
+
+        Ring(int size) {
+            slots = new AtomicReferenceArray<>(size);
+        }
+
+        /** 取序号对应的桶，不存在则创建；序号已滚出环时返回 null */
+        Bucket bucket(long sequence) {
+            int i = (int) Math.floorMod(sequence, (long) slots.length());
+            while (true) {
+                var current = slots.get(i);
+                if (current != null && current.sequence == sequence) return current;
+                if (current != null && current.sequence > sequence) return null;
+                var fresh = new Bucket(sequence);
+                if (slots.compareAndSet(i, current, fresh)) return fresh;
+            }
+        }
+
+        Bucket peek(long sequence) {
+            var current = slots.get((int) Math.floorMod(sequence, (long) slots.length()));
+            return current != null && current.sequence == sequence ? current : null;
+        }
+    }
+
+    private static final class Bucket {
+        final long sequence;
+        final Map<Dim, Aggregate> groups = new ConcurrentHashMap<>();
+
+        Bucket(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /** 一个（时间桶, 文案类型, 年龄段）的汇总；写入与复制在对象锁内进行 */
+    private static final class Aggregate {
+        long generations;
+        long regenerations;
+        long latencySumMs;
+        long tokenSamples;
+        long inputTokens;
+        long outputTokens;
+        LatencySketch latency = new LatencySketch();
+        DistinctCounter users = new DistinctCounter();
+        /** 自上次快照以来有新数据 */
+        boolean dirty;
+
+        synchronized void add(long userId, boolean regenerated, Completion completion) {
+            generations++;
+            if (regenerated) regenerations++;
+            users.add(userId);
+            if (completion != null) {
+                latencySumMs += completion.latencyMs();
+                latency.add(completion.latencyMs());
+                if (completion.inputTokens() >= 0) {
+                    tokenSamples++;
+                    inputTokens += completion.inputTokens();
+                    outputTokens += completion.outputTokens();
+                }
+            }
+            dirty = true;
+        }
+
+        /** 合并启动时读回的本节点快照（不标记为有变化） */
+        synchronized void restore(Aggregate saved) {
+            merge(saved);
+        }
+
+        synchronized Aggregate snapshot() {
+            var copy = new Aggregate();
+            copy.merge(this);
+            return copy;
+        }
+
+        synchronized Aggregate takeIfDirty() {
+            if (!dirty) return null;
+            dirty = false;
+            return snapshot();
+        }
+
+        synchronized void markDirty() {
+            dirty = true;
+        }
+
+        /** 调用方持有本对象的锁或本对象未共享；other 须为不再修改的副本 */
+        void merge(Aggregate other) {
+            generations += other.generations;
+            regenerations += other.regenerations;
+            latencySumMs += other.latencySumMs;
+            tokenSamples += other.tokenSamples;
+            inputTokens += other.inputTokens;
+            outputTokens += other.outputTokens;
+            latency.merge(other.latency);
+            users.merge(other.users);
+        }
+
+        Metrics metrics() {
+            long timed = latency.count();
+            return new Metrics(generations, regenerations,
+                    generations > 0 ? (double) regenerations / generations : 0,
+                    generations > 0 ? users.estimate() : 0,
+                    timed > 0 ? latencySumMs / timed : 0,
+                    latency.quantile(0.5), latency.quantile(0.95), latency.quantile(0.99),
+                    tokenSamples > 0 ? inputTokens / tokenSamples : 0,
+                    tokenSamples > 0 ? outputTokens / tokenSamples : 0);
+        }
+
+        static Aggregate read(ResultSet rs) throws SQLException {
+            var a = new Aggregate();
+            a.generations = rs.getLong(6);
+            a.regenerations = rs.getLong(7);
+            a.latencySumMs = rs.getLong(8);
+            a.tokenSamples = rs.getLong(9);
+            a.inputTokens = rs.getLong(10);
+            a.outputTokens = rs.getLong(11);
+            a.latency = LatencySketch.fromBytes(rs.getBytes(12));
+            a.users = DistinctCounter.fromBytes(rs.getBytes(13));
+            return a;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+import com.kindergarten.entity.MessageContentCodec;
+
+import java.time.Instant;
+
+/**
+ * 会话事件，写入 ChatEventLog；chat_session / chat_message 表是这些事件的投影（见 ChatProjector）。
+ *
+ * 会话与消息 ID 由 ShardedIds 在写事件前生成，投影按 ID 幂等：重放同一事件不会重复插入。
+ */
+public sealed interface ChatEvent {
+
+    long sessionId();
+
+    long userId();
+
+    Instant at();
+
+    /** 新建会话 */
+    record SessionCreated(long sessionId, long userId, String title, String docTypeId,
+                          boolean titlePending, Instant at) implements ChatEvent {}
+
+    /**
+     * 追加消息。正文以 MessageContentCodec 编码后的形式记录，投影时直接写入 content_data，不再重复压缩。
+     */
+    record MessageAppended(long messageId, long sessionId, long userId, Message.Role role,
+                           byte[] encodedContent, Instant at) implements ChatEvent {
+
+        public static MessageAppended of(long messageId, long sessionId, long userId, Message.Role role,
+                                         String content, Instant at) {
+            return new MessageAppended(messageId, sessionId, userId, role, MessageContentCodec.encode(content), at);
+        }
+
+        public String content() {
+            return MessageContentCodec.decode(encodedContent);
+        }
+    }
+
+    /**
+     * 会话改名。automatic 为 true 表示 SessionTitler 生成的标题：仅当会话仍在等待命名时生效，且不改变 updatedAt。
+     */
+    record SessionRenamed(long sessionId, long userId, String title, boolean automatic,
+                          Instant at) implements ChatEvent {}
+
+    /** 删除会话及其消息 */
+    record SessionDeleted(long sessionId, long userId, Instant at) implements ChatEvent {}
+}
@@ -0,0 +1,125 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32C;
+
+/**
+ * ChatEvent 的二进制编码（ChatEventLog 的记录格式）。
+ *
+ * <pre>
+ * | 长度 int（= 正文字节数） | CRC32C int（正文） | 正文 |
+ * 正文：| 类型 byte | 时间 long（epoch 毫秒） | 会话 ID long | 用户 ID long | 各类型字段 |
+ * </pre>
+ * 字符串为「长度 int + UTF-8」，null 记为长度 -1。新增事件类型只追加类型号，已有类型的字段只能在末尾追加。
+ */
+public final class ChatEventCodec {
+
+    /** 长度 + CRC */
+    public static final int HEADER_BYTES = 8;
+
+    private static final byte SESSION_CREATED = 1;
+    private static final byte MESSAGE_APPENDED = 2;
+    private static final byte SESSION_RENAMED = 3;
+    private static final byte SESSION_DELETED = 4;
+
+    private ChatEventCodec() {}
+
+    /** 编码为完整记录（含头部） */
+    public static byte[] encode(ChatEvent event) {
+        var bytes = new ByteArrayOutputStream(128);
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            switch (event) {
+                case ChatEvent.SessionCreated e -> {
+                    writeCommon(out, SESSION_CREATED, e);
+                    writeString(out, e.title());
+                    writeString(out, e.docTypeId());
+                    out.writeBoolean(e.titlePending());
+                }
+                case ChatEvent.MessageAppended e -> {
+                    writeCommon(out, MESSAGE_APPENDED, e);
+                    out.writeLong(e.messageId());
+                    out.writeByte(e.role().ordinal());
+                    out.writeInt(e.encodedContent().length);
+                    out.write(e.encodedContent());
+                }
+                case ChatEvent.SessionRenamed e -> {
+                    writeCommon(out, SESSION_RENAMED, e);
+                    writeString(out, e.title());
+                    out.writeBoolean(e.automatic());
+                }
+                case ChatEvent.SessionDeleted e -> writeCommon(out, SESSION_DELETED, e);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var record = bytes.toByteArray();
+        int bodyLength = record.length - HEADER_BYTES;
+        var crc = new CRC32C();
+        crc.update(record, HEADER_BYTES, bodyLength);
+        ByteBuffer.wrap(record).putInt(0, bodyLength).putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    /** 校验并解码正文；body 的 position 到 limit 为一条记录的正文 */
+    public static ChatEvent decode(ByteBuffer body, int expectedCrc) {
+        var crc = new CRC32C();
+        crc.update(body.duplicate());
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IllegalStateException("事件记录校验失败");
+        }
+        byte type = body.get();
+        var at = Instant.ofEpochMilli(body.getLong());
+        long sessionId = body.getLong();
+        long userId = body.getLong();
+        return switch (type) {
+            case SESSION_CREATED -> new ChatEvent.SessionCreated(sessionId, userId,
+                    readString(body), readString(body), body.get() != 0, at);
+            case MESSAGE_APPENDED -> {
+                long messageId = body.getLong();
+                var role = Message.Role.values()[body.get()];
+                var content = new byte[body.getInt()];
+                body.get(content);
+                yield new ChatEvent.MessageAppended(messageId, sessionId, userId, role, content, at);
+            }
+            case SESSION_RENAMED -> new ChatEvent.SessionRenamed(sessionId, userId,
+                    readString(body), body.get() != 0, at);
+            case SESSION_DELETED -> new ChatEvent.SessionDeleted(sessionId, userId, at);
+            default -> throw new IllegalStateException("未知的事件类型: " + type);
+        };
+    }
+
+    private static void writeCommon(DataOutputStream out, byte type, ChatEvent event) throws IOException {
+        out.writeByte(type);
+        out.writeLong(event.at().toEpochMilli());
+        out.writeLong(event.sessionId());
+        out.writeLong(event.userId());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        var bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
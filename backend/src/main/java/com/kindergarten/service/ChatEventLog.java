@@ -0,0 +1,416 @@
+package com.kindergarten.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+/**
+ * 会话事件日志：只追加、分段、内存映射文件。SessionService 的写路径，数据库表由 ChatProjector 异步投影。
+ *
+ * - 段：目录下的 {起始偏移量}.log，固定大小预分配并整体 mmap；写满（留出 4 字节结束标记）后滚动到
+ *   起始偏移量 = 上一段起始 + 段大小 的新段。偏移量即「段起始 + 段内字节位置」，单调递增、不连续；
+ * - 组提交：调用方线程只负责编码，记录进入队列；单个写线程一次取出最多 max-batch 条，顺序写入映射区，
+ *   按 fsync 策略刷盘后统一确认，多个并发写入共享一次 fsync；
+ * - 可见性：写线程在（按策略）刷盘之后才推进 endOffset，消费者只读取 endOffset 之前的记录，
+ *   因此 always 策略下投影与其他消费者看到的都是已落盘的事件；
+ * - 恢复：启动时扫描最后一段，遇到长度为 0、越界或 CRC 不符的位置即视为末尾，清零其后的内容；
+ * - 消费：read(offset, max) 从任意记录边界开始读取，awaitAppended 等待新事件，适合各消费者自行保存偏移量追读。
+ *
+ * 日志属于单个实例（本地文件），多实例部署时每个实例各自投影自己的日志。
+ */
+public class ChatEventLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatEventLog.class);
+
+    public enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    /** 一条已写入的事件及其偏移量 */
+    public record LoggedEvent(long offset, ChatEvent event) {}
+
+    /** 一次读取的结果；nextOffset 为下一次读取的起点 */
+    public record Batch(List<LoggedEvent> events, long nextOffset) {}
+
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".log";
+    private static final int QUEUE_CAPACITY = 65_536;
+
+    private record Segment(long base, Path path, MappedByteBuffer buffer, int capacity) {
+        long end() { return base + capacity; }
+    }
+
+    private record PendingAppend(byte[] record, CompletableFuture<Long> done) {}
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalMs;
+    private final int maxBatch;
+    private final long appendTimeoutMs;
+    private final long retentionMs;
+    private final Timer commitTimer;
+    private final DistributionSummary commitEvents;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final LinkedBlockingQueue<PendingAppend> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Object appended = new Object();
+    private final Thread writer;
+    /** 持有目录锁，防止两个进程写同一个日志 */
+    private FileChannel lockChannel;
+    private volatile boolean running = true;
+    private volatile long endOffset;
+
+    // 以下仅由写线程访问（启动恢复与关闭时除外）
+    private Segment active;
+    private int position;
+    private int unforcedFrom;
+    private long lastForceNanos = System.nanoTime();
+
+    public ChatEventLog(Path dir, EventLogProperties p, MeterRegistry registry) {
+        this.dir = dir;
+        this.segmentBytes = p.segmentBytes();
+        this.fsync = p.fsyncPolicy();
+        this.fsyncIntervalMs = p.fsyncIntervalMs();
+        this.maxBatch = p.maxBatch();
+        this.appendTimeoutMs = p.appendTimeoutMs();
+        this.retentionMs = p.retentionMs();
+        this.commitTimer = Timer.builder("eventlog.commit")
+                .description("事件日志组提交耗时（写入映射区 + 按策略 fsync）")
+                .tag("fsync", fsync.name().toLowerCase())
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        this.commitEvents = DistributionSummary.builder("eventlog.commit.events")
+                .description("每次组提交合并的事件数")
+                .register(registry);
+        registry.gauge("eventlog.end.offset", this, ChatEventLog::endOffset);
+        try {
+            Files.createDirectories(dir);
+            lockChannel = FileChannel.open(dir.resolve(".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (lockChannel.tryLock() == null) {
+                lockChannel.close();
+                throw new IllegalStateException("事件日志目录 " + dir + " 已被本机上的另一个进程锁定，请确认使用同一节点号的旧进程已退出"
+                        + "（文件锁只能发现同一台机器上的冲突，跨实例的节点号唯一由主库中的节点租约保证）");
+            }
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开事件日志目录 " + dir, e);
+        }
+        this.writer = new Thread(this::writeLoop, "chat-event-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        log.info("事件日志已打开: {}，{} 个段，偏移量 {}–{}，fsync={}",
+                dir, segments.size(), startOffset(), endOffset, fsync.name().toLowerCase());
+    }
+
+    /** 追加事件，返回写入确认（完成值为偏移量）。编码在调用方线程完成。 */
+    public CompletableFuture<Long> appendAsync(ChatEvent event) {
+        var record = ChatEventCodec.encode(event);
+        if (record.length + Integer.BYTES > segmentBytes) {
+            throw new IllegalArgumentException("事件过大: " + record.length + " 字节，超过段大小");
+        }
+        if (!running) throw new IllegalStateException("事件日志已关闭");
+        var pending = new PendingAppend(record, new CompletableFuture<>());
+        try {
+            if (!queue.offer(pending, appendTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("事件日志写入队列已满");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待事件日志写入时被中断", e);
+        }
+        return pending.done();
+    }
+
+    /** 追加事件并等待确认（按 fsync 策略），返回偏移量 */
+    public long append(ChatEvent event) {
+        return await(appendAsync(event));
+    }
+
+    public long await(CompletableFuture<Long> pending) {
+        try {
+            return pending.get(appendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待事件日志写入时被中断", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("事件日志写入失败", e.getCause() != null ? e.getCause() : e);
+        }
+    }
+
+    /** 最早仍保留的偏移量 */
+    public long startOffset() {
+        return segments.firstKey();
+    }
+
+    /** 已确认写入的末尾（下一条事件的偏移量不小于此值） */
+    public long endOffset() {
+        return endOffset;
+    }
+
+    /**
+     * 从 from 开始读取最多 maxEvents 条已确认的事件。
+     *
+     * @throws IllegalArgumentException from 所在的段已被清理
+     */
+    public Batch read(long from, int maxEvents) {
+        long end = endOffset;
+        var events = new ArrayList<LoggedEvent>(Math.min(maxEvents, 64));
+        long offset = from;
+        while (events.size() < maxEvents && offset < end) {
+            var entry = segments.floorEntry(offset);
+            if (entry == null || offset >= entry.getValue().end() && !segments.containsKey(entry.getValue().end())) {
+                throw new IllegalArgumentException("偏移量 " + offset + " 不可读，最早可读 " + startOffset());
+            }
+            var segment = entry.getValue();
+            int pos = (int) (offset - segment.base());
+            if (pos + ChatEventCodec.HEADER_BYTES > segment.capacity()) {
+                offset = segment.end();
+                continue;
+            }
+            int length = segment.buffer().getInt(pos);
+            if (length == END_OF_SEGMENT) {
+                offset = segment.end();
+                continue;
+            }
+            if (length <= 0 || pos + ChatEventCodec.HEADER_BYTES + length > segment.capacity()) {
+                throw new IllegalStateException("偏移量 " + offset + " 不是记录边界");
+            }
+            int crc = segment.buffer().getInt(pos + Integer.BYTES);
+            var body = segment.buffer().slice(pos + ChatEventCodec.HEADER_BYTES, length);
+            events.add(new LoggedEvent(offset, ChatEventCodec.decode(body, crc)));
+            offset += ChatEventCodec.HEADER_BYTES + length;
+        }
+        return new Batch(events, offset);
+    }
+
+    /** 等待 offset 之后有新事件确认写入；返回是否已有新事件 */
+    public boolean awaitAppended(long offset, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (appended) {
+            while (endOffset <= offset && running) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) break;
+                appended.wait(remaining);
+            }
+        }
+        return endOffset > offset;
+    }
+
+    /**
+     * 删除整段都在 offset 之前、且超过保留时长的段（当前写入的段除外）。由投影在推进检查点后调用。
+     */
+    public void deleteSegmentsBefore(long offset) {
+        var cutoff = Instant.now().minusMillis(retentionMs);
+        for (var segment : segments.values()) {
+            if (segment.end() > offset || segment.end() > endOffset) break;
+            try {
+                if (Files.getLastModifiedTime(segment.path()).toInstant().isAfter(cutoff)) break;
+                segments.remove(segment.base());
+                Files.deleteIfExists(segment.path());
+                log.info("已删除事件日志段 {}", segment.path().getFileName());
+            } catch (IOException e) {
+                log.warn("删除事件日志段失败 {}: {}", segment.path(), e.getMessage());
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(appendTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) writer.interrupt();
+        PendingAppend left;
+        while ((left = queue.poll()) != null) {
+            left.done().completeExceptionally(new IllegalStateException("事件日志已关闭"));
+        }
+        if (fsync != FsyncPolicy.NEVER) force();
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+        try {
+            lockChannel.close();
+        } catch (IOException e) {
+            log.warn("释放事件日志目录锁失败: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        var batch = new ArrayList<PendingAppend>(maxBatch);
+        long pollMs = Math.min(fsyncIntervalMs, 100);
+        while (running || !queue.isEmpty()) {
+            try {
+                var first = queue.poll(pollMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (fsync == FsyncPolicy.INTERVAL) forceIfDue();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                if (!running) break;
+            } catch (Throwable e) {
+                log.error("事件日志写入失败，{} 条事件未确认", batch.size(), e);
+                for (var pending : batch) pending.done().completeExceptionally(e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<PendingAppend> batch) throws IOException {
+        long start = System.nanoTime();
+        var offsets = new long[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            var record = batch.get(i).record();
+            if (position + record.length + Integer.BYTES > active.capacity()) roll();
+            offsets[i] = active.base() + position;
+            active.buffer().put(position, record);
+            position += record.length;
+        }
+        switch (fsync) {
+            case ALWAYS -> force();
+            case INTERVAL -> forceIfDue();
+            case NEVER -> { }
+        }
+        publish(active.base() + position);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).done().complete(offsets[i]);
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        commitEvents.record(batch.size());
+    }
+
+    /** 写结束标记，刷盘旧段，切换到新段 */
+    private void roll() throws IOException {
+        active.buffer().putInt(position, END_OF_SEGMENT);
+        position += Integer.BYTES;
+        if (fsync != FsyncPolicy.NEVER) force();
+        var next = openSegment(active.end());
+        segments.put(next.base(), next);
+        active = next;
+        position = 0;
+        unforcedFrom = 0;
+    }
+
+    private void forceIfDue() {
+        if (position > unforcedFrom
+                && System.nanoTime() - lastForceNanos >= TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs)) {
+            force();
+        }
+    }
+
+    private void force() {
+        if (active == null || position <= unforcedFrom) return;
+        active.buffer().force(unforcedFrom, position - unforcedFrom);
+        unforcedFrom = position;
+        lastForceNanos = System.nanoTime();
+    }
+
+    private void publish(long offset) {
+        endOffset = offset;
+        synchronized (appended) {
+            appended.notifyAll();
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(dir)) {
+            bases = files.map(f -> f.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        if (bases.isEmpty()) {
+            active = openSegment(0);
+            segments.put(0L, active);
+            position = 0;
+            endOffset = 0;
+            return;
+        }
+        for (long base : bases) segments.put(base, openSegment(base));
+        active = segments.lastEntry().getValue();
+        var buffer = active.buffer();
+        int pos = 0;
+        boolean sealed = false;
+        while (pos + ChatEventCodec.HEADER_BYTES <= active.capacity()) {
+            int length = buffer.getInt(pos);
+            if (length == 0) break;
+            if (length == END_OF_SEGMENT) {
+                sealed = true;
+                break;
+            }
+            if (length < 0 || pos + ChatEventCodec.HEADER_BYTES + length > active.capacity()) {
+                truncate(pos);
+                break;
+            }
+            try {
+                ChatEventCodec.decode(buffer.slice(pos + ChatEventCodec.HEADER_BYTES, length),
+                        buffer.getInt(pos + Integer.BYTES));
+            } catch (RuntimeException e) {
+                truncate(pos);
+                break;
+            }
+            pos += ChatEventCodec.HEADER_BYTES + length;
+        }
+        position = pos;
+        unforcedFrom = pos;
+        if (sealed) {
+            // 上次在写完结束标记、创建新段之前退出
+            position += Integer.BYTES;
+            var next = openSegment(active.end());
+            segments.put(next.base(), next);
+            active = next;
+            position = 0;
+            unforcedFrom = 0;
+        }
+        endOffset = active.base() + position;
+    }
+
+    /** 清除末尾不完整的记录（进程在写入中途退出） */
+    private void truncate(int from) {
+        log.warn("事件日志段 {} 在位置 {} 之后的数据不完整，已截断", active.path().getFileName(), from);
+        var zeros = new byte[64 * 1024];
+        for (int pos = from; pos < active.capacity(); pos += zeros.length) {
+            active.buffer().put(pos, zeros, 0, Math.min(zeros.length, active.capacity() - pos));
+        }
+        active.buffer().force();
+    }
+
+    private Segment openSegment(long base) throws IOException {
+        var path = dir.resolve(String.format("%020d%s", base, SUFFIX));
+        try (var channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size() > 0 ? channel.size() : segmentBytes;
+            // 映射区超出文件长度时文件自动扩展；通道关闭后映射仍然有效
+            var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(base, path, buffer, (int) size);
+        }
+    }
+}
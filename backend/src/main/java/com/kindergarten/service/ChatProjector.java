@@ -0,0 +1,530 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 会话事件投影：把 ChatEventLog 中的事件写入 chat_session / chat_message / chat_message_blob。
+ *
+ * - 启动时（ApplicationRunner，实例就绪之前）从主库中的检查点追到日志末尾，之后由后台线程持续追读；
+ * - 每批最多 projection-batch 条事件，按物理分片分组，每个分片一个事务，相邻的同类语句合并为 JDBC 批量执行；
+ * - 冻结中的逻辑分片（迁移收尾）：其事件暂存在内存中按日志顺序排队，解冻后先于该逻辑分片的新事件写入，
+ *   其他逻辑分片照常投影。会话的事件都在同一个逻辑分片，单个会话内的顺序不变；
+ * - 幂等：会话与消息 ID 在写事件前生成，插入前先查询已存在的 ID，重放同一事件不会重复写入，
+ *   因此检查点可以滞后于实际进度（定期写入），进程异常退出后从检查点重放即可；
+ * - 删除：多实例时会话可能由另一实例删除（各实例只投影自己的日志），删除时在会话所在分片写入墓碑
+ *   （chat_session_tombstone），之后重放或迟到的创建与消息遇到墓碑即跳过，已删除的会话不会复活。
+ *   墓碑保留不少于 retention-ms，且要早于所有实例检查点的 covered_at（那之前写入的事件各实例都不会再重放）才清理；
+ * - 读己之写：SessionService 写入事件后调用 track 记录该会话 / 用户最新的偏移量并 awaitSession 等它投影完成再返回，
+ *   写入返回时数据已在数据库中，经负载均衡落到任意实例的后续读取都能看到；超过 projection-wait-ms 抛出
+ *   ShardUnavailableException（503），事件已在日志中，之后仍会投影；
+ * - 写入失败（数据库不可用等）时整批退避重试，不跳过事件；
+ * - 检查点取「所有早于它的事件都已写入」的位置（暂存的事件之前），推进后删除已超过保留时长的日志段。
+ *
+ * 只投影本实例的日志。
+ */
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class ChatProjector implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatProjector.class);
+
+    private static final long IDLE_WAIT_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5000;
+    /** 有逻辑分片冻结时检查解冻的间隔 */
+    private static final long FROZEN_POLL_MS = 50;
+    private static final int IN_LIST_CHUNK = 500;
+    /** 检查点偏移量不变、只有 covered_at 推进时（空闲），按此间隔写入 */
+    private static final long CHECKPOINT_HEARTBEAT_MS = 60_000;
+
+    private static final String INSERT_SESSION = "insert into chat_session "
+            + "(id, user_id, title, doc_type_id, title_pending, created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_MESSAGE = "insert into chat_message "
+            + "(id, session_id, role, content_data, content_hash, created_at) values (?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_BLOB = "insert into chat_message_blob "
+            + "(hash, data, raw_length, last_referenced_at) values (?, ?, ?, ?)";
+    private static final String TOUCH_BLOB = "update chat_message_blob set last_referenced_at = ? where hash = ?";
+    private static final String RENAME =
+            "update chat_session set title = ?, title_pending = false, updated_at = ? where id = ?";
+    private static final String AUTO_RENAME = "update chat_session set title = ?, title_pending = false, titled_at = ? "
+            + "where id = ? and title_pending = true";
+    private static final String DELETE_MESSAGES = "delete from chat_message where session_id = ?";
+    private static final String DELETE_SESSION = "delete from chat_session where id = ?";
+    private static final String UPDATE_CHECKPOINT = "update chat_projection_checkpoint "
+            + "set applied_offset = ?, updated_at = ?, covered_at = coalesce(?, covered_at) where node_id = ?";
+    private static final String INSERT_CHECKPOINT = "insert into chat_projection_checkpoint "
+            + "(node_id, applied_offset, updated_at, covered_at) values (?, ?, ?, ?)";
+    private static final String INSERT_TOMBSTONE =
+            "insert into chat_session_tombstone (session_id, user_id, deleted_at) values (?, ?, ?)";
+
+    private final ChatEventLog eventLog;
+    private final ChatShards shards;
+    private final JdbcTemplate checkpointJdbc;
+    private final MessageContentStore contentStore;
+    private final int nodeId;
+    private final int batchSize;
+    private final long checkpointIntervalMs;
+    private final long waitMs;
+    private final long retentionMs;
+
+    /** 下一条待读取事件的偏移量：偏移量小于它的事件除暂存在 deferred 中的以外都已写入数据库 */
+    private volatile long readOffset;
+    /** 偏移量小于它的事件都已写入数据库（检查点） */
+    private volatile long appliedOffset;
+    /** 早于该时刻（毫秒）写入日志的事件的偏移量都小于 appliedOffset；0 表示还未追上过日志末尾 */
+    private volatile long coveredAt;
+    /** 冻结中的逻辑分片 → 暂存的事件（按日志顺序），仅由投影线程访问 */
+    private final Map<Integer, List<ChatEventLog.LoggedEvent>> deferred = new HashMap<>();
+    /** 有暂存事件的逻辑分片 → 其中最早的偏移量，供 await 判断 */
+    private final Map<Integer, Long> deferredFrom = new ConcurrentHashMap<>();
+    private final Object progress = new Object();
+    /** 本实例写入、尚未投影的事件：会话 / 用户 → 最新偏移量 */
+    private final Map<Long, Long> pendingBySession = new ConcurrentHashMap<>();
+    private final Map<Long, Long> pendingByUser = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+    private Thread tailer;
+    private long checkpointed = -1;
+    private long checkpointedCoveredAt;
+    private long lastCheckpointAt;
+
+    public ChatProjector(ChatEventLog eventLog,
+                         ChatShards shards,
+                         JdbcTemplate jdbcTemplate,
+                         MessageContentStore contentStore,
+                         EventLogProperties eventLogProperties,
+                         ShardedIds ids,
+                         MeterRegistry registry) {
+        this.eventLog = eventLog;
+        this.shards = shards;
+        this.checkpointJdbc = jdbcTemplate;
+        this.contentStore = contentStore;
+        this.nodeId = ids.nodeId();
+        this.batchSize = eventLogProperties.projectionBatch();
+        this.checkpointIntervalMs = eventLogProperties.checkpointIntervalMs();
+        this.waitMs = eventLogProperties.projectionWaitMs();
+        this.retentionMs = eventLogProperties.retentionMs();
+        registry.gauge("eventlog.projection.lag.bytes", this, p -> p.eventLog.endOffset() - p.appliedOffset);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long from = loadCheckpoint();
+        if (from < eventLog.startOffset() || from > eventLog.endOffset()) {
+            // 检查点所在的段已被删除，或日志目录被清空：从最早保留的事件重放（投影幂等）
+            log.warn("投影检查点 {} 不在事件日志范围 {}–{} 内，从 {} 开始重放",
+                    from, eventLog.startOffset(), eventLog.endOffset(), eventLog.startOffset());
+            from = eventLog.startOffset();
+        }
+        readOffset = from;
+        appliedOffset = from;
+        long start = System.nanoTime();
+        long backoff = 100;
+        // 至少投影一次：检查点已在日志末尾时也据此确定 coveredAt
+        do {
+            try {
+                projectOnce();
+                backoff = 100;
+            } catch (RuntimeException e) {
+                log.warn("启动投影失败，{} ms 后重试: {}", backoff, e.getMessage());
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        } while (readOffset < eventLog.endOffset());
+        checkpoint(true);
+        log.info("事件投影已追上日志末尾: {} → {}，耗时 {} ms（冻结中的逻辑分片暂存 {} 条）",
+                from, readOffset, (System.nanoTime() - start) / 1_000_000, deferredCount());
+        running = true;
+        tailer = new Thread(this::tail, "chat-projector");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tailer == null) return;
+        try {
+            tailer.join(IDLE_WAIT_MS + MAX_BACKOFF_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint(true);
+    }
+
+    /** 记录本实例刚写入的事件（ChatEventLog.append 返回的偏移量），之后读取该会话时等待其投影完成 */
+    public void track(ChatEvent event, long offset) {
+        pendingBySession.merge(event.sessionId(), offset, Math::max);
+        pendingByUser.merge(event.userId(), offset, Math::max);
+        if (isApplied(offset, ShardedIds.logicalShardOf(event.sessionId()))) {
+            // 记录之前投影已经完成
+            pendingBySession.remove(event.sessionId(), offset);
+            pendingByUser.remove(event.userId(), offset);
+        }
+    }
+
+    /** 等待本实例写入该会话的事件全部投影完成 */
+    public void awaitSession(long sessionId) {
+        await(pendingBySession.get(sessionId), ShardedIds.logicalShardOf(sessionId));
+    }
+
+    /** 等待本实例写入该用户的事件全部投影完成（会话列表、导出） */
+    public void awaitUser(long userId) {
+        await(pendingByUser.get(userId), ShardedIds.logicalShardOfUser(userId));
+    }
+
+    private void await(Long offset, int logicalShard) {
+        if (offset == null || isApplied(offset, logicalShard)) return;
+        long deadline = System.currentTimeMillis() + waitMs;
+        synchronized (progress) {
+            while (!isApplied(offset, logicalShard)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) throw unavailable(logicalShard);
+                try {
+                    progress.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw unavailable(logicalShard);
+                }
+            }
+        }
+    }
+
+    private ShardUnavailableException unavailable(int logicalShard) {
+        return deferredFrom.containsKey(logicalShard)
+                ? new ShardUnavailableException(logicalShard)
+                : new ShardUnavailableException(logicalShard, "会话数据同步中，请稍后重试");
+    }
+
+    /** 该逻辑分片上偏移量 offset 处的事件是否已写入数据库 */
+    private boolean isApplied(long offset, int logicalShard) {
+        if (readOffset <= offset) return false;
+        var from = deferredFrom.get(logicalShard);
+        return from == null || from > offset;
+    }
+
+    private void tail() {
+        long backoff = 100;
+        while (running) {
+            try {
+                // 有暂存事件时不长时间空等，以便解冻后尽快写入
+                if (!projectOnce()) eventLog.awaitAppended(readOffset, deferred.isEmpty() ? IDLE_WAIT_MS : FROZEN_POLL_MS);
+                checkpoint(false);
+                backoff = 100;
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.warn("事件投影失败，{} ms 后重试（偏移量 {}）: {}", backoff, readOffset, e.getMessage());
+                sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+
+    /**
+     * 写入已解冻的逻辑分片暂存的事件，再投影一批新事件；两者都没有时返回 false。
+     * 冻结中的逻辑分片（及仍有暂存事件的逻辑分片）的新事件追加到暂存队列。
+     * 任一分片事务失败时抛出异常，状态不变，下次从同一位置整批重试（投影幂等）。
+     */
+    private boolean projectOnce() {
+        // 先取时间再取日志末尾：早于 startedAt 写入的事件都在 end 之前，投影到 end 即覆盖它们
+        long startedAt = System.currentTimeMillis();
+        long end = eventLog.endOffset();
+        var layout = shards.layout();
+        var released = new ArrayList<Integer>();
+        var byShard = new LinkedHashMap<ChatShard, List<ChatEventLog.LoggedEvent>>();
+        for (var e : deferred.entrySet()) {
+            if (layout.isFrozen(e.getKey())) continue;
+            released.add(e.getKey());
+            byShard.computeIfAbsent(shards.get(layout.physicalOf(e.getKey())), k -> new ArrayList<>()).addAll(e.getValue());
+        }
+
+        var batch = eventLog.read(readOffset, batchSize);
+        if (batch.nextOffset() == readOffset && released.isEmpty()) {
+            if (deferred.isEmpty() && readOffset >= end) coveredAt = startedAt;
+            return false;
+        }
+        var newlyDeferred = new LinkedHashMap<Integer, List<ChatEventLog.LoggedEvent>>();
+        for (var logged : batch.events()) {
+            int logical = ShardedIds.logicalShardOf(logged.event().sessionId());
+            if (layout.isFrozen(logical)) {
+                newlyDeferred.computeIfAbsent(logical, k -> new ArrayList<>()).add(logged);
+            } else {
+                byShard.computeIfAbsent(shards.get(layout.physicalOf(logical)), k -> new ArrayList<>()).add(logged);
+            }
+        }
+        for (var e : byShard.entrySet()) {
+            apply(e.getKey(), e.getValue().stream().map(ChatEventLog.LoggedEvent::event).toList());
+        }
+
+        synchronized (progress) {
+            for (int logical : released) {
+                deferred.remove(logical);
+                deferredFrom.remove(logical);
+            }
+            for (var e : newlyDeferred.entrySet()) {
+                deferred.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).addAll(e.getValue());
+                deferredFrom.putIfAbsent(e.getKey(), e.getValue().get(0).offset());
+            }
+            readOffset = batch.nextOffset();
+            appliedOffset = deferredFrom.values().stream().reduce(readOffset, Math::min);
+            if (appliedOffset >= end) coveredAt = startedAt;
+            progress.notifyAll();
+        }
+        for (var events : byShard.values()) {
+            for (var logged : events) {
+                pendingBySession.remove(logged.event().sessionId(), logged.offset());
+                pendingByUser.remove(logged.event().userId(), logged.offset());
+            }
+        }
+        if (!released.isEmpty()) log.info("逻辑分片 {} 已解冻，写入暂存的事件", released);
+        return true;
+    }
+
+    private int deferredCount() {
+        return deferred.values().stream().mapToInt(List::size).sum();
+    }
+
+    /** 在一个分片事务中应用一组事件（按日志顺序） */
+    private void apply(ChatShard shard, List<ChatEvent> events) {
+        shard.tx().executeWithoutResult(status -> {
+            var jdbc = shard.jdbc();
+            var sessionIds = new LinkedHashSet<Long>();
+            var messageIds = new ArrayList<Long>();
+            var blobHashes = new HashMap<Long, String>();
+            var blobs = new LinkedHashMap<String, Object[]>();
+            for (ChatEvent event : events) {
+                sessionIds.add(event.sessionId());
+                if (event instanceof ChatEvent.MessageAppended m) {
+                    messageIds.add(m.messageId());
+                    if (m.role() == Message.Role.assistant) {
+                        var content = m.content();
+                        var hash = contentStore.dedupKey(content);
+                        if (hash != null) {
+                            blobHashes.put(m.messageId(), hash);
+                            blobs.putIfAbsent(hash, new Object[] { hash, m.encodedContent(), content.length(), timestamp(m.at()) });
+                        }
+                    }
+                }
+            }
+            // 会话存活状态按日志顺序推进：创建后加入、删除后移除；有墓碑的会话（已被任一实例删除）不再创建
+            var live = existing(jdbc, "chat_session", "id", sessionIds);
+            var tombstoned = existing(jdbc, "chat_session_tombstone", "session_id", sessionIds);
+            var projectedMessages = existing(jdbc, "chat_message", "id", messageIds);
+            if (!blobs.isEmpty()) {
+                var missing = touchBlobs(jdbc, blobs.keySet()).stream().map(blobs::get).toList();
+                if (!missing.isEmpty()) jdbc.batchUpdate(INSERT_BLOB, missing);
+            }
+
+            var statements = new StatementBatch(jdbc);
+            for (ChatEvent event : events) {
+                switch (event) {
+                    case ChatEvent.SessionCreated e -> {
+                        if (!tombstoned.contains(e.sessionId()) && live.add(e.sessionId())) {
+                            var at = timestamp(e.at());
+                            statements.add(INSERT_SESSION, e.sessionId(), e.userId(), e.title(), e.docTypeId(),
+                                    e.titlePending(), at, at);
+                        }
+                    }
+                    case ChatEvent.MessageAppended e -> {
+                        if (live.contains(e.sessionId()) && projectedMessages.add(e.messageId())) {
+                            var hash = blobHashes.get(e.messageId());
+                            statements.add(INSERT_MESSAGE, e.messageId(), e.sessionId(), e.role().name(),
+                                    hash == null ? e.encodedContent() : null, hash, timestamp(e.at()));
+                        }
+                    }
+                    case ChatEvent.SessionRenamed e -> {
+                        if (e.automatic()) {
+                            // titled_at 取投影时间而非事件时间：各节点按它轮询推送，迟到的投影也不会落在轮询窗口之外
+                            statements.add(AUTO_RENAME, e.title(), Timestamp.valueOf(LocalDateTime.now()), e.sessionId());
+                        } else {
+                            statements.add(RENAME, e.title(), timestamp(e.at()), e.sessionId());
+                        }
+                    }
+                    case ChatEvent.SessionDeleted e -> {
+                        if (tombstoned.add(e.sessionId())) {
+                            statements.add(INSERT_TOMBSTONE, e.sessionId(), e.userId(), timestamp(e.at()));
+                        }
+                        if (live.remove(e.sessionId())) {
+                            statements.add(DELETE_MESSAGES, e.sessionId());
+                            statements.add(DELETE_SESSION, e.sessionId());
+                        }
+                    }
+                }
+            }
+            statements.flush();
+        });
+    }
+
+    /**
+     * 把已存在 blob 的 last_referenced_at 刷新为当前时间并返回不存在的 hash。
+     * UPDATE 持有行锁直到本事务提交：与 MessageContentStore 的清理串行执行，清理要么等本事务提交后
+     * 看到新的引用与时间而跳过，要么先删除、本次更新不到该行而重新插入
+     */
+    private static Set<String> touchBlobs(JdbcTemplate jdbc, Collection<String> hashes) {
+        var list = new ArrayList<>(hashes);
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        int[] counts = jdbc.batchUpdate(TOUCH_BLOB, list.stream().map(h -> new Object[] { now, h }).toList());
+        var missing = new LinkedHashSet<String>();
+        var unknown = new ArrayList<String>();
+        for (int i = 0; i < list.size(); i++) {
+            if (counts[i] == 0) missing.add(list.get(i));
+            else if (counts[i] == Statement.SUCCESS_NO_INFO) unknown.add(list.get(i));
+        }
+        if (!unknown.isEmpty()) {
+            // 驱动不返回逐条计数时再查询一次（此时已存在的行已被本事务锁定）
+            var present = existing(jdbc, "chat_message_blob", "hash", unknown);
+            unknown.stream().filter(h -> !present.contains(h)).forEach(missing::add);
+        }
+        return missing;
+    }
+
+    /** 查询 keys 中已存在于表中的键 */
+    private static <K> Set<K> existing(JdbcTemplate jdbc, String table, String column, Collection<K> keys) {
+        var result = new HashSet<K>();
+        if (keys.isEmpty()) return result;
+        var list = new ArrayList<>(keys);
+        for (int from = 0; from < list.size(); from += IN_LIST_CHUNK) {
+            var chunk = list.subList(from, Math.min(from + IN_LIST_CHUNK, list.size()));
+            var sql = "select " + column + " from " + table + " where " + column + " in ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbc.query(sql, rs -> {
+                @SuppressWarnings("unchecked")
+                K key = (K) rs.getObject(1, chunk.get(0).getClass());
+                result.add(key);
+            }, chunk.toArray());
+        }
+        return result;
+    }
+
+    private static Timestamp timestamp(Instant at) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(at, ZoneId.systemDefault()));
+    }
+
+    private long loadCheckpoint() {
+        var rows = checkpointJdbc.queryForList(
+                "select applied_offset from chat_projection_checkpoint where node_id = ?", Long.class, nodeId);
+        return rows.isEmpty() ? eventLog.startOffset() : rows.get(0);
+    }
+
+    /**
+     * 写入检查点（force 为 false 时不早于 checkpoint-interval-ms），并删除已过保留时长的日志段。
+     * 偏移量不变、只有 covered_at 推进时按 CHECKPOINT_HEARTBEAT_MS 写入，空闲实例也不会阻止墓碑清理
+     */
+    private void checkpoint(boolean force) {
+        // 先取 coveredAt 再取偏移量：写入的 covered_at 不会超前于写入的偏移量；
+        // 重启后还未追上日志末尾时保留原值（它对应更早的偏移量，仍然成立）
+        long covered = coveredAt;
+        long offset = appliedOffset;
+        long now = System.currentTimeMillis();
+        if (!force) {
+            if (offset == checkpointed
+                    && (covered == checkpointedCoveredAt || now - lastCheckpointAt < CHECKPOINT_HEARTBEAT_MS)) return;
+            if (now - lastCheckpointAt < checkpointIntervalMs) return;
+        }
+        try {
+            var at = Timestamp.valueOf(LocalDateTime.now());
+            var coveredTs = covered == 0 ? null : timestamp(Instant.ofEpochMilli(covered));
+            int updated = checkpointJdbc.update(UPDATE_CHECKPOINT, offset, at, coveredTs, nodeId);
+            if (updated == 0) {
+                try {
+                    checkpointJdbc.update(INSERT_CHECKPOINT, nodeId, offset, at, coveredTs);
+                } catch (DuplicateKeyException e) {
+                    checkpointJdbc.update(UPDATE_CHECKPOINT, offset, at, coveredTs, nodeId);
+                }
+            }
+            checkpointed = offset;
+            checkpointedCoveredAt = covered;
+            lastCheckpointAt = now;
+        } catch (RuntimeException e) {
+            log.warn("写入投影检查点失败: {}", e.getMessage());
+            return;
+        }
+        eventLog.deleteSegmentsBefore(checkpointed);
+    }
+
+    /**
+     * 清理不再需要的会话墓碑：删除时间早于 retention-ms 之前，且早于所有实例检查点的 covered_at
+     * （会话的创建早于删除，各实例重放时都不会再遇到它）。有实例还未追上过日志末尾时不清理。
+     * 已下线、不会再启动的实例请删除其 chat_projection_checkpoint 行，否则其过期的检查点会一直阻止清理。
+     */
+    @Scheduled(fixedDelayString = "${kindergarten.event-log.tombstone-purge-interval-ms:3600000}",
+            initialDelayString = "${kindergarten.event-log.tombstone-purge-interval-ms:3600000}")
+    public void purgeTombstones() {
+        var covered = checkpointJdbc.queryForList(
+                "select covered_at from chat_projection_checkpoint", Timestamp.class);
+        if (covered.isEmpty() || covered.contains(null)) return;
+        var oldestCheckpoint = Collections.min(covered);
+        var retained = Timestamp.valueOf(LocalDateTime.now().minus(Duration.ofMillis(retentionMs)));
+        var before = oldestCheckpoint.before(retained) ? oldestCheckpoint : retained;
+        for (ChatShard shard : shards.all()) {
+            int deleted = shard.jdbc().update("delete from chat_session_tombstone where deleted_at < ?", before);
+            if (deleted > 0) log.info("已清理会话墓碑: {} 条（{}）", deleted, shard);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 相邻的同一条 SQL 合并为一次 batchUpdate，不同 SQL 之间保持日志顺序 */
+    private static final class StatementBatch {
+
+        private final JdbcTemplate jdbc;
+        private final List<Object[]> args = new ArrayList<>();
+        private String sql;
+
+        StatementBatch(JdbcTemplate jdbc) {
+            this.jdbc = jdbc;
+        }
+
+        void add(String sql, Object... row) {
+            if (!sql.equals(this.sql)) flush();
+            this.sql = sql;
+            args.add(row);
+        }
+
+        void flush() {
+            if (args.isEmpty()) return;
+            if (args.size() == 1) {
+                jdbc.update(sql, args.get(0));
+            } else {
+                jdbc.batchUpdate(sql, args);
+            }
+            args.clear();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.kindergarten.service;
+
+import com.kindergarten.repository.MessageBlobRepository;
+import com.kindergarten.repository.MessageRepository;
+import com.kindergarten.repository.SessionRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * 一个物理分片：chat_session / chat_message / chat_message_blob 所在的数据源及其仓库、事务。
+ * 物理分片 0 为主库，直接使用 Spring 容器中的 Repository 与事务管理器；其余由 ShardingConfig 创建。
+ */
+public final class ChatShard {
+
+    private final int index;
+    private final SessionRepository sessions;
+    private final MessageRepository messages;
+    private final MessageBlobRepository blobs;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final TransactionTemplate newTx;
+    private final TransactionTemplate readOnlyTx;
+
+    public ChatShard(int index, SessionRepository sessions, MessageRepository messages,
+                     MessageBlobRepository blobs, JdbcTemplate jdbc, PlatformTransactionManager transactionManager) {
+        this.index = index;
+        this.sessions = sessions;
+        this.messages = messages;
+        this.blobs = blobs;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.newTx = new TransactionTemplate(transactionManager);
+        this.newTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
+    public int index() { return index; }
+    public SessionRepository sessions() { return sessions; }
+    public MessageRepository messages() { return messages; }
+    public MessageBlobRepository blobs() { return blobs; }
+    public JdbcTemplate jdbc() { return jdbc; }
+    /** 本分片上的事务（已有事务则加入） */
+    public TransactionTemplate tx() { return tx; }
+    /** 本分片上的独立新事务 */
+    public TransactionTemplate newTx() { return newTx; }
+    public TransactionTemplate readOnlyTx() { return readOnlyTx; }
+
+    @Override
+    public String toString() {
+        return "shard-" + index;
+    }
+}
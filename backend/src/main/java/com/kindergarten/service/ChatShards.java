@@ -0,0 +1,149 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.ShardAssignment.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 会话存储分片路由：会话 ID / 用户 ID → 逻辑分片 → 物理分片（ChatShard）。
+ *
+ * - 按会话 ID：取 ID 低 8 位的逻辑分片（ShardedIds），无需查询；
+ * - 按用户 ID（会话列表、导出、新建会话）：用户 ID 散列得到逻辑分片，该用户的会话全部在这里；
+ * - 逻辑 → 物理映射存于主库 chat_shard_map，本地缓存为不可变快照，定期刷新；
+ * - 逻辑分片冻结（迁移收尾中，state = FROZEN）时 ChatProjector 暂存其事件，解冻后按新映射写入。
+ *
+ * 首次启动时按「逻辑分片号 mod 物理分片数」初始化映射；之后增加物理分片不会自动移动数据，
+ * 需通过 ShardMigrator 逐个迁移逻辑分片。
+ */
+public class ChatShards {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatShards.class);
+
+    private final List<ChatShard> shards;
+    private final JdbcTemplate mapJdbc;
+    private final ShardedIds ids;
+    /** 物理分片 1..N 的连接池与 EntityManagerFactory，关闭时逆序释放 */
+    private final List<AutoCloseable> resources;
+
+    private volatile Layout layout;
+
+    /**
+     * 某一时刻的映射快照。
+     *
+     * @param physical 逻辑分片 → 物理分片下标
+     * @param frozen   逻辑分片是否暂停写入
+     */
+    public record Layout(int[] physical, boolean[] frozen) {
+        public int physicalOf(int logicalShard) { return physical[logicalShard]; }
+        public boolean isFrozen(int logicalShard) { return frozen[logicalShard]; }
+    }
+
+    public ChatShards(List<ChatShard> shards, JdbcTemplate mapJdbc, ShardedIds ids, List<AutoCloseable> resources) {
+        this.shards = List.copyOf(shards);
+        this.mapJdbc = mapJdbc;
+        this.ids = ids;
+        this.resources = new ArrayList<>(resources);
+        seedIfEmpty();
+        refresh();
+        log.info("会话存储分片: {} 个物理分片，{} 个逻辑分片", this.shards.size(), ShardedIds.LOGICAL_SHARDS);
+    }
+
+    public ShardedIds ids() { return ids; }
+
+    public List<ChatShard> all() { return shards; }
+
+    public ChatShard get(int physicalShard) { return shards.get(physicalShard); }
+
+    public Layout layout() { return layout; }
+
+    /** 会话所在物理分片（读） */
+    public ChatShard forSession(long sessionId) {
+        return shards.get(layout.physicalOf(ShardedIds.logicalShardOf(sessionId)));
+    }
+
+    /** 用户的会话所在物理分片（读） */
+    public ChatShard forUser(long userId) {
+        return shards.get(layout.physicalOf(ShardedIds.logicalShardOfUser(userId)));
+    }
+
+    /**
+     * 条件修改一个逻辑分片的映射：只有当前为 (fromPhysical, fromState) 时才改为 (toPhysical, toState)，
+     * 多个节点同时发起迁移时只有一个成功。成功后立即刷新本节点缓存，其他节点在下一次刷新时生效。
+     */
+    public boolean transition(int logicalShard, int fromPhysical, State fromState, int toPhysical, State toState) {
+        if (toPhysical < 0 || toPhysical >= shards.size()) {
+            throw new IllegalArgumentException("物理分片不存在: " + toPhysical);
+        }
+        int updated = mapJdbc.update("update chat_shard_map set physical_shard = ?, state = ?, updated_at = ? "
+                        + "where logical_shard = ? and physical_shard = ? and state = ?",
+                toPhysical, toState.name(), Timestamp.valueOf(LocalDateTime.now()),
+                logicalShard, fromPhysical, fromState.name());
+        refresh();
+        return updated == 1;
+    }
+
+    @Scheduled(fixedDelayString = "${kindergarten.sharding.map-refresh-ms:1000}",
+            initialDelayString = "${kindergarten.sharding.map-refresh-ms:1000}")
+    public void refresh() {
+        var physical = new int[ShardedIds.LOGICAL_SHARDS];
+        var frozen = new boolean[ShardedIds.LOGICAL_SHARDS];
+        var loaded = new boolean[ShardedIds.LOGICAL_SHARDS];
+        try {
+            mapJdbc.query("select logical_shard, physical_shard, state from chat_shard_map", rs -> {
+                int logical = rs.getInt(1);
+                if (logical < 0 || logical >= ShardedIds.LOGICAL_SHARDS) return;
+                physical[logical] = rs.getInt(2);
+                frozen[logical] = State.FROZEN.name().equals(rs.getString(3));
+                loaded[logical] = true;
+            });
+        } catch (RuntimeException e) {
+            if (layout == null) throw e;
+            // 主库短暂不可用时沿用上一次的映射
+            log.warn("刷新分片映射失败，沿用缓存: {}", e.getMessage());
+            return;
+        }
+        for (int i = 0; i < ShardedIds.LOGICAL_SHARDS; i++) {
+            if (!loaded[i]) throw new IllegalStateException("chat_shard_map 缺少逻辑分片 " + i);
+            if (physical[i] >= shards.size()) {
+                throw new IllegalStateException("逻辑分片 " + i + " 映射到未配置的物理分片 " + physical[i]
+                        + "，kindergarten.sharding.shards 只能追加不能删除");
+            }
+        }
+        layout = new Layout(physical, frozen);
+    }
+
+    private void seedIfEmpty() {
+        Integer existing = mapJdbc.queryForObject("select count(*) from chat_shard_map", Integer.class);
+        if (existing != null && existing >= ShardedIds.LOGICAL_SHARDS) return;
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < ShardedIds.LOGICAL_SHARDS; i++) {
+            try {
+                mapJdbc.update("insert into chat_shard_map (logical_shard, physical_shard, state, updated_at) "
+                        + "select ?, ?, ?, ? from (select 1) t where not exists "
+                        + "(select 1 from chat_shard_map where logical_shard = ?)",
+                        i, i % shards.size(), State.ACTIVE.name(), now, i);
+            } catch (DuplicateKeyException e) {
+                // 其他节点同时在初始化
+            }
+        }
+        log.info("已初始化分片映射: {} 个逻辑分片 → {} 个物理分片", ShardedIds.LOGICAL_SHARDS, shards.size());
+    }
+
+    public void close() {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception e) {
+                log.warn("关闭分片资源失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.kindergarten.service;
+
+/**
+ * 去重计数草图（HyperLogLog，2^10 个寄存器，1 KB，标准误差约 3%，可合并）。
+ *
+ * 基数较小时改用线性计数，单个分钟桶里只有几个用户也基本准确；合并即逐寄存器取最大值。
+ * 非线程安全，由调用方加锁（见 ChatAnalytics）。
+ */
+public final class DistinctCounter {
+
+    private static final int P = 10;
+    private static final int M = 1 << P;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    private final byte[] registers;
+
+    public DistinctCounter() {
+        this(new byte[M]);
+    }
+
+    private DistinctCounter(byte[] registers) {
+        this.registers = registers;
+    }
+
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (Long.SIZE - P));
+        int rank = Long.numberOfLeadingZeros(hash << P | (1L << (P - 1))) + 1;
+        if (rank > registers[index]) registers[index] = (byte) rank;
+    }
+
+    public void merge(DistinctCounter other) {
+        for (int i = 0; i < M; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double raw = ALPHA * M * M / sum;
+        if (raw <= 2.5 * M && zeros > 0) {
+            return Math.round(M * Math.log((double) M / zeros));
+        }
+        return Math.round(raw);
+    }
+
+    public byte[] toBytes() {
+        return registers.clone();
+    }
+
+    public static DistinctCounter fromBytes(byte[] bytes) {
+        return bytes != null && bytes.length == M ? new DistinctCounter(bytes.clone()) : new DistinctCounter();
+    }
+
+    /** SplitMix64 的终结函数：用户 ID 连续也能均匀散列 */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,103 @@
+package com.kindergarten.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 把导出用的简单 Markdown 转为最小化的 DOCX（WordprocessingML）。
+ *
+ * 只包含 Word 打开所需的三个部件：[Content_Types].xml、_rels/.rels、word/document.xml；
+ * 标题行（#、##）转为加粗大号段落，列表项保留项目符号，其余每行一个段落，去掉行内 ** 标记。
+ * 不引入 POI 等依赖，满足「把生成的文案带走」的需要即可，不追求还原复杂排版。
+ */
+final class DocxWriter {
+
+    private static final String CONTENT_TYPES = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Types xmlns="http://schemas.openxmlformats.org/package/2006/content-types">\
+            <Default Extension="rels" ContentType="application/vnd.openxmlformats-package.relationships+xml"/>\
+            <Default Extension="xml" ContentType="application/xml"/>\
+            <Override PartName="/word/document.xml" \
+            ContentType="application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml"/>\
+            </Types>""";
+
+    private static final String RELS = """
+            <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+            <Relationships xmlns="http://schemas.openxmlformats.org/package/2006/relationships">\
+            <Relationship Id="rId1" \
+            Type="http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument" \
+            Target="word/document.xml"/>\
+            </Relationships>""";
+
+    private DocxWriter() {}
+
+    static byte[] fromMarkdown(CharSequence markdown) {
+        var buffer = new ByteArrayOutputStream(markdown.length() * 2 + 1024);
+        try (var zip = new ZipOutputStream(buffer, StandardCharsets.UTF_8)) {
+            put(zip, "[Content_Types].xml", CONTENT_TYPES);
+            put(zip, "_rels/.rels", RELS);
+            put(zip, "word/document.xml", document(markdown));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static String document(CharSequence markdown) {
+        var xml = new StringBuilder(markdown.length() * 2 + 512);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>")
+                .append("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>");
+        for (String line : markdown.toString().split("\n", -1)) {
+            var trimmed = line.strip();
+            if (trimmed.startsWith("# ")) {
+                paragraph(xml, trimmed.substring(2), 36);
+            } else if (trimmed.startsWith("## ")) {
+                paragraph(xml, trimmed.substring(3), 30);
+            } else if (trimmed.startsWith("### ")) {
+                paragraph(xml, trimmed.substring(4), 26);
+            } else if (trimmed.startsWith("- ") || trimmed.startsWith("* ")) {
+                paragraph(xml, "• " + trimmed.substring(2), 0);
+            } else {
+                paragraph(xml, line, 0);
+            }
+        }
+        return xml.append("<w:sectPr/></w:body></w:document>").toString();
+    }
+
+    /** @param headingHalfPoints 标题字号（半磅），0 表示正文 */
+    private static void paragraph(StringBuilder xml, String text, int headingHalfPoints) {
+        xml.append("<w:p><w:r>");
+        if (headingHalfPoints > 0) {
+            xml.append("<w:rPr><w:b/><w:sz w:val=\"").append(headingHalfPoints).append("\"/></w:rPr>");
+        }
+        xml.append("<w:t xml:space=\"preserve\">");
+        escape(xml, text.replace("**", ""));
+        xml.append("</w:t></w:r></w:p>");
+    }
+
+    private static void escape(StringBuilder xml, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> xml.append("&amp;");
+                case '<' -> xml.append("&lt;");
+                case '>' -> xml.append("&gt;");
+                case '"' -> xml.append("&quot;");
+                default -> {
+                    // XML 1.0 不允许的控制字符直接丢弃
+                    if (c >= 0x20 || c == '\t') xml.append(c);
+                }
+            }
+        }
+    }
+}
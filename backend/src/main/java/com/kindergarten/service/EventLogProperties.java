@@ -0,0 +1,49 @@
+package com.kindergarten.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 会话事件日志配置，从 application.yml 的 kindergarten.event-log 下读取。
+ *
+ * @param dir                  段文件所在目录；实际目录为其下的 node-{节点号}（NodeLeaseHolder 租得），每个实例独立
+ * @param segmentBytes         单个段文件大小，写满后滚动到新段
+ * @param fsync                always：每次组提交后 fsync 再确认写入；interval：按 fsyncIntervalMs 定期 fsync；
+ *                             never：交给操作系统回写
+ * @param fsyncIntervalMs      interval 策略的 fsync 间隔
+ * @param maxBatch             一次组提交最多合并的事件数
+ * @param appendTimeoutMs      等待写入确认的超时
+ * @param retentionMs          已投影的段保留多久后删除，供其他消费者追读
+ * @param projectionBatch      投影每批处理的事件数
+ * @param checkpointIntervalMs 投影检查点（已应用的偏移量）写入主库的间隔
+ * @param projectionWaitMs     读取刚写入的会话时等待投影追上的最长时间，超时返回 503
+ */
+@ConfigurationProperties(prefix = "kindergarten.event-log")
+public record EventLogProperties(
+        String dir,
+        Integer segmentBytes,
+        String fsync,
+        Long fsyncIntervalMs,
+        Integer maxBatch,
+        Long appendTimeoutMs,
+        Long retentionMs,
+        Integer projectionBatch,
+        Long checkpointIntervalMs,
+        Long projectionWaitMs
+) {
+    public EventLogProperties {
+        dir = dir != null && !dir.isBlank() ? dir : System.getProperty("java.io.tmpdir") + "/kindergarten-agent/events";
+        segmentBytes = segmentBytes != null && segmentBytes >= 1 << 20 ? segmentBytes : 64 << 20;
+        fsync = fsync != null && !fsync.isBlank() ? fsync : "always";
+        fsyncIntervalMs = fsyncIntervalMs != null && fsyncIntervalMs > 0 ? fsyncIntervalMs : 200L;
+        maxBatch = maxBatch != null && maxBatch > 0 ? maxBatch : 256;
+        appendTimeoutMs = appendTimeoutMs != null && appendTimeoutMs > 0 ? appendTimeoutMs : 5000L;
+        retentionMs = retentionMs != null && retentionMs >= 0 ? retentionMs : 7L * 24 * 3600 * 1000;
+        projectionBatch = projectionBatch != null && projectionBatch > 0 ? projectionBatch : 500;
+        checkpointIntervalMs = checkpointIntervalMs != null && checkpointIntervalMs > 0 ? checkpointIntervalMs : 1000L;
+        projectionWaitMs = projectionWaitMs != null && projectionWaitMs > 0 ? projectionWaitMs : 10000L;
+    }
+
+    public ChatEventLog.FsyncPolicy fsyncPolicy() {
+        return ChatEventLog.FsyncPolicy.valueOf(fsync.trim().toUpperCase());
+    }
+}
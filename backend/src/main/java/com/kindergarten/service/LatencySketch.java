@@ -0,0 +1,81 @@
+package com.kindergarten.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 延迟分位数草图（对数分桶，相对误差约 2%，可合并）。
+ *
+ * 值 v（毫秒，≥ 1）落入桶 ceil(log(v) / log(γ))，γ = (1 + α) / (1 - α)；分位数取对应桶的中点估计。
+ * 1 ms–1 h 约 380 个桶，只分配到出现过的最大桶为止；合并即逐桶相加，因此可以跨时间桶、跨节点汇总。
+ * 非线程安全，由调用方加锁（见 ChatAnalytics）。
+ */
+public final class LatencySketch {
+
+    private static final double RELATIVE_ACCURACY = 0.02;
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    /** 超过 1 小时的值记入最后一个桶 */
+    private static final int MAX_INDEX = index(3_600_000);
+
+    private int[] counts = new int[0];
+    private long total;
+
+    public void add(long valueMs) {
+        int i = Math.min(index(Math.max(1, valueMs)), MAX_INDEX);
+        if (i >= counts.length) counts = Arrays.copyOf(counts, Math.min(MAX_INDEX + 1, Math.max(i + 1, counts.length * 2)));
+        counts[i]++;
+        total++;
+    }
+
+    public void merge(LatencySketch other) {
+        if (other.counts.length > counts.length) counts = Arrays.copyOf(counts, other.counts.length);
+        for (int i = 0; i < other.counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /** q 分位数（毫秒），没有数据时为 0 */
+    public long quantile(double q) {
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                // 桶 (γ^(i-1), γ^i] 的中点
+                return Math.round(2 * Math.pow(GAMMA, i) / (GAMMA + 1));
+            }
+        }
+        return Math.round(Math.pow(GAMMA, counts.length - 1));
+    }
+
+    /** | 桶数 int | 各桶计数 int | */
+    public byte[] toBytes() {
+        int length = counts.length;
+        while (length > 0 && counts[length - 1] == 0) length--;
+        var buffer = ByteBuffer.allocate(Integer.BYTES * (length + 1)).putInt(length);
+        for (int i = 0; i < length; i++) buffer.putInt(counts[i]);
+        return buffer.array();
+    }
+
+    public static LatencySketch fromBytes(byte[] bytes) {
+        var sketch = new LatencySketch();
+        if (bytes == null || bytes.length < Integer.BYTES) return sketch;
+        var buffer = ByteBuffer.wrap(bytes);
+        int length = Math.min(buffer.getInt(), Math.min(MAX_INDEX + 1, buffer.remaining() / Integer.BYTES));
+        sketch.counts = new int[Math.max(0, length)];
+        for (int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = buffer.getInt();
+            sketch.total += sketch.counts[i];
+        }
+        return sketch;
+    }
+
+    private static int index(long valueMs) {
+        return (int) Math.ceil(Math.log(valueMs) / LOG_GAMMA);
+    }
+}
@@ -0,0 +1,104 @@
+package com.kindergarten.service;
+
+import dev.langchain4j.model.openai.OpenAiTokenUsage;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM 调用指标（Micrometer），可通过 /actuator/metrics 查看。
+ *
+ * - llm.prompt.tokens{template, version, cache=hit|miss}：输入 token，区分是否命中服务端前缀缓存
+ * - llm.completion.tokens{template}：输出 token
+ * - llm.request.latency{tier, model, mode=sync|stream, outcome}：按档位的调用耗时
+ * - llm.stream.ttft{tier, model}：流式首个 token 耗时
+ * - llm.cost{tier, model}：按配置单价估算的费用（元）
+ * - llm.tier.in.flight{tier}：各档在途请求数（含超时后仍在运行的调用）
+ * - llm.tier.queued{tier}：各档排队等待许可的请求数
+ */
+@Component
+public class LlmMetrics {
+
+    private final MeterRegistry registry;
+
+    public LlmMetrics(MeterRegistry registry, LlmTiers tiers) {
+        this.registry = registry;
+        for (LlmTier t : tiers.all()) {
+            Gauge.builder("llm.tier.in.flight", t, LlmTier::inFlight)
+                    .tag("tier", t.tier().tag())
+                    .register(registry);
+            Gauge.builder("llm.tier.queued", t, LlmTier::queued)
+                    .tag("tier", t.tier().tag())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * 记录一次按档位的调用：耗时、结果与估算费用。
+     *
+     * @param mode       sync / stream
+     * @param startNanos 调用开始时的 System.nanoTime()
+     * @param usage      token 用量，失败时可为 null
+     * @param error      失败原因，成功时为 null
+     */
+    public void recordCall(LlmTier tier, String mode, long startNanos, TokenUsage usage, Throwable error) {
+        var model = tier.config().model();
+        Timer.builder("llm.request.latency")
+                .tag("tier", tier.tier().tag())
+                .tag("model", model)
+                .tag("mode", mode)
+                .tag("outcome", error == null ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (usage == null) return;
+        int input = usage.inputTokenCount() != null ? usage.inputTokenCount() : 0;
+        int output = usage.outputTokenCount() != null ? usage.outputTokenCount() : 0;
+        double cost = (input * tier.config().inputPricePerMillion()
+                + output * tier.config().outputPricePerMillion()) / 1_000_000d;
+        registry.counter("llm.cost", "tier", tier.tier().tag(), "model", model).increment(cost);
+    }
+
+    /** 记录流式调用从发起到首个 token 的耗时。 */
+    public void recordTimeToFirstToken(LlmTier tier, long startNanos) {
+        Timer.builder("llm.stream.ttft")
+                .tag("tier", tier.tier().tag())
+                .tag("model", tier.config().model())
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次调用的 token 用量。cachedTokens 来自 OpenAI 兼容响应的 prompt_tokens_details.cached_tokens，
+     * 服务端未返回时视为全部未命中。
+     */
+    public void recordTokenUsage(PromptTemplate template, TokenUsage usage) {
+        if (template == null || usage == null) return;
+        int input = usage.inputTokenCount() != null ? usage.inputTokenCount() : 0;
+        int output = usage.outputTokenCount() != null ? usage.outputTokenCount() : 0;
+        int cached = cachedTokens(usage);
+
+        registry.counter("llm.prompt.tokens",
+                "template", template.docTypeId(), "version", template.version(), "cache", "hit")
+                .increment(cached);
+        registry.counter("llm.prompt.tokens",
+                "template", template.docTypeId(), "version", template.version(), "cache", "miss")
+                .increment(Math.max(0, input - cached));
+        registry.counter("llm.completion.tokens", "template", template.docTypeId())
+                .increment(output);
+    }
+
+    static int cachedTokens(TokenUsage usage) {
+        if (usage instanceof OpenAiTokenUsage u
+                && u.inputTokensDetails() != null
+                && u.inputTokensDetails().cachedTokens() != null) {
+            return u.inputTokensDetails().cachedTokens();
+        }
+        return 0;
+    }
+}
@@ -2,16 +2,114 @@ package com.kindergarten.service;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.List;
+
 /**
  * LLM 配置属性，从 application.yml 的 kindergarten.llm 下读取。
  *
  * Java 16+ Record + @ConfigurationProperties：
  * Spring Boot 会把 yml 中的 kindergarten.llm.base-url 等自动绑定到 Record 字段。
+ *
+ * fast / reasoning 为两档模型：简单文案走快速档，复杂文案走推理档，由 ModelRouter 选择。
+ * 未配置 fast.model 时使用顶层 model。
  */
 @ConfigurationProperties(prefix = "kindergarten.llm")
 public record LlmProperties(
         String baseUrl,
         String apiKey,
-        String model
+        String model,
+        Tier fast,
+        Tier reasoning,
+        Routing routing,
+        Http http
 ) {
+    public LlmProperties {
+        fast = Tier.withDefaults(fast, model);
+        reasoning = Tier.withDefaults(reasoning, fast.model());
+        routing = routing != null ? routing : new Routing(null, null, null);
+        http = http != null ? http : new Http(null, null, null, null, null, null);
+    }
+
+    public Tier tier(ModelTier tier) {
+        return tier == ModelTier.REASONING ? reasoning : fast;
+    }
+
+    /**
+     * 单档模型配置。
+     *
+     * @param model                   模型名称
+     * @param timeout                 单次调用超时（同步为整体耗时，流式为整个流）
+     * @param maxConcurrency          该档同时在途的请求上限
+     * @param queueTimeout            并发已满时的最长排队时间，超时直接失败
+     * @param inputPricePerMillion    输入单价（元 / 百万 token），用于成本指标
+     * @param outputPricePerMillion   输出单价（元 / 百万 token）
+     */
+    public record Tier(
+            String model,
+            Duration timeout,
+            Integer maxConcurrency,
+            Duration queueTimeout,
+            Double inputPricePerMillion,
+            Double outputPricePerMillion
+    ) {
+        static Tier withDefaults(Tier t, String defaultModel) {
+            if (t == null) t = new Tier(null, null, null, null, null, null);
+            return new Tier(
+                    t.model() != null && !t.model().isBlank() ? t.model() : defaultModel,
+                    t.timeout() != null ? t.timeout() : Duration.ofSeconds(90),
+                    t.maxConcurrency() != null && t.maxConcurrency() > 0 ? t.maxConcurrency() : 32,
+                    t.queueTimeout() != null ? t.queueTimeout() : Duration.ofSeconds(10),
+                    t.inputPricePerMillion() != null ? t.inputPricePerMillion() : 0d,
+                    t.outputPricePerMillion() != null ? t.outputPricePerMillion() : 0d
+            );
+        }
+    }
+
+    /**
+     * 路由规则：命中任一条件即走推理档。
+     *
+     * @param reasoningDocTypes      需要推理档的文案类型（如 课程设计、教研计划）
+     * @param promptCharsThreshold   上下文总字数超过该值
+     * @param historyDepthThreshold  历史消息条数超过该值
+     */
+    public record Routing(
+            List<String> reasoningDocTypes,
+            Integer promptCharsThreshold,
+            Integer historyDepthThreshold
+    ) {
+        public Routing {
+            reasoningDocTypes = reasoningDocTypes != null ? List.copyOf(reasoningDocTypes) : List.of();
+            promptCharsThreshold = promptCharsThreshold != null ? promptCharsThreshold : 4000;
+            historyDepthThreshold = historyDepthThreshold != null ? historyDepthThreshold : 16;
+        }
+    }
+
+    /**
+     * 所有模型共享的 HTTP 客户端配置（JDK HttpClient）。
+     *
+     * @param connectTimeout     建连（含 TLS 握手）超时
+     * @param firstByteTimeout   发出请求到收到响应头的超时；流式响应体的总时长由档位 timeout 控制
+     * @param http2              是否优先使用 HTTP/2（单连接多路复用，服务端不支持时自动降级 HTTP/1.1）
+     * @param executorThreads    HTTP 客户端异步回调线程数
+     * @param warmup             启动时是否预热连接（就绪前完成 TLS 握手并校验连通性）
+     * @param warmupConnections  预热时并发发起的请求数
+     */
+    public record Http(
+            Duration connectTimeout,
+            Duration firstByteTimeout,
+            Boolean http2,
+            Integer executorThreads,
+            Boolean warmup,
+            Integer warmupConnections
+    ) {
+        public Http {
+            connectTimeout = connectTimeout != null ? connectTimeout : Duration.ofSeconds(5);
+            firstByteTimeout = firstByteTimeout != null ? firstByteTimeout : Duration.ofSeconds(60);
+            http2 = http2 != null ? http2 : Boolean.TRUE;
+            executorThreads = executorThreads != null && executorThreads > 0 ? executorThreads : 16;
+            warmup = warmup != null ? warmup : Boolean.TRUE;
+            warmupConnections = warmupConnections != null && warmupConnections > 0 ? warmupConnections : 2;
+        }
+    }
 }
@@ -2,12 +2,9 @@ package com.kindergarten.service;
 
 import dev.langchain4j.data.message.AiMessage;
 import dev.langchain4j.data.message.ChatMessage;
-import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 
 import com.kindergarten.entity.Message;
-import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.chat.response.ChatResponse;
 import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import org.slf4j.Logger;
@@ -17,83 +14,230 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 大模型（LLM）调用服务，基于 LangChain4j。
  *
  * 使用 ChatModel 做同步调用、StreamingChatModel 做流式调用，
  * 支持任意 OpenAI 兼容 API（DeepSeek、通义、OpenAI 等）。
+ * 每次请求由 ModelRouter 选择快速档或推理档，各档有独立的超时与并发许可（见 LlmTier）。
+ * 调用方通过 UsageLedger.reserve 预占额度后传入 Reservation，本类在拿到响应的 token 用量后记账。
  */
 @Service
 public class LlmService {
 
     private static final Logger log = LoggerFactory.getLogger(LlmService.class);
 
-    private static final String SYSTEM_PROMPT = """
-            你是面向幼儿园教师的智能助手，专门帮助老师完成教育教学、班级管理、家长沟通等文案创作。
-            回答时请专业、实用，符合幼教场景。若用户未说明具体需求，可适当追问或给出示例建议。
-            """;
+    private final LlmTiers tiers;
+    private final ModelRouter modelRouter;
+    private final PromptCatalog promptCatalog;
+    private final LlmMetrics llmMetrics;
+    private final LlmTracing tracing;
 
-    private final ChatModel chatModel;
-    private final StreamingChatModel streamingChatModel;
-
-    public LlmService(ChatModel openAiChatModel, StreamingChatModel openAiStreamingChatModel) {
-        this.chatModel = openAiChatModel;
-        this.streamingChatModel = openAiStreamingChatModel;
+    public LlmService(LlmTiers tiers, ModelRouter modelRouter, PromptCatalog promptCatalog, LlmMetrics llmMetrics,
+                      LlmTracing tracing) {
+        this.tiers = tiers;
+        this.modelRouter = modelRouter;
+        this.promptCatalog = promptCatalog;
+        this.llmMetrics = llmMetrics;
+        this.tracing = tracing;
     }
 
     /**
      * 同步聊天：支持历史上下文。
+     * @param docTypeId 文案类型 ID，决定使用的 Prompt 模板
      * @param history 历史消息（含本次用户消息，按时间正序）
+     * @param tierOverride 用户指定的模型档位，null 表示由 ModelRouter 自动选择
+     * @param reservation 额度预占，成功时记入用量、失败时退回；null 表示不计入用户用量
      */
-    public Mono<String> chat(java.util.List<Message> history) {
-        List<ChatMessage> messages = buildMessages(history);
-        log.info("LLM 同步请求, history 消息数: {}", history != null ? history.size() : 0);
-        return Mono.fromCallable(() -> {
-                    var response = chatModel.chat(messages);
-                    String text = response.aiMessage() != null ? response.aiMessage().text() : null;
-                    log.info("LLM 同步响应, 长度: {}", text != null ? text.length() : 0);
-                    return text != null ? text : "";
+    public Mono<String> chat(String docTypeId, java.util.List<Message> history, ModelTier tierOverride,
+                             UsageLedger.Reservation reservation) {
+        var template = promptCatalog.get(docTypeId);
+        var tier = tiers.get(modelRouter.route(docTypeId, history, tierOverride));
+        List<ChatMessage> messages = buildMessages(template, history);
+        log.info("LLM 同步请求, 模板: {}@{}, 档位: {}({}), history 消息数: {}",
+                template.docTypeId(), template.version(), tier.tier().tag(), tier.config().model(),
+                history != null ? history.size() : 0);
+        var settlement = new Settlement();
+        var parent = tracing.current();
+        var queueSpan = tracing.startQueue(parent, tier);
+        return tier.withPermit(permit -> Mono.fromCallable(() -> {
+                    // 超时或取消后许可仍被本次调用占用，直到阻塞调用真正返回
+                    if (!settlement.start()) throw new CancellationException("请求已取消");
+                    if (!permit.begin()) {
+                        cancel(reservation);
+                        throw new CancellationException("请求已取消");
+                    }
+                    queueSpan.end();
+                    var span = tracing.startCall(queueSpan, "llm.chat", tier, template);
+                    long start = System.nanoTime();
+                    try (var ignored = tracing.inScope(span)) {
+                        var response = tier.chatModel().chat(messages);
+                        llmMetrics.recordTokenUsage(template, response.tokenUsage());
+                        llmMetrics.recordCall(tier, "sync", start, response.tokenUsage(), null);
+                        // 管道已超时也照常记账：上游已经产生了用量
+                        if (reservation != null) reservation.commit(tier.tier(), response.tokenUsage());
+                        LlmTracing.finish(span, response.tokenUsage());
+                        String text = response.aiMessage() != null ? response.aiMessage().text() : null;
+                        log.info("LLM 同步响应, 长度: {}", text != null ? text.length() : 0);
+                        return text != null ? text : "";
+                    } catch (RuntimeException e) {
+                        llmMetrics.recordCall(tier, "sync", start, null, e);
+                        cancel(reservation);
+                        LlmTracing.fail(span, e);
+                        throw e;
+                    } finally {
+                        permit.end();
+                    }
                 })
                 .subscribeOn(Schedulers.boundedElastic())
-                .timeout(Duration.ofSeconds(90));
+                .timeout(tier.config().timeout())
+                .flux())
+                .next()
+                .doOnError(e -> {
+                    // 排队超时等未进入调用的失败记在 llm.queue 上；已结束的 Span 再次结束会被忽略
+                    LlmTracing.fail(queueSpan, e);
+                    abandon(settlement, reservation);
+                })
+                .doOnCancel(() -> {
+                    queueSpan.end();
+                    abandon(settlement, reservation);
+                });
     }
 
     /**
      * 流式聊天：支持历史上下文。
+     * @param docTypeId 文案类型 ID，决定使用的 Prompt 模板
      * @param history 历史消息（含本次用户消息，按时间正序）
+     * @param tierOverride 用户指定的模型档位，null 表示由 ModelRouter 自动选择
+     * @param reservation 额度预占，成功时记入用量、失败时退回；null 表示不计入用户用量
      */
-    public Flux<String> chatStream(java.util.List<Message> history) {
-        List<ChatMessage> messages = buildMessages(history);
-        log.info("LLM 流式请求, history 消息数: {}", history != null ? history.size() : 0);
-        return Flux.<String>create(sink -> streamingChatModel.chat(messages, new StreamingChatResponseHandler() {
-                    @Override
-                    public void onPartialResponse(String partialResponse) {
-                        if (partialResponse != null && !partialResponse.isEmpty()) {
-                            sink.next(partialResponse);
-                        }
+    public Flux<String> chatStream(String docTypeId, java.util.List<Message> history, ModelTier tierOverride,
+                                   UsageLedger.Reservation reservation) {
+        var template = promptCatalog.get(docTypeId);
+        var tier = tiers.get(modelRouter.route(docTypeId, history, tierOverride));
+        List<ChatMessage> messages = buildMessages(template, history);
+        log.info("LLM 流式请求, 模板: {}@{}, 档位: {}({}), history 消息数: {}",
+                template.docTypeId(), template.version(), tier.tier().tag(), tier.config().model(),
+                history != null ? history.size() : 0);
+        var settlement = new Settlement();
+        var parent = tracing.current();
+        var queueSpan = tracing.startQueue(parent, tier);
+        return tier.withPermit(permit -> Flux.<String>create(sink -> {
+                    if (!settlement.start()) {
+                        sink.error(new CancellationException("请求已取消"));
+                        return;
                     }
-
-                    @Override
-                    public void onCompleteResponse(ChatResponse completeResponse) {
-                        log.debug("LLM 流式结束");
-                        sink.complete();
+                    if (!permit.begin()) {
+                        cancel(reservation);
+                        sink.error(new CancellationException("请求已取消"));
+                        return;
                     }
+                    queueSpan.end();
+                    var span = tracing.startCall(queueSpan, "llm.stream", tier, template);
+                    sink.onCancel(() -> {
+                        span.event("cancelled");
+                        span.end();
+                    });
+                    long start = System.nanoTime();
+                    var firstToken = new java.util.concurrent.atomic.AtomicBoolean(true);
+                    var chunks = new java.util.concurrent.atomic.AtomicInteger();
+                    // 取消或超时不会中断上游的流式响应，许可在回调结束（完成/出错）时才归还，额度也在回调中结算
+                    try {
+                        tier.streamingChatModel().chat(messages, new StreamingChatResponseHandler() {
+                            @Override
+                            public void onPartialResponse(String partialResponse) {
+                                if (partialResponse != null && !partialResponse.isEmpty()) {
+                                    if (firstToken.compareAndSet(true, false)) {
+                                        llmMetrics.recordTimeToFirstToken(tier, start);
+                                        span.event("first_token");
+                                    }
+                                    chunks.incrementAndGet();
+                                    sink.next(partialResponse);
+                                }
+                            }
+
+                            @Override
+                            public void onCompleteResponse(ChatResponse completeResponse) {
+                                log.debug("LLM 流式结束");
+                                llmMetrics.recordTokenUsage(template, completeResponse.tokenUsage());
+                                llmMetrics.recordCall(tier, "stream", start, completeResponse.tokenUsage(), null);
+                                if (reservation != null) reservation.commit(tier.tier(), completeResponse.tokenUsage());
+                                span.event("last_token");
+                                span.tag("llm.chunks", String.valueOf(chunks.get()));
+                                LlmTracing.finish(span, completeResponse.tokenUsage());
+                                permit.end();
+                                sink.complete();
+                            }
 
-                    @Override
-                    public void onError(Throwable error) {
-                        log.warn("LLM 流式错误: {}", error.getMessage());
-                        sink.error(error);
+                            @Override
+                            public void onError(Throwable error) {
+                                log.warn("LLM 流式错误: {}", error.getMessage());
+                                llmMetrics.recordCall(tier, "stream", start, null, error);
+                                cancel(reservation);
+                                span.tag("llm.chunks", String.valueOf(chunks.get()));
+                                LlmTracing.fail(span, error);
+                                permit.end();
+                                sink.error(error);
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        llmMetrics.recordCall(tier, "stream", start, null, e);
+                        cancel(reservation);
+                        permit.end();
+                        LlmTracing.fail(span, e);
+                        sink.error(e);
                     }
-                }))
-                .timeout(Duration.ofSeconds(90));
+                })
+                .timeout(tier.config().timeout()))
+                .doOnError(e -> {
+                    LlmTracing.fail(queueSpan, e);
+                    abandon(settlement, reservation);
+                })
+                .doOnCancel(() -> {
+                    queueSpan.end();
+                    abandon(settlement, reservation);
+                });
+    }
+
+    private static void cancel(UsageLedger.Reservation reservation) {
+        if (reservation != null) reservation.cancel();
+    }
+
+    /** 管道结束（排队超时、超时、出错、客户端断开）：调用尚未开始时退回预占，已开始的由调用结束时结算 */
+    private static void abandon(Settlement settlement, UsageLedger.Reservation reservation) {
+        if (settlement.abandon()) cancel(reservation);
     }
 
-    private List<ChatMessage> buildMessages(java.util.List<Message> history) {
+    /**
+     * 一次调用的额度结算归属。调用开始（start）与管道结束（abandon）只有先到的一方成功：
+     * 调用开始后，额度与调用指标只在上游真正返回时结算一次（成功记账、失败退回），超时或取消不再退回预占，
+     * 否则超时后仍完成的调用会消耗 token 却不计入用量。
+     */
+    private static final class Settlement {
+
+        private final AtomicInteger state = new AtomicInteger();
+
+        boolean start() {
+            return state.compareAndSet(0, 1);
+        }
+
+        boolean abandon() {
+            return state.compareAndSet(0, 2);
+        }
+    }
+
+    /**
+     * 组装消息：顺序固定为「系统 Prompt（静态）→ 历史消息 → 本次用户消息」，
+     * 易变内容只出现在末尾，使多轮对话之间的前缀保持一致，提高服务端上下文缓存命中率。
+     * 不要在系统 Prompt 中拼接时间戳、随机数等每次请求都变化的内容。
+     */
+    private List<ChatMessage> buildMessages(PromptTemplate template, java.util.List<Message> history) {
         var list = new java.util.ArrayList<ChatMessage>();
-        list.add(new SystemMessage(SYSTEM_PROMPT));
+        list.add(template.systemMessage());
         if (history != null) {
             for (Message m : history) {
                 if (m.getRole() == Message.Role.user) {
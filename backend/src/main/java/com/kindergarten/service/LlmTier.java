@@ -0,0 +1,154 @@
+package com.kindergarten.service;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 一个模型档位的运行时资源：模型实例 + 并发许可池。
+ *
+ * 每档独立的许可池保证推理档的慢请求不会占满快速档的并发额度。
+ * 排队不占线程：许可用尽时请求以 MonoSink 挂在 FIFO 队列上，归还许可时直接交给队首；
+ * 排队中取消或超时即出队，已交出但未被接收的许可经 discard 钩子归还。
+ * 许可在响应式管道与实际的模型调用都结束后才归还（见 Permit），超时或取消后仍在运行的阻塞调用继续计入并发上限。
+ */
+public class LlmTier {
+
+    private final ModelTier tier;
+    private final LlmProperties.Tier config;
+    private final ChatModel chatModel;
+    private final StreamingChatModel streamingChatModel;
+    /** 空闲许可数，受 this 保护 */
+    private int available;
+    /** 排队中的请求，受 this 保护 */
+    private final ArrayDeque<MonoSink<Permit>> waiters = new ArrayDeque<>();
+
+    public LlmTier(ModelTier tier, LlmProperties.Tier config,
+                   ChatModel chatModel, StreamingChatModel streamingChatModel) {
+        this.tier = tier;
+        this.config = config;
+        this.chatModel = chatModel;
+        this.streamingChatModel = streamingChatModel;
+        this.available = config.maxConcurrency();
+    }
+
+    public ModelTier tier() { return tier; }
+    public LlmProperties.Tier config() { return config; }
+    public ChatModel chatModel() { return chatModel; }
+    public StreamingChatModel streamingChatModel() { return streamingChatModel; }
+
+    /** 当前在途请求数（含超时后仍在运行的调用） */
+    public synchronized int inFlight() {
+        return config.maxConcurrency() - available;
+    }
+
+    /** 当前排队等待许可的请求数 */
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+    /**
+     * 后台低优先级任务使用：无人排队且空闲许可多于 keepFree 时立即占用一个，否则返回 false，不排队。
+     * 成功后必须调用 release() 归还。
+     */
+    public synchronized boolean tryAcquireSpare(int keepFree) {
+        if (available > keepFree && waiters.isEmpty()) {
+            available--;
+            return true;
+        }
+        return false;
+    }
+
+    /** 归还一个许可：有人排队时直接交给队首，否则放回池中 */
+    public void release() {
+        MonoSink<Permit> next;
+        synchronized (this) {
+            next = waiters.poll();
+            if (next == null) {
+                available++;
+                return;
+            }
+        }
+        // 队首已取消时 success 会丢弃该许可，由 acquire() 的 discard 钩子继续归还
+        next.success(new Permit());
+    }
+
+    /**
+     * 获取并发许可后再订阅 body，许可在 body 结束（完成/出错/取消）且 body 中开始的调用
+     * （Permit.begin / end）也结束后归还。排队超过 queueTimeout 仍未拿到许可则直接报错，避免请求无限堆积。
+     */
+    public <T> Flux<T> withPermit(Function<Permit, ? extends Publisher<T>> body) {
+        return acquire()
+                .timeout(config.queueTimeout(),
+                        Mono.error(() -> new IllegalStateException("当前生成请求较多，请稍后再试")))
+                .flatMapMany(permit -> Flux.from(body.apply(permit)).doFinally(signal -> permit.close()));
+    }
+
+    private Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+                    sink.onCancel(() -> {
+                        synchronized (this) {
+                            waiters.remove(sink);
+                        }
+                    });
+                    boolean granted;
+                    synchronized (this) {
+                        granted = available > 0 && waiters.isEmpty();
+                        if (granted) {
+                            available--;
+                        } else {
+                            waiters.add(sink);
+                        }
+                    }
+                    if (granted) sink.success(new Permit());
+                })
+                .doOnDiscard(Permit.class, Permit::close);
+    }
+
+    /**
+     * 一次占用的许可。响应式管道持有一份引用（结束时由 withPermit 释放），
+     * 实际的模型调用开始时 begin() 再持有一份、结束时 end() 释放；两份都释放后许可归还。
+     */
+    public final class Permit {
+
+        private final AtomicInteger refs = new AtomicInteger(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean begun = new AtomicBoolean();
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Permit() {}
+
+        /** 模型调用开始（每个许可一次）；管道已结束（取消、超时）时返回 false，调用方不应再发起调用 */
+        public boolean begin() {
+            if (begun.get()) return false;
+            int r;
+            do {
+                r = refs.get();
+                if (r == 0) return false;
+            } while (!refs.compareAndSet(r, r + 1));
+            begun.set(true);
+            return true;
+        }
+
+        /** 模型调用结束（成功或失败），与 begin() 成对调用，重复调用无效 */
+        public void end() {
+            if (begun.get() && ended.compareAndSet(false, true)) unref();
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) unref();
+        }
+
+        private void unref() {
+            if (refs.decrementAndGet() == 0) release();
+        }
+    }
+}
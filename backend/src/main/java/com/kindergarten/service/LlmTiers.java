@@ -0,0 +1,25 @@
+package com.kindergarten.service;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 全部模型档位，由 LlmConfig 创建。
+ */
+public class LlmTiers {
+
+    private final Map<ModelTier, LlmTier> tiers = new EnumMap<>(ModelTier.class);
+
+    public LlmTiers(LlmTier fast, LlmTier reasoning) {
+        tiers.put(ModelTier.FAST, fast);
+        tiers.put(ModelTier.REASONING, reasoning);
+    }
+
+    public LlmTier get(ModelTier tier) {
+        return tiers.get(tier != null ? tier : ModelTier.FAST);
+    }
+
+    public Iterable<LlmTier> all() {
+        return tiers.values();
+    }
+}
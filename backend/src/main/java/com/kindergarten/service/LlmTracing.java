@@ -0,0 +1,64 @@
+package com.kindergarten.service;
+
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.springframework.stereotype.Component;
+
+/**
+ * LLM 调用的链路追踪 Span。
+ *
+ * LLM 回调运行在 HTTP 客户端线程上，不能依赖线程上下文，因此父 Span 在请求线程上取得后显式传入：
+ * - llm.queue：从发起到拿到档位并发许可（含 boundedElastic 调度），排队拒绝时标记 error；
+ * - llm.chat / llm.stream：上游调用本身，以 llm.queue 为父 Span（拿到许可后开始，链路为 http → llm.queue → llm.stream），
+ *   事件 first_token / last_token，结束时带 token 用量标签。
+ */
+@Component
+public class LlmTracing {
+
+    private final Tracer tracer;
+
+    public LlmTracing(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /** 当前线程上的 Span（请求线程上即 HTTP 请求 Span），没有时为 null */
+    public Span current() {
+        return tracer.currentSpan();
+    }
+
+    public Span startQueue(Span parent, LlmTier tier) {
+        return tracer.nextSpan(parent).name("llm.queue")
+                .tag("llm.tier", tier.tier().tag())
+                .tag("llm.in_flight", String.valueOf(tier.inFlight()))
+                .start();
+    }
+
+    public Span startCall(Span parent, String name, LlmTier tier, PromptTemplate template) {
+        return tracer.nextSpan(parent).name(name)
+                .tag("llm.tier", tier.tier().tag())
+                .tag("llm.model", tier.config().model())
+                .tag("llm.template", template.docTypeId())
+                .tag("llm.template.version", template.version())
+                .start();
+    }
+
+    /** 把 Span 放到当前线程上，期间的日志带上它的 spanId、数据库调用挂在它下面 */
+    public Tracer.SpanInScope inScope(Span span) {
+        return tracer.withSpan(span);
+    }
+
+    public static void finish(Span span, TokenUsage usage) {
+        if (usage != null) {
+            if (usage.inputTokenCount() != null) span.tag("llm.tokens.input", String.valueOf(usage.inputTokenCount()));
+            if (usage.outputTokenCount() != null) span.tag("llm.tokens.output", String.valueOf(usage.outputTokenCount()));
+            span.tag("llm.tokens.cached", String.valueOf(LlmMetrics.cachedTokens(usage)));
+        }
+        span.end();
+    }
+
+    public static void fail(Span span, Throwable error) {
+        span.error(error);
+        span.end();
+    }
+}
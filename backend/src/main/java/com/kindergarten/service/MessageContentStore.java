@@ -0,0 +1,70 @@
+package com.kindergarten.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+/**
+ * 消息正文存储：助手回复按内容寻址去重。
+ *
+ * 正文 SHA-256 作为 blob 主键；写入由 ChatProjector 在投影助手消息时完成：已存在的 blob 刷新 last_referenced_at（最后一次被引用的时间），
+ * 其余批量插入，再让消息引用它（并发投影同一正文时主键冲突的一方整批重试，重试时 blob 已存在）。
+ * 短正文直接内联压缩（见 Message），去重收益不抵一次查询。
+ * blob 与引用它的消息存放在同一个物理分片（外键约束在分片内）。
+ */
+@Service
+public class MessageContentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageContentStore.class);
+
+    private final ChatShards shards;
+    private final int minDedupChars;
+
+    public MessageContentStore(ChatShards shards,
+                               @Value("${kindergarten.storage.min-dedup-chars:200}") int minDedupChars) {
+        this.shards = shards;
+        this.minDedupChars = minDedupChars;
+    }
+
+    /**
+     * 正文参与去重时返回其 blob 主键（SHA-256），较短时返回 null（保持内联）
+     */
+    public String dedupKey(String content) {
+        if (content == null || content.length() < minDedupChars) return null;
+        return sha256(content);
+    }
+
+    /**
+     * 清理不再被任何消息引用、且一天内未被复用的 blob。
+     * 与投影的竞争由行锁排除：投影复用 blob 时先 UPDATE 刷新 last_referenced_at，清理的 DELETE 与之争用同一行，
+     * 后执行的一方看到前者提交后的结果（清理跳过刚被引用的 blob，或投影发现 blob 已删除而重新插入）。
+     */
+    @Scheduled(fixedDelayString = "${kindergarten.storage.blob-gc-interval-ms:3600000}",
+            initialDelayString = "${kindergarten.storage.blob-gc-interval-ms:3600000}")
+    public void collectGarbage() {
+        var before = LocalDateTime.now().minusDays(1);
+        for (ChatShard shard : shards.all()) {
+            Integer deleted = shard.newTx().execute(status -> shard.blobs().deleteUnreferencedBefore(before));
+            if (deleted != null && deleted > 0) {
+                log.info("已清理未引用的消息 blob: {} 条（{}）", deleted, shard);
+            }
+        }
+    }
+
+    static String sha256(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
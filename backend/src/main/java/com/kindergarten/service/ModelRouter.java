@@ -0,0 +1,33 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 本地请求分类器：根据文案类型、上下文长度、历史深度选择模型档位。
+ *
+ * 纯本地规则，不额外调用模型，耗时可忽略；用户显式指定档位时以用户为准。
+ */
+@Component
+public class ModelRouter {
+
+    private final LlmProperties.Routing routing;
+
+    public ModelRouter(LlmProperties properties) {
+        this.routing = properties.routing();
+    }
+
+    public ModelTier route(String docTypeId, List<Message> history, ModelTier override) {
+        if (override != null) return override;
+        if (docTypeId != null && routing.reasoningDocTypes().contains(docTypeId)) return ModelTier.REASONING;
+        if (history == null) return ModelTier.FAST;
+        if (history.size() > routing.historyDepthThreshold()) return ModelTier.REASONING;
+        long chars = 0;
+        for (Message m : history) {
+            chars += m.getContent() != null ? m.getContent().length() : 0;
+        }
+        return chars > routing.promptCharsThreshold() ? ModelTier.REASONING : ModelTier.FAST;
+    }
+}
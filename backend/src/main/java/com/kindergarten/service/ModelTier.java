@@ -0,0 +1,23 @@
+package com.kindergarten.service;
+
+/**
+ * 模型档位：FAST 快速对话模型，REASONING 推理模型（更慢、更贵）。
+ */
+public enum ModelTier {
+    FAST, REASONING;
+
+    /**
+     * 解析用户指定的档位（fast / reasoning，忽略大小写），无法识别时返回 null 表示自动选择。
+     */
+    public static ModelTier parse(String value) {
+        if (value == null || value.isBlank()) return null;
+        for (ModelTier t : values()) {
+            if (t.name().equalsIgnoreCase(value.trim())) return t;
+        }
+        return null;
+    }
+
+    public String tag() {
+        return name().toLowerCase();
+    }
+}
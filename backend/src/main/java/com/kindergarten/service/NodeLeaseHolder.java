@@ -0,0 +1,194 @@
+package com.kindergarten.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.net.InetAddress;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点号租约：从主库 chat_node_lease 租得本实例的节点号（ShardedIds、事件日志目录、投影检查点都按它区分）。
+ *
+ * - 启动时租约：配置了 kindergarten.sharding.node-id 时只租该号，否则租第一个空闲的号；
+ *   目标号仍被其他实例持有（未过期）时最多等待一个 lease-ttl-ms（崩溃实例的租约到期），仍未释放则启动失败；
+ * - 续期：每 lease-heartbeat-ms 把 expires_at 延后 lease-ttl-ms，并把 ID 秒数预留上界推进到当前时间之后 id-reserve-seconds；
+ *   预留上界先写入主库再交给 ShardedIds，接管者从该上界开始生成 ID，不会与前任（包括借用的秒数）重复；
+ * - 本地有效期为续期开始后 lease-ttl-ms 的一半（余量留给节点间的时钟偏差），未能续期时 ShardedIds 暂停生成，
+ *   租约被其他实例接管（续期更新不到本实例持有的行）后不再生成 ID，需重启实例；
+ * - 正常关闭时把租约置为过期，预留上界收回到实际用到的秒数。
+ *
+ * 续期依赖各节点时钟大致同步（偏差小于 lease-ttl-ms 的一半）。
+ */
+public class NodeLeaseHolder {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeLeaseHolder.class);
+
+    private static final long RETRY_MS = 200;
+
+    private final JdbcTemplate jdbc;
+    private final long ttlMs;
+    private final long reserveSeconds;
+    private final String owner = UUID.randomUUID().toString();
+    private final String host = hostName();
+    private final int nodeId;
+    private final ShardedIds ids;
+    private long reservedUntil;
+    private volatile boolean lost;
+
+    /**
+     * 租得节点号，失败时抛出 IllegalStateException（启动失败）
+     *
+     * @param nodeId         指定的节点号，null 表示自动选择
+     * @param ttlMs          租约时长
+     * @param reserveSeconds 每次续期时 ID 秒数预留到当前时间之后多少秒
+     */
+    public NodeLeaseHolder(JdbcTemplate jdbc, Integer nodeId, long ttlMs, long reserveSeconds) {
+        this.jdbc = jdbc;
+        this.ttlMs = ttlMs;
+        this.reserveSeconds = reserveSeconds;
+        var candidates = new ArrayList<Integer>();
+        if (nodeId != null) {
+            if (nodeId < 0 || nodeId >= ShardedIds.NODES) {
+                throw new IllegalArgumentException("kindergarten.sharding.node-id 须在 0–" + (ShardedIds.NODES - 1) + " 之间");
+            }
+            candidates.add(nodeId);
+        } else {
+            for (int i = 0; i < ShardedIds.NODES; i++) candidates.add(i);
+        }
+        long start = System.nanoTime();
+        // 前任刚续期后崩溃时，租约最晚在 ttlMs 后过期
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(ttlMs + 1000);
+        Long floor;
+        int acquired;
+        while (true) {
+            var grant = tryAcquireAny(candidates);
+            if (grant != null) {
+                acquired = grant[0].intValue();
+                floor = grant[1];
+                break;
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new IllegalStateException(nodeId != null
+                        ? "节点号 " + nodeId + " 已被其他实例持有（" + holderOf(nodeId) + "），请检查 kindergarten.sharding.node-id 是否重复"
+                        : "没有空闲的节点号（共 " + ShardedIds.NODES + " 个），实例数超出上限");
+            }
+            sleep(RETRY_MS);
+        }
+        this.nodeId = acquired;
+        this.ids = new ShardedIds(acquired, Math.max(floor, Instant.now().getEpochSecond()));
+        this.reservedUntil = floor;
+        if (!renew()) {
+            throw new IllegalStateException("节点号 " + acquired + " 的租约刚取得即被接管");
+        }
+        log.info("已租得节点号 {}（持有者 {}，等待 {} ms，ID 起始秒 {}）", acquired, owner,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), floor);
+    }
+
+    public int nodeId() { return nodeId; }
+
+    public ShardedIds ids() { return ids; }
+
+    /** 租约是否已被其他实例接管 */
+    public boolean lost() { return lost; }
+
+    @Scheduled(fixedDelayString = "${kindergarten.sharding.lease-heartbeat-ms:5000}",
+            initialDelayString = "${kindergarten.sharding.lease-heartbeat-ms:5000}")
+    public void heartbeat() {
+        if (lost) return;
+        try {
+            if (!renew()) {
+                lost = true;
+                ids.revoke();
+                log.error("节点号 {} 的租约已被其他实例接管，本实例停止生成 ID，请重启", nodeId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("节点号 {} 续期失败，{} ms 内未能续期将暂停写入: {}", nodeId, ttlMs / 2, e.getMessage());
+        }
+    }
+
+    /** 正常关闭：租约立即过期，预留上界收回到实际用到的秒数 */
+    public void release() {
+        ids.revoke();
+        if (lost) return;
+        try {
+            long used = Math.max(ids.highWaterEpochSecond() + 1, Instant.now().getEpochSecond());
+            jdbc.update("update chat_node_lease set expires_at = ?, id_floor_seconds = ? where node_id = ? and owner = ?",
+                    timestamp(Instant.now()), Math.min(used, reservedUntil), nodeId, owner);
+            log.info("已释放节点号 {}", nodeId);
+        } catch (RuntimeException e) {
+            log.warn("释放节点号 {} 失败，将在 {} ms 后过期: {}", nodeId, ttlMs, e.getMessage());
+        }
+    }
+
+    /** 延长租约并推进预留上界；行已不属于本实例时返回 false */
+    private boolean renew() {
+        long started = System.nanoTime();
+        var now = Instant.now();
+        long until = Math.max(reservedUntil,
+                Math.max(now.getEpochSecond(), ids.highWaterEpochSecond()) + reserveSeconds);
+        int updated = jdbc.update("update chat_node_lease set expires_at = ?, id_floor_seconds = ? "
+                        + "where node_id = ? and owner = ?",
+                timestamp(now.plusMillis(ttlMs)), until, nodeId, owner);
+        if (updated == 0) return false;
+        reservedUntil = until;
+        ids.lease(until, started + TimeUnit.MILLISECONDS.toNanos(ttlMs / 2));
+        return true;
+    }
+
+    /** 依次尝试候选节点号，成功时返回 {节点号, 前任的预留上界} */
+    private Long[] tryAcquireAny(List<Integer> candidates) {
+        for (int candidate : candidates) {
+            var now = Instant.now();
+            var expires = timestamp(now.plusMillis(ttlMs));
+            try {
+                jdbc.update("insert into chat_node_lease (node_id, owner, host, expires_at, id_floor_seconds) "
+                        + "values (?, ?, ?, ?, 0)", candidate, owner, host, expires);
+            } catch (DuplicateKeyException e) {
+                // 已有租约行：过期时接管
+                jdbc.update("update chat_node_lease set owner = ?, host = ?, expires_at = ? "
+                        + "where node_id = ? and expires_at < ?", owner, host, expires, candidate, timestamp(now));
+            }
+            List<Long> floor = jdbc.queryForList("select id_floor_seconds from chat_node_lease where node_id = ? and owner = ?",
+                    Long.class, candidate, owner);
+            if (!floor.isEmpty()) return new Long[] { (long) candidate, floor.get(0) };
+        }
+        return null;
+    }
+
+    private String holderOf(int candidate) {
+        var rows = jdbc.queryForList("select host, expires_at from chat_node_lease where node_id = ?", candidate);
+        if (rows.isEmpty()) return "未知";
+        return rows.get(0).get("host") + "，租约到期 " + rows.get(0).get("expires_at");
+    }
+
+    private static Timestamp timestamp(Instant at) {
+        return Timestamp.valueOf(LocalDateTime.ofInstant(at, ZoneId.systemDefault()));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName() + "/" + ProcessHandle.current().pid();
+        } catch (Exception e) {
+            return "pid " + ProcessHandle.current().pid();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待节点号租约时被中断", e);
+        }
+    }
+}
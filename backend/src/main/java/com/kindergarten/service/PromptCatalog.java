@@ -0,0 +1,205 @@
+package com.kindergarten.service;
+
+import dev.langchain4j.data.message.SystemMessage;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Prompt 模板目录：按 docTypeId 提供编译好的系统 Prompt。
+ *
+ * 模板来源：
+ * 1. 内置 classpath:prompts/{docTypeId}.md
+ * 2. kindergarten.prompt.dir 指定的本地目录（同名文件覆盖内置模板，支持热加载）
+ *
+ * _base.md 是所有文案类型共享的公共前缀，编译时放在最前面；未知 docTypeId 回退到 general。
+ * 模板文件可带简单文件头声明版本：
+ * <pre>
+ * ---
+ * version: 2
+ * ---
+ * 正文……
+ * </pre>
+ */
+@Service
+public class PromptCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(PromptCatalog.class);
+
+    public static final String BASE_ID = "_base";
+    public static final String DEFAULT_DOC_TYPE_ID = "general";
+
+    private static final String SUFFIX = ".md";
+
+    private final PromptProperties properties;
+    private final AtomicReference<Map<String, PromptTemplate>> templates = new AtomicReference<>(Map.of());
+    private volatile String dirFingerprint = "";
+
+    public PromptCatalog(PromptProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void init() {
+        dirFingerprint = fingerprint(localDir());
+        compile();
+    }
+
+    /**
+     * 获取文案类型对应的模板，未配置时回退到 general。
+     */
+    public PromptTemplate get(String docTypeId) {
+        var map = templates.get();
+        var t = docTypeId != null ? map.get(docTypeId) : null;
+        return t != null ? t : map.get(DEFAULT_DOC_TYPE_ID);
+    }
+
+    public Map<String, PromptTemplate> templates() {
+        return templates.get();
+    }
+
+    /**
+     * 定时检查本地模板目录，文件有增删改时重新编译并原子替换。
+     */
+    @Scheduled(fixedDelayString = "${kindergarten.prompt.reload-interval-ms:10000}",
+            initialDelayString = "${kindergarten.prompt.reload-interval-ms:10000}")
+    public void reloadIfChanged() {
+        var dir = localDir();
+        if (dir == null) return;
+        var fp = fingerprint(dir);
+        if (fp.equals(dirFingerprint)) return;
+        try {
+            compile();
+            dirFingerprint = fp;
+        } catch (RuntimeException e) {
+            // 编译失败时保留旧模板，下次检查再试
+            log.warn("Prompt 模板热加载失败，继续使用旧版本: {}", e.getMessage());
+        }
+    }
+
+    private void compile() {
+        var sources = new HashMap<String, Source>();
+        loadClasspath(sources);
+        loadLocalDir(sources);
+
+        var base = sources.remove(BASE_ID);
+        if (!sources.containsKey(DEFAULT_DOC_TYPE_ID)) {
+            throw new IllegalStateException("缺少默认 Prompt 模板 " + DEFAULT_DOC_TYPE_ID + SUFFIX);
+        }
+
+        var compiled = new LinkedHashMap<String, PromptTemplate>();
+        sources.keySet().stream().sorted().forEach(id -> {
+            var src = sources.get(id);
+            // 公共前缀在前、文案类型说明在后：同一类型的请求前缀完全一致，不同类型之间也共享 _base 部分
+            var text = base != null ? base.body() + "\n\n" + src.body() : src.body();
+            var hash = sha256(text).substring(0, 8);
+            var version = src.version() != null ? src.version() + "@" + hash : hash;
+            compiled.put(id, new PromptTemplate(id, version, new SystemMessage(text)));
+        });
+        templates.set(Map.copyOf(compiled));
+        log.info("Prompt 模板已编译: {} 个文案类型 {}", compiled.size(), compiled.keySet());
+    }
+
+    private void loadClasspath(Map<String, Source> sources) {
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver()
+                    .getResources("classpath*:prompts/*" + SUFFIX);
+            for (Resource r : resources) {
+                var name = r.getFilename();
+                if (name == null) continue;
+                try (var in = r.getInputStream()) {
+                    sources.put(idOf(name), parse(new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取内置 Prompt 模板失败", e);
+        }
+    }
+
+    private void loadLocalDir(Map<String, Source> sources) {
+        var dir = localDir();
+        if (dir == null) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : files.filter(p -> p.toString().endsWith(SUFFIX)).toList()) {
+                sources.put(idOf(f.getFileName().toString()), parse(Files.readString(f, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取本地 Prompt 模板目录失败: " + dir, e);
+        }
+    }
+
+    private Path localDir() {
+        if (properties.dir() == null || properties.dir().isBlank()) return null;
+        var dir = Path.of(properties.dir());
+        return Files.isDirectory(dir) ? dir : null;
+    }
+
+    /** 目录指纹：文件名 + 修改时间 + 大小，变化即触发重新编译。 */
+    private static String fingerprint(Path dir) {
+        if (dir == null) return "";
+        try (Stream<Path> files = Files.list(dir)) {
+            var sb = new StringBuilder();
+            files.filter(p -> p.toString().endsWith(SUFFIX)).sorted().forEach(p -> {
+                try {
+                    sb.append(p.getFileName()).append(':')
+                            .append(Files.getLastModifiedTime(p).toMillis()).append(':')
+                            .append(Files.size(p)).append(';');
+                } catch (IOException ignored) {}
+            });
+            return sb.toString();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static String idOf(String fileName) {
+        return fileName.substring(0, fileName.length() - SUFFIX.length());
+    }
+
+    private static Source parse(String raw) {
+        var text = raw.replace("\r\n", "\n");
+        String version = null;
+        if (text.startsWith("---\n")) {
+            int end = text.indexOf("\n---\n", 4);
+            if (end > 0) {
+                for (String line : text.substring(4, end).split("\n")) {
+                    int idx = line.indexOf(':');
+                    if (idx > 0 && line.substring(0, idx).trim().equals("version")) {
+                        version = line.substring(idx + 1).trim();
+                    }
+                }
+                text = text.substring(end + 5);
+            }
+        }
+        return new Source(version, text.strip());
+    }
+
+    private static String sha256(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record Source(String version, String body) {}
+}
@@ -0,0 +1,16 @@
+package com.kindergarten.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Prompt 模板目录配置，从 application.yml 的 kindergarten.prompt 下读取。
+ *
+ * @param dir              本地模板目录（可选）；目录中的 {docTypeId}.md 覆盖 classpath:prompts/ 下的同名内置模板
+ * @param reloadIntervalMs 热加载检查间隔（毫秒），检测到目录内文件变化时重新编译模板
+ */
+@ConfigurationProperties(prefix = "kindergarten.prompt")
+public record PromptProperties(
+        String dir,
+        Long reloadIntervalMs
+) {
+}
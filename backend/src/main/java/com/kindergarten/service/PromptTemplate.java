@@ -0,0 +1,20 @@
+package com.kindergarten.service;
+
+import dev.langchain4j.data.message.SystemMessage;
+
+/**
+ * 编译后的 Prompt 模板（不可变）。
+ *
+ * systemMessage 由「公共前缀 _base + 文案类型说明」拼接而成，启动/热加载时编译一次，
+ * 之后每次请求复用同一个对象，保证发往模型的前缀逐字节一致，便于命中服务端前缀缓存。
+ *
+ * @param docTypeId     文案类型 ID，如 lesson-plan
+ * @param version       模板版本：文件头 version 字段，未声明时取内容摘要
+ * @param systemMessage 编译后的系统消息
+ */
+public record PromptTemplate(
+        String docTypeId,
+        String version,
+        SystemMessage systemMessage
+) {
+}
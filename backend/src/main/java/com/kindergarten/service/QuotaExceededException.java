@@ -0,0 +1,16 @@
+package com.kindergarten.service;
+
+/**
+ * 用户当日额度已用完，调用方应返回 429，不再请求上游模型。
+ */
+public class QuotaExceededException extends RuntimeException {
+
+    private final String plan;
+
+    public QuotaExceededException(String plan, String message) {
+        super(message);
+        this.plan = plan;
+    }
+
+    public String getPlan() { return plan; }
+}
@@ -0,0 +1,61 @@
+package com.kindergarten.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.ZoneId;
+import java.util.Map;
+
+/**
+ * 用量与每日额度配置，从 application.yml 的 kindergarten.quota 下读取。
+ *
+ * @param enabled       是否在调用 LLM 前校验额度；关闭后仍记录用量
+ * @param zone          「每日」的时区，默认 Asia/Shanghai
+ * @param defaultPlan   未单独指定套餐的用户使用的套餐
+ * @param plans         套餐名 → 每日额度，如 free / paid
+ * @param userPlans     用户 ID → 套餐名（认证与订阅实现前的静态配置）
+ */
+@ConfigurationProperties(prefix = "kindergarten.quota")
+public record QuotaProperties(
+        Boolean enabled,
+        String zone,
+        String defaultPlan,
+        Map<String, Plan> plans,
+        Map<Long, String> userPlans
+) {
+    public QuotaProperties {
+        enabled = enabled == null || enabled;
+        zone = zone != null && !zone.isBlank() ? zone : "Asia/Shanghai";
+        defaultPlan = defaultPlan != null && !defaultPlan.isBlank() ? defaultPlan : "free";
+        plans = plans != null ? Map.copyOf(plans) : Map.of();
+        userPlans = userPlans != null ? Map.copyOf(userPlans) : Map.of();
+    }
+
+    public ZoneId zoneId() {
+        return ZoneId.of(zone);
+    }
+
+    /** 用户所属套餐名 */
+    public String planOf(long userId) {
+        return userPlans.getOrDefault(userId, defaultPlan);
+    }
+
+    /** 用户的每日额度；套餐未配置时视为不限 */
+    public Plan limitsOf(long userId) {
+        return plans.getOrDefault(planOf(userId), Plan.UNLIMITED);
+    }
+
+    /**
+     * 套餐每日额度，-1 或未配置表示不限。
+     *
+     * @param dailyRequests 每日生成次数
+     * @param dailyTokens   每日 token（输入 + 输出）
+     */
+    public record Plan(Long dailyRequests, Long dailyTokens) {
+        public static final Plan UNLIMITED = new Plan(-1L, -1L);
+
+        public Plan {
+            dailyRequests = dailyRequests != null ? dailyRequests : -1L;
+            dailyTokens = dailyTokens != null ? dailyTokens : -1L;
+        }
+    }
+}
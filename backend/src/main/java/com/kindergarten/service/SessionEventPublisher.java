@@ -0,0 +1,112 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * 会话事件推送（SSE）：前端订阅 GET /api/sessions/events，后台生成的标题等变化实时推送。
+ *
+ * 连接只保存在本节点内存中。标题由任一节点的 SessionTitler 生成，写入数据库时记录 titled_at；
+ * 每个节点每 kindergarten.titling.push-poll-ms 查询一次「本节点有连接的用户」在最近 push-window-ms 内生效的标题并推送，
+ * 连到任何节点的客户端都能收到。窗口覆盖投影提交与节点间时钟的偏差，窗口内已推送过的（会话 ID + titled_at）不重复推送。
+ * 没有连接时不查询。
+ */
+@Component
+public class SessionEventPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionEventPublisher.class);
+
+    /** 超时后浏览器 EventSource 会自动重连 */
+    private static final long EMITTER_TIMEOUT_MS = 10 * 60_000L;
+
+    private static final int IN_LIST_CHUNK = 500;
+
+    private final ChatShards shards;
+    private final long windowMs;
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    /** 窗口内已推送的标题：会话 ID → titled_at，仅由轮询线程访问 */
+    private final Map<Long, LocalDateTime> pushed = new HashMap<>();
+
+    public SessionEventPublisher(ChatShards shards,
+                                 @Value("${kindergarten.titling.push-window-ms:30000}") long windowMs) {
+        this.shards = shards;
+        this.windowMs = windowMs > 0 ? windowMs : 30_000;
+    }
+
+    public SseEmitter subscribe(long userId) {
+        var emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        var set = emitters.computeIfAbsent(userId, k -> new CopyOnWriteArraySet<>());
+        set.add(emitter);
+        Runnable remove = () -> set.remove(emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        return emitter;
+    }
+
+    /** 推送会话标题更新，事件名 title */
+    public void publishTitle(long userId, long sessionId, String title) {
+        var set = emitters.get(userId);
+        if (set == null || set.isEmpty()) return;
+        var event = new TitleEvent(sessionId, title);
+        for (SseEmitter emitter : set) {
+            try {
+                emitter.send(SseEmitter.event().name("title").data(event, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                log.debug("会话事件推送失败，移除连接: {}", e.getMessage());
+                set.remove(emitter);
+            }
+        }
+    }
+
+    /** 推送最近生效的自动标题（见类注释） */
+    @Scheduled(fixedDelayString = "${kindergarten.titling.push-poll-ms:2000}")
+    public void pushTitles() {
+        var since = LocalDateTime.now().minus(Duration.ofMillis(windowMs));
+        pushed.values().removeIf(at -> at.isBefore(since));
+        var users = new ArrayList<Long>();
+        emitters.forEach((userId, set) -> {
+            if (!set.isEmpty()) users.add(userId);
+        });
+        if (users.isEmpty()) return;
+        for (ChatShard shard : shards.all()) {
+            for (int from = 0; from < users.size(); from += IN_LIST_CHUNK) {
+                var chunk = users.subList(from, Math.min(from + IN_LIST_CHUNK, users.size()));
+                var args = new ArrayList<Object>();
+                args.add(Timestamp.valueOf(since));
+                args.addAll(chunk);
+                try {
+                    shard.jdbc().query("select id, user_id, title, titled_at from chat_session where titled_at >= ? "
+                            + "and user_id in (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")", rs -> {
+                        long sessionId = rs.getLong(1);
+                        var at = rs.getTimestamp(4).toLocalDateTime();
+                        if (!at.equals(pushed.put(sessionId, at))) publishTitle(rs.getLong(2), sessionId, rs.getString(3));
+                    }, args.toArray());
+                } catch (RuntimeException e) {
+                    // 分片暂不可用：跳过，下次轮询仍在窗口内
+                    log.debug("查询最近生成的标题失败（{}）: {}", shard, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public record TitleEvent(@JsonProperty("session_id") long sessionId, String title) {}
+}
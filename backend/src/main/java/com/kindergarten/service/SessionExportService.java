@@ -0,0 +1,217 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.entity.MessageContentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 会话导出：把一个用户的全部会话流式写成 ZIP（每个会话一个 Markdown 或 DOCX 文件）。
+ *
+ * - 读取：一条按 (会话 ID, 消息时间) 排序的 SQL，只进游标 + 固定 fetch size 逐批拉取，
+ *   不经过 JPA 持久化上下文；内存中只保留当前这一个会话的内容，与会话总数无关；
+ * - 写出：会话结束即写入一个 ZIP 条目并 flush 到响应流；
+ * - 续传：文件按会话 ID 递增排列、文件名以 ID 开头，末尾写 manifest.json。
+ *   下载中断时，以最后一个完整文件的会话 ID 作为 after 参数重新请求即可继续；
+ *   指定 limit 时，manifest 中的 next_after 即下一段的起点。
+ * 一个用户的会话都在同一个物理分片上（见 ChatShards），导出只查询该分片。没有消息的会话也导出（只有标题与元信息）。
+ */
+@Service
+public class SessionExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionExportService.class);
+
+    private static final String EXPORT_SQL = """
+            select s.id, s.title, s.doc_type_id, s.created_at, m.role, m.content_data, b.data
+              from chat_session s
+              left join chat_message m on m.session_id = s.id
+              left join chat_message_blob b on b.hash = m.content_hash
+             where s.user_id = ? and s.id > ?
+             order by s.id asc, m.created_at asc, m.id asc""";
+
+    private static final int MAX_NAME_CHARS = 40;
+
+    public enum Format {
+        MARKDOWN("md"), DOCX("docx");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String extension() { return extension; }
+
+        /** md / markdown / docx，无法识别时为 Markdown */
+        public static Format parse(String value) {
+            return value != null && value.trim().equalsIgnoreCase("docx") ? DOCX : MARKDOWN;
+        }
+    }
+
+    private final ChatShards shards;
+    private final ChatProjector projector;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public SessionExportService(ChatShards shards,
+                                ChatProjector projector,
+                                ObjectMapper objectMapper,
+                                @Value("${kindergarten.export.fetch-size:200}") int fetchSize) {
+        this.shards = shards;
+        this.projector = projector;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize > 0 ? fetchSize : 200;
+    }
+
+    /**
+     * 导出到 out（调用方负责设置响应头，本方法不关闭 out）。
+     *
+     * @param after 只导出 ID 大于该值的会话，0 表示从头开始
+     * @param limit 最多导出的会话数，&lt;= 0 表示不限
+     */
+    public Manifest export(long userId, Format format, long after, int limit, OutputStream out) throws IOException {
+        // 本实例刚写入的会话先投影完成再导出
+        projector.awaitUser(userId);
+        var zip = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        var writer = new ArchiveWriter(zip, format, limit);
+        long start = System.nanoTime();
+        var shard = shards.forUser(userId);
+        // 事务保证部分驱动（如 PostgreSQL）在关闭自动提交后才使用服务端游标
+        shard.readOnlyTx().executeWithoutResult(status -> shard.jdbc().query(con -> {
+            var ps = con.prepareStatement(EXPORT_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, userId);
+            ps.setLong(2, Math.max(0, after));
+            return ps;
+        }, (ResultSet rs) -> {
+            writer.consume(rs);
+            return null;
+        }));
+        var manifest = writer.finish(after);
+        zip.putNextEntry(new ZipEntry("manifest.json"));
+        zip.write(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(manifest));
+        zip.closeEntry();
+        zip.finish();
+        zip.flush();
+        log.info("会话导出完成: 用户 {}, 格式 {}, after={}, 会话 {} 个, 耗时 {} ms, complete={}",
+                userId, format.extension(), after, manifest.sessions(),
+                (System.nanoTime() - start) / 1_000_000, manifest.complete());
+        return manifest;
+    }
+
+    /**
+     * 导出清单，位于 ZIP 末尾。
+     *
+     * @param lastSessionId 本包最后一个会话 ID，下载中断时以已收到的最后一个文件为准
+     * @param nextAfter     未导出完（达到 limit）时下一次请求的 after，导出完毕时为 null
+     */
+    public record Manifest(
+            String format,
+            long after,
+            int sessions,
+            @JsonProperty("last_session_id") Long lastSessionId,
+            boolean complete,
+            @JsonProperty("next_after") Long nextAfter
+    ) {}
+
+    /** 逐行消费结果集，按会话聚合后写出 */
+    private static final class ArchiveWriter {
+
+        private final ZipOutputStream zip;
+        private final Format format;
+        private final int limit;
+
+        private final StringBuilder current = new StringBuilder();
+        private long currentId = -1;
+        private String currentTitle;
+        private int written;
+        private Long lastWrittenId;
+        private boolean truncated;
+
+        ArchiveWriter(ZipOutputStream zip, Format format, int limit) {
+            this.zip = zip;
+            this.format = format;
+            this.limit = limit;
+        }
+
+        void consume(ResultSet rs) throws SQLException {
+            while (rs.next()) {
+                long sessionId = rs.getLong(1);
+                if (sessionId != currentId) {
+                    flushCurrent();
+                    if (limit > 0 && written >= limit) {
+                        truncated = true;
+                        return;
+                    }
+                    begin(sessionId, rs.getString(2), rs.getString(3), rs.getTimestamp(4));
+                }
+                // 没有消息的会话：左连接的消息列为 null
+                var role = rs.getString(5);
+                if (role == null) continue;
+                byte[] data = rs.getBytes(7);
+                if (data == null) data = rs.getBytes(6);
+                appendMessage(role, MessageContentCodec.decode(data));
+            }
+            flushCurrent();
+        }
+
+        Manifest finish(long after) {
+            return new Manifest(format.extension(), after, written, lastWrittenId, !truncated,
+                    truncated ? lastWrittenId : null);
+        }
+
+        private void begin(long sessionId, String title, String docTypeId, Timestamp createdAt) {
+            currentId = sessionId;
+            currentTitle = title != null && !title.isBlank() ? title : SessionService.DEFAULT_TITLE;
+            current.setLength(0);
+            current.append("# ").append(currentTitle).append("\n\n")
+                    .append("- 文案类型：").append(docTypeId != null ? docTypeId : "general").append('\n')
+                    .append("- 创建时间：").append(createdAt != null ? createdAt.toLocalDateTime() : "").append("\n\n");
+        }
+
+        private void appendMessage(String role, String content) {
+            current.append("assistant".equals(role) ? "## 助手" : "## 老师").append("\n\n")
+                    .append(content != null ? content.strip() : "").append("\n\n");
+        }
+
+        private void flushCurrent() {
+            if (currentId < 0) return;
+            var name = String.format("%016d-%s.%s", currentId, safeName(currentTitle), format.extension());
+            byte[] bytes = format == Format.DOCX
+                    ? DocxWriter.fromMarkdown(current)
+                    : current.toString().getBytes(StandardCharsets.UTF_8);
+            try {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(bytes);
+                zip.closeEntry();
+                // 每个会话写完即推给客户端，客户端可据此确定续传位置
+                zip.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            written++;
+            lastWrittenId = currentId;
+            currentId = -1;
+            current.setLength(0);
+        }
+
+        private static String safeName(String title) {
+            var name = title.replaceAll("[\\\\/:*?\"<>|\\s.]+", "_").replaceAll("^_+|_+$", "");
+            if (name.isEmpty()) name = "session";
+            return name.length() > MAX_NAME_CHARS ? name.substring(0, MAX_NAME_CHARS) : name;
+        }
+    }
+}
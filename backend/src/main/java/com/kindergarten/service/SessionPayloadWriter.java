@@ -0,0 +1,241 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.kindergarten.dto.MessageDto;
+import com.kindergarten.dto.SessionDto;
+import com.kindergarten.entity.MessageContentCodec;
+import com.kindergarten.entity.Session;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话详情（含消息）的响应编码：JSON / CBOR 内容协商、ETag、流式序列化与载荷统计。
+ *
+ * - 格式：按 Accept 选择 JSON 或 CBOR，字段与 SessionDto / MessageDto 相同；
+ * - 版本：ETag 由 updatedAt、标题（自动命名不改 updatedAt）与消息数（消息只追加）组成，并区分格式。
+ *   If-None-Match 命中时只查询会话行与消息数，不加载、不解压消息；
+ * - 流式：在会话所在分片的只读事务中用只进游标 + 固定 fetch size 逐批读取消息行（不经过 JPA 持久化上下文），
+ *   逐行解压并写入生成器，数据库读取、正文解压与网络发送交替进行，内存与消息数无关；
+ *   代价是响应写完之前一直占用该分片的一个连接（与会话导出相同）；
+ *   生成器缓冲（约 8 KB）写满即交给容器发送，中途不主动 flush，以免 gzip 同步刷新降低压缩率；
+ * - 统计（按 format 标记）：session.payload.bytes 压缩前字节数，session.payload.write 序列化 + 写出耗时，
+ *   session.payload.not.modified 304 次数。压缩后的线上大小与端到端耗时见 scripts/wire-format-bench.sh。
+ */
+@Service
+public class SessionPayloadWriter {
+
+    private static final String MESSAGES_SQL = """
+            select m.id, m.role, m.content_data, b.data, m.created_at
+              from chat_message m
+              left join chat_message_blob b on b.hash = m.content_hash
+             where m.session_id = ?
+             order by m.created_at asc, m.id asc""";
+
+    public enum WireFormat {
+        JSON(MediaType.APPLICATION_JSON), CBOR(MediaType.APPLICATION_CBOR);
+
+        private final MediaType mediaType;
+
+        WireFormat(MediaType mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public MediaType mediaType() { return mediaType; }
+
+        public String tag() { return name().toLowerCase(Locale.ROOT); }
+
+        /**
+         * 按 Accept 选择：application/cbor 的 q 值高于显式 JSON、且不低于通配类型时为 CBOR，
+         * 其余情况（未声明、无法解析、都不接受）为 JSON
+         */
+        public static WireFormat negotiate(String accept) {
+            if (accept == null || accept.isBlank()) return JSON;
+            List<MediaType> types;
+            try {
+                types = MediaType.parseMediaTypes(accept);
+            } catch (InvalidMediaTypeException e) {
+                return JSON;
+            }
+            double cbor = 0, json = 0, wildcard = 0;
+            for (var type : types) {
+                double q = type.getQualityValue();
+                if (type.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                    cbor = Math.max(cbor, q);
+                } else if (type.isWildcardType() || type.isWildcardSubtype()) {
+                    if (type.includes(MediaType.APPLICATION_JSON)) wildcard = Math.max(wildcard, q);
+                } else if (type.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+                    json = Math.max(json, q);
+                }
+            }
+            return cbor > 0 && cbor > json && cbor >= wildcard ? CBOR : JSON;
+        }
+    }
+
+    private final Map<WireFormat, ObjectMapper> mappers = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, ObjectWriter> messageWriters = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, DistributionSummary> payloadBytes = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, Timer> writeTimers = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, Counter> notModified = new EnumMap<>(WireFormat.class);
+    private final ChatShards shards;
+    private final int fetchSize;
+
+    public SessionPayloadWriter(ObjectMapper objectMapper,
+                                MappingJackson2CborHttpMessageConverter cborConverter,
+                                MeterRegistry registry,
+                                ChatShards shards,
+                                @Value("${kindergarten.session-payload.fetch-size:200}") int fetchSize) {
+        this.shards = shards;
+        this.fetchSize = fetchSize > 0 ? fetchSize : 200;
+        mappers.put(WireFormat.JSON, objectMapper);
+        mappers.put(WireFormat.CBOR, cborConverter.getObjectMapper());
+        for (var format : WireFormat.values()) {
+            // 逐条写消息时不在每条之后 flush
+            messageWriters.put(format, mappers.get(format).writerFor(MessageDto.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+            payloadBytes.put(format, DistributionSummary.builder("session.payload.bytes")
+                    .description("会话详情响应大小（压缩前）")
+                    .baseUnit("bytes")
+                    .tag("format", format.tag())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+            writeTimers.put(format, Timer.builder("session.payload.write")
+                    .description("会话详情序列化并写出的耗时（含消息解压与网络背压）")
+                    .tag("format", format.tag())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+            notModified.put(format, Counter.builder("session.payload.not.modified")
+                    .description("If-None-Match 命中、返回 304 的次数")
+                    .tag("format", format.tag())
+                    .register(registry));
+        }
+    }
+
+    /** 弱 ETag：W/"{id}-{消息数}-{updatedAt 毫秒}-{标题哈希}-{格式}" */
+    public String etag(Session session, long messageCount, WireFormat format) {
+        long updated = session.getUpdatedAt() != null
+                ? session.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0;
+        int title = session.getTitle() != null ? session.getTitle().hashCode() : 0;
+        return "W/\"" + Long.toString(session.getId(), 36) + '-' + messageCount + '-' + Long.toString(updated, 36)
+                + '-' + Integer.toHexString(title) + '-' + format.tag() + '"';
+    }
+
+    /** If-None-Match 是否命中 etag（弱比较，支持逗号分隔的多个值与 *），命中时计数 */
+    public boolean notModified(String ifNoneMatch, String etag, WireFormat format) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) return false;
+        var opaque = opaque(etag);
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*") || opaque(tag).equals(opaque)) {
+                notModified.get(format).increment();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 流式写出会话详情，消息边读边写（本方法不关闭 out）。
+     *
+     * @param session 已通过 SessionService.getSession 校验归属的会话
+     * @return 写出的字节数（压缩前）
+     */
+    public long write(Session session, WireFormat format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        var counting = new CountingOutputStream(out);
+        var mapper = mappers.get(format);
+        var messageWriter = messageWriters.get(format);
+        try (var gen = mapper.getFactory().createGenerator(counting)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.writeStartObject();
+            // 会话字段沿用 SessionDto 的命名，messages 单独流式写出
+            ObjectNode header = mapper.valueToTree(SessionDto.from(session));
+            header.remove("messages");
+            var fields = header.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                gen.writeFieldName(field.getKey());
+                gen.writeTree(field.getValue());
+            }
+            gen.writeArrayFieldStart("messages");
+            var shard = shards.forSession(session.getId());
+            try {
+                // 事务保证部分驱动（如 PostgreSQL）在关闭自动提交后才使用服务端游标
+                shard.readOnlyTx().executeWithoutResult(status -> shard.jdbc().query(con -> {
+                    var ps = con.prepareStatement(MESSAGES_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    ps.setLong(1, session.getId());
+                    return ps;
+                }, (ResultSet rs) -> {
+                    byte[] data = rs.getBytes(4);
+                    if (data == null) data = rs.getBytes(3);
+                    var createdAt = rs.getObject(5, LocalDateTime.class);
+                    var dto = new MessageDto(rs.getLong(1), rs.getString(2),
+                            MessageContentCodec.decode(data), createdAt != null ? createdAt.toString() : null);
+                    try {
+                        messageWriter.writeValue(gen, dto);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            } catch (UncheckedIOException e) {
+                // 客户端断开等写出失败，按 IOException 交给容器处理
+                throw e.getCause();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        payloadBytes.get(format).record(counting.count);
+        writeTimers.get(format).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return counting.count;
+    }
+
+    private static String opaque(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -3,20 +3,27 @@ package com.kindergarten.service;
 import com.kindergarten.entity.Message;
 import com.kindergarten.entity.Message.Role;
 import com.kindergarten.entity.Session;
-import com.kindergarten.repository.MessageRepository;
-import com.kindergarten.repository.SessionRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
 
 /**
  * 会话服务：对话会话、消息历史、上下文管理。
  * 认证未实现前，使用 DEFAULT_USER_ID 作为占位。
+ *
+ * 写入追加事件到 ChatEventLog（组提交、按 fsync 策略落盘），由 ChatProjector 的投影线程批量写入 chat_session / chat_message，
+ * 等该事件投影完成后才返回：负载均衡把后续请求转到任何实例都能从数据库读到，跨实例也保证读己之写。
+ * 返回的 Session / Message 是按事件构造的内存对象。
+ * 会话与消息 ID 由 ShardedIds 在写事件前生成并带上用户所在的逻辑分片，按 ID 读取直接定位物理分片（ChatShards），
+ * 会话列表只查用户所在的那一个分片。
  */
 @Service
 public class SessionService {
@@ -24,12 +31,20 @@ public class SessionService {
     /** 认证未实现前的默认用户 ID */
     public static final long DEFAULT_USER_ID = 1L;
 
-    private final SessionRepository sessionRepository;
-    private final MessageRepository messageRepository;
+    /** 未命名会话的默认标题 */
+    public static final String DEFAULT_TITLE = "新对话";
 
-    public SessionService(SessionRepository sessionRepository, MessageRepository messageRepository) {
-        this.sessionRepository = sessionRepository;
-        this.messageRepository = messageRepository;
+    private final ChatShards shards;
+    private final ChatEventLog eventLog;
+    private final ChatProjector projector;
+    private final ChatAnalytics analytics;
+
+    public SessionService(ChatShards shards, ChatEventLog eventLog, ChatProjector projector,
+                          ChatAnalytics analytics) {
+        this.shards = shards;
+        this.eventLog = eventLog;
+        this.projector = projector;
+        this.analytics = analytics;
     }
 
     /**
@@ -37,20 +52,36 @@ public class SessionService {
      */
     public Page<Session> listSessions(long userId, int page, int size) {
         if (userId <= 0) userId = DEFAULT_USER_ID;
-        return sessionRepository.findByUserIdOrderByUpdatedAtDesc(
+        projector.awaitUser(userId);
+        return shards.forUser(userId).sessions().findByUserIdOrderByUpdatedAtDesc(
                 userId,
                 PageRequest.of(page, size, Sort.unsorted())
         );
     }
 
     /**
-     * 创建会话
+     * 创建会话。未指定标题（或为默认标题）时由 SessionTitler 在首条消息后生成。
      */
-    @Transactional
     public Session createSession(Long userId, String title, String docTypeId) {
+        boolean untitled = title == null || title.isBlank() || DEFAULT_TITLE.equals(title);
+        return createSession(userId, untitled ? DEFAULT_TITLE : title, docTypeId, untitled);
+    }
+
+    /**
+     * 创建会话
+     * @param titlePending 为 true 时 title 只是临时标题，之后由 SessionTitler 替换
+     */
+    public Session createSession(Long userId, String title, String docTypeId, boolean titlePending) {
         if (userId == null || userId <= 0) userId = DEFAULT_USER_ID;
-        var session = new Session(userId, title != null ? title : "新对话", docTypeId);
-        return sessionRepository.save(session);
+        var session = new Session(userId, title != null ? title : DEFAULT_TITLE, docTypeId);
+        session.setId(shards.ids().nextForUser(userId));
+        session.setTitlePending(titlePending);
+        var now = now();
+        session.setCreatedAt(toLocal(now));
+        session.setUpdatedAt(session.getCreatedAt());
+        append(new ChatEvent.SessionCreated(session.getId(), userId, session.getTitle(), session.getDocTypeId(),
+                titlePending, now));
+        return session;
     }
 
     /**
@@ -58,7 +89,9 @@ public class SessionService {
      */
     public Optional<Session> getSession(Long id, Long userId) {
         if (userId == null || userId <= 0) userId = DEFAULT_USER_ID;
-        var opt = sessionRepository.findById(id);
+        if (id == null || !ownedShard(id, userId)) return Optional.empty();
+        projector.awaitSession(id);
+        var opt = shards.forSession(id).sessions().findById(id);
         if (opt.isEmpty()) return Optional.empty();
         var s = opt.get();
         if (!s.getUserId().equals(userId)) return Optional.empty();
@@ -69,55 +102,73 @@ public class SessionService {
      * 获取会话的消息历史
      */
     public List<Message> getMessages(Long sessionId, Long userId) {
-        if (!getSession(sessionId, userId).isPresent()) {
-            return List.of();
-        }
-        return messageRepository.findBySessionIdOrderByCreatedAtAsc(sessionId);
+        return getSession(sessionId, userId).map(this::getMessages).orElse(List.of());
+    }
+
+    /**
+     * 已通过 getSession 校验归属的会话的消息历史，不再重复查询会话
+     */
+    public List<Message> getMessages(Session session) {
+        return shards.forSession(session.getId()).messages().findBySessionIdOrderByCreatedAtAsc(session.getId());
+    }
+
+    /**
+     * 会话消息数。消息只追加、不单独删除，可与 updatedAt、标题一起作为会话详情的版本（见 SessionPayloadWriter.etag）
+     */
+    public long countMessages(Session session) {
+        return shards.forSession(session.getId()).messages().countBySessionId(session.getId());
     }
 
     /**
      * 更新会话（标题等）
      */
-    @Transactional
     public Optional<Session> updateSession(Long id, Long userId, String title) {
         var opt = getSession(id, userId);
         if (opt.isEmpty()) return Optional.empty();
         var s = opt.get();
-        if (title != null && !title.isBlank()) s.setTitle(title);
-        return Optional.of(sessionRepository.save(s));
+        if (title != null && !title.isBlank()) {
+            var now = now();
+            append(new ChatEvent.SessionRenamed(id, s.getUserId(), title, false, now));
+            s.setTitle(title);
+            // 用户手动命名后不再自动生成
+            s.setTitlePending(false);
+            s.setUpdatedAt(toLocal(now));
+        }
+        return Optional.of(s);
     }
 
     /**
      * 删除会话
      */
-    @Transactional
     public boolean deleteSession(Long id, Long userId) {
-        if (userId == null || userId <= 0) userId = DEFAULT_USER_ID;
-        if (!sessionRepository.existsByIdAndUserId(id, userId)) return false;
-        messageRepository.deleteBySessionId(id);
-        sessionRepository.deleteById(id);
+        var opt = getSession(id, userId);
+        if (opt.isEmpty()) return false;
+        append(new ChatEvent.SessionDeleted(id, opt.get().getUserId(), now()));
         return true;
     }
 
     /**
      * 保存用户消息
      */
-    @Transactional
     public Message saveUserMessage(Long sessionId, Long userId, String content) {
-        if (!getSession(sessionId, userId).isPresent()) {
-            throw new IllegalArgumentException("会话不存在或无权限");
-        }
-        var msg = new Message(sessionId, Role.user, content);
-        return messageRepository.save(msg);
+        var session = getSession(sessionId, userId)
+                .orElseThrow(() -> new IllegalArgumentException("会话不存在或无权限"));
+        var msg = appendMessage(session.getId(), session.getUserId(), Role.user, content);
+        analytics.userMessage(session, content);
+        return msg;
     }
 
     /**
-     * 保存助手消息
+     * 保存助手消息（正文较长时投影为去重 blob，见 MessageContentStore），并计入生成统计
+     * @param docTypeId 会话的文档类型，用于统计归类
+     * @param completion 本次生成的耗时与 token 用量，null 表示未知
      */
-    @Transactional
-    public Message saveAssistantMessage(Long sessionId, String content) {
-        var msg = new Message(sessionId, Role.assistant, content);
-        return messageRepository.save(msg);
+    public Message saveAssistantMessage(Long sessionId, Long userId, String docTypeId, String content,
+                                        ChatAnalytics.Completion completion) {
+        if (userId == null || userId <= 0) userId = DEFAULT_USER_ID;
+        var msg = appendMessage(sessionId, userId, Role.assistant, content);
+        analytics.generationCompleted(sessionId, userId, docTypeId, completion, Instant.now());
+        return msg;
     }
 
     /**
@@ -127,11 +178,40 @@ public class SessionService {
         return getMessages(sessionId, userId);
     }
 
+    private Message appendMessage(long sessionId, long userId, Role role, String content) {
+        var msg = new Message(sessionId, role, content);
+        msg.setId(shards.ids().next(ShardedIds.logicalShardOf(sessionId)));
+        var now = now();
+        msg.setCreatedAt(toLocal(now));
+        append(ChatEvent.MessageAppended.of(msg.getId(), sessionId, userId, role, msg.getContent(), now));
+        return msg;
+    }
+
+    /** 追加事件并等待其投影完成；超时抛出 ShardUnavailableException（503），事件仍会在之后投影 */
+    private void append(ChatEvent event) {
+        projector.track(event, eventLog.append(event));
+        projector.awaitSession(event.sessionId());
+    }
+
+    /** 事件时间精确到毫秒（与日志编码一致），返回的对象与投影后的数据库记录相同 */
+    private static Instant now() {
+        return Instant.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static LocalDateTime toLocal(Instant at) {
+        return LocalDateTime.ofInstant(at, ZoneId.systemDefault());
+    }
+
+    /** 会话 ID 的逻辑分片与用户一致才可能属于该用户，不一致时无需查库 */
+    private static boolean ownedShard(long sessionId, long userId) {
+        return ShardedIds.logicalShardOf(sessionId) == ShardedIds.logicalShardOfUser(userId);
+    }
+
     /**
-     * 根据首条用户消息生成简短标题（截取前 20 字）
+     * 根据首条用户消息生成简短标题（截取前 20 字），作为 LLM 标题生成前的临时标题与失败时的兜底
      */
     public String generateTitleFromFirstMessage(String firstUserContent) {
-        if (firstUserContent == null || firstUserContent.isBlank()) return "新对话";
+        if (firstUserContent == null || firstUserContent.isBlank()) return DEFAULT_TITLE;
         var t = firstUserContent.trim().replaceAll("\\s+", " ");
         return t.length() > 20 ? t.substring(0, 20) + "…" : t;
     }
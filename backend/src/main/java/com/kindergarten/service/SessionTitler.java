@@ -0,0 +1,310 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.entity.Message;
+import com.kindergarten.entity.Session;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
+
+/**
+ * 会话标题后台生成（低优先级、批量）。
+ *
+ * 请求路径上只做两件事：新会话以首条消息截断作为临时标题、标记 title_pending；
+ * 调用 requestTitle() 置一个标志。之后由独立的低优先级线程：
+ * 1. 仅当快速档空闲许可多于 kindergarten.titling.keep-free-permits 时才工作，且占用一个许可，不与用户请求排队竞争；
+ * 2. 一次取最多 batch-size 个待命名会话，先在分片上逐个认领（title_claimed_until 租约，条件更新），
+ *    只为认领成功的会话命名：每个节点都在扫描同样的待命名会话，认领保证同一会话只由一个节点调用模型；
+ * 3. 把首条消息打包进一次 LLM 调用，要求返回 {编号: 标题} 的 JSON；
+ * 4. 为每个会话写一条自动命名事件（ChatEventLog，一次组提交），投影时只在 title_pending 仍为 true 时生效
+ *    （用户已手动改名的不覆盖），不改动 updated_at，记录 titled_at；各节点的 SessionEventPublisher 按 titled_at
+ *    轮询，把新标题推送给连到自己的客户端。
+ * 待命名会话分散在各物理分片（ChatShards）：每个分片取最早的一批，合并后取全局最早的 batch-size 个，
+ * 消息查询与结果核对再按分片分组执行。
+ * LLM 未返回某个会话的标题时保留临时标题；整体失败时释放认领、退避后重试。
+ * 启动后会先检查一次，接管上次进程未处理完的会话（其认领在租约到期后失效）。
+ */
+@Service
+public class SessionTitler {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionTitler.class);
+
+    private static final int MAX_TITLE_CHARS = 20;
+    private static final int MAX_INPUT_CHARS = 200;
+
+    private static final String CLAIM = "update chat_session set title_claimed_until = ? where id = ? "
+            + "and title_pending = true and (title_claimed_until is null or title_claimed_until < ?)";
+    private static final String RELEASE = "update chat_session set title_claimed_until = null where id = ?";
+
+    private static final SystemMessage INSTRUCTION = SystemMessage.from("""
+            你为幼儿园老师与写作助手的对话起标题。用户消息的每一行是一个对话的编号和老师发出的第一条消息。
+            为每个对话生成一个不超过 12 个汉字的中文标题，概括老师想写的内容（如文案类型、年龄段、主题），不要标点和引号。
+            只输出一个 JSON 对象，键为编号，值为标题，例如 {"1":"中班秋游家长通知","2":"小班科学活动教案"}。""");
+
+    private final ChatShards shards;
+    private final ChatEventLog eventLog;
+    private final ChatProjector projector;
+    private final SessionService sessionService;
+    private final LlmTiers tiers;
+    private final LlmMetrics llmMetrics;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+    private final long intervalMs;
+    private final int batchSize;
+    private final int keepFreePermits;
+    private final long failureBackoffMs;
+    private final long claimMs;
+
+    /** 有新的待命名会话（或上一批没取完） */
+    private final AtomicBoolean pending = new AtomicBoolean(true);
+    private volatile long backoffUntil;
+    private ScheduledExecutorService executor;
+
+    public SessionTitler(ChatShards shards,
+                         ChatEventLog eventLog,
+                         ChatProjector projector,
+                         SessionService sessionService,
+                         LlmTiers tiers,
+                         LlmMetrics llmMetrics,
+                         ObjectMapper objectMapper,
+                         MeterRegistry registry,
+                         @Value("${kindergarten.titling.enabled:true}") boolean enabled,
+                         @Value("${kindergarten.titling.interval-ms:3000}") long intervalMs,
+                         @Value("${kindergarten.titling.batch-size:20}") int batchSize,
+                         @Value("${kindergarten.titling.keep-free-permits:8}") int keepFreePermits,
+                         @Value("${kindergarten.titling.failure-backoff-ms:60000}") long failureBackoffMs,
+                         @Value("${kindergarten.titling.claim-ms:120000}") long claimMs) {
+        this.shards = shards;
+        this.eventLog = eventLog;
+        this.projector = projector;
+        this.sessionService = sessionService;
+        this.tiers = tiers;
+        this.llmMetrics = llmMetrics;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs > 0 ? intervalMs : 3000;
+        this.batchSize = batchSize > 0 ? batchSize : 20;
+        this.keepFreePermits = Math.max(0, keepFreePermits);
+        this.failureBackoffMs = failureBackoffMs;
+        this.claimMs = claimMs > 0 ? claimMs : 120_000;
+    }
+
+    /** 有会话等待命名。只置标志，不做任何 I/O，可在请求线程上调用。 */
+    public void requestTitle() {
+        pending.set(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "session-titler");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) executor.shutdownNow();
+    }
+
+    void tick() {
+        if (!pending.get() || System.currentTimeMillis() < backoffUntil) return;
+        var tier = tiers.get(ModelTier.FAST);
+        if (!tier.tryAcquireSpare(keepFreePermits)) return;
+        List<Session> claimed = List.of();
+        try {
+            pending.set(false);
+            var now = LocalDateTime.now();
+            var sessions = new ArrayList<Session>();
+            for (ChatShard shard : shards.all()) {
+                sessions.addAll(shard.sessions().findTitlePending(now, PageRequest.of(0, batchSize)));
+            }
+            if (sessions.isEmpty()) return;
+            if (sessions.size() >= batchSize) pending.set(true);
+            sessions.sort(Comparator.comparing(Session::getCreatedAt));
+            claimed = claim(sessions.size() > batchSize ? sessions.subList(0, batchSize) : sessions, now);
+            // 全部已被其他节点认领：由它们命名
+            if (claimed.isEmpty()) return;
+            titleBatch(tier, claimed);
+        } catch (Exception e) {
+            release(claimed);
+            pending.set(true);
+            backoffUntil = System.currentTimeMillis() + failureBackoffMs;
+            log.warn("会话标题生成失败，{} ms 后重试: {}", failureBackoffMs, e.getMessage());
+        } finally {
+            tier.release();
+        }
+    }
+
+    /** 逐个认领（租约 claim-ms），返回认领成功的会话；已被其他节点认领或已不再待命名的跳过 */
+    private List<Session> claim(List<Session> sessions, LocalDateTime now) {
+        var until = Timestamp.valueOf(now.plus(Duration.ofMillis(claimMs)));
+        var at = Timestamp.valueOf(now);
+        var claimed = new ArrayList<Session>();
+        for (Session s : sessions) {
+            // 单行条件更新：影响行数即是否认领成功（批量执行时部分驱动不返回逐条计数）
+            if (shards.forSession(s.getId()).jdbc().update(CLAIM, until, s.getId(), at) == 1) claimed.add(s);
+        }
+        return claimed;
+    }
+
+    /** 失败后释放认领，退避结束后本节点或其他节点可立即重试 */
+    private void release(List<Session> claimed) {
+        for (Session s : claimed) {
+            try {
+                shards.forSession(s.getId()).jdbc().update(RELEASE, s.getId());
+            } catch (RuntimeException e) {
+                // 释放失败时等租约到期
+                log.debug("释放会话 {} 的标题认领失败: {}", s.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void titleBatch(LlmTier tier, List<Session> sessions) throws Exception {
+        var firstMessages = new HashMap<Long, String>();
+        for (var e : groupByShard(sessions, shards::forSession).entrySet()) {
+            for (Message m : e.getKey().messages().findBySessionIdInAndRole(
+                    e.getValue().stream().map(Session::getId).toList(), Message.Role.user)) {
+                firstMessages.putIfAbsent(m.getSessionId(), m.getContent());
+            }
+        }
+
+        var input = new StringBuilder();
+        var byIndex = new LinkedHashMap<String, Session>();
+        var withoutUserMessage = new ArrayList<Session>();
+        int index = 0;
+        for (Session s : sessions) {
+            var text = firstMessages.get(s.getId());
+            if (text == null) {
+                withoutUserMessage.add(s);
+                continue;
+            }
+            var key = String.valueOf(++index);
+            byIndex.put(key, s);
+            var oneLine = text.strip().replaceAll("\\s+", " ");
+            input.append(key).append(". ")
+                    .append(oneLine.length() > MAX_INPUT_CHARS ? oneLine.substring(0, MAX_INPUT_CHARS) : oneLine)
+                    .append('\n');
+        }
+        long start = System.nanoTime();
+        Map<String, String> generated = Map.of();
+        if (!byIndex.isEmpty()) {
+            List<ChatMessage> messages = List.of(INSTRUCTION, UserMessage.from(input.toString()));
+            ChatResponse response;
+            try {
+                response = tier.chatModel().chat(messages);
+            } catch (RuntimeException e) {
+                llmMetrics.recordCall(tier, "title", start, null, e);
+                throw e;
+            }
+            llmMetrics.recordCall(tier, "title", start, response.tokenUsage(), null);
+            generated = parseTitles(response.aiMessage() != null ? response.aiMessage().text() : null);
+        }
+
+        var updated = new ArrayList<Session>();
+        // 只有助手消息的会话无从命名，保留现有标题并结束等待
+        updated.addAll(withoutUserMessage);
+        for (var e : byIndex.entrySet()) {
+            var s = e.getValue();
+            var title = generated.get(e.getKey());
+            if (title == null) {
+                // 模型漏掉了这一条：保留或补上临时标题
+                title = SessionService.DEFAULT_TITLE.equals(s.getTitle())
+                        ? sessionService.generateTitleFromFirstMessage(firstMessages.get(s.getId()))
+                        : s.getTitle();
+                registry.counter("session.title.generated", "source", "fallback").increment();
+            } else {
+                registry.counter("session.title.generated", "source", "llm").increment();
+            }
+            s.setTitle(title);
+            updated.add(s);
+        }
+        // 写入自动命名事件（共享组提交），等投影完成后核对数据库中的结果：
+        // 投影只在 title_pending 仍为 true 时生效，期间被用户手动改名的会话不计入；推送由各节点的 SessionEventPublisher 轮询完成
+        var appends = new ArrayList<CompletableFuture<Long>>(updated.size());
+        var events = new ArrayList<ChatEvent>(updated.size());
+        for (Session s : updated) {
+            var event = new ChatEvent.SessionRenamed(s.getId(), s.getUserId(), s.getTitle(), true, Instant.now());
+            events.add(event);
+            appends.add(eventLog.appendAsync(event));
+        }
+        for (int i = 0; i < appends.size(); i++) {
+            projector.track(events.get(i), eventLog.await(appends.get(i)));
+        }
+        for (ChatEvent event : events) projector.awaitSession(event.sessionId());
+        int written = 0;
+        for (var e : groupByShard(updated, shards::forSession).entrySet()) {
+            var expected = new HashMap<Long, String>();
+            for (Session s : e.getValue()) expected.put(s.getId(), s.getTitle());
+            for (Session s : e.getKey().sessions().findAllById(expected.keySet())) {
+                if (!s.isTitlePending() && s.getTitle() != null && s.getTitle().equals(expected.get(s.getId()))) written++;
+            }
+        }
+        log.info("会话标题批量生成: {} 个会话，写入 {} 个，耗时 {} ms",
+                byIndex.size(), written, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Map<ChatShard, List<Session>> groupByShard(List<Session> sessions, LongFunction<ChatShard> route) {
+        var result = new LinkedHashMap<ChatShard, List<Session>>();
+        for (Session s : sessions) {
+            result.computeIfAbsent(route.apply(s.getId()), k -> new ArrayList<>()).add(s);
+        }
+        return result;
+    }
+
+    /** 从模型输出中取出 JSON 对象（容忍前后多余文字、代码块标记） */
+    Map<String, String> parseTitles(String text) {
+        var result = new HashMap<String, String>();
+        if (text == null) return result;
+        int begin = text.indexOf('{');
+        int end = text.lastIndexOf('}');
+        if (begin < 0 || end <= begin) return result;
+        try {
+            var node = objectMapper.readTree(text.substring(begin, end + 1));
+            node.fields().forEachRemaining(f -> {
+                var title = f.getValue().asText("").strip().replaceAll("[\"'“”‘’《》\\s]+", "");
+                if (!title.isEmpty()) {
+                    result.put(f.getKey().strip(),
+                            title.length() > MAX_TITLE_CHARS ? title.substring(0, MAX_TITLE_CHARS) : title);
+                }
+            });
+        } catch (Exception e) {
+            log.warn("无法解析标题生成结果: {}", e.getMessage());
+        }
+        return result;
+    }
+}
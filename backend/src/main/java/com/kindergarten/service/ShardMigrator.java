@@ -0,0 +1,398 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.ShardAssignment.State;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * 在线重新分片：把一个逻辑分片的会话、消息、blob 与会话墓碑从当前物理分片迁到另一个物理分片。
+ *
+ * 1. 映射置为 COPYING（条件更新，防止多个节点同时迁移同一逻辑分片），照常读写；
+ * 2. 全量复制：按主键顺序分批复制会话，再复制消息（先补齐引用的 blob）；已存在的行跳过或覆盖，可重复执行；
+ * 3. 增量追赶：重新同步全部会话行（标题等可能被修改），消息与墓碑按 ID 集合比对、补齐目标端缺少的；
+ * 4. 冻结：映射置为 FROZEN，所有节点的写入进入等待；等待 freeze-grace-ms 让各节点刷新映射、在途写事务结束；
+ * 5. 冻结状态下再追赶一次，并删除目标端多出来的会话（期间在源端被删除的）；
+ *    墓碑须随逻辑分片迁走，否则切换后重放的创建事件会在目标端复活已删除的会话（见 ChatProjector）；
+ * 6. 切换：映射改为目标物理分片、ACTIVE，写入恢复；再等待一个 freeze-grace-ms 后清理源端数据。
+ * 消息不能按 ID 中的时间戳只追赶「复制开始之后」的部分：ID 在事件写入日志时生成，行由 ChatProjector 投影到源端，
+ * 可能晚得多（重启后从检查点重放、数据库重试退避），带「旧」ID 的消息会在复制期间才出现在源端。
+ * 因此追赶只比对 ID（走主键索引，不读正文），只复制缺少的行；冻结时长取决于 ID 比对与最后一次追赶的增量。
+ * 任一步失败都回到源端 ACTIVE，目标端的残留数据由下次迁移覆盖。
+ *
+ * 只复制 chat_session / chat_message / chat_message_blob / chat_session_tombstone 的列，表结构变化时须同步修改本类的 SQL。
+ */
+@Service
+public class ShardMigrator {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMigrator.class);
+
+    private static final String SESSION_COLUMNS =
+            "id, user_id, title, doc_type_id, title_pending, title_claimed_until, titled_at, created_at, updated_at";
+    private static final String MESSAGE_COLUMNS = "id, session_id, role, content_data, content_hash, metadata, created_at";
+    private static final String BLOB_COLUMNS = "hash, data, raw_length, last_referenced_at";
+    private static final String TOMBSTONE_COLUMNS = "session_id, user_id, deleted_at";
+    /** 逻辑分片即 ID 低位，mod 后与逻辑分片号比较 */
+    private static final String MOD = "mod(%s, " + ShardedIds.LOGICAL_SHARDS + ") = ?";
+
+    public enum Phase { QUEUED, COPYING, FROZEN, CLEANING, DONE, FAILED }
+
+    /**
+     * 一次迁移的进度。
+     */
+    public record Migration(int logicalShard, int source, int target, Phase phase,
+                            long sessionsCopied, long messagesCopied,
+                            LocalDateTime startedAt, LocalDateTime finishedAt, String error) {
+
+        Migration with(Phase phase) {
+            return new Migration(logicalShard, source, target, phase, sessionsCopied, messagesCopied, startedAt,
+                    phase == Phase.DONE || phase == Phase.FAILED ? LocalDateTime.now() : finishedAt, error);
+        }
+
+        Migration copied(long sessions, long messages) {
+            return new Migration(logicalShard, source, target, phase, sessionsCopied + sessions,
+                    messagesCopied + messages, startedAt, finishedAt, error);
+        }
+
+        Migration failed(String error) {
+            return new Migration(logicalShard, source, target, Phase.FAILED, sessionsCopied, messagesCopied,
+                    startedAt, LocalDateTime.now(), error);
+        }
+
+        public boolean running() {
+            return phase != Phase.DONE && phase != Phase.FAILED;
+        }
+    }
+
+    private final ChatShards shards;
+    private final long freezeGraceMs;
+    private final int batchSize;
+
+    /** 每个逻辑分片最近一次迁移 */
+    private final Map<Integer, Migration> migrations = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        var t = new Thread(r, "shard-migrator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ShardMigrator(ChatShards shards, ShardingProperties properties) {
+        this.shards = shards;
+        this.freezeGraceMs = properties.freezeGraceMs();
+        this.batchSize = properties.migrationBatchSize();
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交迁移任务（本节点串行执行），立即返回。
+     *
+     * @throws IllegalArgumentException 分片号无效，或目标即当前所在的物理分片
+     * @throws IllegalStateException    该逻辑分片已有迁移在排队或进行
+     */
+    public Migration move(int logicalShard, int target) {
+        if (logicalShard < 0 || logicalShard >= ShardedIds.LOGICAL_SHARDS) {
+            throw new IllegalArgumentException("逻辑分片须在 0–" + (ShardedIds.LOGICAL_SHARDS - 1) + " 之间");
+        }
+        if (target < 0 || target >= shards.all().size()) {
+            throw new IllegalArgumentException("物理分片不存在: " + target);
+        }
+        int source = shards.layout().physicalOf(logicalShard);
+        if (source == target) {
+            throw new IllegalArgumentException("逻辑分片 " + logicalShard + " 已在物理分片 " + target);
+        }
+        var migration = new Migration(logicalShard, source, target, Phase.QUEUED, 0, 0, LocalDateTime.now(), null, null);
+        var previous = migrations.compute(logicalShard, (k, existing) ->
+                existing != null && existing.running() ? existing : migration);
+        if (previous != migration) {
+            throw new IllegalStateException("逻辑分片 " + logicalShard + " 已有迁移在进行");
+        }
+        executor.execute(() -> run(logicalShard, source, target));
+        return migration;
+    }
+
+    public Collection<Migration> migrations() {
+        return List.copyOf(migrations.values());
+    }
+
+    private void run(int logical, int sourceIndex, int targetIndex) {
+        var source = shards.get(sourceIndex);
+        var target = shards.get(targetIndex);
+        long start = System.nanoTime();
+        if (!shards.transition(logical, sourceIndex, State.ACTIVE, sourceIndex, State.COPYING)) {
+            update(logical, m -> m.failed("映射已变化（其他节点正在迁移或已迁移）"));
+            return;
+        }
+        try {
+            update(logical, m -> m.with(Phase.COPYING));
+            copySessions(source, target, logical);
+            copyMessages(source, target, logical);
+
+            copySessions(source, target, logical);
+            copyMissingMessages(source, target, logical);
+            copyTombstones(source, target, logical);
+
+            if (!shards.transition(logical, sourceIndex, State.COPYING, sourceIndex, State.FROZEN)) {
+                throw new IllegalStateException("冻结失败：映射已被修改");
+            }
+            update(logical, m -> m.with(Phase.FROZEN));
+            long frozenAt = System.nanoTime();
+            Thread.sleep(freezeGraceMs);
+            copySessions(source, target, logical);
+            copyMissingMessages(source, target, logical);
+            copyTombstones(source, target, logical);
+            removeDeleted(source, target, logical);
+            if (!shards.transition(logical, sourceIndex, State.FROZEN, targetIndex, State.ACTIVE)) {
+                throw new IllegalStateException("切换失败：映射已被修改");
+            }
+            log.info("逻辑分片 {} 已切换到物理分片 {}，写入冻结 {} ms",
+                    logical, targetIndex, (System.nanoTime() - frozenAt) / 1_000_000);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            revert(logical, sourceIndex);
+            update(logical, m -> m.failed(e.getMessage()));
+            log.error("逻辑分片 {} 迁移失败，已恢复到物理分片 {}", logical, sourceIndex, e);
+            return;
+        }
+
+        try {
+            update(logical, m -> m.with(Phase.CLEANING));
+            // 其他节点可能仍按旧映射读源端，等它们刷新后再删
+            Thread.sleep(freezeGraceMs);
+            cleanUp(source, logical);
+            update(logical, m -> m.with(Phase.DONE));
+            log.info("逻辑分片 {} 迁移完成: {} → {}，耗时 {} ms",
+                    logical, sourceIndex, targetIndex, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            // 已切换成功，源端残留数据不再被路由到，不影响正确性
+            update(logical, m -> m.failed("清理源端失败: " + e.getMessage()));
+            log.warn("逻辑分片 {} 已迁移，但清理物理分片 {} 失败: {}", logical, sourceIndex, e.getMessage());
+        }
+    }
+
+    private void revert(int logical, int sourceIndex) {
+        try {
+            if (!shards.transition(logical, sourceIndex, State.FROZEN, sourceIndex, State.ACTIVE)) {
+                shards.transition(logical, sourceIndex, State.COPYING, sourceIndex, State.ACTIVE);
+            }
+        } catch (RuntimeException e) {
+            log.error("恢复逻辑分片 {} 映射失败，需人工将 chat_shard_map 置回 ACTIVE", logical, e);
+        }
+    }
+
+    private void update(int logical, UnaryOperator<Migration> change) {
+        migrations.computeIfPresent(logical, (k, m) -> change.apply(m));
+    }
+
+    /** 同步该逻辑分片的全部会话行：目标端已有的覆盖，没有的插入 */
+    private void copySessions(ChatShard source, ChatShard target, int logical) {
+        long after = -1;
+        while (true) {
+            List<Object[]> rows = source.jdbc().query(
+                    "select " + SESSION_COLUMNS + " from chat_session where " + MOD.formatted("id") + " and id > ? order by id limit ?",
+                    ShardMigrator::sessionRow, logical, after, batchSize);
+            if (rows.isEmpty()) return;
+            var existing = existingIds(target.jdbc(), "chat_session", "id", ids(rows));
+            var updates = new ArrayList<Object[]>();
+            var inserts = new ArrayList<Object[]>();
+            for (Object[] row : rows) {
+                if (existing.contains((Long) row[0])) {
+                    // update 的参数顺序：其余列在前，id 在最后
+                    var params = new Object[row.length];
+                    System.arraycopy(row, 1, params, 0, row.length - 1);
+                    params[row.length - 1] = row[0];
+                    updates.add(params);
+                } else {
+                    inserts.add(row);
+                }
+            }
+            target.tx().executeWithoutResult(status -> {
+                if (!updates.isEmpty()) {
+                    target.jdbc().batchUpdate("update chat_session set user_id = ?, title = ?, doc_type_id = ?, "
+                            + "title_pending = ?, title_claimed_until = ?, titled_at = ?, created_at = ?, updated_at = ? "
+                            + "where id = ?", updates);
+                }
+                if (!inserts.isEmpty()) {
+                    target.jdbc().batchUpdate("insert into chat_session (" + SESSION_COLUMNS + ") "
+                            + "values (?, ?, ?, ?, ?, ?, ?, ?, ?)", inserts);
+                }
+            });
+            update(logical, m -> m.copied(inserts.size(), 0));
+            after = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    /** 全量复制该逻辑分片的消息（消息不可修改，目标端已有的跳过），先补齐引用的 blob */
+    private void copyMessages(ChatShard source, ChatShard target, int logical) {
+        long after = -1;
+        while (true) {
+            List<Object[]> rows = source.jdbc().query(
+                    "select " + MESSAGE_COLUMNS + " from chat_message where " + MOD.formatted("session_id") + " and id > ? order by id limit ?",
+                    ShardMigrator::messageRow, logical, after, batchSize);
+            if (rows.isEmpty()) return;
+            var existing = existingIds(target.jdbc(), "chat_message", "id", ids(rows));
+            insertMessages(source, target, logical, rows, existing);
+            after = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    /**
+     * 按 ID 集合比对，补齐目标端缺少的消息（无论 ID 新旧）：分批读源端的 ID，只对目标端没有的读整行复制。
+     */
+    void copyMissingMessages(ChatShard source, ChatShard target, int logical) {
+        long after = -1;
+        while (true) {
+            List<Long> ids = source.jdbc().queryForList(
+                    "select id from chat_message where " + MOD.formatted("session_id") + " and id > ? order by id limit ?",
+                    Long.class, logical, after, batchSize);
+            if (ids.isEmpty()) return;
+            var missing = new ArrayList<>(ids);
+            missing.removeAll(existingIds(target.jdbc(), "chat_message", "id", ids));
+            if (!missing.isEmpty()) {
+                List<Object[]> rows = source.jdbc().query(
+                        "select " + MESSAGE_COLUMNS + " from chat_message where id in (" + placeholders(missing.size()) + ") order by id",
+                        ShardMigrator::messageRow, missing.toArray());
+                insertMessages(source, target, logical, rows, Set.of());
+            }
+            after = ids.get(ids.size() - 1);
+        }
+    }
+
+    /** 写入目标端没有的消息行；会话还不在目标端的消息留给下一轮（外键要求会话先存在） */
+    private void insertMessages(ChatShard source, ChatShard target, int logical, List<Object[]> rows, Set<Long> existing) {
+        var sessionIds = new HashSet<Long>();
+        for (Object[] row : rows) sessionIds.add((Long) row[1]);
+        var knownSessions = existingIds(target.jdbc(), "chat_session", "id", sessionIds);
+        var inserts = new ArrayList<Object[]>();
+        var hashes = new HashSet<String>();
+        for (Object[] row : rows) {
+            if (existing.contains((Long) row[0]) || !knownSessions.contains((Long) row[1])) continue;
+            inserts.add(row);
+            if (row[4] != null) hashes.add((String) row[4]);
+        }
+        target.tx().executeWithoutResult(status -> {
+            copyBlobs(source, target, hashes);
+            if (!inserts.isEmpty()) {
+                target.jdbc().batchUpdate("insert into chat_message (" + MESSAGE_COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?)",
+                        inserts);
+            }
+        });
+        update(logical, m -> m.copied(0, inserts.size()));
+    }
+
+    private void copyBlobs(ChatShard source, ChatShard target, Set<String> hashes) {
+        if (hashes.isEmpty()) return;
+        var present = new HashSet<String>(target.jdbc().queryForList(
+                "select hash from chat_message_blob where hash in (" + placeholders(hashes.size()) + ")",
+                String.class, hashes.toArray()));
+        var missing = new ArrayList<>(hashes);
+        missing.removeAll(present);
+        if (missing.isEmpty()) return;
+        List<Object[]> blobs = source.jdbc().query(
+                "select " + BLOB_COLUMNS + " from chat_message_blob where hash in (" + placeholders(missing.size()) + ")",
+                (rs, i) -> new Object[] { rs.getString(1), rs.getBytes(2), rs.getInt(3), rs.getTimestamp(4) },
+                missing.toArray());
+        target.jdbc().batchUpdate("insert into chat_message_blob (" + BLOB_COLUMNS + ") values (?, ?, ?, ?)", blobs);
+    }
+
+    /** 补齐目标端缺少的会话墓碑（墓碑只插入和整行清理，已有的不必覆盖） */
+    void copyTombstones(ChatShard source, ChatShard target, int logical) {
+        long after = -1;
+        while (true) {
+            List<Object[]> rows = source.jdbc().query(
+                    "select " + TOMBSTONE_COLUMNS + " from chat_session_tombstone where " + MOD.formatted("session_id")
+                            + " and session_id > ? order by session_id limit ?",
+                    (rs, i) -> new Object[] { rs.getLong(1), rs.getLong(2), rs.getTimestamp(3) },
+                    logical, after, batchSize);
+            if (rows.isEmpty()) return;
+            var existing = existingIds(target.jdbc(), "chat_session_tombstone", "session_id", ids(rows));
+            var inserts = rows.stream().filter(row -> !existing.contains((Long) row[0])).toList();
+            if (!inserts.isEmpty()) {
+                target.jdbc().batchUpdate("insert into chat_session_tombstone (" + TOMBSTONE_COLUMNS + ") values (?, ?, ?)",
+                        inserts);
+            }
+            after = (Long) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    /** 删除目标端有、源端已没有的会话（复制开始后被删除的）及其消息 */
+    void removeDeleted(ChatShard source, ChatShard target, int logical) {
+        String sql = "select id from chat_session where " + MOD.formatted("id");
+        var remaining = new HashSet<Long>(source.jdbc().queryForList(sql, Long.class, logical));
+        var stale = new ArrayList<Long>();
+        for (Long id : target.jdbc().queryForList(sql, Long.class, logical)) {
+            if (!remaining.contains(id)) stale.add(id);
+        }
+        deleteSessions(target, stale);
+    }
+
+    /** 分批删除源端该逻辑分片的全部会话与消息，以及墓碑 */
+    private void cleanUp(ChatShard source, int logical) {
+        source.jdbc().update("delete from chat_session_tombstone where " + MOD.formatted("session_id"), logical);
+        while (true) {
+            var ids = source.jdbc().queryForList(
+                    "select id from chat_session where " + MOD.formatted("id") + " order by id limit ?", Long.class, logical, batchSize);
+            if (ids.isEmpty()) return;
+            deleteSessions(source, ids);
+        }
+    }
+
+    private void deleteSessions(ChatShard shard, List<Long> sessionIds) {
+        for (int from = 0; from < sessionIds.size(); from += batchSize) {
+            var batch = sessionIds.subList(from, Math.min(sessionIds.size(), from + batchSize));
+            var in = placeholders(batch.size());
+            shard.tx().executeWithoutResult(status -> {
+                shard.jdbc().update("delete from chat_message where session_id in (" + in + ")", batch.toArray());
+                shard.jdbc().update("delete from chat_session where id in (" + in + ")", batch.toArray());
+            });
+        }
+    }
+
+    private static Set<Long> existingIds(JdbcTemplate jdbc, String table, String column, Collection<Long> ids) {
+        if (ids.isEmpty()) return Set.of();
+        return new HashSet<>(jdbc.queryForList(
+                "select " + column + " from " + table + " where " + column + " in (" + placeholders(ids.size()) + ")",
+                Long.class, ids.toArray()));
+    }
+
+    private static List<Long> ids(List<Object[]> rows) {
+        var result = new ArrayList<Long>(rows.size());
+        for (Object[] row : rows) result.add((Long) row[0]);
+        return result;
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static Object[] sessionRow(ResultSet rs, int rowNum) throws SQLException {
+        return new Object[] { rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4),
+                rs.getBoolean(5), rs.getTimestamp(6), rs.getTimestamp(7), rs.getTimestamp(8), rs.getTimestamp(9) };
+    }
+
+    private static Object[] messageRow(ResultSet rs, int rowNum) throws SQLException {
+        return new Object[] { rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getBytes(4),
+                rs.getString(5), rs.getString(6), rs.getTimestamp(7) };
+    }
+}
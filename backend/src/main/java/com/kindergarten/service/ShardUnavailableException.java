@@ -0,0 +1,21 @@
+package com.kindergarten.service;
+
+/**
+ * 会话所在的逻辑分片暂不可用，等待超时：正在迁移（写入已冻结），或刚写入的事件尚未投影到数据库（见 ChatProjector）。
+ * 客户端稍后重试即可，接口返回 503。
+ */
+public class ShardUnavailableException extends RuntimeException {
+
+    private final int logicalShard;
+
+    public ShardUnavailableException(int logicalShard) {
+        this(logicalShard, "会话数据正在迁移，请稍后重试");
+    }
+
+    public ShardUnavailableException(int logicalShard, String message) {
+        super(message);
+        this.logicalShard = logicalShard;
+    }
+
+    public int getLogicalShard() { return logicalShard; }
+}
@@ -0,0 +1,132 @@
+package com.kindergarten.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 会话与消息 ID 生成：ID 自带逻辑分片号，按 ID 路由无需查目录。
+ *
+ * 53 位（JavaScript Number 可精确表示），从高到低：
+ * <pre>
+ * | 秒（自 2024-01-01 UTC，31 位） | 节点（4 位） | 序号（10 位） | 逻辑分片（8 位） |
+ * </pre>
+ * - 逻辑分片取自用户 ID 的散列，同一用户的会话及其消息落在同一个逻辑分片，按用户列表只查一个库；
+ * - 逻辑分片固定 256 个，映射到物理数据源的关系见 ChatShards，重新分片只改映射、不改 ID；
+ * - 序号按逻辑分片各自递增，一秒内用完 1024 个时借用下一秒，不等待时钟；
+ * - 低 8 位即逻辑分片，SQL 中用 mod(id, 256) 即可筛出某个逻辑分片的数据（迁移用）。
+ *
+ * 节点号由 NodeLeaseHolder 从主库租得，保证各实例不同。租约同时约束时钟：
+ * - 只生成秒数小于已预留上界（持久化在租约行中）的 ID，借用超出上界时拒绝；
+ * - 从起始秒数（上一个持有者的预留上界）开始，重启后不会重复之前借用过的秒数；
+ * - 租约未能按时续期（主库不可用、进程长时间停顿）时暂停生成，以免与接管者冲突。
+ */
+public final class ShardedIds {
+
+    public static final int LOGICAL_SHARDS = 256;
+    /** 节点号个数（4 位） */
+    public static final int NODES = 16;
+
+    private static final int SHARD_BITS = 8;
+    private static final int SEQUENCE_BITS = 10;
+    private static final int NODE_BITS = 4;
+    /** 2024-01-01T00:00:00Z */
+    private static final long EPOCH_SECONDS = 1_704_067_200L;
+
+    private final int nodeId;
+    /** 每个逻辑分片的 (秒 &lt;&lt; SEQUENCE_BITS | 序号) */
+    private final AtomicLongArray clocks = new AtomicLongArray(LOGICAL_SHARDS);
+    /** 可用秒数上界（自 EPOCH_SECONDS，不含） */
+    private volatile long reservedSeconds = Long.MAX_VALUE;
+    /** 受租约约束时，租约在本地视为有效的截止时刻（System.nanoTime） */
+    private volatile boolean leased;
+    private volatile long validUntilNanos;
+    private volatile boolean revoked;
+
+    /** 不受租约约束（单机工具与测试） */
+    public ShardedIds(int nodeId) {
+        this(nodeId, 0);
+    }
+
+    /**
+     * @param floorEpochSecond 起始 Unix 秒：生成的 ID 秒数不小于它
+     */
+    public ShardedIds(int nodeId, long floorEpochSecond) {
+        if (nodeId < 0 || nodeId >= NODES) {
+            throw new IllegalArgumentException("节点号须在 0–" + (NODES - 1) + " 之间");
+        }
+        this.nodeId = nodeId;
+        long floor = Math.max(0, floorEpochSecond - EPOCH_SECONDS) << SEQUENCE_BITS;
+        for (int i = 0; i < LOGICAL_SHARDS; i++) clocks.set(i, floor);
+    }
+
+    public int nodeId() { return nodeId; }
+
+    /** 在指定逻辑分片上生成新 ID */
+    public long next(int logicalShard) {
+        if (revoked || leased && System.nanoTime() - validUntilNanos > 0) {
+            throw new ShardUnavailableException(logicalShard, "节点租约未续期，暂停写入，请稍后重试");
+        }
+        long now = (Instant.now().getEpochSecond() - EPOCH_SECONDS) << SEQUENCE_BITS;
+        long current;
+        long next;
+        do {
+            current = clocks.get(logicalShard);
+            next = Math.max(current + 1, now);
+            if (next >>> SEQUENCE_BITS >= reservedSeconds) {
+                throw new ShardUnavailableException(logicalShard, "ID 时钟超出已预留的范围，请稍后重试");
+            }
+        } while (!clocks.compareAndSet(logicalShard, current, next));
+        long seconds = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return ((((seconds << NODE_BITS) | nodeId) << SEQUENCE_BITS | sequence) << SHARD_BITS) | logicalShard;
+    }
+
+    /** 与用户同一逻辑分片的新 ID（新建会话） */
+    public long nextForUser(long userId) {
+        return next(logicalShardOfUser(userId));
+    }
+
+    /**
+     * 续期（NodeLeaseHolder 在主库写入成功后调用）
+     *
+     * @param reservedUntilEpochSecond 已持久化的预留上界（Unix 秒，不含）
+     * @param validUntilNanos          租约在本地视为有效的截止时刻（System.nanoTime）
+     */
+    void lease(long reservedUntilEpochSecond, long validUntilNanos) {
+        this.reservedSeconds = Math.max(0, reservedUntilEpochSecond - EPOCH_SECONDS);
+        this.validUntilNanos = validUntilNanos;
+        this.leased = true;
+    }
+
+    /** 租约被接管或已释放：之后不再生成 ID */
+    void revoke() {
+        revoked = true;
+    }
+
+    /** 已用到的最大 Unix 秒（各逻辑分片中最大的，含借用的秒数） */
+    long highWaterEpochSecond() {
+        long max = 0;
+        for (int i = 0; i < LOGICAL_SHARDS; i++) max = Math.max(max, clocks.get(i));
+        return (max >>> SEQUENCE_BITS) + EPOCH_SECONDS;
+    }
+
+    /** 该时刻之后生成的 ID 都不小于此值（任意节点、任意逻辑分片），用于按 ID 主键范围扫描增量 */
+    public static long firstIdAt(Instant instant) {
+        long seconds = Math.max(0, instant.getEpochSecond() - EPOCH_SECONDS);
+        return seconds << (NODE_BITS + SEQUENCE_BITS + SHARD_BITS);
+    }
+
+    public static int logicalShardOf(long id) {
+        return (int) (id & (LOGICAL_SHARDS - 1));
+    }
+
+    /** ID 中的节点号 */
+    public static int nodeOf(long id) {
+        return (int) ((id >>> (SHARD_BITS + SEQUENCE_BITS)) & (NODES - 1));
+    }
+
+    /** 用户 ID 散列后取高 8 位，连续的用户 ID 也能均匀分布 */
+    public static int logicalShardOfUser(long userId) {
+        return (int) ((userId * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - SHARD_BITS));
+    }
+}
@@ -0,0 +1,63 @@
+package com.kindergarten.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.List;
+
+/**
+ * 会话存储分片配置，从 application.yml 的 kindergarten.sharding 下读取。
+ *
+ * 物理分片 0 固定为 spring.datasource（主库），shards 中依次为物理分片 1、2…；
+ * 已有数据的物理分片只能追加、不能删除或调换顺序（分片映射表按下标引用）。
+ *
+ * @param nodeId             本实例的节点号（0–15），参与会话/消息 ID 生成；为空时自动租用空闲的号。
+ *                           无论是否指定都须从主库租得（见 NodeLeaseHolder），重复时启动失败
+ * @param shards             主库之外的物理分片
+ * @param mapRefreshMs       从主库刷新逻辑分片映射的间隔
+ * @param freezeGraceMs      迁移冻结写入后等待的时间，须大于刷新间隔与最长写事务之和
+ * @param migrationBatchSize 迁移时每批复制的会话数
+ * @param leaseTtlMs         节点号租约时长，未续期超过该时长后可被其他实例接管
+ * @param leaseHeartbeatMs   租约续期间隔，须明显小于 lease-ttl-ms 的一半
+ * @param idReserveSeconds   每次续期时 ID 秒数预留到当前时间之后多少秒（崩溃后接管者从预留上界开始生成）
+ */
+@ConfigurationProperties(prefix = "kindergarten.sharding")
+public record ShardingProperties(
+        Integer nodeId,
+        List<DataSourceSpec> shards,
+        Long mapRefreshMs,
+        Long freezeGraceMs,
+        Integer migrationBatchSize,
+        Long leaseTtlMs,
+        Long leaseHeartbeatMs,
+        Long idReserveSeconds
+) {
+    public ShardingProperties {
+        shards = shards != null ? List.copyOf(shards) : List.of();
+        mapRefreshMs = mapRefreshMs != null && mapRefreshMs > 0 ? mapRefreshMs : 1000L;
+        freezeGraceMs = freezeGraceMs != null && freezeGraceMs >= 0 ? freezeGraceMs : 5000L;
+        migrationBatchSize = migrationBatchSize != null && migrationBatchSize > 0 ? migrationBatchSize : 200;
+        leaseTtlMs = leaseTtlMs != null && leaseTtlMs > 0 ? leaseTtlMs : 30000L;
+        leaseHeartbeatMs = leaseHeartbeatMs != null && leaseHeartbeatMs > 0 ? leaseHeartbeatMs : 5000L;
+        idReserveSeconds = idReserveSeconds != null && idReserveSeconds > 0 ? idReserveSeconds : 60L;
+        if (leaseHeartbeatMs * 2 >= leaseTtlMs) {
+            throw new IllegalArgumentException("kindergarten.sharding.lease-heartbeat-ms 须小于 lease-ttl-ms 的一半");
+        }
+    }
+
+    /**
+     * 物理分片数据源。
+     *
+     * @param url             JDBC URL，如 jdbc:h2:mem:kindergarten-shard1;DB_CLOSE_DELAY=-1
+     * @param driverClassName 可省略，按 URL 推断
+     * @param maxPoolSize     连接池大小，默认 10
+     */
+    public record DataSourceSpec(String url, String username, String password,
+                                 String driverClassName, Integer maxPoolSize) {
+        public DataSourceSpec {
+            if (url == null || url.isBlank()) {
+                throw new IllegalArgumentException("kindergarten.sharding.shards[].url 不能为空");
+            }
+            maxPoolSize = maxPoolSize != null && maxPoolSize > 0 ? maxPoolSize : 10;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package com.kindergarten.service;
+
+import com.kindergarten.repository.UsageDailyRepository;
+import com.kindergarten.repository.UsageTotal;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 用量记账与每日额度（内存账本 + 定期批量刷写）。
+ *
+ * 热路径无锁：每个「用户 × 日期 × 模型档位」一组 LongAdder（分段计数，高并发下不争用同一缓存行），
+ * 请求只做内存累加，不写数据库。后台按 kindergarten.quota.flush-interval-ms 定期：
+ * 1. 取走各计数器的增量（sumThenReset），在一个事务里批量累加到 usage_daily（requests = requests + ?）；
+ * 2. 按用户批量读回当日合计作为「基线」，其中包含其他后端节点刷写的用量。
+ *
+ * 额度判断 = 基线 + 本节点未刷写增量 + 正在刷写的增量 + 已放行未结束的请求。
+ * 多节点时各节点只看到其他节点截至上次同步的用量，额度为软上限，误差不超过一个刷写周期内其他节点的用量。
+ * 重启后首次访问某用户时从数据库加载当日基线；正常关闭前会再刷写一次，进程被强杀时丢失最后一个周期的增量。
+ */
+@Service
+public class UsageLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(UsageLedger.class);
+
+    private static final int REFRESH_CHUNK = 500;
+
+    private static final String UPDATE_SQL = """
+            update usage_daily
+               set requests = requests + ?, input_tokens = input_tokens + ?, output_tokens = output_tokens + ?, updated_at = ?
+             where user_id = ? and usage_date = ? and tier = ?""";
+
+    private static final String INSERT_SQL = """
+            insert into usage_daily (user_id, usage_date, tier, requests, input_tokens, output_tokens, updated_at)
+            values (?, ?, ?, ?, ?, ?, ?)""";
+
+    private final QuotaProperties properties;
+    private final UsageDailyRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry registry;
+    private final Timer flushTimer;
+
+    private final Map<UserDay, UserDayState> states = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    public UsageLedger(QuotaProperties properties,
+                       UsageDailyRepository repository,
+                       JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry registry) {
+        this.properties = properties;
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.registry = registry;
+        this.flushTimer = Timer.builder("usage.ledger.flush").register(registry);
+        Gauge.builder("usage.ledger.active.users", states, Map::size).register(registry);
+    }
+
+    /**
+     * 调用上游模型前预占一次生成额度。额度不足时抛出 QuotaExceededException。
+     * 返回的 Reservation 必须以 commit（记入用量）或 cancel（退回）结束，见 LlmService。
+     */
+    public Reservation reserve(long userId) {
+        var state = state(userId, today());
+        state.reserved.increment();
+        if (properties.enabled()) {
+            var plan = properties.limitsOf(userId);
+            String reason = null;
+            if (plan.dailyRequests() >= 0 && state.usedRequests() > plan.dailyRequests()) {
+                reason = "今日生成次数已用完（" + plan.dailyRequests() + " 次），请明天再试或升级套餐";
+            } else if (plan.dailyTokens() >= 0 && state.usedTokens() >= plan.dailyTokens()) {
+                reason = "今日生成额度已用完，请明天再试或升级套餐";
+            }
+            if (reason != null) {
+                state.reserved.decrement();
+                var planName = properties.planOf(userId);
+                registry.counter("quota.rejected", "plan", planName).increment();
+                throw new QuotaExceededException(planName, reason);
+            }
+        }
+        return new Reservation(state);
+    }
+
+    /** 用户当日用量（含本节点尚未刷写的部分） */
+    public UsageSnapshot snapshot(long userId) {
+        var state = state(userId, today());
+        var plan = properties.limitsOf(userId);
+        return new UsageSnapshot(properties.planOf(userId), state.key.date(),
+                state.usedRequests() - state.reserved.sum(), state.usedTokens(),
+                plan.dailyRequests(), plan.dailyTokens());
+    }
+
+    /**
+     * 刷写增量并同步其他节点的用量。调度线程与关闭钩子可能同时调用，同一时刻只执行一次。
+     */
+    @Scheduled(fixedDelayString = "${kindergarten.quota.flush-interval-ms:5000}")
+    public void flush() {
+        if (!flushLock.tryLock()) return;
+        try {
+            flushTimer.record(this::doFlush);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushLock.lock();
+        try {
+            doFlush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void doFlush() {
+        var deltas = drain();
+        if (!deltas.isEmpty()) {
+            try {
+                write(deltas);
+            } catch (DataAccessException e) {
+                // 整批已回滚：增量放回计数器，下个周期重试
+                log.warn("用量刷写失败，{} 条增量将在下次重试: {}", deltas.size(), e.getMessage());
+                for (Delta d : deltas) d.state().restore(d);
+                return;
+            }
+        }
+        // 已写入数据库的增量并入基线；随后从数据库读回的合计会覆盖它，并带上其他节点的用量
+        for (Delta d : deltas) d.state().absorb(d);
+        var today = today();
+        try {
+            refreshBaselines(today);
+        } catch (DataAccessException e) {
+            log.warn("同步用量基线失败: {}", e.getMessage());
+        }
+        states.values().removeIf(s -> s.key.date().isBefore(today) && s.isIdle());
+    }
+
+    private List<Delta> drain() {
+        var deltas = new ArrayList<Delta>();
+        for (var state : states.values()) {
+            for (var entry : state.counters.entrySet()) {
+                var c = entry.getValue();
+                long requests = c.requests.sumThenReset();
+                long input = c.inputTokens.sumThenReset();
+                long output = c.outputTokens.sumThenReset();
+                if (requests == 0 && input == 0 && output == 0) continue;
+                var d = new Delta(state, entry.getKey(), requests, input, output);
+                state.flushing(d);
+                deltas.add(d);
+            }
+        }
+        return deltas;
+    }
+
+    private void write(List<Delta> deltas) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> upsert(deltas));
+        } catch (DuplicateKeyException e) {
+            // 其他节点同时插入了同一行：整批已回滚，重试一次即可走更新分支
+            transactionTemplate.executeWithoutResult(status -> upsert(deltas));
+        }
+    }
+
+    private void upsert(List<Delta> deltas) {
+        var now = Timestamp.valueOf(LocalDateTime.now());
+        var updates = new ArrayList<Object[]>(deltas.size());
+        for (Delta d : deltas) {
+            updates.add(new Object[] { d.requests(), d.inputTokens(), d.outputTokens(), now,
+                    d.state().key.userId(), Date.valueOf(d.state().key.date()), d.tier().tag() });
+        }
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+        var inserts = new ArrayList<Object[]>();
+        for (int i = 0; i < counts.length; i++) {
+            // SUCCESS_NO_INFO：驱动未返回行数，视为已更新
+            if (counts[i] == 0 || (counts[i] < 0 && counts[i] != Statement.SUCCESS_NO_INFO)) {
+                var d = deltas.get(i);
+                inserts.add(new Object[] { d.state().key.userId(), Date.valueOf(d.state().key.date()), d.tier().tag(),
+                        d.requests(), d.inputTokens(), d.outputTokens(), now });
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+    private void refreshBaselines(LocalDate today) {
+        var userIds = new ArrayList<Long>();
+        for (var key : states.keySet()) {
+            if (key.date().equals(today)) userIds.add(key.userId());
+        }
+        for (int from = 0; from < userIds.size(); from += REFRESH_CHUNK) {
+            var chunk = userIds.subList(from, Math.min(from + REFRESH_CHUNK, userIds.size()));
+            var found = new HashSet<Long>();
+            for (UsageTotal t : repository.sumByUsers(today, chunk)) {
+                var s = states.get(new UserDay(t.userId(), today));
+                if (s != null) s.setBaseline(t.requests(), t.tokens());
+                found.add(t.userId());
+            }
+            for (Long userId : chunk) {
+                if (found.contains(userId)) continue;
+                var s = states.get(new UserDay(userId, today));
+                if (s != null) s.setBaseline(0, 0);
+            }
+        }
+    }
+
+    private UserDayState state(long userId, LocalDate date) {
+        var state = states.computeIfAbsent(new UserDay(userId, date), UserDayState::new);
+        if (!state.loaded) loadBaseline(state);
+        return state;
+    }
+
+    /** 每个用户每天只在首次访问时加载一次；数据库不可用时按 0 计，下次同步时修正 */
+    private void loadBaseline(UserDayState state) {
+        synchronized (state) {
+            if (state.loaded) return;
+            try {
+                long requests = 0, tokens = 0;
+                for (var row : repository.findByUserIdAndUsageDate(state.key.userId(), state.key.date())) {
+                    requests += row.getRequests();
+                    tokens += row.getInputTokens() + row.getOutputTokens();
+                }
+                state.setBaseline(requests, tokens);
+            } catch (DataAccessException e) {
+                log.warn("加载用户 {} 的当日用量失败，暂按 0 计: {}", state.key.userId(), e.getMessage());
+            }
+            state.loaded = true;
+        }
+    }
+
+    /** 当前日期（按 kindergarten.quota.zone）；测试覆盖以模拟跨天 */
+    LocalDate today() {
+        return LocalDate.now(properties.zoneId());
+    }
+
+    /**
+     * 一次生成的额度预占。commit 与 cancel 只有第一次调用生效。
+     */
+    public static final class Reservation {
+
+        private final UserDayState state;
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile TokenUsage usage;
+
+        private Reservation(UserDayState state) {
+            this.state = state;
+        }
+
+        /** 生成结束：记一次请求及 token 用量（usage 为 null 时只记次数） */
+        public void commit(ModelTier tier, TokenUsage usage) {
+            if (!done.compareAndSet(false, true)) return;
+            this.usage = usage;
+            var c = state.counters.get(tier);
+            c.requests.increment();
+            if (usage != null) {
+                c.inputTokens.add(usage.inputTokenCount() != null ? usage.inputTokenCount() : 0);
+                c.outputTokens.add(usage.outputTokenCount() != null ? usage.outputTokenCount() : 0);
+            }
+            // 先记入再释放预占，额度判断不会出现漏计的瞬间
+            state.reserved.decrement();
+        }
+
+        /** commit 时记入的 token 用量，未结束或上游未返回用量时为 null（供 ChatAnalytics 统计） */
+        public TokenUsage usage() {
+            return usage;
+        }
+
+        /** 未生成（排队超时、上游出错等）：退回预占，不计次数 */
+        public void cancel() {
+            if (done.compareAndSet(false, true)) state.reserved.decrement();
+        }
+    }
+
+    /**
+     * 用户当日用量快照。
+     *
+     * @param dailyRequests 每日次数上限，-1 不限
+     * @param dailyTokens   每日 token 上限，-1 不限
+     */
+    public record UsageSnapshot(String plan, LocalDate date, long requests, long tokens,
+                                long dailyRequests, long dailyTokens) {
+    }
+
+    private record UserDay(long userId, LocalDate date) {}
+
+    private record Delta(UserDayState state, ModelTier tier, long requests, long inputTokens, long outputTokens) {}
+
+    private static final class Counter {
+        final LongAdder requests = new LongAdder();
+        final LongAdder inputTokens = new LongAdder();
+        final LongAdder outputTokens = new LongAdder();
+    }
+
+    private static final class UserDayState {
+        final UserDay key;
+        final Map<ModelTier, Counter> counters = new EnumMap<>(ModelTier.class);
+        /** 已放行、尚未结束的请求数 */
+        final LongAdder reserved = new LongAdder();
+        volatile boolean loaded;
+        /** 数据库中的当日合计（含其他节点），仅由加载与刷写线程更新 */
+        volatile long baselineRequests;
+        volatile long baselineTokens;
+        /** 已从计数器取走、尚未确认写入并同步基线的增量 */
+        volatile long flushingRequests;
+        volatile long flushingTokens;
+
+        UserDayState(UserDay key) {
+            this.key = key;
+            for (ModelTier t : ModelTier.values()) counters.put(t, new Counter());
+        }
+
+        long usedRequests() {
+            long pending = 0;
+            for (Counter c : counters.values()) pending += c.requests.sum();
+            return baselineRequests + flushingRequests + pending + reserved.sum();
+        }
+
+        long usedTokens() {
+            long pending = 0;
+            for (Counter c : counters.values()) pending += c.inputTokens.sum() + c.outputTokens.sum();
+            return baselineTokens + flushingTokens + pending;
+        }
+
+        void setBaseline(long requests, long tokens) {
+            baselineRequests = requests;
+            baselineTokens = tokens;
+        }
+
+        void flushing(Delta d) {
+            flushingRequests += d.requests();
+            flushingTokens += d.inputTokens() + d.outputTokens();
+        }
+
+        /** 写入成功：增量从 flushing 移入基线（先加后减，避免漏计） */
+        void absorb(Delta d) {
+            baselineRequests += d.requests();
+            baselineTokens += d.inputTokens() + d.outputTokens();
+            flushingRequests -= d.requests();
+            flushingTokens -= d.inputTokens() + d.outputTokens();
+        }
+
+        /** 写入失败：增量放回计数器 */
+        void restore(Delta d) {
+            var c = counters.get(d.tier());
+            c.requests.add(d.requests());
+            c.inputTokens.add(d.inputTokens());
+            c.outputTokens.add(d.outputTokens());
+            flushingRequests -= d.requests();
+            flushingTokens -= d.inputTokens() + d.outputTokens();
+        }
+
+        boolean isIdle() {
+            if (reserved.sum() != 0 || flushingRequests != 0) return false;
+            for (Counter c : counters.values()) {
+                if (c.requests.sum() != 0 || c.inputTokens.sum() != 0 || c.outputTokens.sum() != 0) return false;
+            }
+            return true;
+        }
+    }
+}
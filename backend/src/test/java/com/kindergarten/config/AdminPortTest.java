@@ -0,0 +1,45 @@
+package com.kindergarten.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 管理接口只在管理端口（kindergarten.admin.port，测试中随机分配）可访问，业务端口返回 404；业务接口不受影响。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class AdminPortTest {
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Autowired
+    AdminPortConfig adminPortConfig;
+
+    @LocalServerPort
+    int port;
+
+    @Test
+    void adminApisAreOnlyServedOnTheAdminPort() {
+        int adminPort = adminPortConfig.adminPort();
+        assertThat(adminPort).isPositive().isNotEqualTo(port);
+
+        for (var path : new String[] { "/api/admin/shards", "/api/admin/stats", "/api/admin/events" }) {
+            assertThat(rest.getForEntity(path, String.class).getStatusCode()).as(path).isEqualTo(HttpStatus.NOT_FOUND);
+            var onAdmin = rest.getForEntity("http://127.0.0.1:" + adminPort + path, String.class);
+            assertThat(onAdmin.getStatusCode()).as(path).isEqualTo(HttpStatus.OK);
+        }
+        // 事件追读带上节点号，消费者按实例保存偏移量
+        assertThat(rest.getForObject("http://127.0.0.1:" + adminPort + "/api/admin/events", String.class))
+                .contains("\"node_id\"");
+
+        assertThat(rest.getForEntity("/api/sessions", String.class).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+}
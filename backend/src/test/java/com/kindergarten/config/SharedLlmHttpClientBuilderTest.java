@@ -0,0 +1,46 @@
+package com.kindergarten.config;
+
+import com.kindergarten.service.LlmProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SharedLlmHttpClientBuilder：模型构建器传入的超时生效（不超过 kindergarten.llm.http 的上限），
+ * 超时相同的模型共用同一个客户端，设置超时不改动共享的构建器。
+ */
+class SharedLlmHttpClientBuilderTest {
+
+    private final LlmProperties.Http config =
+            new LlmProperties.Http(Duration.ofSeconds(5), Duration.ofSeconds(60), true, 2, false, 1);
+
+    @Test
+    void tierTimeoutsSelectSharedClientPerTimeout() {
+        var shared = new SharedLlmHttpClientBuilder(config, Runnable::run);
+
+        var fast = shared.connectTimeout(Duration.ofSeconds(3)).readTimeout(Duration.ofSeconds(20));
+        assertThat(fast.connectTimeout()).isEqualTo(Duration.ofSeconds(3));
+        assertThat(fast.readTimeout()).isEqualTo(Duration.ofSeconds(20));
+        // 共享的构建器不受影响
+        assertThat(shared.connectTimeout()).isEqualTo(Duration.ofSeconds(5));
+        assertThat(shared.readTimeout()).isEqualTo(Duration.ofSeconds(60));
+
+        var sameAsFast = shared.connectTimeout(Duration.ofSeconds(3)).readTimeout(Duration.ofSeconds(20));
+        assertThat(sameAsFast.build()).isSameAs(fast.build());
+        assertThat(shared.build()).isNotSameAs(fast.build());
+    }
+
+    @Test
+    void timeoutsAboveConfiguredLimitsUseTheDefaultClient() {
+        var shared = new SharedLlmHttpClientBuilder(config, Runnable::run);
+
+        var slow = shared.connectTimeout(Duration.ofSeconds(90)).readTimeout(Duration.ofSeconds(90));
+
+        assertThat(slow.connectTimeout()).isEqualTo(Duration.ofSeconds(5));
+        assertThat(slow.readTimeout()).isEqualTo(Duration.ofSeconds(60));
+        assertThat(slow.build()).isSameAs(shared.build());
+        assertThat(shared.clients()).hasSize(1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.kindergarten.config;
+
+import com.alibaba.cloud.nacos.NacosServiceManager;
+import com.alibaba.cloud.nacos.registry.NacosRegistration;
+import com.alibaba.cloud.nacos.registry.NacosServiceRegistry;
+import com.alibaba.nacos.api.naming.NamingService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 启动顺序与就绪后首个请求：
+ * - NacosReadinessRegistrar 只在 ACCEPTING_TRAFFIC（全部 ApplicationRunner 预热完成）之后注册；
+ * - 就绪到第一个 /api 请求返回 200 的耗时（记录到测试日志），以及 startup.time.to.first.request 指标。
+ * Nacos 客户端以 Mock 代替，注册时记录当时的就绪状态与时间。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class StartupReadinessTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupReadinessTest.class);
+
+    @TestConfiguration
+    static class NacosStubs {
+
+        final AtomicLong readyAt = new AtomicLong();
+        final AtomicLong registeredAt = new AtomicLong();
+        final AtomicReference<ReadinessState> stateAtRegistration = new AtomicReference<>();
+
+        @EventListener
+        void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+            if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC) readyAt.compareAndSet(0, System.nanoTime());
+        }
+
+        @Bean
+        @Primary
+        NacosServiceRegistry nacosServiceRegistry(ApplicationAvailability availability) {
+            var registry = mock(NacosServiceRegistry.class);
+            doAnswer(invocation -> {
+                stateAtRegistration.set(availability.getReadinessState());
+                registeredAt.set(System.nanoTime());
+                return null;
+            }).when(registry).register(any());
+            return registry;
+        }
+
+        @Bean
+        @Primary
+        NacosRegistration nacosRegistration() {
+            var registration = mock(NacosRegistration.class);
+            when(registration.getMetadata()).thenReturn(new HashMap<>());
+            when(registration.getPort()).thenReturn(-1);
+            return registration;
+        }
+
+        @Bean
+        @Primary
+        NacosServiceManager nacosServiceManager() throws Exception {
+            var naming = mock(NamingService.class);
+            when(naming.getServerStatus()).thenReturn("UP");
+            var manager = mock(NacosServiceManager.class);
+            when(manager.getNamingService()).thenReturn(naming);
+            return manager;
+        }
+    }
+
+    @Autowired
+    NacosStubs stubs;
+
+    @Autowired
+    NacosServiceRegistry serviceRegistry;
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void registersOnlyAfterReadinessAndServesFirstRequest() {
+        verify(serviceRegistry, timeout(5000)).register(any());
+        assertThat(stubs.stateAtRegistration.get()).isEqualTo(ReadinessState.ACCEPTING_TRAFFIC);
+        assertThat(stubs.readyAt.get()).isPositive();
+        assertThat(stubs.registeredAt.get()).isGreaterThanOrEqualTo(stubs.readyAt.get());
+
+        var response = rest.getForEntity("/api/sessions", String.class);
+        long readyToFirst200Ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stubs.readyAt.get());
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        log.info("就绪 → 注册 {} ms，就绪 → 首个 200 {} ms",
+                TimeUnit.NANOSECONDS.toMillis(stubs.registeredAt.get() - stubs.readyAt.get()), readyToFirst200Ms);
+
+        var gauge = meterRegistry.get("startup.time.to.first.request").gauge().value();
+        assertThat(gauge).isPositive();
+    }
+}
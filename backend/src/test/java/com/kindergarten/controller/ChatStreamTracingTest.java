@@ -0,0 +1,142 @@
+package com.kindergarten.controller;
+
+import com.kindergarten.config.InMemorySpanExporter;
+import com.kindergarten.dto.ChatRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 一次流式聊天的 Span 结构（kindergarten.tracing.exporter=memory）：
+ * http post /api/chat/stream → llm.queue → llm.stream（first_token 事件），sse.emit 挂在 HTTP Span 下。
+ * 上游模型为测试内启动的 OpenAI 兼容桩服务，返回三个 SSE 分片。
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class ChatStreamTracingTest {
+
+    private static final HttpServer stubLlm = startStubLlm();
+
+    @DynamicPropertySource
+    static void llmBaseUrl(DynamicPropertyRegistry registry) {
+        registry.add("kindergarten.llm.base-url", () -> "http://127.0.0.1:" + stubLlm.getAddress().getPort());
+    }
+
+    @AfterAll
+    static void stopStubLlm() {
+        stubLlm.stop(0);
+    }
+
+    @Autowired
+    TestRestTemplate rest;
+
+    @Autowired
+    InMemorySpanExporter exporter;
+
+    @Autowired
+    SdkTracerProvider tracerProvider;
+
+    @Test
+    void streamSpansFormParentChainWithFirstTokenEvent() throws Exception {
+        exporter.reset();
+        var headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.TEXT_EVENT_STREAM));
+        var response = rest.postForEntity("/api/chat/stream",
+                new HttpEntity<>(new ChatRequest("写一则春游通知", null, "general", "fast"), headers), String.class);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).contains("片段0").contains("片段2");
+
+        // HTTP Span 在异步请求完成后才结束，BatchSpanProcessor 批量导出：轮询直到整条链路到齐
+        List<SpanData> trace = List.of();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            tracerProvider.forceFlush().join(1, TimeUnit.SECONDS);
+            var stream = find(exporter.finishedSpans(), "llm.stream");
+            if (stream.isPresent()) {
+                trace = exporter.spansOfTrace(stream.get().getTraceId());
+                if (trace.stream().anyMatch(s -> s.getKind() == SpanKind.SERVER) && find(trace, "sse.emit").isPresent()) {
+                    break;
+                }
+            }
+            Thread.sleep(50);
+        }
+
+        var http = trace.stream()
+                .filter(s -> s.getKind() == SpanKind.SERVER && s.getName().contains("/api/chat/stream"))
+                .findFirst().orElseThrow(() -> new AssertionError("缺少 HTTP 入口 Span"));
+        var queue = find(trace, "llm.queue").orElseThrow(() -> new AssertionError("缺少 llm.queue"));
+        var stream = find(trace, "llm.stream").orElseThrow(() -> new AssertionError("缺少 llm.stream"));
+        var sse = find(trace, "sse.emit").orElseThrow(() -> new AssertionError("缺少 sse.emit"));
+
+        assertThat(queue.getParentSpanId()).isEqualTo(http.getSpanId());
+        assertThat(stream.getParentSpanId()).isEqualTo(queue.getSpanId());
+        assertThat(sse.getParentSpanId()).isEqualTo(http.getSpanId());
+        assertThat(queue.getEndEpochNanos()).isLessThanOrEqualTo(stream.getStartEpochNanos());
+
+        assertThat(stream.getEvents()).extracting(EventData::getName).containsSubsequence("first_token", "last_token");
+        assertThat(stream.getAttributes().asMap().entrySet())
+                .anyMatch(e -> e.getKey().getKey().equals("llm.chunks") && e.getValue().equals("3"));
+        assertThat(sse.getEvents()).extracting(EventData::getName).contains("first_chunk");
+    }
+
+    private static Optional<SpanData> find(List<SpanData> spans, String name) {
+        return spans.stream().filter(s -> s.getName().equals(name)).findFirst();
+    }
+
+    /** /v1/chat/completions：三个内容分片 + 带用量的结束分片 */
+    private static HttpServer startStubLlm() {
+        try {
+            var server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+            server.createContext("/v1/chat/completions", exchange -> {
+                exchange.getRequestBody().readAllBytes();
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    for (int i = 0; i < 3; i++) {
+                        event(out, "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                                + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"片段" + i + "\"},\"finish_reason\":null}]}");
+                    }
+                    event(out, "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                            + "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}],"
+                            + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":3,\"total_tokens\":13}}");
+                    event(out, "[DONE]");
+                }
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,182 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ChatAnalytics：本节点没有会话状态时（用户消息由其他节点处理、重启后），助手回复按调用方传入的文案类型归类；
+ * 年龄段识别取最先出现的写法；收到回复后重发相同消息记为重新生成；各窗口合并各自范围内的时间桶；
+ * 快照写入后，同一节点重启可恢复，其他节点读回后计入 24h / 30d 视图。
+ * 除第一个用例外均使用测试自建的实例（节点号 14、15），不与 Spring 中的实例共享状态。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ChatAnalyticsTest {
+
+    private static final int NODE = 14;
+    private static final int OTHER_NODE = 15;
+
+    @Autowired
+    ChatAnalytics analytics;
+
+    @Autowired
+    PromptCatalog promptCatalog;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    @AfterEach
+    void clearSnapshots() {
+        jdbcTemplate.update("delete from usage_stats_snapshot where node_id in (?, ?)", NODE, OTHER_NODE);
+    }
+
+    @Test
+    void generationWithoutSessionStateUsesGivenDocType() {
+        var docTypeId = promptCatalog.templates().keySet().stream()
+                .filter(id -> !id.equals(PromptCatalog.DEFAULT_DOC_TYPE_ID)).findFirst()
+                .orElse(PromptCatalog.DEFAULT_DOC_TYPE_ID);
+        long before = generations(docTypeId);
+
+        // 会话 ID 从未在本节点出现过
+        analytics.generationCompleted(Long.MAX_VALUE >> 12, 40_001, docTypeId,
+                new ChatAnalytics.Completion(1_200, 100, 300), Instant.now());
+        analytics.refreshViews();
+
+        assertThat(generations(docTypeId)).isEqualTo(before + 1);
+        assertThat(analytics.stats("1h").byDocType()).extracting(ChatAnalytics.Group::docTypeId)
+                .doesNotContain("unknown");
+    }
+
+    @Test
+    void detectsAgeGroupFromFirstMention() {
+        assertThat(ChatAnalytics.ageGroupOf("帮我写一篇中班的春游通知")).isEqualTo("middle");
+        assertThat(ChatAnalytics.ageGroupOf("大班和小班的联合活动")).isEqualTo("senior");
+        assertThat(ChatAnalytics.ageGroupOf("适合 3-4 岁幼儿的儿歌")).isEqualTo("junior");
+        assertThat(ChatAnalytics.ageGroupOf("4～5岁幼儿的户外游戏")).isEqualTo("middle");
+        assertThat(ChatAnalytics.ageGroupOf("5至6岁，大班下学期")).isEqualTo("senior");
+        assertThat(ChatAnalytics.ageGroupOf("小班（3-4岁）")).isEqualTo("junior");
+        assertThat(ChatAnalytics.ageGroupOf("2-3岁小班")).isEqualTo("nursery");
+        assertThat(ChatAnalytics.ageGroupOf("写一则放假通知")).isNull();
+        assertThat(ChatAnalytics.ageGroupOf("")).isNull();
+        assertThat(ChatAnalytics.ageGroupOf(null)).isNull();
+    }
+
+    @Test
+    void repeatedMessageAfterReplyCountsAsRegeneration() {
+        var local = newAnalytics(NODE);
+        var session = session(1, 40_101);
+        var now = Instant.now();
+
+        // 回复前重发不算重新生成
+        local.userMessage(session, "写一则中班春游通知");
+        local.userMessage(session, "写一则中班春游通知");
+        complete(local, session, now, 100);
+        local.userMessage(session, " 写一则中班春游通知 ");
+        complete(local, session, now, 100);
+        // 未提及年龄段的消息沿用会话最近一次识别结果
+        local.userMessage(session, "再短一点");
+        complete(local, session, now, 100);
+        local.refreshViews();
+
+        var total = local.stats("1h").total();
+        assertThat(total.generations()).isEqualTo(3);
+        assertThat(total.regenerations()).isEqualTo(1);
+        assertThat(local.stats("1h").byAgeGroup()).singleElement()
+                .satisfies(g -> assertThat(g.ageGroup()).isEqualTo("middle"));
+    }
+
+    @Test
+    void windowsMergeBucketsWithinRange() {
+        var local = newAnalytics(NODE);
+        var session = session(2, 40_102);
+        var now = Instant.now();
+        local.userMessage(session, "大班毕业典礼主持稿");
+        complete(local, session, now, 100);
+        complete(local, session, now.minus(Duration.ofMinutes(10)), 200);
+        complete(local, session, now.minus(Duration.ofHours(3)), 300);
+        complete(local, session, now.minus(Duration.ofDays(3)), 400);
+        local.refreshViews();
+
+        assertThat(local.stats("1h").total().generations()).isEqualTo(2);
+        assertThat(local.stats("24h").total().generations()).isEqualTo(3);
+        var month = local.stats("30d");
+        assertThat(month.total().generations()).isEqualTo(4);
+        assertThat(month.total().avgLatencyMs()).isEqualTo(250);
+        // 同一用户跨桶只计一次
+        assertThat(month.total().distinctUsers()).isEqualTo(1);
+        assertThat(local.stats("1h").series()).hasSize(60)
+                .extracting(ChatAnalytics.Point::generations).containsOnly(0L, 1L);
+        assertThat(month.series().stream().mapToLong(ChatAnalytics.Point::generations).sum()).isEqualTo(4);
+    }
+
+    @Test
+    void snapshotRestoresOnRestartAndReachesOtherNodes() {
+        var local = newAnalytics(NODE);
+        local.restore();
+        var session = session(3, 40_103);
+        var now = Instant.now();
+        local.userMessage(session, "托班入园适应活动");
+        complete(local, session, now, 100);
+        complete(local, session, now, 300);
+        local.snapshot();
+
+        var restarted = newAnalytics(NODE);
+        restarted.restore();
+        assertThat(nurseryGenerations(restarted, "24h")).isEqualTo(2);
+        assertThat(nurseryGenerations(restarted, "30d")).isEqualTo(2);
+        // 分钟桶不写快照
+        assertThat(nurseryGenerations(restarted, "1h")).isZero();
+
+        var other = newAnalytics(OTHER_NODE);
+        other.restore();
+        assertThat(nurseryGenerations(other, "24h")).isEqualTo(2);
+        assertThat(nurseryGenerations(other, "30d")).isEqualTo(2);
+        assertThat(nurseryGenerations(other, "1h")).isZero();
+    }
+
+    private ChatAnalytics newAnalytics(int nodeId) {
+        return new ChatAnalytics(new AnalyticsProperties(true, "Asia/Shanghai", null, null, null),
+                new ShardedIds(nodeId), promptCatalog, jdbcTemplate, transactionManager);
+    }
+
+    private static Session session(long id, long userId) {
+        var session = new Session(userId, "统计", PromptCatalog.DEFAULT_DOC_TYPE_ID);
+        session.setId(id);
+        return session;
+    }
+
+    private static void complete(ChatAnalytics target, Session session, Instant at, long latencyMs) {
+        target.generationCompleted(session.getId(), session.getUserId(), session.getDocTypeId(),
+                new ChatAnalytics.Completion(latencyMs, 10, 20), at);
+    }
+
+    private static long nurseryGenerations(ChatAnalytics target, String window) {
+        target.refreshViews();
+        return target.stats(window).byAgeGroup().stream()
+                .filter(g -> g.ageGroup().equals("nursery"))
+                .mapToLong(g -> g.metrics().generations()).sum();
+    }
+
+    private long generations(String docTypeId) {
+        analytics.refreshViews();
+        return analytics.stats("1h").byDocType().stream()
+                .filter(g -> g.docTypeId().equals(docTypeId))
+                .mapToLong(g -> g.metrics().generations()).sum();
+    }
+}
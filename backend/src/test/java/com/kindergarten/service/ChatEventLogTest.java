@@ -0,0 +1,141 @@
+package com.kindergarten.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ChatEventLog 的恢复与滚动：尾部不完整的记录被截断、写完结束标记后未创建下一段时补建、跨段读取。
+ * 每个用例使用独立的临时目录，段大小取允许的最小值 1 MiB。
+ */
+class ChatEventLogTest {
+
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void truncatesTornTailOnRecovery() throws IOException {
+        long end;
+        try (var eventLog = open()) {
+            for (int i = 0; i < 3; i++) eventLog.append(renamed(i, "标题 " + i));
+            end = eventLog.endOffset();
+        }
+        // 模拟写入中途退出：记录头写完、正文只写了一部分（长度合法，CRC 不符）
+        try (var channel = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            var torn = ByteBuffer.allocate(ChatEventCodec.HEADER_BYTES + 5);
+            torn.putInt(200).putInt(0x12345678).put(new byte[] { 1, 2, 3, 4, 5 }).flip();
+            channel.write(torn, end);
+        }
+
+        try (var eventLog = open()) {
+            assertThat(eventLog.endOffset()).isEqualTo(end);
+            var batch = eventLog.read(0, 100);
+            assertThat(titles(batch.events())).containsExactly("标题 0", "标题 1", "标题 2");
+            assertThat(batch.nextOffset()).isEqualTo(end);
+
+            // 截断后从原位置继续写
+            assertThat(eventLog.append(renamed(3, "标题 3"))).isEqualTo(end);
+            assertThat(titles(eventLog.read(0, 100).events())).containsExactly("标题 0", "标题 1", "标题 2", "标题 3");
+        }
+        // 被截断的字节已清零，再次打开时不会误读
+        try (var eventLog = open()) {
+            assertThat(eventLog.read(0, 100).events()).hasSize(4);
+        }
+    }
+
+    @Test
+    void recoversSealedSegmentWithoutNextSegment() throws IOException {
+        long end;
+        try (var eventLog = open()) {
+            for (int i = 0; i < 2; i++) eventLog.append(renamed(i, "滚动前 " + i));
+            end = eventLog.endOffset();
+        }
+        // 模拟滚动中途退出：结束标记已写入，下一段还没创建
+        try (var channel = FileChannel.open(segment(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, -1), end);
+        }
+        assertThat(segmentFiles()).hasSize(1);
+
+        try (var eventLog = open()) {
+            assertThat(eventLog.endOffset()).isEqualTo(SEGMENT_BYTES);
+            assertThat(segmentFiles()).hasSize(2);
+            var batch = eventLog.read(0, 100);
+            assertThat(titles(batch.events())).containsExactly("滚动前 0", "滚动前 1");
+            assertThat(batch.nextOffset()).isEqualTo(SEGMENT_BYTES);
+
+            assertThat(eventLog.append(renamed(2, "滚动后"))).isEqualTo(SEGMENT_BYTES);
+            assertThat(titles(eventLog.read(0, 100).events())).containsExactly("滚动前 0", "滚动前 1", "滚动后");
+            // 从结束标记之前的记录边界开始读也能越过段尾
+            assertThat(titles(eventLog.read(batch.events().get(1).offset(), 100).events()))
+                    .containsExactly("滚动前 1", "滚动后");
+        }
+    }
+
+    @Test
+    void rollsSegmentsAndReadsAcrossThem() {
+        var big = "长".repeat(100_000);
+        var offsets = new ArrayList<Long>();
+        try (var eventLog = open()) {
+            for (int i = 0; i < 40; i++) offsets.add(eventLog.append(renamed(i, i + big)));
+            assertThat(offsets).isSorted().doesNotHaveDuplicates();
+            assertThat(segmentFiles().size()).isGreaterThan(2);
+
+            var all = new ArrayList<ChatEventLog.LoggedEvent>();
+            long from = 0;
+            while (from < eventLog.endOffset()) {
+                var batch = eventLog.read(from, 7);
+                all.addAll(batch.events());
+                from = batch.nextOffset();
+            }
+            assertThat(all).extracting(ChatEventLog.LoggedEvent::offset).containsExactlyElementsOf(offsets);
+            assertThat(((ChatEvent.SessionRenamed) all.get(39).event()).title()).isEqualTo(39 + big);
+        }
+        // 重新打开后恢复到同样的末尾，并从任意记录边界读取
+        try (var eventLog = open()) {
+            assertThat(eventLog.read(offsets.get(20), 100).events()).hasSize(20);
+            long next = eventLog.append(renamed(40, "重启后"));
+            assertThat(next).isGreaterThan(offsets.get(39));
+            assertThat(eventLog.read(offsets.get(39), 100).events()).hasSize(2);
+        }
+    }
+
+    private ChatEventLog open() {
+        var p = new EventLogProperties(dir.toString(), SEGMENT_BYTES, "never", null, null, null, null, null, null, null);
+        return new ChatEventLog(dir, p, new SimpleMeterRegistry());
+    }
+
+    private Path segment(long base) {
+        return dir.resolve(String.format("%020d.log", base));
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".log")).toList();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static ChatEvent renamed(long sessionId, String title) {
+        return new ChatEvent.SessionRenamed(sessionId, 1, title, false, Instant.ofEpochMilli(1_700_000_000_000L));
+    }
+
+    private static List<String> titles(List<ChatEventLog.LoggedEvent> events) {
+        return events.stream().map(e -> ((ChatEvent.SessionRenamed) e.event()).title()).toList();
+    }
+}
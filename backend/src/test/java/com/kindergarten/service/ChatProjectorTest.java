@@ -0,0 +1,189 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+import com.kindergarten.entity.ShardAssignment.State;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ChatProjector：从检查点重放（含已删除的会话）结果不变，会话由另一实例删除时也不会复活；
+ * 冻结中的逻辑分片只暂存自己的事件，不阻塞其他逻辑分片。
+ * 每批只投影 2 条事件，重放时创建、追加、删除落在不同批次（不同事务）中。
+ */
+@SpringBootTest(properties = "kindergarten.event-log.projection-batch=2")
+@ActiveProfiles("test")
+class ChatProjectorTest {
+
+    @Autowired
+    SessionService sessions;
+
+    @Autowired
+    ChatProjector projector;
+
+    @Autowired
+    ChatShards shards;
+
+    @Autowired
+    ChatEventLog eventLog;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MessageContentStore contentStore;
+
+    @Autowired
+    EventLogProperties eventLogProperties;
+
+    @TempDir
+    Path otherNodeDir;
+
+    @Test
+    void replayFromCheckpointAfterSessionDeletedKeepsItDeleted() {
+        long user = 20_001;
+        var deleted = sessions.createSession(user, "将被删除", null);
+        sessions.saveUserMessage(deleted.getId(), user, "第一条");
+        sessions.saveUserMessage(deleted.getId(), user, "第二条");
+        var kept = sessions.createSession(user, "保留", null);
+        sessions.saveUserMessage(kept.getId(), user, "保留的消息");
+        sessions.updateSession(kept.getId(), user, "改过的标题");
+        assertThat(sessions.deleteSession(deleted.getId(), user)).isTrue();
+        var shard = shards.forUser(user);
+        assertThat(countSessions(shard, deleted.getId())).isZero();
+
+        // 模拟异常退出后检查点滞后：停止投影，把检查点退回日志开头后重新启动
+        projector.stop();
+        jdbcTemplate.update("update chat_projection_checkpoint set applied_offset = ? where node_id = ?",
+                eventLog.startOffset(), shards.ids().nodeId());
+        projector.run(null);
+
+        assertThat(countSessions(shard, deleted.getId())).isZero();
+        assertThat(countMessages(shard, deleted.getId())).isZero();
+        assertThat(countSessions(shard, kept.getId())).isEqualTo(1);
+        assertThat(countMessages(shard, kept.getId())).isEqualTo(1);
+        assertThat(sessions.getSession(kept.getId(), user).orElseThrow().getTitle()).isEqualTo("改过的标题");
+        assertThat(sessions.getSession(deleted.getId(), user)).isEmpty();
+    }
+
+    @Test
+    void replayAfterDeleteOnAnotherNodeKeepsSessionDeleted() {
+        long user = 20_002;
+        var session = sessions.createSession(user, "在另一实例删除", null);
+        sessions.saveUserMessage(session.getId(), user, "第一条");
+        var shard = shards.forUser(user);
+
+        // 另一实例（独立的事件日志与检查点）投影删除事件
+        int otherNode = (shards.ids().nodeId() + 1) % ShardedIds.NODES;
+        var otherLog = new ChatEventLog(otherNodeDir, eventLogProperties, new SimpleMeterRegistry());
+        try {
+            otherLog.append(new ChatEvent.SessionDeleted(session.getId(), user, Instant.now()));
+            var other = new ChatProjector(otherLog, shards, jdbcTemplate, contentStore, eventLogProperties,
+                    new ShardedIds(otherNode), new SimpleMeterRegistry());
+            other.run(null);
+            other.stop();
+        } finally {
+            otherLog.close();
+            jdbcTemplate.update("delete from chat_projection_checkpoint where node_id = ?", otherNode);
+        }
+        assertThat(countSessions(shard, session.getId())).isZero();
+
+        // 本实例从日志开头重放：创建与追加都在删除之前写入本实例的日志，遇到墓碑跳过
+        projector.stop();
+        jdbcTemplate.update("update chat_projection_checkpoint set applied_offset = ? where node_id = ?",
+                eventLog.startOffset(), shards.ids().nodeId());
+        projector.run(null);
+
+        assertThat(countSessions(shard, session.getId())).isZero();
+        assertThat(countMessages(shard, session.getId())).isZero();
+        assertThat(countTombstones(shard, session.getId())).isEqualTo(1);
+        assertThat(sessions.getSession(session.getId(), user)).isEmpty();
+    }
+
+    @Test
+    void purgeKeepsTombstonesWithinRetention() {
+        long user = 20_003;
+        var session = sessions.createSession(user, "清理墓碑", null);
+        assertThat(sessions.deleteSession(session.getId(), user)).isTrue();
+        var shard = shards.forUser(user);
+        // 同一逻辑分片上一条删除时间早于保留时长的墓碑
+        long expired = session.getId() + ShardedIds.LOGICAL_SHARDS;
+        var longAgo = LocalDateTime.now().minus(Duration.ofMillis(eventLogProperties.retentionMs())).minusDays(1);
+        shard.jdbc().update("insert into chat_session_tombstone (session_id, user_id, deleted_at) values (?, ?, ?)",
+                expired, user, Timestamp.valueOf(longAgo));
+        // 各实例都已追上日志末尾后才会清理
+        projector.stop();
+        projector.run(null);
+
+        projector.purgeTombstones();
+
+        assertThat(countTombstones(shard, expired)).isZero();
+        assertThat(countTombstones(shard, session.getId())).isEqualTo(1);
+    }
+
+    @Test
+    void frozenShardDefersOnlyItsOwnEvents() throws Exception {
+        long frozenUser = 30_001;
+        long otherUser = 30_002;
+        while (ShardedIds.logicalShardOfUser(otherUser) == ShardedIds.logicalShardOfUser(frozenUser)) otherUser++;
+        int logical = ShardedIds.logicalShardOfUser(frozenUser);
+        int physical = shards.layout().physicalOf(logical);
+        var session = sessions.createSession(frozenUser, "冻结", null);
+        sessions.saveUserMessage(session.getId(), frozenUser, "冻结前");
+
+        assertThat(shards.transition(logical, physical, State.ACTIVE, physical, State.FROZEN)).isTrue();
+        CompletableFuture<?> frozenWrite;
+        try {
+            long user = frozenUser;
+            frozenWrite = CompletableFuture.runAsync(() -> sessions.saveUserMessage(session.getId(), user, "冻结中"));
+            // 写请求等待自己的事件投影，冻结期间不返回
+            assertThatThrownBy(() -> frozenWrite.get(300, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+            // 其他逻辑分片照常写入、立即可见
+            long start = System.nanoTime();
+            var other = sessions.createSession(otherUser, "不受影响", null);
+            sessions.saveUserMessage(other.getId(), otherUser, "照常写入");
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2_000);
+            assertThat(countMessages(shards.forSession(other.getId()), other.getId())).isEqualTo(1);
+            // 暂存的事件尚未写入
+            assertThat(countMessages(shards.forSession(session.getId()), session.getId())).isEqualTo(1);
+        } finally {
+            shards.transition(logical, physical, State.FROZEN, physical, State.ACTIVE);
+        }
+
+        frozenWrite.get(5, TimeUnit.SECONDS);
+        sessions.saveUserMessage(session.getId(), frozenUser, "解冻后");
+        // 同一会话内保持写入顺序
+        assertThat(sessions.getMessages(session.getId(), frozenUser))
+                .extracting(Message::getContent).containsExactly("冻结前", "冻结中", "解冻后");
+    }
+
+    private static long countSessions(ChatShard shard, long sessionId) {
+        return shard.jdbc().queryForObject("select count(*) from chat_session where id = ?", Long.class, sessionId);
+    }
+
+    private static long countTombstones(ChatShard shard, long sessionId) {
+        return shard.jdbc().queryForObject(
+                "select count(*) from chat_session_tombstone where session_id = ?", Long.class, sessionId);
+    }
+
+    private static long countMessages(ChatShard shard, long sessionId) {
+        return shard.jdbc().queryForObject("select count(*) from chat_message where session_id = ?", Long.class, sessionId);
+    }
+}
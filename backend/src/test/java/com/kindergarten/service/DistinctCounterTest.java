@@ -0,0 +1,59 @@
+package com.kindergarten.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * DistinctCounter：小基数（线性计数）基本准确，大基数误差在标准误差（约 3%）的 3 倍以内；
+ * 合并与整体计数逐寄存器一致，重复值不影响估计。
+ */
+class DistinctCounterTest {
+
+    @Test
+    void smallCardinalitiesAreNearlyExact() {
+        for (int n : new int[] { 0, 1, 5, 20, 100 }) {
+            var counter = new DistinctCounter();
+            for (long id = 1; id <= n; id++) counter.add(id);
+            assertThat(counter.estimate()).as("n=%d", n).isCloseTo(n, within(Math.max(1L, n / 50)));
+        }
+    }
+
+    @Test
+    void largeCardinalitiesStayWithinErrorBound() {
+        for (int n : new int[] { 1_000, 10_000, 100_000, 1_000_000 }) {
+            var counter = new DistinctCounter();
+            // 用户 ID 连续
+            for (long id = 100_000; id < 100_000 + n; id++) counter.add(id);
+            assertThat((double) counter.estimate()).as("n=%d", n).isCloseTo(n, within(n * 0.1));
+        }
+    }
+
+    @Test
+    void duplicatesDoNotChangeEstimate() {
+        var once = new DistinctCounter();
+        var repeated = new DistinctCounter();
+        for (long id = 0; id < 5_000; id++) {
+            once.add(id);
+            for (int k = 0; k < 3; k++) repeated.add(id);
+        }
+        assertThat(repeated.toBytes()).isEqualTo(once.toBytes());
+    }
+
+    @Test
+    void mergeMatchesCounterOfUnion() {
+        var a = new DistinctCounter();
+        var b = new DistinctCounter();
+        var all = new DistinctCounter();
+        // 两部分有重叠
+        for (long id = 0; id < 60_000; id++) a.add(id);
+        for (long id = 40_000; id < 100_000; id++) b.add(id);
+        for (long id = 0; id < 100_000; id++) all.add(id);
+
+        a.merge(b);
+        assertThat(a.toBytes()).isEqualTo(all.toBytes());
+        assertThat(a.estimate()).isEqualTo(all.estimate());
+        assertThat(DistinctCounter.fromBytes(all.toBytes()).estimate()).isEqualTo(all.estimate());
+    }
+}
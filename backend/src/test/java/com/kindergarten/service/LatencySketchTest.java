@@ -0,0 +1,69 @@
+package com.kindergarten.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * LatencySketch：分位数相对误差不超过 2%（另加取整的 1 ms），合并与整体草图一致，序列化往返不丢数据。
+ */
+class LatencySketchTest {
+
+    private static final double[] QUANTILES = { 0.01, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 1.0 };
+
+    @Test
+    void quantilesStayWithinRelativeAccuracy() {
+        var random = new Random(42);
+        var values = new long[50_000];
+        var sketch = new LatencySketch();
+        for (int i = 0; i < values.length; i++) {
+            // 对数正态分布，中位数约 1.1 s，长尾到几十秒
+            values[i] = Math.max(1, Math.round(Math.exp(7 + random.nextGaussian())));
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(sketch.count()).isEqualTo(values.length);
+        for (double q : QUANTILES) {
+            long exact = values[(int) Math.max(0, Math.ceil(q * values.length) - 1)];
+            assertThat((double) sketch.quantile(q)).as("q=%s", q).isCloseTo(exact, within(exact * 0.02 + 1));
+        }
+    }
+
+    @Test
+    void mergeMatchesSketchOfAllValues() {
+        var random = new Random(7);
+        var all = new LatencySketch();
+        var parts = new LatencySketch[] { new LatencySketch(), new LatencySketch(), new LatencySketch() };
+        for (int i = 0; i < 30_000; i++) {
+            // 各部分的取值范围不同，合并时需要扩容
+            long v = 1 + random.nextInt(100 << (i % 3 * 4));
+            all.add(v);
+            parts[i % 3].add(v);
+        }
+        var merged = new LatencySketch();
+        for (var part : parts) merged.merge(part);
+
+        assertThat(merged.count()).isEqualTo(all.count());
+        for (double q : QUANTILES) assertThat(merged.quantile(q)).as("q=%s", q).isEqualTo(all.quantile(q));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        var sketch = new LatencySketch();
+        for (long v = 1; v <= 1_000_000; v = v * 3 / 2 + 1) sketch.add(v);
+        sketch.add(5_000_000);
+        var restored = LatencySketch.fromBytes(sketch.toBytes());
+
+        assertThat(restored.count()).isEqualTo(sketch.count());
+        for (double q : QUANTILES) assertThat(restored.quantile(q)).isEqualTo(sketch.quantile(q));
+        // 超过 1 小时的值记入最后一个桶
+        assertThat(sketch.quantile(1.0)).isBetween(3_500_000L, 3_700_000L);
+        assertThat(LatencySketch.fromBytes(null).count()).isZero();
+        assertThat(new LatencySketch().quantile(0.5)).isZero();
+    }
+}
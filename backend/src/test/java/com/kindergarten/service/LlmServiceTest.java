@@ -0,0 +1,167 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Message;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * LlmService 的额度结算：超时后仍完成的上游调用照常记账（token 计入用户用量），调用指标只记一次；
+ * 排队超时、未开始的调用退回预占，不记调用指标。上游为进程内的桩模型，测试放行后才返回；档位超时 200 ms、并发 1。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class LlmServiceTest {
+
+    @Autowired
+    UsageLedger usageLedger;
+
+    @Autowired
+    ModelRouter modelRouter;
+
+    @Autowired
+    PromptCatalog promptCatalog;
+
+    @Autowired
+    Tracer tracer;
+
+    SimpleMeterRegistry registry;
+    BlockingModel model;
+    LlmService llmService;
+
+    @BeforeEach
+    void setUp() {
+        model = new BlockingModel();
+        var config = new LlmProperties.Tier("stub", Duration.ofMillis(200), 1, Duration.ofMillis(100), 1.0, 2.0);
+        var tiers = new LlmTiers(new LlmTier(ModelTier.FAST, config, model, null),
+                new LlmTier(ModelTier.REASONING, config, model, null));
+        registry = new SimpleMeterRegistry();
+        llmService = new LlmService(tiers, modelRouter, promptCatalog, new LlmMetrics(registry, tiers),
+                new LlmTracing(tracer));
+    }
+
+    @AfterEach
+    void releaseModel() {
+        model.release.countDown();
+    }
+
+    @Test
+    void callFinishingAfterTimeoutIsStillBilledOnce() throws Exception {
+        long user = 60_001;
+        var reservation = usageLedger.reserve(user);
+
+        assertThatThrownBy(() -> llmService.chat("general", history(), ModelTier.FAST, reservation).block())
+                .hasRootCauseInstanceOf(TimeoutException.class);
+        // 超时时上游仍在生成：预占保留，尚未记账
+        assertThat(reservation.usage()).isNull();
+        assertThat(usageLedger.snapshot(user).requests()).isZero();
+
+        model.release.countDown();
+        assertThat(model.returned.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitCommitted(reservation);
+        assertThat(reservation.usage().inputTokenCount()).isEqualTo(10);
+        var usage = usageLedger.snapshot(user);
+        assertThat(usage.requests()).isEqualTo(1);
+        assertThat(usage.tokens()).isEqualTo(30);
+        // 之后的结束信号不会再退回或重复记账
+        reservation.cancel();
+        assertThat(usageLedger.snapshot(user).requests()).isEqualTo(1);
+
+        assertThat(calls("success")).isEqualTo(1);
+        assertThat(calls("error")).isZero();
+    }
+
+    @Test
+    void callNeverStartedReleasesReservation() throws Exception {
+        long busyUser = 60_002;
+        long queuedUser = 60_003;
+        var busy = usageLedger.reserve(busyUser);
+        var first = llmService.chat("general", history(), ModelTier.FAST, busy).toFuture();
+        // 唯一的许可被第一次调用占用，第二次排队 100 ms 后放弃
+        assertThat(model.started.await(5, TimeUnit.SECONDS)).isTrue();
+        var queued = usageLedger.reserve(queuedUser);
+        assertThatThrownBy(() -> llmService.chat("general", history(), ModelTier.FAST, queued).block())
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(queued.usage()).isNull();
+        var snapshot = usageLedger.snapshot(queuedUser);
+        assertThat(snapshot.requests()).isZero();
+        assertThat(snapshot.tokens()).isZero();
+        // 预占已退回：之后的记账不生效
+        queued.commit(ModelTier.FAST, new TokenUsage(1, 1));
+        assertThat(usageLedger.snapshot(queuedUser).requests()).isZero();
+
+        model.release.countDown();
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasRootCauseInstanceOf(TimeoutException.class);
+        assertThat(model.returned.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitCommitted(busy);
+        assertThat(usageLedger.snapshot(busyUser).requests()).isEqualTo(1);
+        // 未开始的调用不记耗时
+        assertThat(calls("success")).isEqualTo(1);
+        assertThat(calls("error")).isZero();
+    }
+
+    private long calls(String outcome) {
+        var timer = registry.find("llm.request.latency").tag("outcome", outcome).timer();
+        return timer != null ? timer.count() : 0;
+    }
+
+    private static void awaitCommitted(UsageLedger.Reservation reservation) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (reservation.usage() == null && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    }
+
+    private static List<Message> history() {
+        return List.of(new Message(1L, Message.Role.user, "写一则春游通知"));
+    }
+
+    /** 收到 release 后才返回固定用量（输入 10、输出 20）的桩模型；不响应中断，模拟超时后仍在运行的上游调用 */
+    static final class BlockingModel implements ChatModel {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+
+        @Override
+        public ChatResponse doChat(ChatRequest request) {
+            started.countDown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    release.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            try {
+                return ChatResponse.builder()
+                        .aiMessage(AiMessage.from("通知正文"))
+                        .tokenUsage(new TokenUsage(10, 20))
+                        .build();
+            } finally {
+                returned.countDown();
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
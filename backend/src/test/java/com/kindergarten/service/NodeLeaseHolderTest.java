@@ -0,0 +1,119 @@
+package com.kindergarten.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * NodeLeaseHolder：节点号互斥、自动分配、崩溃后接管不重复 ID、正常释放。
+ * 每个用例一个独立的 H2 内存库，表结构与实体 NodeLease 一致。
+ */
+class NodeLeaseHolderTest {
+
+    private static final long TTL_MS = 500;
+    private static final long RESERVE_SECONDS = 60;
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void createTable() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:lease-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbc.execute("create table chat_node_lease (node_id integer primary key, owner varchar(64) not null, "
+                + "host varchar(255), expires_at timestamp(6) not null, id_floor_seconds bigint not null)");
+    }
+
+    @Test
+    void sameNodeIdFailsWhileHolderIsAlive() {
+        var first = new NodeLeaseHolder(jdbc, 3, TTL_MS, RESERVE_SECONDS);
+        assertThat(first.nodeId()).isEqualTo(3);
+        // 持有者持续续期：第二个实例等满一个租期后启动失败
+        var keepAlive = Thread.ofPlatform().start(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                first.heartbeat();
+                try {
+                    Thread.sleep(TTL_MS / 5);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        try {
+            assertThatThrownBy(() -> new NodeLeaseHolder(jdbc, 3, TTL_MS, RESERVE_SECONDS))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("节点号 3");
+            assertThat(first.lost()).isFalse();
+        } finally {
+            keepAlive.interrupt();
+        }
+    }
+
+    @Test
+    void autoAllocationHandsOutDistinctIdsUntilExhausted() {
+        var holders = new ArrayList<NodeLeaseHolder>();
+        var nodeIds = new HashSet<Integer>();
+        for (int i = 0; i < ShardedIds.NODES; i++) {
+            var holder = new NodeLeaseHolder(jdbc, null, 60_000, RESERVE_SECONDS);
+            holders.add(holder);
+            nodeIds.add(holder.nodeId());
+        }
+        assertThat(nodeIds).hasSize(ShardedIds.NODES);
+        assertThatThrownBy(() -> new NodeLeaseHolder(jdbc, null, TTL_MS, RESERVE_SECONDS))
+                .isInstanceOf(IllegalStateException.class);
+
+        // 释放一个后可再次分配到同一个号
+        var released = holders.get(5);
+        released.release();
+        assertThat(new NodeLeaseHolder(jdbc, null, TTL_MS, RESERVE_SECONDS).nodeId()).isEqualTo(released.nodeId());
+    }
+
+    @Test
+    void takeoverAfterCrashStartsAboveEveryBorrowedSecond() {
+        var crashed = new NodeLeaseHolder(jdbc, 7, TTL_MS, RESERVE_SECONDS);
+        long maxIssued = 0;
+        // 借用若干秒（单个逻辑分片一秒只有 1024 个序号）
+        for (int i = 0; i < 5_000; i++) maxIssued = Math.max(maxIssued, crashed.ids().next(42));
+        // 不释放、不再续期，模拟进程崩溃；接管者等待租约过期
+        var successor = new NodeLeaseHolder(jdbc, 7, TTL_MS, RESERVE_SECONDS);
+        assertThat(successor.nodeId()).isEqualTo(7);
+        // 接管者从前任的预留上界开始，任意逻辑分片上的 ID 都大于前任发出过的
+        for (int shard = 0; shard < ShardedIds.LOGICAL_SHARDS; shard++) {
+            assertThat(successor.ids().next(shard)).isGreaterThan(maxIssued);
+        }
+
+        // 前任恢复后发现租约已被接管，不再生成 ID
+        crashed.heartbeat();
+        assertThat(crashed.lost()).isTrue();
+        assertThatThrownBy(() -> crashed.ids().next(42)).isInstanceOf(ShardUnavailableException.class);
+    }
+
+    @Test
+    void releaseLetsSuccessorStartImmediatelyWithoutReusingIds() {
+        var first = new NodeLeaseHolder(jdbc, 2, 60_000, RESERVE_SECONDS);
+        long maxIssued = 0;
+        for (int i = 0; i < 3_000; i++) maxIssued = Math.max(maxIssued, first.ids().next(0));
+        first.release();
+        assertThatThrownBy(() -> first.ids().next(0)).isInstanceOf(ShardUnavailableException.class);
+
+        // 正常释放时预留上界收回到实际用到的秒数，接管者不必跳过整个预留区间
+        Long floor = jdbc.queryForObject("select id_floor_seconds from chat_node_lease where node_id = 2", Long.class);
+        assertThat(ShardedIds.firstIdAt(Instant.ofEpochSecond(floor))).isGreaterThan(maxIssued);
+        assertThat(floor).isLessThan(Instant.now().getEpochSecond() + RESERVE_SECONDS);
+
+        long start = System.nanoTime();
+        var successor = new NodeLeaseHolder(jdbc, 2, 60_000, RESERVE_SECONDS);
+        // 不必等旧租约到期（60 秒）
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(successor.ids().next(0)).isGreaterThan(maxIssued);
+    }
+}
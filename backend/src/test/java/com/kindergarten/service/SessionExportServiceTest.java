@@ -0,0 +1,134 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.service.SessionExportService.Format;
+import com.kindergarten.service.SessionExportService.Manifest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SessionExportService：每个会话一个文件，按会话 ID 递增排列、文件名以 ID 开头，末尾为 manifest.json；
+ * 没有消息的会话也导出；limit 截断后以 next_after 续传，两段合起来与一次导出相同；DOCX 为可解压的 Word 文档。
+ */
+@SpringBootTest(properties = "kindergarten.export.fetch-size=3")
+@ActiveProfiles("test")
+class SessionExportServiceTest {
+
+    @Autowired
+    SessionService sessions;
+
+    @Autowired
+    SessionExportService exportService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void exportsOneFilePerSessionInIdOrderWithManifestLast() throws IOException {
+        long user = 90_001;
+        long spring = session(user, "春游通知", "请写一则春游通知", "春游通知正文");
+        long empty = sessions.createSession(user, "空会话", null).getId();
+        long newYear = session(user, "元旦活动", "请写元旦活动方案", "元旦活动方案正文");
+
+        var archive = export(user, Format.MARKDOWN, 0, 0);
+
+        var titles = new TreeMap<>(Map.of(spring, "春游通知", empty, "空会话", newYear, "元旦活动"));
+        var expected = new ArrayList<String>();
+        titles.forEach((id, title) -> expected.add(String.format("%016d-%s.md", id, title)));
+        expected.add("manifest.json");
+        assertThat(archive.keySet()).containsExactlyElementsOf(expected);
+        var springFile = text(archive, String.format("%016d-春游通知.md", spring));
+        assertThat(springFile).startsWith("# 春游通知\n");
+        assertThat(springFile).containsSubsequence("## 老师", "请写一则春游通知", "## 助手", "春游通知正文");
+        var emptyFile = text(archive, String.format("%016d-空会话.md", empty));
+        assertThat(emptyFile).startsWith("# 空会话\n").doesNotContain("## ");
+
+        var manifest = objectMapper.readValue(archive.get("manifest.json"), Manifest.class);
+        assertThat(manifest).isEqualTo(new Manifest("md", 0, 3, titles.lastKey(), true, null));
+    }
+
+    @Test
+    void limitTruncatesAndAfterResumes() throws IOException {
+        long user = 90_002;
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(session(user, "周计划 " + i, "请写第 " + i + " 周计划", "第 " + i + " 周计划正文"));
+        }
+        ids.sort(null);
+        var full = export(user, Format.MARKDOWN, 0, 0);
+
+        var first = export(user, Format.MARKDOWN, 0, 2);
+        var firstManifest = objectMapper.readValue(first.get("manifest.json"), Manifest.class);
+        assertThat(firstManifest).isEqualTo(new Manifest("md", 0, 2, ids.get(1), false, ids.get(1)));
+
+        var rest = export(user, Format.MARKDOWN, firstManifest.nextAfter(), 0);
+        var restManifest = objectMapper.readValue(rest.get("manifest.json"), Manifest.class);
+        assertThat(restManifest).isEqualTo(new Manifest("md", ids.get(1), 3, ids.get(4), true, null));
+
+        var resumed = new LinkedHashMap<String, byte[]>();
+        first.forEach((name, bytes) -> { if (!name.equals("manifest.json")) resumed.put(name, bytes); });
+        resumed.putAll(rest);
+        assertThat(resumed.keySet()).containsExactlyElementsOf(full.keySet());
+        for (var name : full.keySet()) {
+            if (!name.equals("manifest.json")) assertThat(resumed.get(name)).isEqualTo(full.get(name));
+        }
+    }
+
+    @Test
+    void docxEntriesAreWordDocuments() throws IOException {
+        long user = 90_003;
+        long session = session(user, "家长会通知", "请写家长会通知", "**家长会**将于周五举行");
+
+        var archive = export(user, Format.DOCX, 0, 0);
+
+        var name = String.format("%016d-家长会通知.docx", session);
+        assertThat(archive.keySet()).containsExactly(name, "manifest.json");
+        var docx = unzip(archive.get(name));
+        assertThat(docx.keySet()).contains("[Content_Types].xml", "_rels/.rels", "word/document.xml");
+        var document = new String(docx.get("word/document.xml"), StandardCharsets.UTF_8);
+        assertThat(document).contains("家长会通知", "家长会将于周五举行").doesNotContain("**");
+        assertThat(objectMapper.readValue(archive.get("manifest.json"), Manifest.class).format()).isEqualTo("docx");
+    }
+
+    private long session(long user, String title, String question, String answer) {
+        var session = sessions.createSession(user, title, null);
+        sessions.saveUserMessage(session.getId(), user, question);
+        sessions.saveAssistantMessage(session.getId(), user, session.getDocTypeId(), answer, null);
+        return session.getId();
+    }
+
+    private Map<String, byte[]> export(long user, Format format, long after, int limit) throws IOException {
+        var out = new ByteArrayOutputStream();
+        exportService.export(user, format, after, limit, out);
+        return unzip(out.toByteArray());
+    }
+
+    private static String text(Map<String, byte[]> archive, String name) {
+        assertThat(archive).containsKey(name);
+        return new String(archive.get(name), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, byte[]> unzip(byte[] bytes) throws IOException {
+        var entries = new LinkedHashMap<String, byte[]>();
+        try (var zip = new ZipInputStream(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+            for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        return entries;
+    }
+}
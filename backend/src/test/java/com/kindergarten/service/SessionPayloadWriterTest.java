@@ -0,0 +1,133 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.dto.MessageDto;
+import com.kindergarten.entity.Session;
+import com.kindergarten.service.SessionPayloadWriter.WireFormat;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SessionPayloadWriter：游标逐批读取（fetch size 取 7，跨多批）写出的消息与按实体加载的历史一致，JSON 与 CBOR 内容相同；
+ * 写出中途失败时抛出 IOException 并释放分片连接。另记录两种格式的大小与序列化耗时（压缩前 / gzip 后）。
+ */
+@SpringBootTest(properties = "kindergarten.session-payload.fetch-size=7")
+@ActiveProfiles("test")
+class SessionPayloadWriterTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionPayloadWriterTest.class);
+
+    @Autowired
+    SessionService sessions;
+
+    @Autowired
+    SessionPayloadWriter payloadWriter;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MappingJackson2CborHttpMessageConverter cborConverter;
+
+    @Test
+    void streamsMessagesInBothFormats() throws IOException {
+        long user = 50_001;
+        var session = sessions.createSession(user, "流式写出", null);
+        for (int i = 0; i < 60; i++) {
+            sessions.saveUserMessage(session.getId(), user, "请写一篇中班主题活动方案，第 " + i + " 次");
+            // 长回复有重复，一部分投影为去重 blob
+            sessions.saveAssistantMessage(session.getId(), user, session.getDocTypeId(),
+                    ("活动目标与准备（" + (i % 5) + "）。").repeat(200), null);
+        }
+        var expected = sessions.getMessages(session.getId(), user).stream().map(MessageDto::from).toList();
+        assertThat(expected).hasSize(120);
+
+        var json = write(session, WireFormat.JSON);
+        var cbor = write(session, WireFormat.CBOR);
+        JsonNode fromJson = objectMapper.readTree(json);
+        JsonNode fromCbor = cborConverter.getObjectMapper().readTree(cbor);
+
+        for (var root : List.of(fromJson, fromCbor)) {
+            assertThat(root.get("id").asLong()).isEqualTo(session.getId());
+            assertThat(root.get("user_id").asLong()).isEqualTo(user);
+            assertThat(root.get("title").asText()).isEqualTo("流式写出");
+            assertThat(messages(root)).containsExactlyElementsOf(expected);
+        }
+        assertThat(cbor.length).isLessThan(json.length);
+
+        // 只是记录，不设阈值：线上大小与端到端耗时仍以 scripts/wire-format-bench.sh 为准
+        for (var format : WireFormat.values()) {
+            int runs = 20;
+            long start = System.nanoTime();
+            byte[] raw = null;
+            for (int i = 0; i < runs; i++) raw = write(session, format);
+            double ms = (System.nanoTime() - start) / 1e6 / runs;
+            log.info("会话详情 {}: {} 条消息, {} 字节, gzip 后 {} 字节, 序列化 {} ms/次",
+                    format.tag(), expected.size(), raw.length, gzip(raw).length, String.format("%.2f", ms));
+        }
+    }
+
+    @Test
+    void failedWriteSurfacesIOExceptionAndReleasesConnection() throws IOException {
+        long user = 50_002;
+        var session = sessions.createSession(user, "中途断开", null);
+        for (int i = 0; i < 30; i++) {
+            sessions.saveAssistantMessage(session.getId(), user, session.getDocTypeId(), i + "长回复".repeat(2_000), null);
+        }
+        var broken = new OutputStream() {
+            int written;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written += len;
+                if (written > 50_000) throw new IOException("客户端已断开");
+            }
+        };
+        assertThatThrownBy(() -> payloadWriter.write(session, WireFormat.JSON, broken))
+                .isInstanceOf(IOException.class).hasMessage("客户端已断开");
+
+        // 只读事务已结束，同一分片上的读写照常进行
+        sessions.saveUserMessage(session.getId(), user, "断开之后");
+        assertThat(objectMapper.readTree(write(session, WireFormat.JSON)).get("messages")).hasSize(31);
+    }
+
+    private List<MessageDto> messages(JsonNode root) {
+        return objectMapper.convertValue(root.get("messages"),
+                objectMapper.getTypeFactory().constructCollectionType(List.class, MessageDto.class));
+    }
+
+    private byte[] write(Session session, WireFormat format) throws IOException {
+        var out = new ByteArrayOutputStream();
+        long count = payloadWriter.write(session, format, out);
+        assertThat(count).isEqualTo(out.size());
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] raw) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var gz = new GZIPOutputStream(out)) {
+            gz.write(raw);
+        }
+        return out.toByteArray();
+    }
+}
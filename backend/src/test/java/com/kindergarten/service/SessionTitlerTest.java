@@ -0,0 +1,182 @@
+package com.kindergarten.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SessionTitler：按创建时间取最早的 batch-size 个会话打包进一次调用；没有用户消息的会话不调用模型、结束等待；
+ * 已被其他节点认领的会话跳过，租约到期后可重新认领；解析容忍模型输出中的多余文字。
+ * 上游为进程内的桩模型，把每行消息加上书名号作为标题返回；batch-size 为 2。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SessionTitlerTest {
+
+    @Autowired
+    ChatShards shards;
+
+    @Autowired
+    ChatEventLog eventLog;
+
+    @Autowired
+    ChatProjector projector;
+
+    @Autowired
+    SessionService sessions;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    StubModel model;
+    SessionTitler titler;
+
+    @BeforeEach
+    void setUp() {
+        // 其他测试留下的待命名会话不参与本测试的批次
+        for (ChatShard shard : shards.all()) shard.jdbc().update("update chat_session set title_pending = false");
+        model = new StubModel();
+        var config = new LlmProperties.Tier("stub", Duration.ofSeconds(5), 4, Duration.ofSeconds(1), 0.0, 0.0);
+        var tiers = new LlmTiers(new LlmTier(ModelTier.FAST, config, model, null),
+                new LlmTier(ModelTier.REASONING, config, model, null));
+        var registry = new SimpleMeterRegistry();
+        titler = new SessionTitler(shards, eventLog, projector, sessions, tiers, new LlmMetrics(registry, tiers),
+                objectMapper, registry, false, 1000, 2, 0, 60_000, 120_000);
+    }
+
+    @Test
+    void titlesOldestPendingSessionsInBatches() {
+        long user = 70_001;
+        var first = pendingSession(user, "春游通知");
+        var second = pendingSession(user, "秋游通知");
+        var third = pendingSession(user, "元旦活动");
+
+        titler.tick();
+        // 一次调用为两个会话命名，剩下的留给下一次
+        assertThat(model.inputs).hasSize(1);
+        assertThat(model.inputs.get(0).lines()).hasSize(2);
+        assertThat(List.of(first, second, third).stream().filter(id -> !pending(id)).count()).isEqualTo(2);
+
+        titler.tick();
+        assertThat(model.inputs).hasSize(2);
+        assertThat(model.inputs.get(1).lines()).hasSize(1);
+        assertThat(title(first)).isEqualTo("春游通知");
+        assertThat(title(second)).isEqualTo("秋游通知");
+        assertThat(title(third)).isEqualTo("元旦活动");
+        for (long id : List.of(first, second, third)) {
+            assertThat(pending(id)).isFalse();
+            assertThat(row(id, "titled_at")).isNotNull();
+        }
+    }
+
+    @Test
+    void sessionWithoutUserMessageEndsPendingWithoutModelCall() {
+        long user = 70_002;
+        var session = sessions.createSession(user, "临时标题", null, true);
+        sessions.saveAssistantMessage(session.getId(), user, "general", "助手先发的消息",
+                new ChatAnalytics.Completion(1, -1, -1));
+
+        titler.tick();
+
+        assertThat(model.inputs).isEmpty();
+        assertThat(pending(session.getId())).isFalse();
+        assertThat(title(session.getId())).isEqualTo("临时标题");
+    }
+
+    @Test
+    void skipsSessionsClaimedByAnotherNodeUntilLeaseExpires() {
+        long user = 70_003;
+        long session = pendingSession(user, "毕业典礼");
+        var shard = shards.forSession(session);
+        shard.jdbc().update("update chat_session set title_claimed_until = ? where id = ?",
+                Timestamp.valueOf(LocalDateTime.now().plusMinutes(1)), session);
+
+        titler.tick();
+        assertThat(model.inputs).isEmpty();
+        assertThat(pending(session)).isTrue();
+
+        // 认领的节点中途退出：租约到期后重新认领
+        shard.jdbc().update("update chat_session set title_claimed_until = ? where id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), session);
+        titler.requestTitle();
+        titler.tick();
+        assertThat(model.inputs).hasSize(1);
+        assertThat(title(session)).isEqualTo("毕业典礼");
+    }
+
+    @Test
+    void parseTitlesToleratesSurroundingText() {
+        var parsed = titler.parseTitles("""
+                好的，标题如下：
+                ```json
+                {"1": "《中班 秋游通知》", "2": "  ", "3": "一二三四五六七八九十一二三四五六七八九十多出来的"}
+                ```""");
+        assertThat(parsed).containsEntry("1", "中班秋游通知");
+        assertThat(parsed).doesNotContainKey("2");
+        assertThat(parsed.get("3")).hasSize(20);
+
+        assertThat(titler.parseTitles("无法命名")).isEmpty();
+        assertThat(titler.parseTitles("{不是 JSON}")).isEmpty();
+        assertThat(titler.parseTitles(null)).isEmpty();
+    }
+
+    private long pendingSession(long user, String firstMessage) {
+        var session = sessions.createSession(user, "新对话", null, true);
+        sessions.saveUserMessage(session.getId(), user, firstMessage);
+        return session.getId();
+    }
+
+    private boolean pending(long sessionId) {
+        return Boolean.TRUE.equals(row(sessionId, "title_pending"));
+    }
+
+    private String title(long sessionId) {
+        return (String) row(sessionId, "title");
+    }
+
+    private Object row(long sessionId, String column) {
+        return shards.forSession(sessionId).jdbc()
+                .queryForMap("select " + column + " from chat_session where id = ?", sessionId).values().iterator().next();
+    }
+
+    /** 把输入中的每行「编号. 消息」原样加上书名号作为标题返回（解析时去掉），并记录每次调用的输入 */
+    static final class StubModel implements ChatModel {
+
+        final List<String> inputs = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ChatResponse doChat(ChatRequest request) {
+            var input = ((UserMessage) request.messages().get(request.messages().size() - 1)).singleText();
+            inputs.add(input);
+            var json = new StringBuilder("{");
+            input.lines().forEach(line -> {
+                int dot = line.indexOf(". ");
+                if (json.length() > 1) json.append(',');
+                json.append('"').append(line, 0, dot).append("\":\"《").append(line.substring(dot + 2)).append("》\"");
+            });
+            json.append('}');
+            return ChatResponse.builder()
+                    .aiMessage(AiMessage.from(json.toString()))
+                    .tokenUsage(new TokenUsage(10, 5))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.kindergarten.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ShardedIds：跨节点、跨线程唯一，ID 中的逻辑分片与节点号可还原，借用秒数与租约约束。
+ */
+class ShardedIdsTest {
+
+    @Test
+    void idsAreUniqueAcrossNodesAndThreads() throws Exception {
+        Set<Long> seen = ConcurrentHashMap.newKeySet();
+        var tasks = new ArrayList<Callable<Void>>();
+        int perTask = 20_000;
+        for (int node = 0; node < ShardedIds.NODES; node++) {
+            var ids = new ShardedIds(node);
+            int expectedNode = node;
+            for (int t = 0; t < 2; t++) {
+                tasks.add(() -> {
+                    var random = ThreadLocalRandom.current();
+                    for (int i = 0; i < perTask; i++) {
+                        // 集中在少数逻辑分片上，迫使序号用完后借用下一秒
+                        int shard = random.nextInt(4);
+                        long id = ids.next(shard);
+                        assertThat(ShardedIds.logicalShardOf(id)).isEqualTo(shard);
+                        assertThat(ShardedIds.nodeOf(id)).isEqualTo(expectedNode);
+                        assertThat(seen.add(id)).as("重复 ID %d", id).isTrue();
+                    }
+                    return null;
+                });
+            }
+        }
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            for (var future : pool.invokeAll(tasks)) future.get();
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(seen).hasSize(tasks.size() * perTask);
+        assertThat(seen).allMatch(id -> id > 0 && id < (1L << 53));
+    }
+
+    @Test
+    void idsIncreasePerShardWhenBorrowingSeconds() {
+        var ids = new ShardedIds(1);
+        long previous = 0;
+        // 超过一秒 1024 个，必然借用后续的秒数
+        for (int i = 0; i < 5_000; i++) {
+            long id = ids.next(7);
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+        assertThat(ids.highWaterEpochSecond()).isGreaterThan(Instant.now().getEpochSecond());
+    }
+
+    @Test
+    void userSessionsShareTheUsersLogicalShard() {
+        var ids = new ShardedIds(2);
+        for (long user = 1; user < 1_000; user++) {
+            assertThat(ShardedIds.logicalShardOf(ids.nextForUser(user))).isEqualTo(ShardedIds.logicalShardOfUser(user));
+        }
+        var shards = new HashSet<Integer>();
+        for (long user = 1; user <= 4_096; user++) shards.add(ShardedIds.logicalShardOfUser(user));
+        assertThat(shards).hasSize(ShardedIds.LOGICAL_SHARDS);
+    }
+
+    @Test
+    void startsFromFloorSecond() {
+        long floor = Instant.now().getEpochSecond() + 3_600;
+        var ids = new ShardedIds(3, floor);
+        long id = ids.next(0);
+        assertThat(id).isGreaterThanOrEqualTo(ShardedIds.firstIdAt(Instant.ofEpochSecond(floor)));
+        assertThat(id).isLessThan(ShardedIds.firstIdAt(Instant.ofEpochSecond(floor + 1)));
+    }
+
+    @Test
+    void refusesToBorrowBeyondReservation() {
+        var ids = new ShardedIds(4);
+        long now = Instant.now().getEpochSecond();
+        ids.lease(now + 2, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        List<Long> issued = new ArrayList<>();
+        assertThatThrownBy(() -> {
+            for (int i = 0; i < 10_000; i++) issued.add(ids.next(9));
+        }).isInstanceOf(ShardUnavailableException.class);
+        // 已发出的 ID 都在预留上界之前
+        assertThat(issued).isNotEmpty().allMatch(id -> id < ShardedIds.firstIdAt(Instant.ofEpochSecond(now + 2)));
+    }
+
+    @Test
+    void pausesWhenLeaseLapsesAndStopsWhenRevoked() {
+        var ids = new ShardedIds(5);
+        long reserve = Instant.now().getEpochSecond() + 60;
+        ids.lease(reserve, System.nanoTime() - 1);
+        assertThatThrownBy(() -> ids.next(0)).isInstanceOf(ShardUnavailableException.class);
+
+        ids.lease(reserve, System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertThat(ids.next(0)).isPositive();
+
+        ids.revoke();
+        assertThatThrownBy(() -> ids.next(0)).isInstanceOf(ShardUnavailableException.class);
+    }
+
+    @Test
+    void rejectsNodeOutOfRange() {
+        assertThatThrownBy(() -> new ShardedIds(ShardedIds.NODES)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ShardedIds(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,335 @@
+package com.kindergarten.service;
+
+import com.kindergarten.entity.Session;
+import com.kindergarten.service.ShardMigrator.Migration;
+import com.kindergarten.service.ShardMigrator.Phase;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 两个 H2 物理分片（application-test.yml）上的路由与在线迁移：按会话 / 用户 ID 路由、迁移期间并发写入、
+ * 迁移失败回滚、冻结时清理源端已删除的会话。每个用例使用各自的用户（逻辑分片互不相同）。
+ */
+@SpringBootTest(properties = {
+        "kindergarten.sharding.freeze-grace-ms=300",
+        "kindergarten.sharding.map-refresh-ms=100",
+        "kindergarten.sharding.migration-batch-size=7"
+})
+@ActiveProfiles("test")
+class ShardingTest {
+
+    private static final AtomicLong nextUser = new AtomicLong(10_000);
+    private static final Set<Integer> usedShards = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    SessionService sessions;
+
+    @Autowired
+    ChatShards shards;
+
+    @Autowired
+    ChatProjector projector;
+
+    @Autowired
+    ShardMigrator migrator;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    void routesBySessionIdAndByUserId() {
+        assertThat(shards.all()).hasSize(2);
+        for (int i = 0; i < 8; i++) {
+            // 两个物理分片各 4 个用户
+            long user = freshUserOn(i % 2);
+            int logical = ShardedIds.logicalShardOfUser(user);
+            var session = sessions.createSession(user, "路由 " + i, null);
+            sessions.saveUserMessage(session.getId(), user, "你好");
+            projector.awaitUser(user);
+
+            assertThat(ShardedIds.logicalShardOf(session.getId())).isEqualTo(logical);
+            int home = i % 2;
+            assertThat(shards.forSession(session.getId()).index()).isEqualTo(home);
+            assertThat(shards.forUser(user).index()).isEqualTo(home);
+
+            // 数据只在所属的物理分片上
+            assertThat(countSessions(shards.get(home), logical)).isEqualTo(1);
+            assertThat(countSessions(shards.get(1 - home), logical)).isZero();
+            assertThat(countMessages(shards.get(home), session.getId())).isEqualTo(1);
+
+            assertThat(sessions.getSession(session.getId(), user)).isPresent();
+            assertThat(sessions.listSessions(user, 0, 10).getContent()).extracting(Session::getId)
+                    .containsExactly(session.getId());
+            // 其他用户的会话 ID 不会被路由到
+            assertThat(sessions.getSession(session.getId(), freshUser())).isEmpty();
+        }
+    }
+
+    @Test
+    void movesLogicalShardWhileWritesContinue() throws Exception {
+        long user = freshUser();
+        int logical = ShardedIds.logicalShardOfUser(user);
+        int source = shards.layout().physicalOf(logical);
+        int target = 1 - source;
+
+        // 会话 ID → 成功写入的消息数；删除成功后移除
+        Map<Long, AtomicInteger> expected = new ConcurrentHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            var session = sessions.createSession(user, "迁移前 " + i, null);
+            expected.put(session.getId(), new AtomicInteger());
+            for (int m = 0; m < 3; m++) {
+                sessions.saveUserMessage(session.getId(), user, "消息 " + m);
+                expected.get(session.getId()).incrementAndGet();
+            }
+        }
+        projector.awaitUser(user);
+
+        var done = new AtomicBoolean();
+        var unavailable = new AtomicInteger();
+        var writers = new ArrayList<Callable<Integer>>();
+        for (int w = 0; w < 3; w++) {
+            writers.add(() -> {
+                var random = ThreadLocalRandom.current();
+                var mine = new ArrayList<Long>();
+                int writes = 0;
+                while (!done.get()) {
+                    try {
+                        int action = random.nextInt(10);
+                        if (mine.isEmpty() || action < 2) {
+                            var session = sessions.createSession(user, "迁移中", null);
+                            expected.put(session.getId(), new AtomicInteger());
+                            mine.add(session.getId());
+                        } else if (action < 9) {
+                            long id = mine.get(random.nextInt(mine.size()));
+                            sessions.saveUserMessage(id, user, "并发写入 " + writes);
+                            expected.get(id).incrementAndGet();
+                        } else {
+                            long id = mine.remove(random.nextInt(mine.size()));
+                            assertThat(sessions.deleteSession(id, user)).isTrue();
+                            expected.remove(id);
+                        }
+                        writes++;
+                    } catch (ShardUnavailableException e) {
+                        // 冻结超时返回 503，客户端重试；本次写入未发生
+                        unavailable.incrementAndGet();
+                    }
+                }
+                return writes;
+            });
+        }
+        var pool = Executors.newFixedThreadPool(writers.size());
+        try {
+            var futures = writers.stream().map(pool::submit).toList();
+            Thread.sleep(200);
+            migrator.move(logical, target);
+            var finished = awaitMigration(logical);
+            Thread.sleep(200);
+            done.set(true);
+            int writes = 0;
+            for (var future : futures) writes += future.get(30, TimeUnit.SECONDS);
+
+            assertThat(finished.phase()).as(finished.error()).isEqualTo(Phase.DONE);
+            assertThat(writes).isPositive();
+        } finally {
+            done.set(true);
+            pool.shutdownNow();
+        }
+        projector.awaitUser(user);
+
+        assertThat(shards.layout().physicalOf(logical)).isEqualTo(target);
+        assertThat(shards.layout().isFrozen(logical)).isFalse();
+        assertThat(countSessions(shards.get(source), logical)).isZero();
+        assertThat(shards.get(source).jdbc().queryForObject(
+                "select count(*) from chat_message where mod(session_id, 256) = ?", Long.class, logical)).isZero();
+
+        var onTarget = new HashSet<>(shards.get(target).jdbc().queryForList(
+                "select id from chat_session where mod(id, 256) = ?", Long.class, logical));
+        assertThat(onTarget).isEqualTo(expected.keySet());
+        var actualCounts = new HashMap<Long, Integer>();
+        var expectedCounts = new HashMap<Long, Integer>();
+        for (var e : expected.entrySet()) {
+            expectedCounts.put(e.getKey(), e.getValue().get());
+            actualCounts.put(e.getKey(), (int) countMessages(shards.get(target), e.getKey()));
+        }
+        assertThat(actualCounts).isEqualTo(expectedCounts);
+        assertThat(sessions.listSessions(user, 0, 1_000).getTotalElements()).isEqualTo(expected.size());
+    }
+
+    @Test
+    void revertsToSourceWhenMigrationFails() throws Exception {
+        long user = freshUser();
+        int logical = ShardedIds.logicalShardOfUser(user);
+        int source = shards.layout().physicalOf(logical);
+        int target = 1 - source;
+        var before = sessions.createSession(user, "失败回滚", null);
+        sessions.saveUserMessage(before.getId(), user, "迁移前");
+        projector.awaitUser(user);
+
+        var targetJdbc = shards.get(target).jdbc();
+        targetJdbc.execute("alter table chat_session rename to chat_session_offline");
+        Migration failed;
+        try {
+            migrator.move(logical, target);
+            failed = awaitMigration(logical);
+        } finally {
+            targetJdbc.execute("alter table chat_session_offline rename to chat_session");
+        }
+
+        assertThat(failed.phase()).isEqualTo(Phase.FAILED);
+        assertThat(failed.error()).isNotBlank();
+        assertThat(shards.layout().physicalOf(logical)).isEqualTo(source);
+        assertThat(shards.layout().isFrozen(logical)).isFalse();
+        assertThat(jdbcTemplate.queryForObject("select state from chat_shard_map where logical_shard = ?",
+                String.class, logical)).isEqualTo("ACTIVE");
+
+        // 回滚后照常读写，仍落在源端
+        var after = sessions.createSession(user, "回滚之后", null);
+        sessions.saveUserMessage(after.getId(), user, "迁移失败后");
+        sessions.saveUserMessage(before.getId(), user, "再写一条");
+        projector.awaitUser(user);
+        assertThat(countSessions(shards.get(source), logical)).isEqualTo(2);
+        assertThat(countMessages(shards.get(source), before.getId())).isEqualTo(2);
+        assertThat(sessions.getMessages(after.getId(), user)).hasSize(1);
+    }
+
+    @Test
+    void removeDeletedDropsSessionsGoneFromSource() {
+        long user = freshUser();
+        int logical = ShardedIds.logicalShardOfUser(user);
+        var source = shards.get(shards.layout().physicalOf(logical));
+        var target = shards.get(1 - source.index());
+        var kept = new ArrayList<Long>();
+        for (int i = 0; i < 3; i++) {
+            var session = sessions.createSession(user, "保留 " + i, null);
+            sessions.saveUserMessage(session.getId(), user, "消息");
+            kept.add(session.getId());
+        }
+        var deleted = sessions.createSession(user, "将被删除", null);
+        sessions.saveUserMessage(deleted.getId(), user, "消息");
+        sessions.saveUserMessage(deleted.getId(), user, "消息");
+        projector.awaitUser(user);
+
+        // 模拟已复制到目标端之后，会话在源端被删除
+        copyLogicalShard(source, target, logical);
+        assertThat(countSessions(target, logical)).isEqualTo(4);
+        assertThat(sessions.deleteSession(deleted.getId(), user)).isTrue();
+        projector.awaitUser(user);
+        assertThat(countSessions(source, logical)).isEqualTo(3);
+
+        migrator.removeDeleted(source, target, logical);
+
+        assertThat(new HashSet<>(target.jdbc().queryForList(
+                "select id from chat_session where mod(id, 256) = ?", Long.class, logical))).isEqualTo(new HashSet<>(kept));
+        assertThat(countMessages(target, deleted.getId())).isZero();
+        for (long id : kept) assertThat(countMessages(target, id)).isEqualTo(1);
+        // 源端不受影响
+        assertThat(countSessions(source, logical)).isEqualTo(3);
+
+        // 收尾：清掉目标端的副本，源端仍是该逻辑分片的归属
+        target.jdbc().update("delete from chat_message where mod(session_id, 256) = ?", logical);
+        target.jdbc().update("delete from chat_session where mod(id, 256) = ?", logical);
+    }
+
+    @Test
+    void catchUpCopiesLateMessagesWithOldIds() {
+        long user = freshUser();
+        int logical = ShardedIds.logicalShardOfUser(user);
+        var source = shards.get(shards.layout().physicalOf(logical));
+        var target = shards.get(1 - source.index());
+        var session = sessions.createSession(user, "迟到的投影", null);
+        var first = sessions.saveUserMessage(session.getId(), user, "先到");
+        projector.awaitUser(user);
+        copyLogicalShard(source, target, logical);
+
+        // 模拟 ID 早已生成、复制开始后才投影到源端的消息（如重启后从检查点重放）
+        long oldId = ShardedIds.firstIdAt(Instant.now().minus(Duration.ofHours(1))) + logical;
+        assertThat(oldId).isLessThan(first.getId());
+        source.jdbc().update("insert into chat_message (id, session_id, role, content_data, content_hash, metadata, created_at) "
+                + "select ?, session_id, role, content_data, content_hash, metadata, created_at from chat_message where id = ?",
+                oldId, first.getId());
+
+        migrator.copyMissingMessages(source, target, logical);
+
+        assertThat(target.jdbc().queryForList("select id from chat_message where session_id = ? order by id",
+                Long.class, session.getId())).containsExactly(oldId, first.getId());
+
+        // 收尾：去掉两端多出的行，源端仍是该逻辑分片的归属
+        source.jdbc().update("delete from chat_message where id = ?", oldId);
+        target.jdbc().update("delete from chat_message where mod(session_id, 256) = ?", logical);
+        target.jdbc().update("delete from chat_session where mod(id, 256) = ?", logical);
+    }
+
+    /** 取一个逻辑分片未被其他用例使用过的新用户 */
+    private static long freshUser() {
+        while (true) {
+            long user = nextUser.incrementAndGet();
+            if (usedShards.add(ShardedIds.logicalShardOfUser(user))) return user;
+        }
+    }
+
+    /** 取一个当前映射到指定物理分片、且未被其他用例使用过的逻辑分片上的新用户 */
+    private long freshUserOn(int physical) {
+        while (true) {
+            long user = nextUser.incrementAndGet();
+            int logical = ShardedIds.logicalShardOfUser(user);
+            if (shards.layout().physicalOf(logical) == physical && usedShards.add(logical)) return user;
+        }
+    }
+
+    private Migration awaitMigration(int logical) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            for (var m : migrator.migrations()) {
+                if (m.logicalShard() == logical && !m.running()) return m;
+            }
+            Thread.sleep(20);
+        }
+        throw new AssertionError("逻辑分片 " + logical + " 的迁移未在 30 秒内结束");
+    }
+
+    private static long countSessions(ChatShard shard, int logical) {
+        return shard.jdbc().queryForObject("select count(*) from chat_session where mod(id, 256) = ?", Long.class, logical);
+    }
+
+    private static long countMessages(ChatShard shard, long sessionId) {
+        return shard.jdbc().queryForObject("select count(*) from chat_message where session_id = ?", Long.class, sessionId);
+    }
+
+    /** 按列原样复制一个逻辑分片的会话与消息（用户消息不引用 blob） */
+    private static void copyLogicalShard(ChatShard from, ChatShard to, int logical) {
+        copyRows(from, to, "chat_session", "mod(id, 256) = ?", logical);
+        copyRows(from, to, "chat_message", "mod(session_id, 256) = ?", logical);
+    }
+
+    private static void copyRows(ChatShard from, ChatShard to, String table, String where, int logical) {
+        List<Map<String, Object>> rows = from.jdbc().queryForList("select * from " + table + " where " + where, logical);
+        for (var row : rows) {
+            var columns = new ArrayList<>(row.keySet());
+            to.jdbc().update("insert into " + table + " (" + String.join(", ", columns) + ") values ("
+                    + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")", row.values().toArray());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.kindergarten.service;
+
+import com.kindergarten.repository.UsageDailyRepository;
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * UsageLedger：预占计入额度，commit 记账、cancel 退回，二者只有第一次生效；刷写把增量累加到 usage_daily，
+ * 并读回其他节点写入的用量；跨天后按新日期重新计数，跨天前预占的请求记在预占当天。
+ * 账本为测试自建的实例（不与 Spring 中的账本共享状态），日期由测试控制；默认套餐每日 2 次、100 token，刷写用例的用户不限。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class UsageLedgerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 2);
+    private static final long PAID_USER = 80_004;
+
+    @Autowired
+    UsageDailyRepository repository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TestLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        var properties = new QuotaProperties(true, "Asia/Shanghai", "free",
+                Map.of("free", new QuotaProperties.Plan(2L, 100L), "paid", QuotaProperties.Plan.UNLIMITED),
+                Map.of(PAID_USER, "paid"));
+        ledger = new TestLedger(properties, repository, jdbcTemplate, transactionManager);
+        ledger.date = DAY;
+    }
+
+    @Test
+    void reservationCountsTowardQuotaUntilCancelled() {
+        long user = 80_001;
+        var first = ledger.reserve(user);
+        var second = ledger.reserve(user);
+        // 两个未结束的预占已占满次数
+        assertThatThrownBy(() -> ledger.reserve(user)).isInstanceOf(QuotaExceededException.class);
+        assertThat(ledger.snapshot(user).requests()).isZero();
+
+        first.commit(ModelTier.FAST, new TokenUsage(10, 20));
+        second.cancel();
+        var snapshot = ledger.snapshot(user);
+        assertThat(snapshot.requests()).isEqualTo(1);
+        assertThat(snapshot.tokens()).isEqualTo(30);
+        assertThat(first.usage().outputTokenCount()).isEqualTo(20);
+        assertThat(second.usage()).isNull();
+
+        // 退回的预占不再占用次数
+        ledger.reserve(user).commit(ModelTier.REASONING, new TokenUsage(40, 40));
+        assertThatThrownBy(() -> ledger.reserve(user)).isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void tokenLimitRejectsFurtherReservations() {
+        long user = 80_002;
+        ledger.reserve(user).commit(ModelTier.FAST, new TokenUsage(60, 40));
+
+        assertThatThrownBy(() -> ledger.reserve(user)).isInstanceOf(QuotaExceededException.class);
+        assertThat(ledger.snapshot(user).requests()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelThenCommitIsIgnored() {
+        long user = 80_003;
+        var reservation = ledger.reserve(user);
+        reservation.cancel();
+        reservation.commit(ModelTier.FAST, new TokenUsage(10, 20));
+        reservation.cancel();
+
+        assertThat(reservation.usage()).isNull();
+        var snapshot = ledger.snapshot(user);
+        assertThat(snapshot.requests()).isZero();
+        assertThat(snapshot.tokens()).isZero();
+        // 预占只退回一次：仍是恰好 2 次额度
+        ledger.reserve(user);
+        ledger.reserve(user);
+        assertThatThrownBy(() -> ledger.reserve(user)).isInstanceOf(QuotaExceededException.class);
+    }
+
+    @Test
+    void flushAccumulatesIntoUsageDailyAndReadsBackOtherNodes() {
+        long user = PAID_USER;
+        ledger.reserve(user).commit(ModelTier.FAST, new TokenUsage(10, 20));
+        ledger.reserve(user).commit(ModelTier.REASONING, new TokenUsage(5, 5));
+        ledger.flush();
+
+        assertThat(row(user, DAY, ModelTier.FAST)).containsExactly(1L, 10L, 20L);
+        assertThat(row(user, DAY, ModelTier.REASONING)).containsExactly(1L, 5L, 5L);
+        assertThat(ledger.snapshot(user).requests()).isEqualTo(2);
+
+        // 其他节点刷写的用量在下次同步后计入；本节点的新增量累加到同一行
+        jdbcTemplate.update("update usage_daily set requests = requests + 3, input_tokens = input_tokens + 7 "
+                + "where user_id = ? and usage_date = ? and tier = ?", user, Date.valueOf(DAY), ModelTier.FAST.tag());
+        var reservation = ledger.reserve(user);
+        reservation.commit(ModelTier.FAST, new TokenUsage(1, 1));
+        ledger.flush();
+
+        assertThat(row(user, DAY, ModelTier.FAST)).containsExactly(5L, 18L, 21L);
+        var snapshot = ledger.snapshot(user);
+        assertThat(snapshot.requests()).isEqualTo(6);
+        assertThat(snapshot.tokens()).isEqualTo(49);
+    }
+
+    @Test
+    void dayRolloverStartsNewCountsAndKeepsReservationDay() {
+        long user = 80_005;
+        var next = DAY.plusDays(1);
+        // 另一节点已在次日记过用量：首次访问时加载为基线
+        jdbcTemplate.update("insert into usage_daily (user_id, usage_date, tier, requests, input_tokens, output_tokens, updated_at) "
+                        + "values (?, ?, ?, 1, 4, 6, ?)",
+                user, Date.valueOf(next), ModelTier.FAST.tag(), Timestamp.valueOf(LocalDateTime.now()));
+        ledger.reserve(user).commit(ModelTier.FAST, new TokenUsage(10, 20));
+        var spanning = ledger.reserve(user);
+        assertThatThrownBy(() -> ledger.reserve(user)).isInstanceOf(QuotaExceededException.class);
+
+        ledger.date = next;
+        var snapshot = ledger.snapshot(user);
+        assertThat(snapshot.date()).isEqualTo(next);
+        assertThat(snapshot.requests()).isEqualTo(1);
+        assertThat(snapshot.tokens()).isEqualTo(10);
+        ledger.reserve(user).cancel();
+
+        // 跨天前预占、跨天后结束的请求记在前一天
+        spanning.commit(ModelTier.FAST, new TokenUsage(1, 2));
+        ledger.flush();
+        assertThat(row(user, DAY, ModelTier.FAST)).containsExactly(2L, 11L, 22L);
+        assertThat(row(user, next, ModelTier.FAST)).containsExactly(1L, 4L, 6L);
+        assertThat(ledger.snapshot(user).requests()).isEqualTo(1);
+    }
+
+    private long[] row(long user, LocalDate date, ModelTier tier) {
+        var row = jdbcTemplate.queryForMap("select requests, input_tokens, output_tokens from usage_daily "
+                + "where user_id = ? and usage_date = ? and tier = ?", user, Date.valueOf(date), tier.tag());
+        return new long[] { ((Number) row.get("requests")).longValue(),
+                ((Number) row.get("input_tokens")).longValue(), ((Number) row.get("output_tokens")).longValue() };
+    }
+
+    /** 日期由测试指定的账本 */
+    static final class TestLedger extends UsageLedger {
+
+        volatile LocalDate date;
+
+        TestLedger(QuotaProperties properties, UsageDailyRepository repository, JdbcTemplate jdbcTemplate,
+                   PlatformTransactionManager transactionManager) {
+            super(properties, repository, jdbcTemplate, transactionManager, new SimpleMeterRegistry());
+        }
+
+        @Override
+        LocalDate today() {
+            return date;
+        }
+    }
+}
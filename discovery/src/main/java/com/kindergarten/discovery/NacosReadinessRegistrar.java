@@ -0,0 +1,135 @@
+package com.kindergarten.discovery;
+
+import com.alibaba.cloud.nacos.NacosServiceManager;
+import com.alibaba.cloud.nacos.registry.NacosRegistration;
+import com.alibaba.cloud.nacos.registry.NacosServiceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 就绪后注册 Nacos（替代原先在 WebServerInitializedEvent 线程上固定 sleep 的做法）。
+ * <p>
+ * 需配合 spring.cloud.nacos.discovery.register-enabled=false 关闭框架的自动注册，由本类接管：
+ * <ol>
+ *   <li>Web 容器启动后记录端口；</li>
+ *   <li>应用进入 ACCEPTING_TRAFFIC（所有 ApplicationRunner 预热任务完成）后，
+ *       在后台线程轮询 Nacos 客户端状态，一旦为 UP 立即注册；</li>
+ *   <li>关闭时先注销，网关不再转发新请求。</li>
+ * </ol>
+ * 不阻塞任何 Spring 事件线程；注册元数据带上注册时间，供网关慢启动逐步放量，以及应用自己提供的元数据
+ * （如后端的管理端口）。
+ * <p>
+ * 后端与网关共用，不是 Spring 组件：由各自的 DiscoveryConfig 在 kindergarten.nacos.readiness-registration=true 时声明为 Bean。
+ */
+public class NacosReadinessRegistrar {
+
+    private static final Logger log = LoggerFactory.getLogger(NacosReadinessRegistrar.class);
+
+    /** 注册时间元数据 key，网关据此计算实例「年龄」做慢启动 */
+    public static final String REGISTERED_AT_METADATA = "kindergarten.registered-at";
+
+    private static final long WARN_EVERY_MS = 30_000L;
+
+    private final ObjectProvider<NacosServiceRegistry> serviceRegistry;
+    private final ObjectProvider<NacosRegistration> registration;
+    private final ObjectProvider<NacosServiceManager> serviceManager;
+    private final long pollIntervalMs;
+    private final Supplier<Map<String, String>> metadata;
+
+    private final AtomicBoolean registered = new AtomicBoolean();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile int port = -1;
+    private ScheduledExecutorService poller;
+
+    public NacosReadinessRegistrar(
+            ObjectProvider<NacosServiceRegistry> serviceRegistry,
+            ObjectProvider<NacosRegistration> registration,
+            ObjectProvider<NacosServiceManager> serviceManager,
+            long pollIntervalMs,
+            Supplier<Map<String, String>> metadata) {
+        this.serviceRegistry = serviceRegistry;
+        this.registration = registration;
+        this.serviceManager = serviceManager;
+        this.pollIntervalMs = pollIntervalMs > 0 ? pollIntervalMs : 200;
+        this.metadata = metadata;
+    }
+
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        // 忽略独立的 management 端口
+        if (event.getApplicationContext().getServerNamespace() == null) {
+            port = event.getWebServer().getPort();
+        }
+    }
+
+    @EventListener
+    public void onReadiness(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC) return;
+        if (registration.getIfAvailable() == null || serviceRegistry.getIfAvailable() == null) return;
+        if (!started.compareAndSet(false, true)) return;
+
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "nacos-readiness-registrar");
+            t.setDaemon(true);
+            return t;
+        });
+        long waitStart = System.currentTimeMillis();
+        var lastWarn = new long[] { waitStart };
+        poller.scheduleWithFixedDelay(() -> {
+            if (registered.get()) return;
+            try {
+                if (!"UP".equals(serviceManager.getObject().getNamingService().getServerStatus())) {
+                    long now = System.currentTimeMillis();
+                    if (now - lastWarn[0] >= WARN_EVERY_MS) {
+                        lastWarn[0] = now;
+                        log.warn("Nacos 客户端仍未连接（已等待 {} ms），继续等待后注册", now - waitStart);
+                    }
+                    return;
+                }
+                register(System.currentTimeMillis() - waitStart);
+            } catch (Exception e) {
+                log.warn("Nacos 注册失败，稍后重试: {}", e.getMessage());
+            }
+        }, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void register(long waitedMs) {
+        var reg = registration.getObject();
+        if (reg.getPort() < 0 && port > 0) reg.setPort(port);
+        reg.getMetadata().put(REGISTERED_AT_METADATA, String.valueOf(System.currentTimeMillis()));
+        // 注册时才取：管理端口等在 Web 容器启动后才确定
+        reg.getMetadata().putAll(metadata.get());
+        serviceRegistry.getObject().register(reg);
+        registered.set(true);
+        poller.shutdown();
+        log.info("已注册到 Nacos: {}:{}，等待客户端连接 {} ms，JVM 启动至注册 {} ms",
+                reg.getHost(), reg.getPort(), waitedMs, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    @EventListener
+    public void onClose(ContextClosedEvent event) {
+        if (poller != null) poller.shutdownNow();
+        if (registered.compareAndSet(true, false)) {
+            try {
+                serviceRegistry.getObject().deregister(registration.getObject());
+                log.info("已从 Nacos 注销");
+            } catch (Exception e) {
+                log.warn("Nacos 注销失败: {}", e.getMessage());
+            }
+        }
+    }
+}
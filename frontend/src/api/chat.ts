@@ -14,6 +14,8 @@ export interface ChatRequest {
   message: string;
   session_id?: number | null;
   doc_type_id?: string;
+  /** 可选：指定模型档位，不传则由后端自动选择 */
+  model_tier?: 'fast' | 'reasoning';
 }
 
 export interface ChatResponse {
@@ -80,3 +80,32 @@ export async function updateSession(id: number, title: string): Promise<SessionD
 export async function deleteSession(id: number): Promise<void> {
   return fetchApi(`/sessions/${id}`, { method: 'DELETE' });
 }
+
+/**
+ * 导出全部会话的下载地址（ZIP）。
+ * after 为续传起点：上次下载中断时，传入最后一个完整文件名开头的会话 ID。
+ */
+export function exportSessionsUrl(format: 'md' | 'docx', after = 0): string {
+  return `${API_BASE}/sessions/export?format=${format}${after > 0 ? `&after=${after}` : ''}`;
+}
+
+export interface SessionTitleEvent {
+  session_id: number;
+  title: string;
+}
+
+/**
+ * 订阅会话事件（SSE）：后台生成标题后推送 title 事件。
+ * 连接断开时浏览器自动重连；返回取消订阅函数。
+ */
+export function subscribeSessionEvents(onTitle: (event: SessionTitleEvent) => void): () => void {
+  const source = new EventSource(`${API_BASE}/sessions/events`);
+  source.addEventListener('title', (e) => {
+    try {
+      onTitle(JSON.parse((e as MessageEvent<string>).data) as SessionTitleEvent);
+    } catch {
+      // 忽略无法解析的事件
+    }
+  });
+  return () => source.close();
+}
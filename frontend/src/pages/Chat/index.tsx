@@ -1,7 +1,7 @@
 import { useState, useCallback, useRef, useEffect } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
 import { Layout, Typography, List, Button, Popconfirm, message as antMessage } from 'antd';
-import { PlusOutlined, MessageOutlined, DeleteOutlined } from '@ant-design/icons';
+import { PlusOutlined, MessageOutlined, DeleteOutlined, DownloadOutlined } from '@ant-design/icons';
 import ChatInput from '../../components/ChatInput/ChatInput';
 import MessageList from '../../components/MessageList/MessageList';
 import { sendChatMessageStream } from '../../api/chat';
@@ -10,6 +10,8 @@ import {
   createSession,
   getSession,
   deleteSession,
+  subscribeSessionEvents,
+  exportSessionsUrl,
   type SessionListItem,
 } from '../../api/sessions';
 import type { Message } from '../../types';
@@ -76,6 +78,15 @@ export default function Chat() {
     fetchSessions();
   }, [fetchSessions]);
 
+  // 后台生成的会话标题
+  useEffect(
+    () =>
+      subscribeSessionEvents(({ session_id, title }) => {
+        setSessions((prev) => prev.map((s) => (s.id === session_id ? { ...s, title } : s)));
+      }),
+    []
+  );
+
   useEffect(() => {
     const sid = paramSessionId ? Number(paramSessionId) : null;
     setCurrentSessionId(sid);
@@ -197,6 +208,14 @@ export default function Chat() {
           >
             新建对话
           </Button>
+          <div style={{ display: 'flex', gap: 8, marginTop: 8 }}>
+            <Button size="small" icon={<DownloadOutlined />} href={exportSessionsUrl('md')} style={{ flex: 1 }}>
+              导出 Markdown
+            </Button>
+            <Button size="small" icon={<DownloadOutlined />} href={exportSessionsUrl('docx')} style={{ flex: 1 }}>
+              导出 Word
+            </Button>
+          </div>
         </div>
         <List
           loading={sessionsLoading}
@@ -0,0 +1,32 @@
+package com.kindergarten.gateway.config;
+
+import com.alibaba.cloud.nacos.NacosServiceManager;
+import com.alibaba.cloud.nacos.registry.NacosRegistration;
+import com.alibaba.cloud.nacos.registry.NacosServiceRegistry;
+import com.kindergarten.discovery.NacosReadinessRegistrar;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * 就绪后注册 Nacos（discovery 模块的 NacosReadinessRegistrar，与后端共用）。
+ *
+ * 需配合配置：kindergarten.nacos.readiness-registration=true
+ */
+@Configuration
+public class DiscoveryConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kindergarten.nacos", name = "readiness-registration", havingValue = "true")
+    public NacosReadinessRegistrar nacosReadinessRegistrar(
+            ObjectProvider<NacosServiceRegistry> serviceRegistry,
+            ObjectProvider<NacosRegistration> registration,
+            ObjectProvider<NacosServiceManager> serviceManager,
+            @Value("${kindergarten.nacos.status-poll-interval-ms:200}") long pollIntervalMs) {
+        return new NacosReadinessRegistrar(serviceRegistry, registration, serviceManager, pollIntervalMs, Map::of);
+    }
+}
@@ -0,0 +1,12 @@
+package com.kindergarten.gateway.config;
+
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * lb:// 路由默认使用慢启动负载均衡，新实例注册后逐步放量，见 SlowStartLoadBalancer。
+ */
+@Configuration
+@LoadBalancerClients(defaultConfiguration = SlowStartLoadBalancerConfiguration.class)
+public class LoadBalancerConfig {
+}
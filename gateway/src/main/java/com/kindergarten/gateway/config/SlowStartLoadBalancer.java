@@ -0,0 +1,89 @@
+package com.kindergarten.gateway.config;
+
+import com.kindergarten.discovery.NacosReadinessRegistrar;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 慢启动负载均衡：新注册的实例在 slowStart 窗口内按「实例年龄 / 窗口」线性放量，
+ * 避免刚启动（JIT、缓存尚未充分预热）的实例瞬间分到与老实例相同的流量。
+ *
+ * 实例年龄取自后端注册时写入的元数据 kindergarten.registered-at；没有该元数据的实例按满权重处理。
+ * 同时乘以 Nacos 控制台配置的权重 nacos.weight。
+ */
+public class SlowStartLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+    static final String REGISTERED_AT_METADATA = NacosReadinessRegistrar.REGISTERED_AT_METADATA;
+    static final String NACOS_WEIGHT_METADATA = "nacos.weight";
+
+    /** 窗口起点的最小权重，保证新实例能收到少量流量以完成预热 */
+    private static final double MIN_FACTOR = 0.05;
+
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final Duration slowStart;
+
+    public SlowStartLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> supplierProvider, Duration slowStart) {
+        this.supplierProvider = supplierProvider;
+        this.slowStart = slowStart;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        var supplier = supplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(this::select);
+    }
+
+    private Response<ServiceInstance> select(List<ServiceInstance> instances) {
+        if (instances.isEmpty()) return new EmptyResponse();
+        if (instances.size() == 1) return new DefaultResponse(instances.get(0));
+
+        long now = System.currentTimeMillis();
+        double[] weights = new double[instances.size()];
+        double total = 0;
+        for (int i = 0; i < instances.size(); i++) {
+            weights[i] = weight(instances.get(i), now);
+            total += weights[i];
+        }
+        if (total <= 0) {
+            return new DefaultResponse(instances.get(ThreadLocalRandom.current().nextInt(instances.size())));
+        }
+        double r = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < weights.length; i++) {
+            r -= weights[i];
+            if (r < 0) return new DefaultResponse(instances.get(i));
+        }
+        return new DefaultResponse(instances.get(instances.size() - 1));
+    }
+
+    double weight(ServiceInstance instance, long now) {
+        var metadata = instance.getMetadata();
+        double base = parseDouble(metadata.get(NACOS_WEIGHT_METADATA), 1.0);
+        var registeredAt = metadata.get(REGISTERED_AT_METADATA);
+        if (registeredAt == null || slowStart.isZero() || slowStart.isNegative()) return base;
+        long age = now - (long) parseDouble(registeredAt, 0);
+        if (age >= slowStart.toMillis()) return base;
+        double factor = Math.max(MIN_FACTOR, (double) Math.max(age, 0) / slowStart.toMillis());
+        return base * factor;
+    }
+
+    private static double parseDouble(String value, double fallback) {
+        if (value == null) return fallback;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.kindergarten.gateway.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * 每个服务的 LoadBalancer 子容器配置，由 LoadBalancerConfig 通过 @LoadBalancerClients 引用。
+ *
+ * 注意：此类不能加 @Configuration，否则会被组件扫描进主容器，对所有服务共享同一个实例。
+ */
+public class SlowStartLoadBalancerConfiguration {
+
+    @Bean
+    public ReactorLoadBalancer<ServiceInstance> slowStartLoadBalancer(
+            Environment environment,
+            LoadBalancerClientFactory loadBalancerClientFactory,
+            @Value("${kindergarten.loadbalancer.slow-start:60s}") Duration slowStart) {
+        String name = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new SlowStartLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(name, ServiceInstanceListSupplier.class),
+                slowStart);
+    }
+}
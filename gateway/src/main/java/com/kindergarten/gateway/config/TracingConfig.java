@@ -0,0 +1,29 @@
+package com.kindergarten.gateway.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kindergarten.tracing.FileSpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * 网关链路追踪导出配置。
+ *
+ * Spring Cloud Gateway 为每个请求创建入口 Span 与转发 Span，并把 W3C traceparent 头传给后端，
+ * 后端的 HTTP、数据库、LLM Span 挂在同一条链路下。导出方式同后端：kindergarten.tracing.exporter=none（默认）/ file。
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "kindergarten.tracing", name = "exporter", havingValue = "file")
+    public FileSpanExporter fileSpanExporter(@Value("${kindergarten.tracing.file}") String file,
+                                             @Value("${kindergarten.tracing.max-file-bytes:104857600}") long maxFileBytes,
+                                             @Value("${kindergarten.tracing.max-files:5}") int maxFiles,
+                                             ObjectMapper objectMapper) {
+        return new FileSpanExporter(Path.of(file), objectMapper, maxFileBytes, maxFiles);
+    }
+}
@@ -0,0 +1,22 @@
+#!/usr/bin/env bash
+#
+# 消息正文压缩评测：对比 无字典 Deflate 与 预置字典 Deflate 的压缩率，以及单篇解码耗时。
+#
+# 前置：mvn -pl backend -am compile
+# 用法：scripts/compression-bench.sh [样本目录，默认 scripts/compression-corpus/eval]
+#
+# 重新训练字典（字典上线后须新增版本号，不可覆盖 v1）：
+#   java -Dfile.encoding=UTF-8 -cp backend/target/classes scripts/compression-tools/MessageDictionaryTrainer.java \
+#     train scripts/compression-corpus/train backend/src/main/resources/compression/message-dict-v2.txt
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+SAMPLES="${1:-$ROOT/scripts/compression-corpus/eval}"
+CLASSES="$ROOT/backend/target/classes"
+
+if [[ ! -d "$CLASSES/com/kindergarten/entity" ]]; then
+  echo "未找到 $CLASSES，请先执行 mvn -pl backend -am compile" >&2
+  exit 1
+fi
+
+java -Dfile.encoding=UTF-8 -cp "$CLASSES" "$ROOT/scripts/compression-tools/MessageDictionaryTrainer.java" bench "$SAMPLES"
@@ -0,0 +1,157 @@
+import com.kindergarten.entity.MessageContentCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * 压缩字典训练与评测工具（开发期命令行，单文件源码，不随后端打包），通常经由 scripts/compression-bench.sh 调用。
+ *
+ * <pre>
+ * # 从语料目录（每个文件一篇文案，如导出的助手消息）训练字典
+ * java -cp backend/target/classes scripts/compression-tools/MessageDictionaryTrainer.java train &lt;语料目录&gt; &lt;输出文件&gt; [最大字节数]
+ * # 评测当前内置字典：压缩率与解码耗时
+ * java -cp backend/target/classes scripts/compression-tools/MessageDictionaryTrainer.java bench &lt;样本目录&gt;
+ * </pre>
+ *
+ * 训练方法：
+ * 1. 把语料按行和标点切成片段，统计每个片段出现在多少篇文档中，按「文档频次 × 字节长度」打分，
+ *    取出现在两篇以上文档中的高分片段；
+ * 2. 剩余空间用语料原文填充（zlib 建议字典由「后续可能出现的字符串」组成，典型文档本身就是好的候选）。
+ * Deflate 对距离越近的匹配编码越短，因此原文放在字典开头，得分最高的片段放在字典末尾。
+ */
+public final class MessageDictionaryTrainer {
+
+    /** Deflate 窗口 32KB，超过部分不会被引用 */
+    private static final int DEFAULT_MAX_BYTES = 32 * 1024;
+    private static final int MIN_FRAGMENT_CHARS = 4;
+
+    private MessageDictionaryTrainer() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("train")) {
+            int maxBytes = args.length >= 4 ? Integer.parseInt(args[3]) : DEFAULT_MAX_BYTES;
+            var dict = train(readCorpus(Path.of(args[1])), maxBytes);
+            Files.write(Path.of(args[2]), dict);
+            System.out.printf("字典已写入 %s（%d 字节）%n", args[2], dict.length);
+        } else if (args.length >= 2 && args[0].equals("bench")) {
+            bench(readCorpus(Path.of(args[1])));
+        } else {
+            System.err.println("用法: train <语料目录> <输出文件> [最大字节数] | bench <样本目录>");
+            System.exit(1);
+        }
+    }
+
+    public static byte[] train(List<String> samples, int maxBytes) {
+        Map<String, Integer> docFrequency = new HashMap<>();
+        for (String doc : samples) {
+            var seen = new HashSet<String>();
+            for (String fragment : fragments(doc)) {
+                if (seen.add(fragment)) docFrequency.merge(fragment, 1, Integer::sum);
+            }
+        }
+        var ranked = new ArrayList<>(docFrequency.entrySet());
+        ranked.removeIf(e -> e.getValue() < 2 && samples.size() > 1);
+        ranked.sort(Comparator.comparingLong(
+                (Map.Entry<String, Integer> e) -> (long) e.getValue() * e.getKey().getBytes(StandardCharsets.UTF_8).length)
+                .reversed());
+
+        var chosen = new ArrayList<byte[]>();
+        int total = 0;
+        for (var e : ranked) {
+            var bytes = (e.getKey() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (total + bytes.length > maxBytes) continue;
+            chosen.add(bytes);
+            total += bytes.length;
+        }
+        for (String doc : samples) {
+            var bytes = (doc.strip() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (total + bytes.length > maxBytes) continue;
+            chosen.add(bytes);
+            total += bytes.length;
+        }
+        // 倒序拼接：原文在前，高分片段在末尾，离待压缩数据最近
+        var out = new byte[total];
+        int pos = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            System.arraycopy(chosen.get(i), 0, out, pos, chosen.get(i).length);
+            pos += chosen.get(i).length;
+        }
+        return out;
+    }
+
+    static List<String> fragments(String doc) {
+        var result = new ArrayList<String>();
+        for (String line : doc.split("\n")) {
+            var trimmed = line.strip();
+            if (trimmed.length() >= MIN_FRAGMENT_CHARS) result.add(trimmed);
+            for (String part : trimmed.split("[，。：；！？、,.:;!?]")) {
+                var p = part.strip();
+                if (p.length() >= MIN_FRAGMENT_CHARS && p.length() < trimmed.length()) result.add(p);
+            }
+        }
+        return result;
+    }
+
+    private static void bench(List<String> samples) {
+        long rawTotal = 0, plainTotal = 0, dictTotal = 0;
+        // 预热，避免把 JIT 编译时间计入解码耗时
+        for (int i = 0; i < 200; i++) {
+            for (String s : samples) MessageContentCodec.decode(MessageContentCodec.encode(s));
+        }
+        System.out.printf("%-6s %8s %8s %8s %10s%n", "样本", "原始B", "无字典B", "字典B", "解码µs");
+        int idx = 0;
+        for (String s : samples) {
+            var raw = s.getBytes(StandardCharsets.UTF_8);
+            var plain = deflate(raw);
+            var encoded = MessageContentCodec.encode(s);
+            int iterations = 2000;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) MessageContentCodec.decode(encoded);
+            double decodeMicros = (System.nanoTime() - start) / 1000.0 / iterations;
+            System.out.printf("%-6d %8d %8d %8d %10.1f%n", ++idx, raw.length, plain.length, encoded.length, decodeMicros);
+            rawTotal += raw.length;
+            plainTotal += plain.length;
+            dictTotal += encoded.length;
+        }
+        System.out.printf("合计: 原始 %d B，无字典 %.2fx，预置字典 %.2fx%n",
+                rawTotal, (double) rawTotal / plainTotal, (double) rawTotal / dictTotal);
+    }
+
+    /** 无字典的 Deflate，与 MessageContentCodec 使用相同的压缩级别 */
+    private static byte[] deflate(byte[] raw) {
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            var buf = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static List<String> readCorpus(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            var list = new ArrayList<String>();
+            for (Path f : files.filter(Files::isRegularFile).sorted().toList()) {
+                list.add(Files.readString(f, StandardCharsets.UTF_8));
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+#!/usr/bin/env bash
+#
+# LLM 连接预热评测：对一个本地桩服务（scripts/stub-llm/StubLlmServer.java），分别以
+# 不预热（cold，kindergarten.llm.http.warmup=false）与预热（warm）启动后端，统计就绪后第一个流式请求的首 token 耗时。
+#
+# 前置：mvn -pl backend -am -DskipTests package
+# 用法：scripts/llm-ttft-bench.sh [每个变体的运行次数，默认 3]
+#
+# 环境变量：HANDSHAKE_MS（桩服务模拟的建连耗时，默认 150）、FIRST_TOKEN_MS（模拟的模型首 token 耗时，默认 50）、
+#           STUB_PORT（默认 18080）、TIMEOUT_S（等待就绪的秒数，默认 120）。
+#
+# 输出每个变体的平均值：
+#   client-ttft  客户端从发出请求到收到第一个内容分片（SSE 第二条 data，第一条为 session_id）的耗时；
+#   server-ttft  后端指标 llm.stream.ttft（从发起模型调用到首个分片）；
+#   warmup-conns 就绪前桩服务接受的连接数；first-req-conns 第一个请求期间新建的连接数（预热生效时应为 0）。
+# 需要可连接的 Nacos 时注册会在后台重试，不影响评测。
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+RUNS="${1:-3}"
+STUB_PORT="${STUB_PORT:-18080}"
+HANDSHAKE_MS="${HANDSHAKE_MS:-150}"
+FIRST_TOKEN_MS="${FIRST_TOKEN_MS:-50}"
+TIMEOUT_S="${TIMEOUT_S:-120}"
+BACKEND="http://127.0.0.1:8080"
+STUB="http://127.0.0.1:$STUB_PORT"
+
+JAR="$(ls "$ROOT"/backend/target/kindergarten-backend-*.jar 2>/dev/null | grep -v original | head -1 || true)"
+if [[ -z "$JAR" ]]; then
+  echo "未找到后端 jar，请先执行 mvn -pl backend -am -DskipTests package" >&2
+  exit 1
+fi
+
+now_ms() { date +%s%3N; }
+
+java -Dfile.encoding=UTF-8 "$ROOT/scripts/stub-llm/StubLlmServer.java" "$STUB_PORT" "$HANDSHAKE_MS" "$FIRST_TOKEN_MS" >/tmp/llm-ttft-bench-stub.log 2>&1 &
+STUB_PID=$!
+trap 'kill "$STUB_PID" 2>/dev/null || true' EXIT
+for _ in $(seq 1 100); do curl -sf "$STUB/stats" >/dev/null && break; sleep 0.1; done
+
+stub_connections() { curl -s "$STUB/stats" | grep -o '"connections":[0-9]*' | cut -d: -f2; }
+
+wait_ready() {
+  local pid="$1" deadline=$(( $(date +%s) + TIMEOUT_S ))
+  while kill -0 "$pid" 2>/dev/null; do
+    [[ "$(curl -s -o /dev/null -w '%{http_code}' "$BACKEND/actuator/health/readiness" || true)" == 200 ]] && return 0
+    (( $(date +%s) > deadline )) && return 1
+    sleep 0.05
+  done
+  return 1
+}
+
+# 发出一个流式请求，输出到第一个内容分片的毫秒数
+first_chunk_ms() {
+  local start n=0
+  start="$(now_ms)"
+  curl -sN -X POST "$BACKEND/api/chat/stream" -H 'Content-Type: application/json' \
+      -d '{"message":"写一则春游通知","doc_type_id":"general","model_tier":"fast"}' | while IFS= read -r line; do
+    if [[ "$line" == data:* ]]; then
+      n=$(( n + 1 ))
+      if (( n == 2 )); then echo $(( $(now_ms) - start )); break; fi
+    fi
+  done || true
+}
+
+server_ttft_ms() {
+  curl -s "$BACKEND/actuator/metrics/llm.stream.ttft" \
+    | grep -o '"statistic":"MAX","value":[0-9.E-]*' | cut -d: -f3 \
+    | awk '{ printf "%d", $1 * 1000 }'
+}
+
+run_variant() {
+  local variant="$1" warmup="$2"
+  local client_total=0 server_total=0 warm_conns=0 first_conns=0 ok=0
+  for ((i = 1; i <= RUNS; i++)); do
+    local before pid ready_conns client server after
+    before="$(stub_connections)"
+    KINDERGARTEN_LLM_API_KEY=bench java -Djava.net.preferIPv4Stack=true \
+        -Djdk.httpclient.connectionPoolSize=32 -Djdk.httpclient.keepalive.timeout=300 -jar "$JAR" \
+        --kindergarten.llm.base-url="$STUB" \
+        --kindergarten.llm.http.warmup="$warmup" \
+        --kindergarten.titling.enabled=false \
+        >"/tmp/llm-ttft-bench-$variant.log" 2>&1 &
+    pid=$!
+    if wait_ready "$pid"; then
+      ready_conns="$(stub_connections)"
+      client="$(first_chunk_ms)"
+      server="$(server_ttft_ms)"
+      after="$(stub_connections)"
+      if [[ -n "$client" && -n "$server" ]]; then
+        client_total=$(( client_total + client )); server_total=$(( server_total + server ))
+        warm_conns=$(( warm_conns + ready_conns - before )); first_conns=$(( first_conns + after - ready_conns ))
+        ok=$(( ok + 1 ))
+      else
+        echo "  $variant 第 $i 次未收到内容分片，日志：/tmp/llm-ttft-bench-$variant.log" >&2
+      fi
+    else
+      echo "  $variant 第 $i 次未在 ${TIMEOUT_S}s 内就绪，日志：/tmp/llm-ttft-bench-$variant.log" >&2
+    fi
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+  done
+  if (( ok > 0 )); then
+    printf '%-8s %11d ms %11d ms %13d %15d  (%d/%d 次)\n' "$variant" $(( client_total / ok )) $(( server_total / ok )) \
+        $(( warm_conns / ok )) $(( first_conns / ok )) "$ok" "$RUNS"
+  fi
+}
+
+echo "桩服务：建连 ${HANDSHAKE_MS} ms，首 token ${FIRST_TOKEN_MS} ms，每个变体 $RUNS 次"
+printf '%-8s %14s %14s %13s %15s\n' variant client-ttft server-ttft warmup-conns first-req-conns
+run_variant cold false
+run_variant warm true
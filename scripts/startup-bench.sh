@@ -0,0 +1,100 @@
+#!/usr/bin/env bash
+#
+# 启动性能对比：分别以 普通 jar / AOT / AOT+AppCDS / 原生镜像（仅网关，存在时）启动后端与网关，
+# 统计从进程启动到「就绪」的耗时与就绪时的常驻内存（RSS）。
+#
+# 前置：
+#   mvn -Pfast-startup -DskipTests package                       # 生成 AOT 类与 target/cds/app.jsa
+#   mvn -Pnative -pl gateway -am -DskipTests package          # 可选，生成网关原生镜像
+#
+# 用法：scripts/startup-bench.sh [backend|gateway|all] [每个变体的运行次数，默认 3]
+#
+# 就绪判定：后端轮询 /actuator/health/readiness 返回 200；网关轮询 9000 端口有任意 HTTP 响应。
+# 需要可连接的 Nacos（NACOS_SERVER_ADDR），否则实例仍会启动，只是注册会在后台持续重试。
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+TARGET="${1:-all}"
+RUNS="${2:-3}"
+TIMEOUT_S="${TIMEOUT_S:-120}"
+
+export KINDERGARTEN_LLM_API_KEY="${KINDERGARTEN_LLM_API_KEY:-bench}"
+COMMON_JVM=(-Djava.net.preferIPv4Stack=true -Dspring.cloud.refresh.enabled=false)
+
+now_ms() { date +%s%3N; }
+
+# wait_ready <pid> <url> <expect_200:true|false>
+wait_ready() {
+  local pid="$1" url="$2" strict="$3" deadline=$(( $(date +%s) + TIMEOUT_S ))
+  while kill -0 "$pid" 2>/dev/null; do
+    local code
+    code="$(curl -s -o /dev/null -w '%{http_code}' "$url" || true)"
+    if [[ "$strict" == true && "$code" == 200 ]] || [[ "$strict" == false && "$code" != 000 ]]; then
+      return 0
+    fi
+    (( $(date +%s) > deadline )) && return 1
+    sleep 0.05
+  done
+  return 1
+}
+
+# run_variant <module> <variant> <url> <strict> <command...>
+run_variant() {
+  local module="$1" variant="$2" url="$3" strict="$4"; shift 4
+  local total=0 rss_total=0 ok=0
+  for ((i = 1; i <= RUNS; i++)); do
+    local start pid ready rss
+    start="$(now_ms)"
+    "$@" >"/tmp/startup-bench-${module}-${variant}.log" 2>&1 &
+    pid=$!
+    if wait_ready "$pid" "$url" "$strict"; then
+      ready=$(( $(now_ms) - start ))
+      rss="$(ps -o rss= -p "$pid" | tr -d ' ')"
+      total=$(( total + ready )); rss_total=$(( rss_total + rss )); ok=$(( ok + 1 ))
+    else
+      echo "  ${module}/${variant} 第 ${i} 次未在 ${TIMEOUT_S}s 内就绪，日志：/tmp/startup-bench-${module}-${variant}.log" >&2
+    fi
+    kill "$pid" 2>/dev/null || true
+    wait "$pid" 2>/dev/null || true
+  done
+  if (( ok > 0 )); then
+    printf '%-10s %-10s %8d ms %10d KB  (%d/%d 次)\n' "$module" "$variant" $(( total / ok )) $(( rss_total / ok )) "$ok" "$RUNS"
+  fi
+}
+
+bench_module() {
+  local module="$1" dir="$ROOT/$1" url strict args=()
+  local jar
+  jar="$(ls "$dir"/target/kindergarten-"$module"-*.jar 2>/dev/null | grep -v original | head -1 || true)"
+  if [[ -z "$jar" ]]; then
+    echo "未找到 $module 的 jar，请先执行 mvn -Pfast-startup package" >&2
+    return
+  fi
+  if [[ "$module" == backend ]]; then
+    url="http://127.0.0.1:8080/actuator/health/readiness"; strict=true
+    args=(--kindergarten.llm.http.warmup=false)
+  else
+    url="http://127.0.0.1:9000/"; strict=false
+  fi
+
+  run_variant "$module" jar "$url" "$strict" java "${COMMON_JVM[@]}" -jar "$jar" "${args[@]}"
+  run_variant "$module" aot "$url" "$strict" java "${COMMON_JVM[@]}" -Dspring.aot.enabled=true -jar "$jar" "${args[@]}"
+
+  local cds="$dir/target/cds"
+  if [[ -f "$cds/app.jsa" ]]; then
+    run_variant "$module" aot+cds "$url" "$strict" \
+      java "${COMMON_JVM[@]}" -Dspring.aot.enabled=true -XX:SharedArchiveFile="$cds/app.jsa" -Xshare:auto \
+      -cp "$(cat "$cds/classpath.txt")" "$(cat "$cds/main-class.txt")" "${args[@]}"
+  fi
+
+  if [[ -x "$dir/target/kindergarten-$module" ]]; then
+    run_variant "$module" native "$url" "$strict" "$dir/target/kindergarten-$module" "${args[@]}"
+  fi
+}
+
+printf '%-10s %-10s %11s %13s\n' module variant time-to-ready RSS
+case "$TARGET" in
+  backend|gateway) bench_module "$TARGET" ;;
+  all) bench_module backend; bench_module gateway ;;
+  *) echo "用法：$0 [backend|gateway|all] [runs]" >&2; exit 1 ;;
+esac
@@ -0,0 +1,104 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI 兼容的桩服务，供 scripts/llm-ttft-bench.sh 使用（单文件源码，直接 java StubLlmServer.java 运行）。
+ *
+ * - GET  /v1/models：模型列表（连接预热请求）；
+ * - POST /v1/chat/completions：按请求体中的 "stream": true 返回 SSE 分片，否则返回完整 JSON；
+ * - GET  /stats：已接受的 TCP 连接数与请求数（按客户端地址 + 端口区分连接）。
+ *
+ * 每条新连接上的第一个请求额外等待 handshake-ms，模拟真实环境中 DNS、TCP 与 TLS 建连的往返；
+ * 对话请求在首个分片前等待 first-token-ms，模拟模型的首 token 耗时。
+ *
+ * 用法：java -Dfile.encoding=UTF-8 scripts/stub-llm/StubLlmServer.java [端口，默认 18080] [handshake-ms，默认 150] [first-token-ms，默认 50]
+ */
+public class StubLlmServer {
+
+    private static final Set<String> connections = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong requests = new AtomicLong();
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18080;
+        long handshakeMs = args.length > 1 ? Long.parseLong(args[1]) : 150;
+        long firstTokenMs = args.length > 2 ? Long.parseLong(args[2]) : 50;
+
+        var server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/stats", exchange -> json(exchange, 200,
+                "{\"connections\":" + connections.size() + ",\"requests\":" + requests.get() + "}"));
+        server.createContext("/v1/models", exchange -> {
+            accept(exchange, handshakeMs);
+            json(exchange, 200, "{\"object\":\"list\",\"data\":[{\"id\":\"stub\",\"object\":\"model\",\"owned_by\":\"stub\"}]}");
+        });
+        server.createContext("/v1/chat/completions", exchange -> {
+            accept(exchange, handshakeMs);
+            var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            sleep(firstTokenMs);
+            if (body.replace(" ", "").contains("\"stream\":true")) {
+                stream(exchange);
+            } else {
+                json(exchange, 200, "{\"id\":\"stub\",\"object\":\"chat.completion\",\"created\":0,\"model\":\"stub\","
+                        + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"桩服务回复\"},"
+                        + "\"finish_reason\":\"stop\"}],"
+                        + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15}}");
+            }
+        });
+        server.start();
+        System.out.printf("stub LLM listening on 127.0.0.1:%d (handshake %d ms, first token %d ms)%n",
+                port, handshakeMs, firstTokenMs);
+    }
+
+    /** 记一次请求；新连接上的首个请求模拟建连耗时 */
+    private static void accept(HttpExchange exchange, long handshakeMs) {
+        requests.incrementAndGet();
+        if (connections.add(exchange.getRemoteAddress().toString())) sleep(handshakeMs);
+    }
+
+    private static void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < 20; i++) {
+                event(out, "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                        + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"片段" + i + "\"},\"finish_reason\":null}]}");
+                sleep(5);
+            }
+            event(out, "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+                    + "\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}],"
+                    + "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":20,\"total_tokens\":30}}");
+            event(out, "[DONE]");
+        }
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void json(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+#!/usr/bin/env bash
+#
+# 会话详情响应评测：GET /api/sessions/{id} 在 JSON / CBOR × identity / gzip / br 下的线上字节数与耗时，
+# 以及带 If-None-Match 重新验证（304）的耗时。
+#
+# 前置：后端（8080）或网关（9000）已启动，且存在一个消息较多的会话。
+# 用法：scripts/wire-format-bench.sh [基础地址，默认 http://localhost:9000] [会话 ID，默认最近更新的会话] [每组次数，默认 20]
+#
+# 说明：
+#   - 字节数为响应体在线上的大小（未解压），耗时为 curl 的首字节时间与总时间的平均值（毫秒）；
+#   - 经网关访问时 br 由网关协商（需 Brotli4j 原生库可用），直连后端只有 gzip，br 请求会退回未压缩；
+#   - 压缩前的大小与服务端序列化耗时另见后端指标 session.payload.bytes / session.payload.write（/actuator/metrics）。
+set -euo pipefail
+
+BASE="${1:-http://localhost:9000}"
+SESSION_ID="${2:-}"
+RUNS="${3:-20}"
+
+if [[ -z "$SESSION_ID" ]]; then
+  SESSION_ID="$(curl -sf "$BASE/api/sessions?size=1" | grep -o '"id":[0-9]*' | head -1 | cut -d: -f2 || true)"
+  if [[ -z "$SESSION_ID" ]]; then
+    echo "未找到会话，请在参数中指定会话 ID" >&2
+    exit 1
+  fi
+fi
+URL="$BASE/api/sessions/$SESSION_ID"
+echo "会话 $SESSION_ID（$URL），每组 $RUNS 次"
+echo
+
+# measure <accept> <accept-encoding> [if-none-match]
+measure() {
+  local accept="$1" encoding="$2" etag="${3:-}"
+  local args=(-s -o /dev/null -H "Accept: $accept" -H "Accept-Encoding: $encoding"
+              -w '%{http_code} %{size_download} %{time_starttransfer} %{time_total}\n')
+  [[ -n "$etag" ]] && args+=(-H "If-None-Match: $etag")
+  for ((i = 1; i <= RUNS; i++)); do curl "${args[@]}" "$URL"; done | awk '
+    { code = $1; bytes = $2; ttfb += $3; total += $4; n++ }
+    END { printf "%-4s %10d %10.1f %10.1f\n", code, bytes, ttfb * 1000 / n, total * 1000 / n }'
+}
+
+printf "%-18s %-10s %-4s %10s %10s %10s\n" "Accept" "Encoding" "状态" "字节" "首字节ms" "总耗时ms"
+for accept in application/json application/cbor; do
+  for encoding in identity gzip br; do
+    printf "%-18s %-10s " "$accept" "$encoding"
+    measure "$accept" "$encoding"
+  done
+  etag="$(curl -s -o /dev/null -D - -H "Accept: $accept" "$URL" | tr -d '\r' | awk -F': ' 'tolower($1) == "etag" { print $2 }')"
+  printf "%-18s %-10s " "$accept" "304"
+  measure "$accept" "gzip" "$etag"
+done
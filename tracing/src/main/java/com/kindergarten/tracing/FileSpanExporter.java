@@ -0,0 +1,149 @@
+package com.kindergarten.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 把结束的 Span 以 JSON Lines 追加写入本地文件，本地排查用，无需部署 Zipkin / Jaeger。
+ *
+ * 每行一个 Span：traceId、spanId、parentSpanId、name、kind、startEpochMicros、durationMicros、status、
+ * attributes、events（name + 相对 Span 开始的微秒偏移）。按 traceId 过滤即可还原一次请求的完整链路：
+ * <pre>grep '"traceId":"&lt;id&gt;"' spans.jsonl</pre>
+ * 由 OpenTelemetry 的 BatchSpanProcessor 在后台线程批量调用，不占用请求线程。
+ *
+ * 按大小滚动：文件超过 maxBytes 后依次改名为 spans.jsonl.1、.2 …（数字越大越旧），最多保留 maxFiles 个旧文件。
+ * 滚动只在批次之间进行，一批 Span 总在同一个文件中。
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private static final byte[] NEWLINE = { '\n' };
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final int maxFiles;
+    private OutputStream out;
+    /** 当前文件的大小（含打开前已有的内容） */
+    private long written;
+
+    /**
+     * @param maxBytes 单个文件的大小上限（字节），超过后滚动
+     * @param maxFiles 保留的旧文件个数，0 表示滚动时直接丢弃旧内容
+     */
+    public FileSpanExporter(Path file, ObjectMapper objectMapper, long maxBytes, int maxFiles) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes 须大于 0");
+        if (maxFiles < 0) throw new IllegalArgumentException("maxFiles 不能为负数");
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        try {
+            if (out != null && written >= maxBytes) rotate();
+            if (out == null) open();
+            for (SpanData span : spans) {
+                byte[] line = objectMapper.writeValueAsBytes(toMap(span));
+                out.write(line);
+                out.write(NEWLINE);
+                written += line.length + NEWLINE.length;
+            }
+            out.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            log.warn("写入 Span 文件失败: {}", e.getMessage());
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                return CompletableResultCode.ofFailure();
+            } finally {
+                out = null;
+            }
+        }
+        return CompletableResultCode.ofSuccess();
+    }
+
+    private void open() throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        written = Files.exists(file) ? Files.size(file) : 0;
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+        // 重启时已有的文件超过上限：先滚动再写
+        if (written >= maxBytes) rotate();
+    }
+
+    /** 关闭当前文件，旧文件依次后移（超出 maxFiles 的删除），当前文件改名为 .1 后重新打开 */
+    private void rotate() throws IOException {
+        out.close();
+        out = null;
+        if (maxFiles == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        written = 0;
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    static Map<String, Object> toMap(SpanData span) {
+        var m = new LinkedHashMap<String, Object>();
+        m.put("traceId", span.getTraceId());
+        m.put("spanId", span.getSpanId());
+        m.put("parentSpanId", span.getParentSpanContext().isValid() ? span.getParentSpanId() : null);
+        m.put("name", span.getName());
+        m.put("kind", span.getKind().name());
+        m.put("startEpochMicros", span.getStartEpochNanos() / 1_000);
+        m.put("durationMicros", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000);
+        m.put("status", span.getStatus().getStatusCode().name());
+        var attributes = new LinkedHashMap<String, Object>();
+        span.getAttributes().forEach((k, v) -> attributes.put(k.getKey(), v));
+        m.put("attributes", attributes);
+        var events = new ArrayList<Map<String, Object>>();
+        for (EventData e : span.getEvents()) {
+            events.add(Map.of("name", e.getName(),
+                    "offsetMicros", (e.getEpochNanos() - span.getStartEpochNanos()) / 1_000));
+        }
+        m.put("events", events);
+        return m;
+    }
+}